@@ -2,11 +2,14 @@ package ru.curs.celesta;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
+import java.util.stream.Collectors;
 
 /**
  * Base class for application settings.
@@ -18,6 +21,16 @@ public abstract class BaseAppSettings {
      */
     public static final String H2_IN_MEMORY_URL = "jdbc:h2:mem:celesta;DB_CLOSE_DELAY=-1";
 
+    private static final int DEFAULT_MVIEW_DEFERRED_INTERVAL = 1000;
+    private static final int DEFAULT_MVIEW_DEFERRED_BATCH = 1000;
+    private static final int DEFAULT_CACHE_REFRESH = 60000;
+    private static final int DEFAULT_ROWCACHE_TTL = 60000;
+    private static final int DEFAULT_VIEWCACHE_SIZE = 100;
+    private static final int DEFAULT_VIEWCACHE_ROWS = 10000;
+    private static final int DEFAULT_VIEWCACHE_TTL = 60000;
+    private static final int DEFAULT_INVALIDATION_INTERVAL = 500;
+    private static final int DEFAULT_REPLICA_REFRESH = 60000;
+
     private final Properties properties;
 
     private final String scorePath;
@@ -30,6 +43,25 @@ public abstract class BaseAppSettings {
     private final Logger logger;
     private final boolean skipDBUpdate;
     private final boolean forceDBInitialize;
+    private final int dbUpdateParallelism;
+    private final boolean dbUpdateOnline;
+    private final int mviewDeferredInterval;
+    private final int mviewDeferredBatch;
+    private final int mviewBuildChunk;
+    private final int mviewBuildParallelism;
+    private final List<String> cacheTables;
+    private final int cacheRefresh;
+    private final List<String> rowCacheTables;
+    private final int rowCacheSize;
+    private final int rowCacheTtl;
+    private final List<String> viewCacheViews;
+    private final int viewCacheSize;
+    private final int viewCacheRows;
+    private final int viewCacheTtl;
+    private final String invalidationBus;
+    private final int invalidationInterval;
+    private final List<String> replicaTables;
+    private final int replicaRefresh;
     private final boolean logLogins;
 
     {
@@ -101,6 +133,46 @@ public abstract class BaseAppSettings {
 
         skipDBUpdate = Boolean.parseBoolean(properties.getProperty("skip.dbupdate", "").trim());
         forceDBInitialize = Boolean.parseBoolean(properties.getProperty("force.dbinitialize", "").trim());
+        int dbUpdateParallelismTmp = 1;
+        try {
+            dbUpdateParallelismTmp = Integer.parseInt(properties.getProperty("dbupdate.parallelism", "1").trim());
+        } catch (NumberFormatException e) {
+            sb.append("dbupdate.parallelism should contain a number of grains.\n");
+        }
+        if (dbUpdateParallelismTmp < 1) {
+            sb.append("dbupdate.parallelism should be positive.\n");
+        }
+        dbUpdateParallelism = dbUpdateParallelismTmp;
+        dbUpdateOnline = Boolean.parseBoolean(properties.getProperty("dbupdate.online", "").trim());
+        mviewDeferredInterval = parseInt(properties, "mview.deferred.interval",
+                DEFAULT_MVIEW_DEFERRED_INTERVAL, "milliseconds", sb);
+        if (mviewDeferredInterval < 0) {
+            sb.append("mview.deferred.interval should not be negative.\n");
+        }
+        mviewDeferredBatch = parseInt(properties, "mview.deferred.batch",
+                DEFAULT_MVIEW_DEFERRED_BATCH, "groups", sb);
+        if (mviewDeferredBatch < 1) {
+            sb.append("mview.deferred.batch should be positive.\n");
+        }
+        mviewBuildChunk = parseInt(properties, "mview.build.chunk", 0, "rows", sb);
+        mviewBuildParallelism = parseInt(properties, "mview.build.parallelism", 1, "connections", sb);
+        checkMViewBuild(sb);
+        cacheTables = parseList(properties, "cache.tables");
+        cacheRefresh = parseInt(properties, "cache.refresh", DEFAULT_CACHE_REFRESH, "milliseconds", sb);
+        rowCacheTables = parseList(properties, "rowcache.tables");
+        rowCacheSize = parseInt(properties, "rowcache.size", 0, "rows", sb);
+        rowCacheTtl = parseInt(properties, "rowcache.ttl", DEFAULT_ROWCACHE_TTL, "milliseconds", sb);
+        viewCacheViews = parseList(properties, "viewcache.views");
+        viewCacheSize = parseInt(properties, "viewcache.size", DEFAULT_VIEWCACHE_SIZE, "results", sb);
+        viewCacheRows = parseInt(properties, "viewcache.rows", DEFAULT_VIEWCACHE_ROWS, "rows", sb);
+        viewCacheTtl = parseInt(properties, "viewcache.ttl", DEFAULT_VIEWCACHE_TTL, "milliseconds", sb);
+        replicaTables = parseList(properties, "replica.tables");
+        replicaRefresh = parseInt(properties, "replica.refresh", DEFAULT_REPLICA_REFRESH, "milliseconds", sb);
+        checkCache(sb);
+        invalidationBus = properties.getProperty("invalidation.bus", "local").trim();
+        invalidationInterval = parseInt(properties, "invalidation.interval",
+                DEFAULT_INVALIDATION_INTERVAL, "milliseconds", sb);
+        checkInvalidation(sb);
         logLogins = Boolean.parseBoolean(properties.getProperty("log.logins", "").trim());
 
         if (sb.length() > 0) {
@@ -109,6 +181,63 @@ public abstract class BaseAppSettings {
 
     }
 
+    private void checkMViewBuild(StringBuffer sb) {
+        if (mviewBuildChunk < 0) {
+            sb.append("mview.build.chunk should not be negative.\n");
+        }
+        if (mviewBuildParallelism < 1) {
+            sb.append("mview.build.parallelism should be positive.\n");
+        }
+    }
+
+    private void checkCache(StringBuffer sb) {
+        if (cacheRefresh < 0) {
+            sb.append("cache.refresh should not be negative.\n");
+        }
+        if (rowCacheSize < 0) {
+            sb.append("rowcache.size should not be negative.\n");
+        }
+        if (rowCacheTtl < 0) {
+            sb.append("rowcache.ttl should not be negative.\n");
+        }
+        if (viewCacheSize < 0) {
+            sb.append("viewcache.size should not be negative.\n");
+        }
+        if (viewCacheRows < 1) {
+            sb.append("viewcache.rows should be positive.\n");
+        }
+        if (viewCacheTtl < 0) {
+            sb.append("viewcache.ttl should not be negative.\n");
+        }
+        if (replicaRefresh < 0) {
+            sb.append("replica.refresh should not be negative.\n");
+        }
+    }
+
+    private void checkInvalidation(StringBuffer sb) {
+        if ("postgres".equals(invalidationBus) && dbType != DBType.POSTGRESQL) {
+            sb.append("invalidation.bus postgres is only supported for PostgreSQL.\n");
+        }
+        if (invalidationInterval < 1) {
+            sb.append("invalidation.interval should be positive.\n");
+        }
+    }
+
+    private static List<String> parseList(Properties properties, String propertyName) {
+        return Arrays.stream(properties.getProperty(propertyName, "").split(","))
+                .map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toList());
+    }
+
+    private static int parseInt(Properties properties, String propertyName, int defaultValue,
+                                String unit, StringBuffer sb) {
+        try {
+            return Integer.parseInt(properties.getProperty(propertyName, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            sb.append(String.format("%s should contain a number of %s.%n", propertyName, unit));
+            return defaultValue;
+        }
+    }
+
     protected static void checkEntries(String path, String propertyName, StringBuffer sb) {
         if (!path.isEmpty()) {
             for (String pathEntry : path.split(File.pathSeparator)) {
@@ -156,6 +285,192 @@ public abstract class BaseAppSettings {
         return forceDBInitialize;
     }
 
+    /**
+     * Returns parameter value "Maximum number of grains upgraded at the same time".
+     *
+     * @return
+     */
+    public int getDBUpdateParallelism() {
+        return dbUpdateParallelism;
+    }
+
+    /**
+     * Returns parameter value "Create indices and foreign keys online".
+     *
+     * @return
+     */
+    public boolean isDBUpdateOnline() {
+        return dbUpdateOnline;
+    }
+
+    /**
+     * Returns parameter value "Interval in milliseconds between applications of changes queued
+     * for deferred materialized views", {@code 0} if the changes are not applied in background.
+     *
+     * @return
+     */
+    public int getMViewDeferredInterval() {
+        return mviewDeferredInterval;
+    }
+
+    /**
+     * Returns parameter value "Maximum number of groups of a deferred materialized view
+     * recomputed in one transaction".
+     *
+     * @return
+     */
+    public int getMViewDeferredBatch() {
+        return mviewDeferredBatch;
+    }
+
+    /**
+     * Returns parameter value "Number of rows of a table per chunk a materialized view is built in",
+     * {@code 0} if materialized views are built by a single statement.
+     *
+     * @return
+     */
+    public int getMViewBuildChunk() {
+        return mviewBuildChunk;
+    }
+
+    /**
+     * Returns parameter value "Maximum number of chunks of a materialized view built at the same time".
+     *
+     * @return
+     */
+    public int getMViewBuildParallelism() {
+        return mviewBuildParallelism;
+    }
+
+    /**
+     * Returns parameter value "Tables cached in memory" in addition to the ones
+     * declared {@code WITH CACHE}, in the form {@code grain.table}.
+     *
+     * @return
+     */
+    public List<String> getCacheTables() {
+        return cacheTables;
+    }
+
+    /**
+     * Returns parameter value "Time in milliseconds a snapshot of a cached table is used for",
+     * {@code 0} if snapshots are only invalidated by writes.
+     *
+     * @return
+     */
+    public int getCacheRefresh() {
+        return cacheRefresh;
+    }
+
+    /**
+     * Returns parameter value "Tables whose rows read by primary key are cached",
+     * in the form {@code grain.table}, all the tables if empty.
+     *
+     * @return
+     */
+    public List<String> getRowCacheTables() {
+        return rowCacheTables;
+    }
+
+    /**
+     * Returns parameter value "Maximum number of rows in the row cache",
+     * {@code 0} if the row cache is disabled.
+     *
+     * @return
+     */
+    public int getRowCacheSize() {
+        return rowCacheSize;
+    }
+
+    /**
+     * Returns parameter value "Time in milliseconds a row of the row cache is used for",
+     * {@code 0} if rows are only removed by writes and eviction.
+     *
+     * @return
+     */
+    public int getRowCacheTtl() {
+        return rowCacheTtl;
+    }
+
+    /**
+     * Returns parameter value "Functions whose results are cached" in addition to the ones
+     * declared {@code WITH CACHE}, in the form {@code grain.function}.
+     *
+     * @return
+     */
+    public List<String> getViewCacheViews() {
+        return viewCacheViews;
+    }
+
+    /**
+     * Returns parameter value "Maximum number of cached results of functions",
+     * {@code 0} if the function result cache is disabled.
+     *
+     * @return
+     */
+    public int getViewCacheSize() {
+        return viewCacheSize;
+    }
+
+    /**
+     * Returns parameter value "Maximum number of rows of a cached result of a function".
+     *
+     * @return
+     */
+    public int getViewCacheRows() {
+        return viewCacheRows;
+    }
+
+    /**
+     * Returns parameter value "Time in milliseconds a cached result of a function is used for",
+     * {@code 0} if results are only removed by writes and eviction.
+     *
+     * @return
+     */
+    public int getViewCacheTtl() {
+        return viewCacheTtl;
+    }
+
+    /**
+     * Returns parameter value "Transport of the cache invalidation bus": {@code local},
+     * {@code table}, {@code postgres} or a name of a class implementing
+     * {@link ru.curs.celesta.event.InvalidationBus}.
+     *
+     * @return
+     */
+    public String getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    /**
+     * Returns parameter value "Interval in milliseconds between checks for changes made
+     * on other nodes" of the cache invalidation bus.
+     *
+     * @return
+     */
+    public int getInvalidationInterval() {
+        return invalidationInterval;
+    }
+
+    /**
+     * Returns parameter value "Grains and tables mirrored into the in-process H2 read replica".
+     *
+     * @return
+     */
+    public List<String> getReplicaTables() {
+        return replicaTables;
+    }
+
+    /**
+     * Returns parameter value "Interval in milliseconds between reloads of the read replica tables",
+     * {@code 0} if the tables are only reloaded when they change.
+     *
+     * @return
+     */
+    public int getReplicaRefresh() {
+        return replicaRefresh;
+    }
+
     /**
      * Returns parameter value "logging of log-ins and log-outs of users".
      *
@@ -4,14 +4,21 @@ import ru.curs.celesta.dbutils.BasicDataAccessor;
 import ru.curs.celesta.dbutils.ILoggingManager;
 import ru.curs.celesta.dbutils.IPermissionManager;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.diagnostics.CelestaEvents;
+import ru.curs.celesta.diagnostics.FlightRecorderEvent;
+import ru.curs.celesta.event.InvalidationBus;
+import ru.curs.celesta.score.BasicTable;
 import ru.curs.celesta.score.Score;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 /**
@@ -30,6 +37,11 @@ public class CallContext implements ICallContext {
      */
     public static final int MAX_DATA_ACCESSORS = 1023;
 
+    /**
+     * Maximal number of data set counts remembered within a transaction.
+     */
+    private static final int MAX_COUNTS = 1000;
+
     private static final Map<Connection, Integer> PIDSCACHE = Collections
             .synchronizedMap(new WeakHashMap<>());
 
@@ -49,6 +61,10 @@ public class CallContext implements ICallContext {
     private int dataAccessorsCount;
     private State state;
 
+    private final Set<String> modifiedTopics = new HashSet<>();
+    // exact numbers of rows of filtered data sets counted in the current transaction
+    private final Map<Object, Integer> counts = new HashMap<>();
+
     /**
      * Creates new not activated context.
      *
@@ -92,6 +108,7 @@ public class CallContext implements ICallContext {
         if (state != State.NEW) {
             throw new CelestaException("Cannot activate CallContext in %s state (NEW expected).", state);
         }
+        FlightRecorderEvent event = CelestaEvents.CALL_CONTEXT.begin();
         this.celesta = celesta;
         this.procName = procName;
         this.state = State.ACTIVE;
@@ -100,6 +117,7 @@ public class CallContext implements ICallContext {
                 getDbAdaptor()::getDBPid);
         startTime = new Date();
         activationTime = System.nanoTime();
+        commitEvent(event, "activate");
     }
 
     /**
@@ -127,8 +145,13 @@ public class CallContext implements ICallContext {
      */
     public void commit() {
         if (state == State.ACTIVE) {
+            FlightRecorderEvent event = CelestaEvents.CALL_CONTEXT.begin();
             try {
                 conn.commit();
+                counts.clear();
+                releaseCachedTables();
+                publishModifiedTopics();
+                commitEvent(event, "commit");
             } catch (SQLException e) {
                 throw new CelestaException(
                         String.format("Commit unsuccessful: %s", e.getMessage()), e);
@@ -145,8 +168,13 @@ public class CallContext implements ICallContext {
      */
     public void rollback() {
         if (conn != null) {
+            FlightRecorderEvent event = CelestaEvents.CALL_CONTEXT.begin();
             try {
                 conn.rollback();
+                modifiedTopics.clear();
+                counts.clear();
+                releaseCachedTables();
+                commitEvent(event, "rollback");
             } catch (SQLException e) {
                 throw new CelestaException(
                         String.format("Rollback unsuccessful: %s", e.getMessage()), e);
@@ -154,6 +182,88 @@ public class CallContext implements ICallContext {
         }
     }
 
+    /**
+     * Registers a modification of a table, so that the caches of all the Celesta nodes
+     * are notified of it by the invalidation bus when the transaction commits.
+     * The remembered counts of data sets are forgotten.
+     *
+     * @param table  modified table
+     */
+    public void tableModified(BasicTable table) {
+        counts.clear();
+        InvalidationBus bus = celesta == null ? null : celesta.getInvalidationBus();
+        if (bus != null) {
+            String topic = InvalidationBus.topic(table);
+            if (!InvalidationBus.INVALIDATIONS_TOPIC.equals(topic) && bus.isSubscribed(topic)) {
+                modifiedTopics.add(topic);
+            }
+        }
+    }
+
+    /**
+     * Whether a table is modified in the current transaction. Only the tables having
+     * listeners on the invalidation bus are tracked.
+     *
+     * @param table  table
+     * @return
+     */
+    public boolean isTableModified(BasicTable table) {
+        return !modifiedTopics.isEmpty() && modifiedTopics.contains(InvalidationBus.topic(table));
+    }
+
+    /**
+     * Returns the number of rows of a filtered data set counted in the current transaction.
+     * The counts are forgotten when a table is modified through a cursor of the context
+     * and when the transaction ends.
+     *
+     * @param signature  the data set and the values of its filter
+     * @return  {@code null} if the data set wasn't counted
+     */
+    public Integer getCount(Object signature) {
+        return counts.isEmpty() ? null : counts.get(signature);
+    }
+
+    /**
+     * Remembers the number of rows of a filtered data set counted in the current transaction.
+     *
+     * @param signature  the data set and the values of its filter
+     * @param count  number of rows
+     */
+    public void putCount(Object signature, int count) {
+        if (counts.size() >= MAX_COUNTS) {
+            counts.clear();
+        }
+        counts.put(signature, count);
+    }
+
+    /**
+     * Forgets the counted numbers of rows of data sets, when data is changed bypassing
+     * the modification methods of the cursors.
+     */
+    public void forgetCounts() {
+        counts.clear();
+    }
+
+    private void publishModifiedTopics() {
+        if (!modifiedTopics.isEmpty()) {
+            Set<String> topics = new HashSet<>(modifiedTopics);
+            modifiedTopics.clear();
+            celesta.getInvalidationBus().publish(topics);
+        }
+    }
+
+    private void releaseCachedTables() {
+        if (celesta != null && celesta.getTableCache() != null) {
+            celesta.getTableCache().release(this);
+        }
+        if (celesta != null && celesta.getRowCache() != null) {
+            celesta.getRowCache().release(this);
+        }
+        if (celesta != null && celesta.getParameterizedViewCache() != null) {
+            celesta.getParameterizedViewCache().release(this);
+        }
+    }
+
     /**
      * Returns Celesta instance.
      *
@@ -302,16 +412,24 @@ public class CallContext implements ICallContext {
 
     @Override
     public final void close() {
+        FlightRecorderEvent event = CelestaEvents.CALL_CONTEXT.begin();
         try {
             closeDataAccessors();
+            releaseCachedTables();
             if (conn != null) {
                 conn.close();
             }
+            if (celesta != null && celesta.getReadReplica() != null) {
+                celesta.getReadReplica().release(this);
+            }
+            // the connection pool may commit the transaction of a closed connection
+            publishModifiedTopics();
             if (celesta != null) {
                 celesta.getProfiler().logCall(this);
             }
             closingTime = System.nanoTime();
             state = State.CLOSED;
+            commitEvent(event, "close");
         } catch (Exception e) {
             throw new CelestaException("Can't close callContext", e);
         }
@@ -328,4 +446,14 @@ public class CallContext implements ICallContext {
         return cc;
     }
 
+    private void commitEvent(FlightRecorderEvent event, String action) {
+        if (event.isActive()) {
+            event.set("action", action)
+                    .set("procName", procName)
+                    .set("userId", userId)
+                    .set("dbPid", dbPid)
+                    .commit();
+        }
+    }
+
 }
@@ -3,7 +3,12 @@ package ru.curs.celesta;
 import ru.curs.celesta.dbutils.ILoggingManager;
 import ru.curs.celesta.dbutils.IPermissionManager;
 import ru.curs.celesta.dbutils.IProfiler;
+import ru.curs.celesta.dbutils.ParameterizedViewCache;
+import ru.curs.celesta.dbutils.ReadReplica;
+import ru.curs.celesta.dbutils.RowCache;
+import ru.curs.celesta.dbutils.TableCache;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.event.InvalidationBus;
 import ru.curs.celesta.event.TriggerDispatcher;
 import ru.curs.celesta.score.Score;
 
@@ -69,4 +74,49 @@ public interface ICelesta extends AutoCloseable {
      */
     DBAdaptor getDBAdaptor();
 
+    /**
+     * Returns a {@link TableCache} of this celesta instance.
+     *
+     * @return a table cache of this celesta instance, or {@code null} if it is not supported.
+     */
+    default TableCache getTableCache() {
+        return null;
+    }
+
+    /**
+     * Returns a {@link RowCache} of this celesta instance.
+     *
+     * @return a row cache of this celesta instance, or {@code null} if it is not supported.
+     */
+    default RowCache getRowCache() {
+        return null;
+    }
+
+    /**
+     * Returns a {@link ParameterizedViewCache} of this celesta instance.
+     *
+     * @return a function result cache of this celesta instance, or {@code null} if it is not supported.
+     */
+    default ParameterizedViewCache getParameterizedViewCache() {
+        return null;
+    }
+
+    /**
+     * Returns an {@link InvalidationBus} of this celesta instance.
+     *
+     * @return an invalidation bus of this celesta instance, or {@code null} if it is not supported.
+     */
+    default InvalidationBus getInvalidationBus() {
+        return null;
+    }
+
+    /**
+     * Returns a {@link ReadReplica} of this celesta instance.
+     *
+     * @return a read replica of this celesta instance, or {@code null} if it is not supported.
+     */
+    default ReadReplica getReadReplica() {
+        return null;
+    }
+
 }
@@ -40,4 +40,14 @@ public class SystemCallContext extends CallContext {
         this();
         activate(celesta, IProfiler.NO_LOG);
     }
+
+    /**
+     * Duplicates system call context with another JDBC connection.
+     *
+     * @return
+     */
+    @Override
+    public CallContext getCopy() {
+        return new SystemCallContext(getCelesta(), getProcName());
+    }
 }
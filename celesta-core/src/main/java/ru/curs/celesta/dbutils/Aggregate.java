@@ -0,0 +1,137 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.score.BinaryColumn;
+import ru.curs.celesta.score.ColumnMeta;
+
+/**
+ * Aggregate function over a cursor column, to be used with {@link AggregateQuery}.
+ *
+ * @param <V>  Java class of the aggregate value
+ */
+public final class Aggregate<V> {
+
+    /**
+     * SQL aggregate function.
+     */
+    enum Function {
+        COUNT, SUM, MIN, MAX, AVG
+    }
+
+    private final Function function;
+    private final ColumnMeta<?> column;
+    private final Class<?> resultClass;
+
+    private Aggregate(Function function, ColumnMeta<?> column, Class<?> resultClass) {
+        if (column != null && BinaryColumn.CELESTA_TYPE.equals(column.getCelestaType())) {
+            throw new CelestaException("Aggregate %s cannot be applied to BLOB column %s.",
+                    function, column.getName());
+        }
+        this.function = function;
+        this.column = column;
+        this.resultClass = resultClass;
+    }
+
+    /**
+     * Number of records, {@code count(*)}.
+     *
+     * @return
+     */
+    public static Aggregate<Long> count() {
+        return new Aggregate<>(Function.COUNT, null, Long.class);
+    }
+
+    /**
+     * Number of records having non-null value in the column.
+     *
+     * @param column  column
+     * @return
+     */
+    public static Aggregate<Long> count(ColumnMeta<?> column) {
+        return new Aggregate<>(Function.COUNT, column, Long.class);
+    }
+
+    /**
+     * Sum of the column values. The value is {@link Long} for INT columns,
+     * {@link Double} for REAL columns and {@link java.math.BigDecimal} for DECIMAL columns.
+     *
+     * @param column  numeric column
+     * @return
+     */
+    public static Aggregate<Number> sum(ColumnMeta<? extends Number> column) {
+        final Class<?> resultClass;
+        if (Integer.class.equals(column.getJavaClass())) {
+            resultClass = Long.class;
+        } else {
+            resultClass = column.getJavaClass();
+        }
+        return new Aggregate<>(Function.SUM, column, resultClass);
+    }
+
+    /**
+     * Minimal value of the column.
+     *
+     * @param column  column
+     * @param <V>  Java class of the column value
+     * @return
+     */
+    public static <V> Aggregate<V> min(ColumnMeta<V> column) {
+        return new Aggregate<>(Function.MIN, column, column.getJavaClass());
+    }
+
+    /**
+     * Maximal value of the column.
+     *
+     * @param column  column
+     * @param <V>  Java class of the column value
+     * @return
+     */
+    public static <V> Aggregate<V> max(ColumnMeta<V> column) {
+        return new Aggregate<>(Function.MAX, column, column.getJavaClass());
+    }
+
+    /**
+     * Average of the column values.
+     *
+     * @param column  numeric column
+     * @return
+     */
+    public static Aggregate<Double> avg(ColumnMeta<? extends Number> column) {
+        return new Aggregate<>(Function.AVG, column, Double.class);
+    }
+
+    /**
+     * Column the function is applied to.
+     *
+     * @return  {@code null} for {@code count(*)}
+     */
+    public ColumnMeta<?> getColumn() {
+        return column;
+    }
+
+    Function getFunction() {
+        return function;
+    }
+
+    Class<?> getResultClass() {
+        return resultClass;
+    }
+
+    String getExpression() {
+        if (column == null) {
+            return "count(*)";
+        }
+        String quoted = "\"" + column.getName() + "\"";
+        if (function == Function.AVG) {
+            // prevents integer division of averages on INT columns
+            quoted = "1.0 * " + quoted;
+        }
+        return function.name().toLowerCase() + "(" + quoted + ")";
+    }
+
+    @Override
+    public String toString() {
+        return getExpression();
+    }
+
+}
@@ -0,0 +1,195 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.PermissionDeniedException;
+import ru.curs.celesta.dbutils.query.FromClause;
+import ru.curs.celesta.dbutils.stmt.ParameterSetter;
+import ru.curs.celesta.dbutils.stmt.PreparedStmtHolder;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import ru.curs.celesta.dbutils.stmt.StatementTimer;
+import ru.curs.celesta.dbutils.term.FromTerm;
+import ru.curs.celesta.dbutils.term.WhereTerm;
+import ru.curs.celesta.score.ColumnMeta;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregate query over the filtered data set of a cursor, executed as a single
+ * {@code SELECT ... GROUP BY} statement on the database side.
+ * <p>
+ * All the cursor's filters (ranges, complex filter, {@code setIn}) are applied,
+ * while sorting and limits of the cursor are ignored. The result rows are ordered
+ * by the group-by columns.
+ * <pre>
+ * Aggregate&lt;Number&gt; total = Aggregate.sum(c.COLUMNS.cost());
+ * for (AggregateRow row : c.aggregate().groupBy(c.COLUMNS.title()).select(total)) {
+ *     System.out.println(row.get(c.COLUMNS.title()) + ": " + row.get(total));
+ * }
+ * </pre>
+ */
+public final class AggregateQuery implements Iterable<AggregateRow> {
+
+    private final BasicCursor cursor;
+    private List<ColumnMeta<?>> groupBy = Collections.emptyList();
+    private List<Aggregate<?>> aggregates = Collections.emptyList();
+
+    AggregateQuery(BasicCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Sets group-by columns.
+     *
+     * @param columns  columns of the cursor
+     * @return  {@code this}
+     */
+    public AggregateQuery groupBy(ColumnMeta<?>... columns) {
+        for (ColumnMeta<?> column : columns) {
+            cursor.validateColumnName(column.getName());
+        }
+        this.groupBy = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(columns)));
+        return this;
+    }
+
+    /**
+     * Sets aggregates to compute.
+     *
+     * @param functions  aggregate functions over columns of the cursor
+     * @return  {@code this}
+     */
+    public AggregateQuery select(Aggregate<?>... functions) {
+        for (Aggregate<?> aggregate : functions) {
+            if (aggregate.getColumn() != null) {
+                cursor.validateColumnName(aggregate.getColumn().getName());
+            }
+        }
+        this.aggregates = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(functions)));
+        return this;
+    }
+
+    /**
+     * Executes the query and returns all the result rows.
+     *
+     * @return
+     */
+    public List<AggregateRow> list() {
+        if (groupBy.isEmpty() && aggregates.isEmpty()) {
+            throw new CelestaException("Aggregate query over %s selects nothing.", cursor._objectName());
+        }
+        if (!cursor.canRead()) {
+            throw new PermissionDeniedException(cursor.callContext(), cursor.meta(), Action.READ);
+        }
+
+        PreparedStmtHolder holder = new PreparedStmtHolder() {
+            @Override
+            protected PreparedStatement initStatement(List<ParameterSetter> program) {
+                FromClause from = cursor.getFrom();
+                FromTerm fromTerm = new FromTerm(from.getParameters());
+                WhereTerm where = cursor.getQmaker().getWhereTerm();
+                fromTerm.programParams(program, cursor.db());
+                where.programParams(program, cursor.db());
+                return cursor.db().getAggregateStatement(
+                        cursor.conn(), from, where.getWhere(), getSelectList(), getGroupByList());
+            }
+        };
+
+        try {
+            StatementTimer timer = cursor.startTimer(StatementKind.AGGREGATE);
+            PreparedStatement stmt = timer.prepare(holder, cursor._currentValues(), 0);
+            List<AggregateRow> result = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                timer.executed();
+                while (rs.next()) {
+                    result.add(parseRow(rs));
+                }
+                timer.fetched(result.size());
+            }
+            timer.finish();
+            return result;
+        } catch (SQLException e) {
+            throw new CelestaException(e.getMessage());
+        } finally {
+            holder.close();
+        }
+    }
+
+    /**
+     * Executes the query and returns an iterator over the result rows.
+     *
+     * @return
+     */
+    @Override
+    public Iterator<AggregateRow> iterator() {
+        return list().iterator();
+    }
+
+    private String getGroupByList() {
+        return groupBy.stream()
+                .map(c -> "\"" + c.getName() + "\"")
+                .collect(Collectors.joining(", "));
+    }
+
+    private String getSelectList() {
+        String aggregateList = aggregates.stream()
+                .map(Aggregate::getExpression)
+                .collect(Collectors.joining(", "));
+        if (groupBy.isEmpty()) {
+            return aggregateList;
+        } else if (aggregates.isEmpty()) {
+            return getGroupByList();
+        }
+        return getGroupByList() + ", " + aggregateList;
+    }
+
+    private AggregateRow parseRow(ResultSet rs) throws SQLException {
+        Object[] values = new Object[groupBy.size() + aggregates.size()];
+        int i = 0;
+        for (ColumnMeta<?> column : groupBy) {
+            values[i] = readValue(rs, i + 1, column.getJavaClass());
+            i++;
+        }
+        for (Aggregate<?> aggregate : aggregates) {
+            values[i] = readValue(rs, i + 1, aggregate.getResultClass());
+            i++;
+        }
+        return new AggregateRow(groupBy, aggregates, values);
+    }
+
+    // CHECKSTYLE:OFF for cyclomatic complexity
+    private static Object readValue(ResultSet rs, int i, Class<?> valueClass) throws SQLException {
+        // CHECKSTYLE:ON
+        final Object value;
+        if (Integer.class.equals(valueClass)) {
+            value = rs.getInt(i);
+        } else if (Long.class.equals(valueClass)) {
+            value = rs.getLong(i);
+        } else if (Double.class.equals(valueClass)) {
+            value = rs.getDouble(i);
+        } else if (Boolean.class.equals(valueClass)) {
+            value = rs.getBoolean(i);
+        } else if (BigDecimal.class.equals(valueClass)) {
+            value = rs.getBigDecimal(i);
+        } else if (Date.class.equals(valueClass)) {
+            value = rs.getTimestamp(i);
+        } else if (ZonedDateTime.class.equals(valueClass)) {
+            value = CursorExporter.zonedDateTime(rs, i);
+        } else if (String.class.equals(valueClass)) {
+            value = rs.getString(i);
+        } else {
+            value = rs.getObject(i);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+}
@@ -0,0 +1,70 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.score.ColumnMeta;
+
+import java.util.List;
+
+/**
+ * A row of {@link AggregateQuery} result: values of group-by columns and of aggregates.
+ */
+public final class AggregateRow {
+
+    private final List<ColumnMeta<?>> groupBy;
+    private final List<Aggregate<?>> aggregates;
+    private final Object[] values;
+
+    AggregateRow(List<ColumnMeta<?>> groupBy, List<Aggregate<?>> aggregates, Object[] values) {
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
+        this.values = values;
+    }
+
+    /**
+     * Returns value of a group-by column.
+     *
+     * @param column  group-by column
+     * @param <V>  Java class of the column value
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(ColumnMeta<V> column) {
+        for (int i = 0; i < groupBy.size(); i++) {
+            if (groupBy.get(i).getName().equals(column.getName())) {
+                return (V) values[i];
+            }
+        }
+        throw new CelestaException("Column %s is not a group-by column of the aggregate query.",
+                column.getName());
+    }
+
+    /**
+     * Returns value of an aggregate.
+     *
+     * @param aggregate  aggregate passed to {@link AggregateQuery#select(Aggregate[])}
+     * @param <V>  Java class of the aggregate value
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(Aggregate<V> aggregate) {
+        for (int i = 0; i < aggregates.size(); i++) {
+            if (aggregates.get(i) == aggregate) {
+                return (V) values[groupBy.size() + i];
+            }
+        }
+        throw new CelestaException("Aggregate %s is not selected by the aggregate query.", aggregate);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Object value : values) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+}
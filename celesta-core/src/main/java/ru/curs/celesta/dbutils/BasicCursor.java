@@ -40,6 +40,7 @@ import org.slf4j.LoggerFactory;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.PermissionDeniedException;
+import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.dbutils.filter.AbstractFilter;
 import ru.curs.celesta.dbutils.filter.Filter;
 import ru.curs.celesta.dbutils.filter.In;
@@ -50,6 +51,9 @@ import ru.curs.celesta.dbutils.stmt.MaskedStatementHolder;
 import ru.curs.celesta.dbutils.stmt.ParameterSetter;
 import ru.curs.celesta.dbutils.stmt.PreparedStatementHolderFactory;
 import ru.curs.celesta.dbutils.stmt.PreparedStmtHolder;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import ru.curs.celesta.dbutils.stmt.StatementTimer;
+import ru.curs.celesta.dbutils.term.AlwaysTrue;
 import ru.curs.celesta.dbutils.term.FromTerm;
 import ru.curs.celesta.dbutils.term.WhereMakerParamsProvider;
 import ru.curs.celesta.dbutils.term.WhereTerm;
@@ -59,7 +63,9 @@ import ru.curs.celesta.score.ColumnMeta;
 import ru.curs.celesta.score.DataGrainElement;
 import ru.curs.celesta.score.Expr;
 import ru.curs.celesta.score.ParseException;
+import ru.curs.celesta.score.TableElement;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -71,8 +77,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -255,7 +263,18 @@ public abstract class BasicCursor extends BasicDataAccessor {
     private long offset = 0;
     private long navigationOffset = 0;
     private long rowCount = 0;
+    // measures the open record set until it is exhausted or closed
+    private StatementTimer setTimer;
     private Expr complexFilter;
+    // rows of the record set read from a snapshot of the cached table
+    private TableSnapshot setSnapshot;
+    private int[] snapshotRows;
+    private int snapshotPosition;
+    // the cursor loads a snapshot of the cached table
+    private boolean snapshotLoader;
+    // the read replica the cursor works with, chosen by the superclass constructor,
+    // hence no initializer
+    private ReadReplica replica;
 
     private final WhereTermsMaker qmaker = new WhereTermsMaker(new WhereMakerParamsProvider() {
 
@@ -326,6 +345,26 @@ public abstract class BasicCursor extends BasicDataAccessor {
         fillFieldsForStatement();
     }
 
+    /**
+     * Cursors of the elements served by the read replica in the call context work with the replica.
+     */
+    @Override
+    protected final Connection chooseConnection() {
+        replica = null;
+        if (callContext().getCelesta() != null) {
+            ReadReplica r = callContext().getCelesta().getReadReplica();
+            if (r != null && r.serves(callContext(), meta())) {
+                replica = r;
+            }
+        }
+        return replica == null ? super.chooseConnection() : replica.connection(callContext());
+    }
+
+    @Override
+    protected final DBAdaptor chooseDbAdaptor() {
+        return replica == null ? super.chooseDbAdaptor() : replica.getDbAdaptor();
+    }
+
     static BasicCursor create(DataGrainElement element, CallContext callContext) {
         try {
             return getCursorClass(element).getConstructor(CallContext.class).newInstance(callContext);
@@ -385,6 +424,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
     @Override
     protected void closeInternal() {
         super.closeInternal();
+        finishSetTimer();
         closeStatements(set, forwards, backwards, here, first, last, count, position);
     }
 
@@ -405,8 +445,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
         if (isClosed()) {
             throw new CelestaException(DATA_ACCESSOR_IS_CLOSED);
         }
-        IPermissionManager permissionManager = callContext().getPermissionManager();
-        return permissionManager.isActionAllowed(callContext(), meta(), Action.INSERT);
+        return isActionAllowed(Action.INSERT);
     }
 
     /**
@@ -418,8 +457,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
         if (isClosed()) {
             throw new CelestaException(DATA_ACCESSOR_IS_CLOSED);
         }
-        IPermissionManager permissionManager = callContext().getPermissionManager();
-        return permissionManager.isActionAllowed(callContext(), meta(), Action.MODIFY);
+        return isActionAllowed(Action.MODIFY);
     }
 
     /**
@@ -431,8 +469,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
         if (isClosed()) {
             throw new CelestaException(DATA_ACCESSOR_IS_CLOSED);
         }
-        IPermissionManager permissionManager = callContext().getPermissionManager();
-        return permissionManager.isActionAllowed(callContext(), meta(), Action.DELETE);
+        return isActionAllowed(Action.DELETE);
     }
 
     private void closeStmt(PreparedStatement stmt) {
@@ -444,7 +481,10 @@ public abstract class BasicCursor extends BasicDataAccessor {
     }
 
     protected final void closeSet() {
+        finishSetTimer();
         cursor = null;
+        setSnapshot = null;
+        snapshotRows = null;
         set.close();
         forwards.close();
         backwards.close();
@@ -516,6 +556,13 @@ public abstract class BasicCursor extends BasicDataAccessor {
         return descOrders;
     }
 
+    /**
+     * Called before the data set is queried.
+     */
+    void beforeRead() {
+        // nothing by default
+    }
+
     /**
      * Moves to the first record in the filtered data set and returns information
      * about the success of transition.
@@ -527,24 +574,71 @@ public abstract class BasicCursor extends BasicDataAccessor {
         if (!canRead()) {
             throw new PermissionDeniedException(callContext(), meta(), Action.READ);
         }
+        beforeRead();
 
-        PreparedStatement ps = set.getStatement(_currentValues(), 0);
+        finishSetTimer();
+        setSnapshot = null;
+        snapshotRows = null;
+        TableSnapshot snapshot = filteredSnapshot();
+        if (snapshot != null) {
+            return findSetInSnapshot(snapshot);
+        }
+        StatementTimer timer = startTimer(StatementKind.FIND_SET);
+        PreparedStatement ps = timer.prepare(set, _currentValues(), 0);
         boolean result;
         try {
             if (cursor != null) {
                 cursor.close();
             }
             cursor = ps.executeQuery();
+            timer.executed();
             result = cursor.next();
             if (result) {
                 _parseResult(cursor);
             }
+            timer.fetched(result ? 1 : 0);
         } catch (SQLException e) {
             throw new CelestaException(e.getMessage());
         }
+        if (result) {
+            setTimer = timer;
+        } else {
+            timer.finish();
+        }
         return result;
     }
 
+    /**
+     * Executes the query of the filtered and sorted data set without parsing any record
+     * into the cursor buffer. The currently open record set (if any) is closed.
+     * The caller is responsible for closing the returned {@link ResultSet}.
+     *
+     * @param fetchSize JDBC fetch size hint, 0 to keep the driver's default
+     */
+    final ResultSet openSet(int fetchSize) {
+        if (!canRead()) {
+            throw new PermissionDeniedException(callContext(), meta(), Action.READ);
+        }
+        beforeRead();
+
+        finishSetTimer();
+        StatementTimer timer = startTimer(StatementKind.FIND_SET);
+        PreparedStatement ps = timer.prepare(set, _currentValues(), 0);
+        try {
+            if (cursor != null) {
+                cursor.close();
+                cursor = null;
+            }
+            ps.setFetchSize(fetchSize);
+            ResultSet result = ps.executeQuery();
+            timer.executed();
+            timer.finish();
+            return result;
+        } catch (SQLException e) {
+            throw new CelestaException(e.getMessage());
+        }
+    }
+
     /**
      * The same as navigate("-").
      *
@@ -674,16 +768,28 @@ public abstract class BasicCursor extends BasicDataAccessor {
      * @return
      */
     public final boolean nextInSet() {
+        if (snapshotRows != null) {
+            return nextInSnapshot();
+        }
         boolean result;
         try {
             if (cursor == null) {
+                // tryFindSet() has already parsed the first record
                 result = tryFindSet();
             } else {
+                if (setTimer != null) {
+                    setTimer.resume();
+                }
                 result = cursor.next();
+                if (result) {
+                    _parseResult(cursor);
+                }
+                if (setTimer != null) {
+                    setTimer.fetched(result ? 1 : 0);
+                }
             }
-            if (result) {
-                _parseResult(cursor);
-            } else {
+            if (!result) {
+                finishSetTimer();
                 cursor.close();
                 cursor = null;
             }
@@ -711,6 +817,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
         if (!canRead()) {
             throw new PermissionDeniedException(callContext(), meta(), Action.READ);
         }
+        beforeRead();
 
         Matcher m = NAVIGATION.matcher(command);
         if (!m.matches()) {
@@ -724,11 +831,10 @@ public abstract class BasicCursor extends BasicDataAccessor {
         }
 
         navigationOffset = 0;
+        TableSnapshot snapshot = filteredSnapshot();
         for (int i = 0; i < command.length(); i++) {
-            char c = command.charAt(i);
-            PreparedStatement navigator = chooseNavigator(c);
-
-            if (executeNavigator(navigator)) {
+            if (snapshot != null ? navigateInSnapshot(snapshot, command.charAt(i), 0)
+                    : executeNavigator(command.charAt(i))) {
                 return true;
             }
         }
@@ -762,42 +868,48 @@ public abstract class BasicCursor extends BasicDataAccessor {
             closeStatements(backwards, forwards);
         }
 
-        PreparedStatement navigator = chooseNavigator(command.charAt(0));
-        LOGGER.trace("{}", navigator);
-        return executeNavigator(navigator);
+        TableSnapshot snapshot = filteredSnapshot();
+        if (snapshot != null) {
+            return navigateInSnapshot(snapshot, command.charAt(0), offset);
+        }
+        return executeNavigator(command.charAt(0));
 
     }
 
-    private boolean executeNavigator(PreparedStatement navigator) {
+    private boolean executeNavigator(char c) {
+        StatementTimer timer = startTimer(StatementKind.NAVIGATE);
+        PreparedStatement navigator = timer.prepare(chooseNavigator(c), _currentValues(), 0);
+        boolean result;
         try {
             LOGGER.trace("{}", navigator);
             try (ResultSet rs = navigator.executeQuery()) {
-                if (rs.next()) {
+                timer.executed();
+                result = rs.next();
+                if (result) {
                     _parseResult(rs);
-                    return true;
                 }
+                timer.fetched(result ? 1 : 0);
             }
         } catch (SQLException e) {
             throw new CelestaException(
                     String.format(NAVIGATING_ERROR, e.getMessage()), e);
         }
-        return false;
+        timer.finish();
+        return result;
     }
 
-    private PreparedStatement chooseNavigator(char c) {
-        Object[] rec = _currentValues();
-
+    private PreparedStmtHolder chooseNavigator(char c) {
         switch (c) {
             case '<':
-                return backwards.getStatement(rec, 0);
+                return backwards;
             case '>':
-                return forwards.getStatement(rec, 0);
+                return forwards;
             case '=':
-                return here.getStatement(rec, 0);
+                return here;
             case '-':
-                return first.getStatement(rec, 0);
+                return first;
             case '+':
-                return last.getStatement(rec, 0);
+                return last;
             default:
                 // THIS WILL NEVER EVER HAPPEN, WE'VE ALREADY CHECKED
                 return null;
@@ -809,6 +921,14 @@ public abstract class BasicCursor extends BasicDataAccessor {
         return qmaker;
     }
 
+    final boolean hasFilterOn(String columnName) {
+        return filters.containsKey(columnName);
+    }
+
+    final boolean isLimited() {
+        return offset != 0 || rowCount != 0;
+    }
+
     final ColumnMeta<?> validateColumnName(String name) {
         ColumnMeta<?> column = meta().getColumns().get(name);
         if (column == null) {
@@ -1147,17 +1267,141 @@ public abstract class BasicCursor extends BasicDataAccessor {
 
     /**
      * Returns number of records in the filtered data set.
+     * <p>
+     * The number is remembered by the call context for the filter until a table is modified
+     * through a cursor of the context or the transaction ends.
      *
      * @return
      */
     public final int count() {
-        PreparedStatement stmt = count.getStatement(_currentValues(), 0);
-        int result = count(stmt);
+        beforeRead();
+        TableSnapshot snapshot = filteredSnapshot();
+        if (snapshot != null) {
+            return snapshotSet(snapshot).length;
+        }
+        SetSignature signature = setSignature();
+        Integer counted = callContext().getCount(signature);
+        if (counted != null) {
+            return counted;
+        }
+        StatementTimer timer = startTimer(StatementKind.COUNT);
+        PreparedStatement stmt = timer.prepare(count, _currentValues(), 0);
+        int result = count(stmt, timer);
         // we are not holding this query: it's rarely used.
         count.close();
+        callContext().putCount(signature, result);
         return result;
     }
 
+    /**
+     * Returns an estimate of the number of records in the filtered data set, without counting
+     * them where possible. The estimate comes from the table statistics of the DB for a table
+     * without filters, and from the query planner otherwise. If the data set is cached or
+     * counted by {@link #count()} in the current transaction, or the DB doesn't estimate
+     * the number, it is the exact number of records.
+     *
+     * @return
+     */
+    public final long estimateCount() {
+        beforeRead();
+        TableSnapshot snapshot = filteredSnapshot();
+        if (snapshot != null) {
+            return snapshotSet(snapshot).length;
+        }
+        SetSignature signature = setSignature();
+        Integer counted = callContext().getCount(signature);
+        if (counted != null) {
+            return counted;
+        }
+        long estimate;
+        if (meta() instanceof TableElement && AlwaysTrue.TRUE.getWhere().equals(signature.where)) {
+            estimate = db().getTableRowsEstimate(conn(), (TableElement) meta());
+        } else {
+            estimate = db().getSetRowsEstimate(conn(), getFrom(), signature.where, signature.params);
+        }
+        return estimate < 0 ? count() : estimate;
+    }
+
+    /**
+     * Returns the signature of the filtered data set.
+     */
+    private SetSignature setSignature() {
+        FromClause from = getFrom();
+        if (fromTerm == null) {
+            fromTerm = new FromTerm(from.getParameters());
+        }
+        WhereTerm where = qmaker.getWhereTerm();
+        List<ParameterSetter> program = new ArrayList<>();
+        fromTerm.programParams(program, db());
+        where.programParams(program, db());
+        Object[] rec = _currentValues();
+        List<Object> params = new ArrayList<>(program.size());
+        for (ParameterSetter p : program) {
+            params.add(p.getValue(rec, 0));
+        }
+        return new SetSignature(meta(), conn(), where.getWhere(), params);
+    }
+
+    /**
+     * Signature of a filtered data set: the element, the connection it is read through,
+     * the WHERE clause and the values of the parameters.
+     */
+    private static final class SetSignature {
+        private final DataGrainElement element;
+        private final Connection conn;
+        private final String where;
+        private final List<Object> params;
+
+        SetSignature(DataGrainElement element, Connection conn, String where, List<Object> params) {
+            this.element = element;
+            this.conn = conn;
+            this.where = where;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SetSignature)) {
+                return false;
+            }
+            SetSignature other = (SetSignature) o;
+            return element == other.element && conn == other.conn && where.equals(other.where)
+                    && params.equals(other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(element), where, params);
+        }
+    }
+
+    /**
+     * Returns an aggregate query over the filtered data set that is computed
+     * on the database side.
+     *
+     * @return
+     * @see AggregateQuery
+     */
+    public final AggregateQuery aggregate() {
+        return new AggregateQuery(this);
+    }
+
+    /**
+     * Returns a publisher of the filtered and sorted data set, each row is published
+     * as a snapshot of field values (in the order of {@link #_currentValues()}).
+     * Rows are read on the executor, using a separate connection per subscription.
+     *
+     * @param executor  executor that reads rows and signals subscribers
+     * @return
+     * @see CursorPublisher
+     */
+    public final Flow.Publisher<Object[]> publisher(Executor executor) {
+        return new CursorPublisher<>(this, BasicCursor::_currentValues, executor);
+    }
+
     /**
      * Method that returns total count of rows that precede the current
      * one in the set. This method is intended for internal use by GridDriver.
@@ -1167,24 +1411,298 @@ public abstract class BasicCursor extends BasicDataAccessor {
      * @return
      */
     public final int position() {
-        PreparedStatement stmt = position.getStatement(_currentValues(), 0);
+        TableSnapshot snapshot = filteredSnapshot();
+        if (snapshot != null) {
+            return lowerBound(snapshot, snapshotSet(snapshot), _currentValues());
+        }
+        StatementTimer timer = startTimer(StatementKind.POSITION);
+        PreparedStatement stmt = timer.prepare(position, _currentValues(), 0);
         LOGGER.trace("{}", stmt);
-        return count(stmt);
+        return count(stmt, timer);
     }
 
-    private int count(PreparedStatement stmt) {
+    private int count(PreparedStatement stmt, StatementTimer timer) {
         int result;
         try (ResultSet rs = stmt.executeQuery()) {
+            timer.executed();
             rs.next();
             result = rs.getInt(1);
+            timer.fetched(1);
         } catch (SQLException e) {
             throw new CelestaException(e.getMessage());
         } finally {
             closeStmt(stmt);
         }
+        timer.finish();
         return result;
     }
 
+    /**
+     * Returns an actual snapshot of the cached data, {@code null} if the data
+     * is not cached or the data set should be read from the database.
+     */
+    final TableSnapshot snapshot() {
+        return snapshotLoader ? null : cachedSnapshot();
+    }
+
+    /**
+     * Returns an actual snapshot of the cached table, {@code null} if the table
+     * is not cached or is modified by the call context.
+     */
+    TableSnapshot cachedSnapshot() {
+        TableCache cache = callContext().getCelesta().getTableCache();
+        return cache == null ? null : cache.get(this);
+    }
+
+    /**
+     * Returns {@link #snapshot()} if the filters and the sorting of the cursor can be applied in memory.
+     */
+    private TableSnapshot filteredSnapshot() {
+        if (complexFilter != null || getIn() != null) {
+            return null;
+        }
+        for (AbstractFilter f : filters.values()) {
+            if (!(f instanceof SingleValue || f instanceof Range)) {
+                return null;
+            }
+        }
+        TableSnapshot snapshot = snapshot();
+        if (snapshot == null) {
+            return null;
+        }
+        if (orderByNames == null) {
+            orderBy();
+        }
+        int[] filterIndices = filters.keySet().stream().mapToInt(meta()::getColumnIndex).toArray();
+        return snapshot.isComparable(orderByIndices) && snapshot.isComparable(filterIndices) ? snapshot : null;
+    }
+
+    /**
+     * Loads a snapshot of the cached data.
+     *
+     * @param version  version of the data
+     * @param maxRows  maximum number of rows, {@code 0} if not limited
+     * @return {@code null} if there are more rows than the maximum
+     */
+    final TableSnapshot loadSnapshot(long version, int maxRows) {
+        BasicCursor loader = _getBufferCopy(callContext(), null);
+        try {
+            loader.snapshotLoader = true;
+            if (maxRows > 0) {
+                loader.limit(0, maxRows + 1);
+            }
+            List<Object[]> rows = new ArrayList<>();
+            List<Integer> recversions = new ArrayList<>();
+            if (loader.tryFindSet()) {
+                do {
+                    rows.add(loader._currentValues());
+                    recversions.add(loader.snapshotRecversion());
+                } while (loader.nextInSet());
+            }
+            if (maxRows > 0 && rows.size() > maxRows) {
+                LOGGER.debug("Snapshot of {}.{} is not loaded: more than {} rows.",
+                        _grainName(), _objectName(), maxRows);
+                return null;
+            }
+            LOGGER.debug("Snapshot of {}.{} loaded: {} rows.", _grainName(), _objectName(), rows.size());
+            return new TableSnapshot(meta(), rows,
+                    recversions.stream().mapToInt(Integer::intValue).toArray(), db().nullsFirst(),
+                    db().comparesStringsByCharacters(), version);
+        } finally {
+            loader.close();
+        }
+    }
+
+    /**
+     * Returns the version of the record in the buffer.
+     */
+    int snapshotRecversion() {
+        return 0;
+    }
+
+    /**
+     * Fills the buffer with a row of the snapshot.
+     *
+     * @param snapshot  snapshot
+     * @param row  row number
+     */
+    void parseSnapshotRow(TableSnapshot snapshot, int row) {
+        setFieldValues(snapshot.values(row));
+    }
+
+    /**
+     * Sets the fields of the buffer read by the cursor to the values of a row.
+     *
+     * @param values  values of the row, in the order of the columns of the table
+     */
+    final void setFieldValues(Object[] values) {
+        int i = 0;
+        for (String name : meta().getColumns().keySet()) {
+            if (inRec(name)) {
+                _setFieldValue(name, TableSnapshot.copy(values[i]));
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Returns the number of the row of the snapshot that corresponds to the current record
+     * in the filtered data set, {@code -1} if there is no such row.
+     *
+     * @param snapshot  snapshot
+     * @param rows  rows of the filtered and sorted data set
+     */
+    int snapshotHere(TableSnapshot snapshot, int[] rows) {
+        Object[] values = _currentValues();
+        int i = lowerBound(snapshot, rows, values);
+        return i < rows.length
+                && snapshot.compareTo(rows[i], values, orderByIndices, descOrders) == 0 ? rows[i] : -1;
+    }
+
+    /**
+     * Returns the rows of the filtered and sorted data set.
+     *
+     * @param snapshot  snapshot
+     */
+    private int[] snapshotSet(TableSnapshot snapshot) {
+        if (orderByNames == null) {
+            orderBy();
+        }
+        int[] order = snapshot.order(orderByIndices, descOrders);
+        if (filters.isEmpty()) {
+            return order;
+        }
+        return Arrays.stream(order).filter(row -> matchesFilters(snapshot, row)).toArray();
+    }
+
+    /**
+     * Whether a row of the snapshot passes the filters of the cursor.
+     *
+     * @param snapshot  snapshot
+     * @param row  row number
+     */
+    final boolean matchesFilters(TableSnapshot snapshot, int row) {
+        for (Entry<String, AbstractFilter> e : filters.entrySet()) {
+            Object value = snapshot.value(row, meta().getColumnIndex(e.getKey()));
+            AbstractFilter f = e.getValue();
+            if (f instanceof SingleValue) {
+                Object v = ((SingleValue) f).getValue();
+                if (value == null || v == null || TableSnapshot.compare(value, v) != 0) {
+                    return false;
+                }
+            } else {
+                Object from = ((Range) f).getValueFrom();
+                Object to = ((Range) f).getValueTo();
+                if (value == null || from == null || to == null
+                        || TableSnapshot.compare(value, from) < 0 || TableSnapshot.compare(value, to) > 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the position of the first row not preceding the values in the sorted rows.
+     */
+    private int lowerBound(TableSnapshot snapshot, int[] rows, Object[] values) {
+        return bound(snapshot, rows, values, 0);
+    }
+
+    /**
+     * Returns the position of the first row following the values in the sorted rows.
+     */
+    private int upperBound(TableSnapshot snapshot, int[] rows, Object[] values) {
+        return bound(snapshot, rows, values, 1);
+    }
+
+    private int bound(TableSnapshot snapshot, int[] rows, Object[] values, int threshold) {
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (snapshot.compareTo(rows[mid], values, orderByIndices, descOrders) < threshold) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private boolean findSetInSnapshot(TableSnapshot snapshot) {
+        if (cursor != null) {
+            try {
+                cursor.close();
+            } catch (SQLException e) {
+                throw new CelestaException(e.getMessage());
+            }
+            cursor = null;
+        }
+        int[] rows = snapshotSet(snapshot);
+        int from = (int) Math.min(offset, rows.length);
+        int to = rowCount == 0 ? rows.length : (int) Math.min(from + rowCount, rows.length);
+        if (from == to) {
+            return false;
+        }
+        setSnapshot = snapshot;
+        snapshotRows = Arrays.copyOfRange(rows, from, to);
+        snapshotPosition = 0;
+        parseSnapshotRow(snapshot, snapshotRows[0]);
+        return true;
+    }
+
+    private boolean nextInSnapshot() {
+        snapshotPosition++;
+        if (snapshotPosition < snapshotRows.length) {
+            parseSnapshotRow(setSnapshot, snapshotRows[snapshotPosition]);
+            return true;
+        }
+        setSnapshot = null;
+        snapshotRows = null;
+        return false;
+    }
+
+    private boolean navigateInSnapshot(TableSnapshot snapshot, char c, long offsetRows) {
+        int[] rows = snapshotSet(snapshot);
+        long i;
+        switch (c) {
+            case '<':
+                i = lowerBound(snapshot, rows, _currentValues()) - 1 - offsetRows;
+                break;
+            case '>':
+                i = upperBound(snapshot, rows, _currentValues()) + offsetRows;
+                break;
+            case '=':
+                int row = snapshotHere(snapshot, rows);
+                if (row >= 0) {
+                    parseSnapshotRow(snapshot, row);
+                }
+                return row >= 0;
+            case '-':
+                i = 0;
+                break;
+            case '+':
+                i = rows.length - 1;
+                break;
+            default:
+                // THIS WILL NEVER EVER HAPPEN, WE'VE ALREADY CHECKED
+                return false;
+        }
+        if (i < 0 || i >= rows.length) {
+            return false;
+        }
+        parseSnapshotRow(snapshot, rows[(int) i]);
+        return true;
+    }
+
+    private void finishSetTimer() {
+        if (setTimer != null) {
+            setTimer.finish();
+            setTimer = null;
+        }
+    }
+
     /**
      * Gets a copy of filters along with values of limit (offset and rowcount) from
      * a cursor of the same type.
@@ -2,6 +2,8 @@ package ru.curs.celesta.dbutils;
 
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import ru.curs.celesta.dbutils.stmt.StatementTimer;
 
 public abstract class BasicDataAccessor extends CsqlBasicDataAccessor<CallContext> {
 
@@ -63,8 +65,26 @@ public abstract class BasicDataAccessor extends CsqlBasicDataAccessor<CallContex
         if (isClosed()) {
             throw new CelestaException(DATA_ACCESSOR_IS_CLOSED);
         }
+        return isActionAllowed(Action.READ);
+    }
+
+    final boolean isActionAllowed(Action action) {
+        StatementTimer timer = startTimer(StatementKind.PERMISSION_CHECK);
         IPermissionManager permissionManager = callContext().getPermissionManager();
-        return permissionManager.isActionAllowed(callContext(), meta(), Action.READ);
+        boolean result = permissionManager.isActionAllowed(callContext(), meta(), action);
+        timer.executed();
+        timer.finish();
+        return result;
+    }
+
+    /**
+     * Starts measuring a statement on the current object.
+     *
+     * @param kind  statement kind
+     */
+    final StatementTimer startTimer(StatementKind kind) {
+        return StatementTimer.start(db().getStatementMetrics(), kind, meta(), conn(),
+                callContext().getProcName());
     }
 
 
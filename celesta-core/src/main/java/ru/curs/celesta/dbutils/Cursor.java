@@ -44,6 +44,8 @@ import ru.curs.celesta.dbutils.stmt.MaskedStatementHolder;
 import ru.curs.celesta.dbutils.stmt.ParameterSetter;
 import ru.curs.celesta.dbutils.stmt.PreparedStatementHolderFactory;
 import ru.curs.celesta.dbutils.stmt.PreparedStmtHolder;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import ru.curs.celesta.dbutils.stmt.StatementTimer;
 import ru.curs.celesta.dbutils.term.WhereTerm;
 import ru.curs.celesta.dbutils.term.WhereTermsMaker;
 import ru.curs.celesta.event.TriggerType;
@@ -205,6 +207,7 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         }
 
         preInsert();
+        modified(_currentKeyValues());
         //TODO: одно из самых нуждающихся в переделке мест.
         // на один insert--2 select-а, что вызывает справедливое возмущение тех, кто смотрит логи
         // 1) Если у нас автоинкремент и автоинкрементное поле в None, то первый select не нужен
@@ -213,10 +216,17 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
 
         try {
             if (!canOptimizeInsertion()) {
-                PreparedStatement g = getHelper.prepareGet(recversion, _currentKeyValues());
+                StatementTimer getTimer = startTimer(StatementKind.GET_BEFORE_WRITE);
+                PreparedStatement g = getHelper.prepareGet(getTimer, recversion, _currentKeyValues());
                 try (ResultSet rs = g.executeQuery()) {
-                    if (rs.next()) {
+                    getTimer.executed();
+                    boolean exists = rs.next();
+                    if (exists) {
                         getXRec()._parseResult(rs);
+                    }
+                    getTimer.fetched(exists ? 1 : 0);
+                    getTimer.finish();
+                    if (exists) {
                         /*
                          * transmit recversion from xRec to rec for possible future
                          * record update
@@ -229,20 +239,24 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
                 }
             }
 
-            PreparedStatement ins = insert.getStatement(_currentValues(), recversion);
+            StatementTimer timer = startTimer(StatementKind.INSERT);
+            PreparedStatement ins = timer.prepare(insert, _currentValues(), recversion);
 
-            ILoggingManager loggingManager = callContext().getLoggingManager();
             if (ins.execute()) {
-                loggingManager.log(this, Action.INSERT);
+                timer.executed(1);
+                timer.finish();
+                log(Action.INSERT);
                 ResultSet ret = ins.getResultSet();
                 ret.next();
                 int id = ret.getInt(1);
                 _setAutoIncrement(id);
                 ret.close();
             } else {
+                timer.executed(ins.getUpdateCount());
+                timer.finish();
                 // TODO: get rid of "getCurrentIdent" call where possible
                 // e. g. using INSERT.. OUTPUT clause for MSSQL
-                loggingManager.log(this, Action.INSERT);
+                log(Action.INSERT);
                 for (Column<?> c : meta().getColumns().values()) {
                     if (c instanceof IntegerColumn) {
                         IntegerColumn ic = (IntegerColumn) c;
@@ -254,8 +268,8 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
                 }
             }
 
-            getHelper.internalGet(this::_parseResultInternal, Optional.of(this::initXRec),
-                    recversion, _currentKeyValues());
+            getHelper.internalGet(startTimer(StatementKind.GET), this::_parseResultInternal,
+                    Optional.of(this::initXRec), recversion, _currentKeyValues());
 
             postInsert();
 
@@ -308,10 +322,14 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         }
 
         preUpdate();
-        PreparedStatement g = getHelper.prepareGet(recversion, _currentKeyValues());
+        StatementTimer getTimer = startTimer(StatementKind.GET_BEFORE_WRITE);
+        PreparedStatement g = getHelper.prepareGet(getTimer, recversion, _currentKeyValues());
         try {
             try (ResultSet rs = g.executeQuery()) {
+                getTimer.executed();
                 if (!rs.next()) {
+                    getTimer.fetched(0);
+                    getTimer.finish();
                     return false;
                 }
                 // Прочитали из базы данных значения -- обновляем xRec
@@ -321,6 +339,8 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
                     // фигурной скобкой? (проблема совместной работы над базой)
                     xRec._parseResult(rs);
                 }
+                getTimer.fetched(1);
+                getTimer.finish();
             }
 
             Object[] values = _currentValues();
@@ -351,11 +371,14 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
                 setRecversion(xRec.getRecversion());
             }
 
-            PreparedStatement upd = update.getStatement(values, recversion);
+            modified(_currentKeyValues());
+            StatementTimer timer = startTimer(StatementKind.UPDATE);
+            PreparedStatement upd = timer.prepare(update, values, recversion);
 
             upd.execute();
-            ILoggingManager loggingManager = callContext().getLoggingManager();
-            loggingManager.log(this, Action.MODIFY);
+            timer.executed(upd.getUpdateCount());
+            timer.finish();
+            log(Action.MODIFY);
             if (meta().isVersioned()) {
                 recversion++;
             }
@@ -401,13 +424,16 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
             throw new PermissionDeniedException(callContext(), meta(), Action.DELETE);
         }
 
-        PreparedStatement del = delete.getStatement(_currentValues(), recversion);
+        StatementTimer timer = startTimer(StatementKind.DELETE);
+        PreparedStatement del = timer.prepare(delete, _currentValues(), recversion);
 
         try {
             preDelete();
+            modified(_currentKeyValues());
             del.execute();
-            ILoggingManager loggingManager = callContext().getLoggingManager();
-            loggingManager.log(this, Action.DELETE);
+            timer.executed(del.getUpdateCount());
+            timer.finish();
+            log(Action.DELETE);
             this.initXRec();
             postDelete();
         } catch (SQLException e) {
@@ -415,6 +441,62 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         }
     }
 
+    /**
+     * Registers a modification of the table in the table, row and function caches
+     * and in the call context, to be published by the invalidation bus.
+     *
+     * @param keyValues  values of the primary key of the modified row, {@code null}
+     *                   if any row may be modified
+     */
+    private void modified(Object[] keyValues) {
+        TableCache cache = callContext().getCelesta().getTableCache();
+        if (cache != null) {
+            cache.modified(this);
+        }
+        RowCache rowCache = callContext().getCelesta().getRowCache();
+        if (rowCache != null) {
+            rowCache.modified(this, keyValues);
+        }
+        ParameterizedViewCache viewCache = callContext().getCelesta().getParameterizedViewCache();
+        if (viewCache != null) {
+            viewCache.modified(this);
+        }
+        callContext().tableModified(meta());
+    }
+
+    private boolean getCached(Object... values) {
+        if (values.length != meta().getPrimaryKey().size()) {
+            return getFromDb(values);
+        }
+        TableCache cache = callContext().getCelesta().getTableCache();
+        if (cache != null && cache.isCached(meta())) {
+            TableSnapshot snapshot = snapshot();
+            if (snapshot == null || !snapshot.isKeyComparable()) {
+                return getFromDb(values);
+            }
+            int row = snapshot.find(values);
+            if (row >= 0) {
+                parseSnapshotRow(snapshot, row);
+            }
+            return row >= 0;
+        }
+        RowCache rowCache = callContext().getCelesta().getRowCache();
+        return rowCache != null ? rowCache.get(this, values) : getFromDb(values);
+    }
+
+    final boolean getFromDb(Object... values) {
+        return getHelper.internalGet(startTimer(StatementKind.GET), this::_parseResultInternal,
+                Optional.of(this::initXRec), recversion, values);
+    }
+
+    private void log(Action action) {
+        StatementTimer timer = startTimer(StatementKind.CHANGE_LOG);
+        ILoggingManager loggingManager = callContext().getLoggingManager();
+        loggingManager.log(this, action);
+        timer.executed();
+        timer.finish();
+    }
+
     private void initXRec() {
         if (xRec == null) {
             xRec = (Cursor) _getBufferCopy(callContext(), null);
@@ -430,10 +512,13 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         if (!canDelete()) {
             throw new PermissionDeniedException(callContext(), meta(), Action.DELETE);
         }
-        PreparedStatement stmt = deleteAll.getStatement(_currentValues(), recversion);
+        modified(null);
+        StatementTimer timer = startTimer(StatementKind.DELETE_ALL);
+        PreparedStatement stmt = timer.prepare(deleteAll, _currentValues(), recversion);
         try {
             try {
-                stmt.executeUpdate();
+                timer.executed(stmt.executeUpdate());
+                timer.finish();
             } finally {
                 deleteAll.close();
             }
@@ -472,8 +557,7 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         if (!canRead()) {
             throw new PermissionDeniedException(callContext(), meta(), Action.READ);
         }
-        return getHelper.internalGet(this::_parseResultInternal, Optional.of(this::initXRec),
-                recversion, values);
+        return getCached(values);
     }
 
     /**
@@ -486,8 +570,7 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         if (!canRead()) {
             throw new PermissionDeniedException(callContext(), meta(), Action.READ);
         }
-        return getHelper.internalGet(this::_parseResultInternal, Optional.of(this::initXRec),
-                recversion, _currentKeyValues());
+        return getCached(_currentKeyValues());
     }
 
 
@@ -527,6 +610,7 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
 
         List<ParameterSetter> program = new ArrayList<>();
 
+        StatementTimer timer = startTimer(StatementKind.READ_BLOB);
         WhereTerm w = WhereTermsMaker.getPKWhereTerm(meta);
         PreparedStatement stmt = db().getOneFieldStatement(conn(), bc, w.getWhere());
         int i = 1;
@@ -535,9 +619,11 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         for (ParameterSetter f : program) {
             f.execute(stmt, i++, rec, recversion);
         }
+        timer.prepared(false);
 
         try {
             try (ResultSet rs = stmt.executeQuery()) {
+                timer.executed();
                 if (rs.next()) {
                     InputStream is = rs.getBinaryStream(1);
                     if (!(is == null || rs.wasNull())) {
@@ -554,11 +640,13 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
                     // Записи не существует вовсе
                     result = new BLOB();
                 }
+                timer.fetched(1);
             }
             stmt.close();
         } catch (SQLException | IOException e) {
             throw new CelestaException(e.getMessage());
         }
+        timer.finish();
         return result;
     }
 
@@ -706,6 +794,40 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         return _currentKeyValues();
     }
 
+    @Override
+    int snapshotRecversion() {
+        return recversion;
+    }
+
+    @Override
+    void parseSnapshotRow(TableSnapshot snapshot, int row) {
+        super.parseSnapshotRow(snapshot, row);
+        if (meta().isVersioned()) {
+            setRecversion(snapshot.recversion(row));
+        }
+        initXRec();
+    }
+
+    /**
+     * Fills the buffer with a row of the row cache.
+     *
+     * @param values  values of the row
+     * @param version  version of the row
+     */
+    final void parseCachedRow(Object[] values, int version) {
+        setFieldValues(values);
+        if (meta().isVersioned()) {
+            setRecversion(version);
+        }
+        initXRec();
+    }
+
+    @Override
+    int snapshotHere(TableSnapshot snapshot, int[] rows) {
+        int row = snapshot.find(_currentKeyValues());
+        return row >= 0 && matchesFilters(snapshot, row) ? row : -1;
+    }
+
     @Override
     protected void _parseResult(ResultSet rs) throws SQLException {
         this._parseResultInternal(rs);
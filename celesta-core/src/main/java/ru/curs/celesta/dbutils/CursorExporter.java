@@ -0,0 +1,531 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.score.ColumnMeta;
+import ru.curs.celesta.score.ZonedDateTimeColumn;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Streams the filtered and sorted data set of a cursor directly from the JDBC
+ * {@link ResultSet} to an {@link OutputStream} or a {@link WritableByteChannel}.
+ * <p>
+ * Values are encoded into a single reusable byte buffer of {@link #chunkSize(int)} bytes
+ * which is written to the target each time it gets full, so no per-row strings are built.
+ * BLOB columns are not exported (they are not selected by the cursor's query).
+ * <p>
+ * Exporting closes the currently open record set of the cursor, as {@link BasicCursor#tryFindSet()} does.
+ */
+public final class CursorExporter {
+
+    /**
+     * Default size of the output buffer in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Version of the binary format written in the header.
+     */
+    public static final int BINARY_FORMAT_VERSION = 1;
+
+    private static final int MIN_CHUNK_SIZE = 16;
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final byte ROW_MARKER = 1;
+    private static final byte END_MARKER = 0;
+    private static final String NULL = "NULL";
+    private static final int RADIX = 10;
+    private static final int ONE_BYTE_UTF8_LIMIT = 0x80;
+    private static final int TWO_BYTES_UTF8_LIMIT = 0x800;
+
+    /**
+     * Output format.
+     */
+    public enum Format {
+        /**
+         * Comma separated values in UTF-8, one line per record. Uses the same value
+         * representation as {@link BasicCursor#asCSVLine()}.
+         */
+        CSV,
+        /**
+         * Compact typed binary format. The header contains format version, number of columns
+         * and, for each column, its type tag and name. Each record starts with a row marker
+         * ({@code 1}) followed by the values, every value is prefixed with a null flag byte.
+         * The stream ends with an end marker ({@code 0}). All numbers are big-endian.
+         */
+        BINARY
+    }
+
+    /**
+     * Type of an exported column. The ordinal is used as a type tag in the binary format.
+     */
+    public enum ColumnType {
+        /**
+         * 32-bit integer.
+         */
+        INTEGER,
+        /**
+         * Boolean written as a single byte.
+         */
+        BOOLEAN,
+        /**
+         * 64-bit IEEE 754 floating point number.
+         */
+        DOUBLE,
+        /**
+         * Decimal written as a length-prefixed plain string.
+         */
+        DECIMAL,
+        /**
+         * Date and time written as milliseconds since epoch.
+         */
+        DATETIME,
+        /**
+         * Date and time with time zone written as milliseconds since epoch.
+         */
+        ZONED_DATETIME,
+        /**
+         * String written as a length-prefixed UTF-8 sequence.
+         */
+        STRING
+    }
+
+    private final BasicCursor cursor;
+    private Format format = Format.CSV;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private boolean header = false;
+
+    private ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final StringBuilder scratch = new StringBuilder();
+    private OutputStream out;
+    private WritableByteChannel channel;
+
+    public CursorExporter(BasicCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Sets output format ({@link Format#CSV} by default).
+     *
+     * @param format output format
+     */
+    @SuppressWarnings("HiddenField")
+    public CursorExporter format(Format format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * Sets size of the output buffer in bytes.
+     *
+     * @param chunkSize size of the chunks the output is written in
+     */
+    @SuppressWarnings("HiddenField")
+    public CursorExporter chunkSize(int chunkSize) {
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new CelestaException("Chunk size should be at least %d bytes", MIN_CHUNK_SIZE);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets JDBC fetch size, i.e. the number of rows that are retrieved from the database
+     * in one round trip.
+     *
+     * @param fetchSize number of rows, 0 to use the driver's default
+     */
+    @SuppressWarnings("HiddenField")
+    public CursorExporter fetchSize(int fetchSize) {
+        if (fetchSize < 0) {
+            throw new CelestaException("Negative fetch size (%d)", fetchSize);
+        }
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * Whether to write a line with column names before the data (CSV format only).
+     *
+     * @param header {@code true} to write the header line
+     */
+    @SuppressWarnings("HiddenField")
+    public CursorExporter header(boolean header) {
+        this.header = header;
+        return this;
+    }
+
+    /**
+     * Writes the data set to the output stream. The stream is neither flushed nor closed.
+     *
+     * @param target target output stream
+     * @return number of exported records
+     */
+    public long writeTo(OutputStream target) {
+        this.out = target;
+        return export();
+    }
+
+    /**
+     * Writes the data set to the channel. The channel is not closed.
+     *
+     * @param target target channel
+     * @return number of exported records
+     */
+    public long writeTo(WritableByteChannel target) {
+        this.channel = target;
+        return export();
+    }
+
+    private long export() {
+        if (buffer == null || buffer.capacity() != chunkSize) {
+            buffer = ByteBuffer.allocate(chunkSize);
+        }
+        buffer.clear();
+        try (ResultSet rs = cursor.openSet(fetchSize)) {
+            ColumnType[] types = columnTypes(rs.getMetaData());
+            long rows = format == Format.CSV ? writeCsv(rs, types) : writeBinary(rs, types);
+            flush();
+            return rows;
+        } catch (SQLException | IOException e) {
+            throw new CelestaException("Export of %s failed: %s", cursor._objectName(), e.getMessage());
+        } finally {
+            this.out = null;
+            this.channel = null;
+        }
+    }
+
+    private ColumnType[] columnTypes(ResultSetMetaData md) throws SQLException {
+        Map<String, ? extends ColumnMeta<?>> columns = cursor.meta().getColumns();
+        ColumnType[] result = new ColumnType[md.getColumnCount()];
+        for (int i = 0; i < result.length; i++) {
+            String label = md.getColumnLabel(i + 1);
+            ColumnMeta<?> column = columns.get(label);
+            if (column == null) {
+                for (ColumnMeta<?> c : columns.values()) {
+                    if (c.getName().equalsIgnoreCase(label)) {
+                        column = c;
+                        break;
+                    }
+                }
+            }
+            // recversion is the only column that is not described in meta
+            result[i] = column == null ? ColumnType.INTEGER : columnType(column);
+        }
+        return result;
+    }
+
+    private static ColumnType columnType(ColumnMeta<?> column) {
+        Class<?> c = column.getJavaClass();
+        if (Integer.class.equals(c)) {
+            return ColumnType.INTEGER;
+        } else if (Boolean.class.equals(c)) {
+            return ColumnType.BOOLEAN;
+        } else if (Double.class.equals(c)) {
+            return ColumnType.DOUBLE;
+        } else if (BigDecimal.class.equals(c)) {
+            return ColumnType.DECIMAL;
+        } else if (ZonedDateTimeColumn.CELESTA_TYPE.equals(column.getCelestaType())) {
+            return ColumnType.ZONED_DATETIME;
+        } else if (Date.class.isAssignableFrom(c)) {
+            return ColumnType.DATETIME;
+        } else {
+            return ColumnType.STRING;
+        }
+    }
+
+    private long writeCsv(ResultSet rs, ColumnType[] types) throws SQLException, IOException {
+        ResultSetMetaData md = rs.getMetaData();
+        if (header) {
+            for (int i = 0; i < types.length; i++) {
+                if (i > 0) {
+                    putByte(',');
+                }
+                putCsvString(md.getColumnLabel(i + 1));
+            }
+            putByte('\n');
+        }
+        long rows = 0;
+        while (rs.next()) {
+            for (int i = 0; i < types.length; i++) {
+                if (i > 0) {
+                    putByte(',');
+                }
+                writeCsvValue(rs, i + 1, types[i]);
+            }
+            putByte('\n');
+            rows++;
+        }
+        return rows;
+    }
+
+    // CHECKSTYLE:OFF for cyclomatic complexity
+    private void writeCsvValue(ResultSet rs, int i, ColumnType type) throws SQLException, IOException {
+        // CHECKSTYLE:ON
+        switch (type) {
+            case INTEGER:
+                int intValue = rs.getInt(i);
+                if (rs.wasNull()) {
+                    putAscii(NULL);
+                } else {
+                    putDecimal(intValue);
+                }
+                break;
+            case BOOLEAN:
+                boolean boolValue = rs.getBoolean(i);
+                putAscii(rs.wasNull() ? NULL : Boolean.toString(boolValue));
+                break;
+            case DOUBLE:
+                double doubleValue = rs.getDouble(i);
+                putAscii(rs.wasNull() ? NULL : Double.toString(doubleValue));
+                break;
+            case DECIMAL:
+                BigDecimal decimalValue = rs.getBigDecimal(i);
+                putAscii(decimalValue == null ? NULL : decimalValue.toString());
+                break;
+            case DATETIME:
+                Timestamp dateValue = rs.getTimestamp(i);
+                putAscii(dateValue == null ? NULL : dateValue.toString());
+                break;
+            case ZONED_DATETIME:
+                ZonedDateTime zonedValue = zonedDateTime(rs, i);
+                putCsvString(zonedValue == null ? NULL : zonedValue.toString());
+                break;
+            default:
+                String stringValue = rs.getString(i);
+                if (stringValue == null) {
+                    putAscii(NULL);
+                } else {
+                    putCsvString(stringValue);
+                }
+        }
+    }
+
+    private long writeBinary(ResultSet rs, ColumnType[] types) throws SQLException, IOException {
+        ResultSetMetaData md = rs.getMetaData();
+        putInt(BINARY_FORMAT_VERSION);
+        putInt(types.length);
+        for (int i = 0; i < types.length; i++) {
+            putByte(types[i].ordinal());
+            putString(md.getColumnLabel(i + 1));
+        }
+        long rows = 0;
+        while (rs.next()) {
+            putByte(ROW_MARKER);
+            for (int i = 0; i < types.length; i++) {
+                writeBinaryValue(rs, i + 1, types[i]);
+            }
+            rows++;
+        }
+        putByte(END_MARKER);
+        return rows;
+    }
+
+    // CHECKSTYLE:OFF for cyclomatic complexity
+    private void writeBinaryValue(ResultSet rs, int i, ColumnType type) throws SQLException, IOException {
+        // CHECKSTYLE:ON
+        switch (type) {
+            case INTEGER:
+                int intValue = rs.getInt(i);
+                if (putNullFlag(rs.wasNull())) {
+                    putInt(intValue);
+                }
+                break;
+            case BOOLEAN:
+                boolean boolValue = rs.getBoolean(i);
+                if (putNullFlag(rs.wasNull())) {
+                    putByte(boolValue ? 1 : 0);
+                }
+                break;
+            case DOUBLE:
+                double doubleValue = rs.getDouble(i);
+                if (putNullFlag(rs.wasNull())) {
+                    ensureCapacity(Double.BYTES);
+                    buffer.putDouble(doubleValue);
+                }
+                break;
+            case DECIMAL:
+                BigDecimal decimalValue = rs.getBigDecimal(i);
+                if (putNullFlag(decimalValue == null)) {
+                    putString(decimalValue.toPlainString());
+                }
+                break;
+            case DATETIME:
+                Timestamp dateValue = rs.getTimestamp(i);
+                if (putNullFlag(dateValue == null)) {
+                    putLong(dateValue.getTime());
+                }
+                break;
+            case ZONED_DATETIME:
+                ZonedDateTime zonedValue = zonedDateTime(rs, i);
+                if (putNullFlag(zonedValue == null)) {
+                    putLong(zonedValue.toInstant().toEpochMilli());
+                }
+                break;
+            default:
+                String stringValue = rs.getString(i);
+                if (putNullFlag(stringValue == null)) {
+                    putString(stringValue);
+                }
+        }
+    }
+
+    static ZonedDateTime zonedDateTime(ResultSet rs, int i) throws SQLException {
+        // the same conversion as the one in generated cursors
+        Timestamp ts = rs.getTimestamp(i, Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+        return ts == null ? null : ZonedDateTime.of(ts.toLocalDateTime(), ZoneOffset.systemDefault());
+    }
+
+    /**
+     * Writes the null flag and returns {@code true} if the value itself should be written.
+     */
+    private boolean putNullFlag(boolean isNull) throws IOException {
+        putByte(isNull ? 1 : 0);
+        return !isNull;
+    }
+
+    private void putCsvString(String value) throws IOException {
+        boolean needQuotes = false;
+        for (int i = 0; !needQuotes && i < value.length(); i++) {
+            char c = value.charAt(i);
+            needQuotes = c == '"' || c == ',' || c == '\n' || c == '\r';
+        }
+        if (!needQuotes) {
+            putChars(value);
+            return;
+        }
+        scratch.setLength(0);
+        scratch.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            scratch.append(c);
+            if (c == '"') {
+                scratch.append('"');
+            }
+        }
+        scratch.append('"');
+        putChars(scratch);
+    }
+
+    private void putString(String value) throws IOException {
+        putInt(utf8Length(value));
+        putChars(value);
+    }
+
+    private static int utf8Length(CharSequence s) {
+        int result = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < ONE_BYTE_UTF8_LIMIT) {
+                result++;
+            } else if (c < TWO_BYTES_UTF8_LIMIT) {
+                result += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                result += 4;
+                i++;
+            } else {
+                result += 3;
+            }
+        }
+        return result;
+    }
+
+    private void putChars(CharSequence value) throws IOException {
+        CharBuffer in = CharBuffer.wrap(value);
+        encoder.reset();
+        while (true) {
+            CoderResult cr = encoder.encode(in, buffer, true);
+            if (cr.isOverflow()) {
+                flush();
+            } else if (cr.isUnderflow()) {
+                break;
+            } else {
+                throw new IOException("Cannot encode value: " + cr);
+            }
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            flush();
+        }
+    }
+
+    private void putAscii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            putByte(value.charAt(i));
+        }
+    }
+
+    private void putDecimal(int value) throws IOException {
+        if (value == Integer.MIN_VALUE) {
+            putAscii(Integer.toString(value));
+            return;
+        }
+        int v = value;
+        if (v < 0) {
+            putByte('-');
+            v = -v;
+        }
+        int divisor = 1;
+        while (v / divisor >= RADIX) {
+            divisor *= RADIX;
+        }
+        while (divisor > 0) {
+            putByte('0' + v / divisor % RADIX);
+            divisor /= RADIX;
+        }
+    }
+
+    private void putByte(int b) throws IOException {
+        ensureCapacity(1);
+        buffer.put((byte) b);
+    }
+
+    private void putInt(int v) throws IOException {
+        ensureCapacity(Integer.BYTES);
+        buffer.putInt(v);
+    }
+
+    private void putLong(long v) throws IOException {
+        ensureCapacity(Long.BYTES);
+        buffer.putLong(v);
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (out != null) {
+            // heap buffer is written as is, without an intermediate copy
+            out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+        } else {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+}
@@ -6,6 +6,7 @@ import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.dbutils.stmt.PreparedStatementHolderFactory;
 import ru.curs.celesta.dbutils.stmt.PreparedStmtHolder;
+import ru.curs.celesta.dbutils.stmt.StatementTimer;
 import ru.curs.celesta.score.TableElement;
 
 import java.sql.Connection;
@@ -52,16 +53,19 @@ class CursorGetHelper {
     return get;
   }
 
-  final boolean internalGet(ParseResultFunction parseResultFunc, Optional<ParseResultCallBack> initXRecFunc,
-                            int recversion, Object... values) {
-    PreparedStatement g = prepareGet(recversion, values);
+  final boolean internalGet(StatementTimer timer, ParseResultFunction parseResultFunc,
+                            Optional<ParseResultCallBack> initXRecFunc, int recversion, Object... values) {
+    PreparedStatement g = prepareGet(timer, recversion, values);
     LOGGER.trace("{}", g);
     try (ResultSet rs = g.executeQuery()) {
+        timer.executed();
         boolean result = rs.next();
         if (result) {
           parseResultFunc.apply(rs);
           initXRecFunc.ifPresent(ParseResultCallBack::apply);
         }
+        timer.fetched(result ? 1 : 0);
+        timer.finish();
         return result;
     } catch (SQLException e) {
       throw new CelestaException(e.getMessage());
@@ -70,12 +74,12 @@ class CursorGetHelper {
   }
 
 
-  final PreparedStatement prepareGet(int recversion, Object... values) {
+  final PreparedStatement prepareGet(StatementTimer timer, int recversion, Object... values) {
     if (meta.getPrimaryKey().size() != values.length) {
       throw new CelestaException("Invalid number of 'get' arguments for '%s': expected %d, provided %d.",
           tableName, meta.getPrimaryKey().size(), values.length);
     }
-    PreparedStatement result = get.getStatement(values, recversion);
+    PreparedStatement result = timer.prepare(get, values, recversion);
     return result;
   }
 
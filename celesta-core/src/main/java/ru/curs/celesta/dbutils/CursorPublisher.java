@@ -0,0 +1,202 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CallContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Publishes projected rows of the filtered and sorted data set of a cursor
+ * with subscriber-driven backpressure.
+ * <p>
+ * Every subscription works on its own copy of the cursor (filters, ordering and
+ * requested fields included), created on a copy of the cursor's call context, i.e. on its
+ * own pooled connection. Rows are read lazily through {@link CursorSpliterator}
+ * with the given JDBC fetch size and only while there is outstanding demand;
+ * reading is serialized on the executor. The connection is returned to the pool
+ * as soon as the subscription completes, fails or is cancelled.
+ * <p>
+ * The source cursor is read only in {@link #subscribe(Flow.Subscriber)}, which has to be
+ * called in the thread that owns the source cursor.
+ *
+ * @param <T>  cursor class
+ * @param <R>  row projection class
+ */
+public final class CursorPublisher<T extends BasicCursor, R> implements Flow.Publisher<R> {
+
+    /**
+     * Default JDBC fetch size.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 256;
+
+    private final T source;
+    private final Function<? super T, ? extends R> projection;
+    private final Executor executor;
+    private final int fetchSize;
+
+    /**
+     * Creates a publisher over the cursor data set.
+     *
+     * @param source  source cursor
+     * @param projection  mapping of the current cursor record to an immutable row value,
+     *                    must not return {@code null}
+     * @param executor  executor that reads rows and signals the subscriber
+     */
+    public CursorPublisher(T source, Function<? super T, ? extends R> projection, Executor executor) {
+        this(source, projection, executor, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Creates a publisher over the cursor data set.
+     *
+     * @param source  source cursor
+     * @param projection  mapping of the current cursor record to an immutable row value,
+     *                    must not return {@code null}
+     * @param executor  executor that reads rows and signals the subscriber
+     * @param fetchSize  JDBC fetch size
+     */
+    public CursorPublisher(T source, Function<? super T, ? extends R> projection, Executor executor,
+                           int fetchSize) {
+        this.source = Objects.requireNonNull(source);
+        this.projection = Objects.requireNonNull(projection);
+        this.executor = Objects.requireNonNull(executor);
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        Objects.requireNonNull(subscriber);
+        CallContext context = source.callContext().getCopy();
+        final T cursor;
+        try {
+            cursor = copyCursor(context);
+        } catch (RuntimeException e) {
+            context.close();
+            subscriber.onSubscribe(new CursorSubscription(subscriber, null, null));
+            subscriber.onError(e);
+            return;
+        }
+        subscriber.onSubscribe(new CursorSubscription(subscriber, context,
+                new CursorSpliterator<>(cursor, projection, fetchSize)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T copyCursor(CallContext context) {
+        List<String> fields = source.fields.isEmpty() ? null : new ArrayList<>(source.fields);
+        T cursor = (T) source.getBufferCopy(context, fields);
+        cursor.copyFiltersFrom(source);
+        cursor.copyOrderFrom(source);
+        return cursor;
+    }
+
+    /**
+     * Subscription state. All the signals to the subscriber are issued from {@link #run()},
+     * which is never executed concurrently with itself.
+     */
+    private final class CursorSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super R> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private CallContext context;
+        private CursorSpliterator<T, R> rows;
+
+        CursorSubscription(Flow.Subscriber<? super R> subscriber, CallContext context,
+                           CursorSpliterator<T, R> rows) {
+            this.subscriber = subscriber;
+            this.context = context;
+            this.rows = rows;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Non-positive subscription request: " + n);
+            } else {
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    release();
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (rows == null) {
+                return;
+            }
+            if (cancelled) {
+                release();
+                return;
+            }
+            if (invalidRequest != null) {
+                release();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+            try {
+                while (requested.get() > 0 && !cancelled) {
+                    if (!rows.tryAdvance(subscriber::onNext)) {
+                        release();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    requested.decrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                release();
+                subscriber.onError(e);
+                return;
+            }
+            if (cancelled) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (rows != null) {
+                try {
+                    rows.close();
+                } finally {
+                    rows = null;
+                    context.close();
+                    context = null;
+                }
+            }
+        }
+    }
+
+}
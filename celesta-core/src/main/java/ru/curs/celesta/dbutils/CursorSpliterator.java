@@ -0,0 +1,193 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CelestaException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy {@link Spliterator} over the filtered and sorted data set of a cursor.
+ * <p>
+ * The query is executed on the first {@link #tryAdvance(Consumer)}, every row is parsed into
+ * the cursor fields exactly once and then mapped by the projection to a value that
+ * must not depend on the cursor state afterwards (an immutable per-row record).
+ * The result set is closed as soon as it is exhausted, when the stream is closed
+ * and when the cursor is closed or its record set is reset.
+ * <p>
+ * {@link #trySplit()} prefetches rows into an array-backed spliterator in growing
+ * batches, so that downstream stages of a parallel stream can process the rows
+ * in other threads. The rows are still read one batch at a time and never concurrently,
+ * but a parallel stream may call {@link #trySplit()} and {@link #tryAdvance(Consumer)}
+ * from its pool threads, so reading from the database and the projection may run
+ * outside the thread of the cursor and must not rely on its thread-local state.
+ *
+ * @param <T>  cursor class
+ * @param <R>  row projection class
+ */
+public final class CursorSpliterator<T extends BasicCursor, R> implements Spliterator<R> {
+
+    /**
+     * Initial size of a batch prefetched by {@link #trySplit()}.
+     */
+    public static final int BATCH_UNIT = 1024;
+
+    private static final int MAX_BATCH = 32 * 1024 * 1024;
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.NONNULL;
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final T cursor;
+    private final Function<? super T, ? extends R> projection;
+    private final int fetchSize;
+    private ResultSet rs;
+    private boolean exhausted;
+    private int batch;
+
+    /**
+     * Creates a spliterator over the cursor data set.
+     *
+     * @param cursor  cursor
+     * @param projection  mapping of the current cursor record to a row value, must not return {@code null}
+     * @param fetchSize  JDBC fetch size
+     */
+    public CursorSpliterator(T cursor, Function<? super T, ? extends R> projection, int fetchSize) {
+        this.cursor = Objects.requireNonNull(cursor);
+        this.projection = Objects.requireNonNull(projection);
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Returns a sequential lazy stream of projected rows of the cursor data set.
+     * The stream should be closed (e.g. by try-with-resources) if it is not
+     * consumed to the end.
+     *
+     * @param cursor  cursor
+     * @param projection  mapping of the current cursor record to a row value, must not return {@code null}
+     * @param <T>  cursor class
+     * @param <R>  row projection class
+     * @return
+     */
+    public static <T extends BasicCursor, R> Stream<R> stream(T cursor, Function<? super T, ? extends R> projection) {
+        CursorSpliterator<T, R> spliterator = new CursorSpliterator<>(cursor, projection, DEFAULT_FETCH_SIZE);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        if (exhausted) {
+            return false;
+        }
+        try {
+            if (rs == null) {
+                rs = cursor.openSet(fetchSize);
+                // let the cursor own the result set, so it is closed along with the cursor
+                cursor.cursor = rs;
+            }
+            if (!rs.next()) {
+                close();
+                return false;
+            }
+            cursor._parseResult(rs);
+        } catch (SQLException e) {
+            close();
+            throw new CelestaException(e.getMessage());
+        }
+        action.accept(Objects.requireNonNull(projection.apply(cursor), "Cursor row projection returned null"));
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachRemaining(Consumer<? super R> action) {
+        boolean hasNext;
+        do {
+            hasNext = tryAdvance(action);
+        } while (hasNext);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Spliterator<R> trySplit() {
+        if (exhausted) {
+            return null;
+        }
+        int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+        Object[] buffer = new Object[n];
+        int j = 0;
+        while (j < n && tryAdvance(new ArraySetter(buffer, j))) {
+            j++;
+        }
+        if (j == 0) {
+            return null;
+        }
+        batch = j;
+        return Spliterators.spliterator(buffer, 0, j, CHARACTERISTICS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long estimateSize() {
+        return exhausted ? 0 : Long.MAX_VALUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    /**
+     * Closes the underlying result set. Subsequent advances return {@code false}.
+     */
+    public void close() {
+        exhausted = true;
+        if (rs != null) {
+            try {
+                rs.close();
+            } catch (SQLException e) {
+                throw new CelestaException(e.getMessage());
+            } finally {
+                if (cursor.cursor == rs) {
+                    cursor.cursor = null;
+                }
+                rs = null;
+            }
+        }
+    }
+
+    /**
+     * Stores the advanced value into a prefetch buffer.
+     */
+    private static final class ArraySetter implements Consumer<Object> {
+        private final Object[] buffer;
+        private final int index;
+
+        ArraySetter(Object[] buffer, int index) {
+            this.buffer = buffer;
+            this.index = index;
+        }
+
+        @Override
+        public void accept(Object value) {
+            buffer[index] = value;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package ru.curs.celesta.dbutils;
+
+/**
+ * Reactive Streams interfaces with the same contract as {@code java.util.concurrent.Flow}
+ * of Java 9+, for the Java 8 runtime Celesta is built for. Adapting them to the JDK
+ * or Reactive Streams interfaces is a matter of delegating each method.
+ */
+public final class Flow {
+
+    private Flow() {
+        throw new AssertionError();
+    }
+
+    /**
+     * A producer of items received by subscribers.
+     *
+     * @param <T>  published item type
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+        /**
+         * Adds the subscriber. {@link Subscriber#onSubscribe(Subscription)} is called
+         * before any other subscriber method.
+         *
+         * @param subscriber  subscriber
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items.
+     *
+     * @param <T>  subscribed item type
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called before any other method for a new subscription.
+         *
+         * @param subscription  subscription
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with the next item of the subscription.
+         *
+         * @param item  item
+         */
+        void onNext(T item);
+
+        /**
+         * Called upon an unrecoverable error, no further methods are called.
+         *
+         * @param throwable  error
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when no more items will be published.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Link between a publisher and a subscriber.
+     */
+    public interface Subscription {
+        /**
+         * Adds the number of items to the demand of this subscription.
+         *
+         * @param n  number of items, must be positive
+         */
+        void request(long n);
+
+        /**
+         * Stops receiving items, possibly asynchronously.
+         */
+        void cancel();
+    }
+
+}
@@ -3,6 +3,7 @@ package ru.curs.celesta.dbutils;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.PermissionDeniedException;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
 import ru.curs.celesta.score.ColumnMeta;
 import ru.curs.celesta.score.MaterializedView;
 import ru.curs.celesta.score.ParseException;
@@ -23,6 +24,7 @@ public abstract class MaterializedViewCursor extends BasicCursor {
 
   private MaterializedView meta = null;
   private final CursorGetHelper getHelper;
+  private boolean flushBeforeRead;
 
 
   public MaterializedViewCursor(CallContext context) {
@@ -97,6 +99,44 @@ public abstract class MaterializedViewCursor extends BasicCursor {
   }
 
 
+  /**
+   * Sets whether changes of the table queued for a deferred materialized view are applied
+   * before the cursor reads the view. Otherwise the cursor reads the view as it is, which
+   * may not yet reflect the latest changes of the table.
+   *
+   * @param flushBeforeRead  {@code true} to apply the queued changes before each read
+   */
+  public final void setFlushBeforeRead(boolean flushBeforeRead) {
+    this.flushBeforeRead = flushBeforeRead;
+  }
+
+  /**
+   * Whether changes queued for a deferred materialized view are applied before reading.
+   *
+   * @return
+   */
+  public final boolean isFlushBeforeRead() {
+    return flushBeforeRead;
+  }
+
+  /**
+   * Applies changes of the table queued for a deferred materialized view, within the
+   * transaction of the cursor. Does nothing for a view that is not deferred.
+   */
+  public final void flush() {
+    if (meta().isDeferred()) {
+      db().applyMaterializedViewQueue(conn(), meta(), 0);
+      callContext().forgetCounts();
+    }
+  }
+
+  @Override
+  void beforeRead() {
+    if (flushBeforeRead) {
+      flush();
+    }
+  }
+
   @Override
   final void appendPK(List<String> l, List<Boolean> ol, final Set<String> colNames) {
     // Always add to the end of OrderBy the fields of the primary key following in
@@ -140,7 +180,8 @@ public abstract class MaterializedViewCursor extends BasicCursor {
       throw new PermissionDeniedException(callContext(), meta(), Action.READ);
     }
 
-    return getHelper.internalGet(this::_parseResult, Optional.empty(),
+    beforeRead();
+    return getHelper.internalGet(startTimer(StatementKind.GET), this::_parseResult, Optional.empty(),
         0, values);
   }
 
@@ -154,7 +195,8 @@ public abstract class MaterializedViewCursor extends BasicCursor {
     if (!canRead()) {
       throw new PermissionDeniedException(callContext(), meta(), Action.READ);
     }
-    return getHelper.internalGet(this::_parseResult, Optional.empty(),
+    beforeRead();
+    return getHelper.internalGet(startTimer(StatementKind.GET), this::_parseResult, Optional.empty(),
         0, _currentKeyValues());
   }
 
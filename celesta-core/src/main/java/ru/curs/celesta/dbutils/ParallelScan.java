@@ -0,0 +1,357 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.score.Column;
+import ru.curs.celesta.score.ColumnMeta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Scans the filtered data set of a table cursor in parallel, split into primary key ranges.
+ * <p>
+ * The boundaries of the ranges are sampled on the source cursor's connection with
+ * {@code ORDER BY pk} queries limited by offset, so that the ranges hold nearly equal
+ * numbers of records at the moment of splitting. Each range is then read by its own
+ * worker on its own pooled connection (a copy of the source call context) with a copy
+ * of the source cursor whose filters are narrowed to the range. Records inserted
+ * after splitting beyond the sampled minimum and maximum keys are not scanned.
+ * <p>
+ * The table must have a single-column primary key, the source cursor must not be
+ * limited and must not have a filter on the primary key column.
+ *
+ * @param <T>  cursor class
+ */
+public final class ParallelScan<T extends Cursor> {
+
+    /**
+     * Default number of rows buffered for each range by {@link #stream(Function)}.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final Object END = new Object();
+
+    private final T source;
+    private final int parallelism;
+    private final Executor executor;
+    private final ColumnMeta<Object> pk;
+
+    /**
+     * Creates a parallel scan with its own pool of worker threads, created for each scan.
+     *
+     * @param source  source cursor, its filters are applied to the scan
+     * @param parallelism  number of ranges and workers
+     */
+    public ParallelScan(T source, int parallelism) {
+        this(source, parallelism, null);
+    }
+
+    /**
+     * Creates a parallel scan running ranges on the given executor.
+     *
+     * @param source  source cursor, its filters are applied to the scan
+     * @param parallelism  number of ranges
+     * @param executor  executor of range workers, {@code null} for a pool created for each scan
+     */
+    public ParallelScan(T source, int parallelism, Executor executor) {
+        if (parallelism < 1) {
+            throw new CelestaException("Parallel scan parallelism must be positive, got %d.", parallelism);
+        }
+        this.source = Objects.requireNonNull(source);
+        this.parallelism = parallelism;
+        this.executor = executor;
+
+        Map<String, Column<?>> primaryKey = source.meta().getPrimaryKey();
+        if (primaryKey.size() != 1) {
+            throw new CelestaException("Parallel scan of %s requires a single-column primary key.",
+                    source._objectName());
+        }
+        @SuppressWarnings("unchecked")
+        ColumnMeta<Object> key = (ColumnMeta<Object>) primaryKey.values().iterator().next();
+        this.pk = key;
+        if (source.hasFilterOn(pk.getName())) {
+            throw new CelestaException("Parallel scan of %s is not possible with a filter on primary key column %s.",
+                    source._objectName(), pk.getName());
+        }
+        if (source.isLimited()) {
+            throw new CelestaException("Parallel scan of %s is not possible with a limited cursor.",
+                    source._objectName());
+        }
+    }
+
+    /**
+     * Calls the action for every record of the data set. The action is called concurrently
+     * from the workers, each worker passing its own cursor positioned on the record.
+     * Blocks until all the ranges are scanned.
+     *
+     * @param action  action
+     */
+    public void forEach(Consumer<? super T> action) {
+        List<KeyRange> ranges = split();
+        ExecutorService pool = ownPool(ranges.size());
+        Executor e = pool == null ? executor : pool;
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>(ranges.size());
+            for (KeyRange range : ranges) {
+                futures.add(CompletableFuture.runAsync(() -> scan(range, action), e));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException ex) {
+            throw unwrap(ex);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Returns a sequential stream of projected records ordered by the primary key.
+     * Ranges are read concurrently into bounded buffers and merged in key order.
+     * The stream should be closed if it is not consumed to the end.
+     *
+     * @param projection  mapping of the current record to an immutable row value,
+     *                    must not return {@code null}
+     * @param <R>  row projection class
+     * @return
+     */
+    public <R> Stream<R> stream(Function<? super T, ? extends R> projection) {
+        Objects.requireNonNull(projection);
+        List<KeyRange> ranges = split();
+        ExecutorService pool = ownPool(ranges.size());
+        Executor e = pool == null ? executor : pool;
+
+        MergingSpliterator<R> merged = new MergingSpliterator<>(ranges.size(), pool);
+        for (int i = 0; i < ranges.size(); i++) {
+            KeyRange range = ranges.get(i);
+            BlockingQueue<Object> queue = merged.queues.get(i);
+            e.execute(() -> merged.fill(queue,
+                    () -> scan(range, c -> merged.put(queue, Objects.requireNonNull(projection.apply(c))))));
+        }
+        return StreamSupport.stream(merged, false).onClose(merged::close);
+    }
+
+    /**
+     * Splits the filtered data set into primary key ranges.
+     */
+    List<KeyRange> split() {
+        long total = source.count();
+        if (total == 0) {
+            return Collections.emptyList();
+        }
+        int n = (int) Math.min(parallelism, total);
+
+        List<Object> bounds = new ArrayList<>(n + 1);
+        @SuppressWarnings("unchecked")
+        T probe = (T) source.getBufferCopy(source.callContext(), Collections.singletonList(pk.getName()));
+        try {
+            probe.copyFiltersFrom(source);
+            probe.orderBy(pk);
+            for (int k = 0; k <= n; k++) {
+                long offset = k == n ? total - 1 : k * total / n;
+                probe.limit(offset, 1);
+                if (!probe.tryFindSet()) {
+                    // the data set has shrunk since counting
+                    break;
+                }
+                bounds.add(probe._getFieldValue(pk.getName()));
+            }
+        } finally {
+            probe.close();
+        }
+
+        List<KeyRange> ranges = new ArrayList<>(n);
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            ranges.add(new KeyRange(bounds.get(i), bounds.get(i + 1), i + 2 == bounds.size()));
+        }
+        if (ranges.isEmpty() && !bounds.isEmpty()) {
+            ranges.add(new KeyRange(bounds.get(0), bounds.get(0), true));
+        }
+        return ranges;
+    }
+
+    private void scan(KeyRange range, Consumer<? super T> action) {
+        CallContext context = source.callContext().getCopy();
+        try {
+            @SuppressWarnings("unchecked")
+            T c = (T) source.getBufferCopy(context,
+                    source.fields.isEmpty() ? null : new ArrayList<>(source.fields));
+            c.copyFiltersFrom(source);
+            c.setRange(pk, range.from, range.to);
+            c.orderBy(pk);
+            new CursorSpliterator<>(c, Function.identity(), DEFAULT_FETCH_SIZE).forEachRemaining(cursor -> {
+                // ranges share their bounds, the upper bound belongs to the next range
+                if (range.inclusive || !range.to.equals(cursor._getFieldValue(pk.getName()))) {
+                    action.accept(cursor);
+                }
+            });
+        } finally {
+            context.close();
+        }
+    }
+
+    private ExecutorService ownPool(int size) {
+        if (executor != null || size == 0) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(size, r -> {
+            Thread t = new Thread(r, "celesta-parallel-scan-" + source._objectName());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static RuntimeException unwrap(CompletionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new CelestaException(cause);
+    }
+
+    /**
+     * Primary key range: from its lower bound up to its upper bound, the latter is
+     * included only for the last range.
+     */
+    static final class KeyRange {
+        private final Object from;
+        private final Object to;
+        private final boolean inclusive;
+
+        KeyRange(Object from, Object to, boolean inclusive) {
+            this.from = from;
+            this.to = to;
+            this.inclusive = inclusive;
+        }
+
+        Object getFrom() {
+            return from;
+        }
+
+        Object getTo() {
+            return to;
+        }
+
+        boolean isInclusive() {
+            return inclusive;
+        }
+    }
+
+    /**
+     * Failure of a range worker, rethrown to the stream consumer.
+     */
+    private static final class Failure {
+        private final RuntimeException exception;
+
+        Failure(RuntimeException exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Concatenates the buffers filled by range workers in range order.
+     *
+     * @param <R>  row projection class
+     */
+    private static final class MergingSpliterator<R> extends Spliterators.AbstractSpliterator<R> {
+        private final List<BlockingQueue<Object>> queues;
+        private final ExecutorService pool;
+        private volatile boolean cancelled;
+        private int current;
+
+        MergingSpliterator(int size, ExecutorService pool) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.queues = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                queues.add(new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY));
+            }
+            this.pool = pool;
+        }
+
+        void put(BlockingQueue<Object> queue, Object item) {
+            try {
+                while (!queue.offer(item, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        throw new CancellationException();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        }
+
+        void fill(BlockingQueue<Object> queue, Runnable producer) {
+            Object last;
+            try {
+                producer.run();
+                last = END;
+            } catch (CancellationException e) {
+                return;
+            } catch (RuntimeException e) {
+                last = new Failure(e);
+            }
+            try {
+                put(queue, last);
+            } catch (CancellationException e) {
+                // the stream is closed, nobody waits for the range
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super R> action) {
+            while (current < queues.size()) {
+                Object item;
+                try {
+                    item = queues.get(current).take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new CelestaException("Parallel scan is interrupted.");
+                }
+                if (item == END) {
+                    current++;
+                } else if (item instanceof Failure) {
+                    close();
+                    throw ((Failure) item).exception;
+                } else {
+                    action.accept((R) item);
+                    return true;
+                }
+            }
+            close();
+            return false;
+        }
+
+        void close() {
+            cancelled = true;
+            current = queues.size();
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+}
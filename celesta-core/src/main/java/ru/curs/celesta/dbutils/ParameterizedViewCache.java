@@ -0,0 +1,279 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.event.InvalidationBus;
+import ru.curs.celesta.score.AbstractSelectStmt;
+import ru.curs.celesta.score.BasicTable;
+import ru.curs.celesta.score.Grain;
+import ru.curs.celesta.score.MaterializedView;
+import ru.curs.celesta.score.ParameterizedView;
+import ru.curs.celesta.score.Score;
+import ru.curs.celesta.score.TableElement;
+import ru.curs.celesta.score.TableRef;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of the results of functions (parameterized views) by their parameters.
+ * <p>
+ * The result of a cached function for the given parameter values is read from the database
+ * once and then served from memory, filtered by {@code setRange}, sorted and paged the same
+ * way as the snapshot of a cached table. The number of cached results and the number of rows
+ * of a result are limited, and a result is used for the time-to-live at most. Writes through
+ * Celesta cursors to a table the function selects from remove its results from the cache, and
+ * a call context that modified such a table reads the function from the database until
+ * the context commits, rolls back or is closed.
+ */
+public final class ParameterizedViewCache {
+
+    private final Map<ParameterizedView, AtomicLong> versions = new HashMap<>();
+    private final Map<BasicTable, List<ParameterizedView>> dependentViews = new HashMap<>();
+    private final TinyLfuCache<ResultKey, Result> results;
+    private final Map<CallContext, Set<ParameterizedView>> modifiedViews =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private final int maxRows;
+    private final long ttlNanos;
+
+    /**
+     * Creates the cache of the functions declared {@code WITH CACHE} and the given ones.
+     *
+     * @param score  score
+     * @param viewNames  names of additionally cached functions in the form {@code grain.function}
+     * @param maximumSize  maximum number of cached results, {@code 0} if the cache is disabled
+     * @param maxRows  maximum number of rows of a cached result
+     * @param ttlMs  time in milliseconds a result is used for, {@code 0} if results don't expire
+     */
+    public ParameterizedViewCache(Score score, Collection<String> viewNames, int maximumSize, int maxRows,
+                                  long ttlMs) {
+        this.results = new TinyLfuCache<>(Math.max(1, maximumSize));
+        this.maxRows = maxRows;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        if (maximumSize == 0) {
+            return;
+        }
+        for (Grain g : score.getGrains().values()) {
+            for (ParameterizedView pv : g.getElements(ParameterizedView.class).values()) {
+                if (pv.isCached()) {
+                    register(pv);
+                }
+            }
+        }
+        for (String name : viewNames) {
+            register(findView(score, name));
+        }
+    }
+
+    private static ParameterizedView findView(Score score, String name) {
+        int dot = name.indexOf('.');
+        Grain g = dot > 0 ? score.getGrains().get(name.substring(0, dot)) : null;
+        ParameterizedView pv = g == null ? null
+                : g.getElements(ParameterizedView.class).get(name.substring(dot + 1));
+        if (pv == null) {
+            throw new CelestaException("Cached function %s does not exist.", name);
+        }
+        return pv;
+    }
+
+    private void register(ParameterizedView pv) {
+        if (versions.put(pv, new AtomicLong()) != null) {
+            return;
+        }
+        for (AbstractSelectStmt segment : pv.getSegments()) {
+            for (TableRef tRef : segment.getTables()) {
+                TableElement t = tRef.getTable();
+                if (t instanceof MaterializedView) {
+                    t = ((MaterializedView) t).getRefTable().getTable();
+                }
+                if (t instanceof BasicTable) {
+                    List<ParameterizedView> views = dependentViews.computeIfAbsent((BasicTable) t,
+                            k -> new ArrayList<>());
+                    if (!views.contains(pv)) {
+                        views.add(pv);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the results of the function are cached.
+     *
+     * @param view  function
+     * @return
+     */
+    public boolean isCached(ParameterizedView view) {
+        return versions.containsKey(view);
+    }
+
+    /**
+     * Removes the results of a function from the cache.
+     *
+     * @param view  function
+     */
+    public void invalidate(ParameterizedView view) {
+        AtomicLong version = versions.get(view);
+        if (version != null) {
+            version.incrementAndGet();
+            synchronized (results) {
+                results.removeIf(k -> k.view == view);
+            }
+        }
+    }
+
+    /**
+     * Removes all the results from the cache.
+     */
+    public void invalidateAll() {
+        versions.values().forEach(AtomicLong::incrementAndGet);
+        synchronized (results) {
+            results.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return
+     */
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    /**
+     * Subscribes the cache to the changes of the tables of cached functions made on other nodes.
+     *
+     * @param bus  invalidation bus
+     */
+    public void subscribe(InvalidationBus bus) {
+        dependentViews.forEach((t, views) ->
+                bus.subscribe(InvalidationBus.topic(t), () -> views.forEach(this::invalidate)));
+    }
+
+    /**
+     * Ends the modifications of the tables of cached functions made by a call context.
+     * Called when the context commits, rolls back or is closed.
+     *
+     * @param context  call context
+     */
+    public void release(CallContext context) {
+        if (modifiedViews.isEmpty()) {
+            return;
+        }
+        Set<ParameterizedView> views = modifiedViews.remove(context);
+        if (views != null) {
+            views.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * Registers a modification of the cursor table by the cursor call context.
+     *
+     * @param cursor  cursor
+     */
+    void modified(Cursor cursor) {
+        List<ParameterizedView> views = dependentViews.get(cursor.meta());
+        if (views != null) {
+            modifiedViews.computeIfAbsent(cursor.callContext(), c -> new HashSet<>()).addAll(views);
+            views.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the result of the cursor function for the cursor parameters,
+     * loading it if needed, or {@code null} if the function is not cached, the result is
+     * too large or the function tables are modified by the cursor call context.
+     *
+     * @param cursor  cursor
+     * @param parameters  values of the parameters of the function
+     */
+    TableSnapshot get(ParameterizedViewCursor cursor, Map<String, Object> parameters) {
+        ParameterizedView view = cursor.meta();
+        AtomicLong version = versions.get(view);
+        if (version == null || isModifiedIn(cursor.callContext(), view)) {
+            return null;
+        }
+        ResultKey key = new ResultKey(view, TableSnapshot.key(
+                view.getParameters().keySet().stream().map(parameters::get).toArray()));
+        synchronized (results) {
+            Result result = results.get(key);
+            if (result != null && (ttlNanos == 0 || System.nanoTime() - result.loadedAt < ttlNanos)) {
+                return result.snapshot;
+            }
+        }
+        long v = version.get();
+        TableSnapshot snapshot = cursor.loadSnapshot(v, maxRows);
+        synchronized (results) {
+            // a result read while the tables were being modified is not kept
+            if (version.get() == v) {
+                // a too large result is remembered not to be loaded again
+                results.put(key, new Result(snapshot));
+            }
+        }
+        return snapshot;
+    }
+
+    private boolean isModifiedIn(CallContext context, ParameterizedView view) {
+        if (modifiedViews.isEmpty()) {
+            return false;
+        }
+        Set<ParameterizedView> views = modifiedViews.get(context);
+        return views != null && views.contains(view);
+    }
+
+    /**
+     * Key of a cached result.
+     */
+    private static final class ResultKey {
+        private final ParameterizedView view;
+        private final Object parameters;
+
+        ResultKey(ParameterizedView view, Object parameters) {
+            this.view = view;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ResultKey)) {
+                return false;
+            }
+            ResultKey other = (ResultKey) o;
+            return view == other.view && Objects.equals(parameters, other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(view) + Objects.hashCode(parameters);
+        }
+    }
+
+    /**
+     * Cached result.
+     */
+    private static final class Result {
+        private final TableSnapshot snapshot;
+        private final long loadedAt = System.nanoTime();
+
+        Result(TableSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+}
@@ -109,6 +109,12 @@ public abstract class ParameterizedViewCursor extends BasicCursor {
     }
   }
 
+  @Override
+  TableSnapshot cachedSnapshot() {
+    ParameterizedViewCache cache = callContext().getCelesta().getParameterizedViewCache();
+    return cache == null ? null : cache.get(this, parameters);
+  }
+
   @Override
   protected FromClause getFrom() {
 
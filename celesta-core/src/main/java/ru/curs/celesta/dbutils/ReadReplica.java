@@ -0,0 +1,439 @@
+package ru.curs.celesta.dbutils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.ConnectionPool;
+import ru.curs.celesta.ConnectionPoolConfiguration;
+import ru.curs.celesta.DBType;
+import ru.curs.celesta.InternalConnectionPool;
+import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.dbutils.adaptors.configuration.DbAdaptorFactory;
+import ru.curs.celesta.dbutils.adaptors.ddl.JdbcDdlConsumer;
+import ru.curs.celesta.event.InvalidationBus;
+import ru.curs.celesta.score.AbstractSelectStmt;
+import ru.curs.celesta.score.BasicTable;
+import ru.curs.celesta.score.BinaryColumn;
+import ru.curs.celesta.score.BooleanColumn;
+import ru.curs.celesta.score.Column;
+import ru.curs.celesta.score.DateTimeColumn;
+import ru.curs.celesta.score.Grain;
+import ru.curs.celesta.score.GrainElement;
+import ru.curs.celesta.score.Index;
+import ru.curs.celesta.score.IntegerColumn;
+import ru.curs.celesta.score.ParameterizedView;
+import ru.curs.celesta.score.ReadOnlyTable;
+import ru.curs.celesta.score.Score;
+import ru.curs.celesta.score.SequenceElement;
+import ru.curs.celesta.score.TableRef;
+import ru.curs.celesta.score.VersionedElement;
+import ru.curs.celesta.score.View;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Local read tier: selected tables mirrored into an in-process H2 database.
+ * <p>
+ * At the start the tables are created in the H2 database from the score, together with their
+ * sequences and indices and the views and functions selecting from the mirrored tables only,
+ * and their rows are copied from the main database. Then the tables are reloaded periodically,
+ * and a table changed through Celesta cursors on any node is reloaded as soon as the invalidation
+ * bus announces the change. Until the reload is completed, and in a call context that modified
+ * a table until it commits, the table is read from the main database.
+ * <p>
+ * Cursors that cannot write, i.e. cursors of read-only tables, views and functions, whose data
+ * comes from the mirrored tables only, read from the H2 database. Cursors of the other tables
+ * always work with the main database.
+ */
+public final class ReadReplica implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadReplica.class);
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private static final int BATCH_SIZE = 1000;
+
+    private final ConnectionPool connectionPool;
+    private final DBAdaptor dbAdaptor;
+    private final long refreshMs;
+    private final Map<BasicTable, TableState> tables = new LinkedHashMap<>();
+    private final Map<View, Set<BasicTable>> views = new LinkedHashMap<>();
+    private final Map<CallContext, Connection> connections = Collections.synchronizedMap(new WeakHashMap<>());
+    private volatile ConnectionPool replicaPool;
+    private DBAdaptor replicaAdaptor;
+    private ScheduledExecutorService executor;
+    // whether the tables are created and loaded
+    private volatile boolean ready;
+
+    /**
+     * Creates the read replica.
+     *
+     * @param score  score
+     * @param names  names of the mirrored grains, or of tables in the form {@code grain.table};
+     *               the replica is disabled if empty
+     * @param connectionPool  connection pool of the main database
+     * @param dbAdaptor  DB adaptor of the main database
+     * @param refreshMs  interval in milliseconds between reloads of the tables,
+     *                   {@code 0} if the tables are only reloaded when they change
+     */
+    public ReadReplica(Score score, Collection<String> names, ConnectionPool connectionPool,
+                       DBAdaptor dbAdaptor, long refreshMs) {
+        this.connectionPool = connectionPool;
+        this.dbAdaptor = dbAdaptor;
+        this.refreshMs = refreshMs;
+        for (String name : names) {
+            if (name.indexOf('.') < 0) {
+                Grain g = score.getGrains().get(name);
+                if (g == null) {
+                    throw new CelestaException("Replicated grain %s does not exist.", name);
+                }
+                g.getTables().values().forEach(t -> tables.put(t, new TableState()));
+            } else {
+                tables.put(TableCache.findTable(score, name), new TableState());
+            }
+        }
+        for (Grain g : score.getGrains().values()) {
+            Set<View> grainViews = new LinkedHashSet<>(g.getViews().values());
+            grainViews.addAll(g.getParameterizedViews().values());
+            for (View v : grainViews) {
+                Set<BasicTable> viewTables = tablesOf(v);
+                if (!viewTables.isEmpty() && tables.keySet().containsAll(viewTables)) {
+                    views.put(v, viewTables);
+                }
+            }
+        }
+    }
+
+    private static Set<BasicTable> tablesOf(View view) {
+        Set<BasicTable> result = new HashSet<>();
+        for (AbstractSelectStmt segment : view.getSegments()) {
+            for (TableRef tRef : segment.getTables()) {
+                if (!(tRef.getTable() instanceof BasicTable)) {
+                    return Collections.emptySet();
+                }
+                result.add((BasicTable) tRef.getTable());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether the replica is enabled.
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return !tables.isEmpty();
+    }
+
+    /**
+     * Whether the table or the view is mirrored.
+     *
+     * @param element  table or view
+     * @return
+     */
+    public boolean isReplicated(GrainElement element) {
+        return tables.containsKey(element) || views.containsKey(element);
+    }
+
+    /**
+     * Creates the mirrored tables in the H2 database, copies their rows and starts
+     * the periodic reloads.
+     */
+    public synchronized void start() {
+        if (!isEnabled() || replicaPool != null) {
+            return;
+        }
+        ConnectionPoolConfiguration cpc = new ConnectionPoolConfiguration();
+        cpc.setJdbcConnectionUrl(String.format("jdbc:h2:mem:celesta_replica_%d",
+                COUNTER.incrementAndGet()));
+        cpc.setDriverClassName(DBType.H2.getDriverClassName());
+        cpc.setLogin("");
+        cpc.setPassword("");
+        replicaPool = InternalConnectionPool.create(cpc);
+        replicaAdaptor = new DbAdaptorFactory()
+                .setDbType(DBType.H2)
+                .setDdlConsumer(new JdbcDdlConsumer())
+                .setConnectionPool(replicaPool)
+                .setH2ReferentialIntegrity(false)
+                .createDbAdaptor();
+        createObjects();
+        tables.keySet().forEach(this::reload);
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "celesta-read-replica");
+            t.setDaemon(true);
+            return t;
+        });
+        if (refreshMs > 0) {
+            executor.scheduleWithFixedDelay(this::reloadAll, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        }
+        ready = true;
+    }
+
+    private void createObjects() {
+        try (Connection conn = replicaPool.get()) {
+            Set<SequenceElement> sequences = new LinkedHashSet<>();
+            for (BasicTable t : tables.keySet()) {
+                replicaAdaptor.createSchemaIfNotExists(t.getGrain().getName());
+                for (Column<?> c : t.getColumns().values()) {
+                    if (c instanceof IntegerColumn && ((IntegerColumn) c).getSequence() != null) {
+                        sequences.add(((IntegerColumn) c).getSequence());
+                    }
+                }
+            }
+            for (SequenceElement s : sequences) {
+                replicaAdaptor.createSchemaIfNotExists(s.getGrain().getName());
+                replicaAdaptor.createSequence(conn, s);
+            }
+            for (BasicTable t : tables.keySet()) {
+                replicaAdaptor.createTable(conn, t);
+                for (Index index : t.getGrain().getIndices().values()) {
+                    if (index.getTable() == t) {
+                        replicaAdaptor.createIndex(conn, index);
+                    }
+                }
+            }
+            for (View v : views.keySet()) {
+                if (v instanceof ParameterizedView) {
+                    replicaAdaptor.createParameterizedView(conn, (ParameterizedView) v);
+                } else {
+                    replicaAdaptor.createView(conn, v);
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            throw new CelestaException("Can't create read replica: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Subscribes the replica to the changes of the mirrored tables made through Celesta cursors.
+     *
+     * @param bus  invalidation bus
+     */
+    public void subscribe(InvalidationBus bus) {
+        tables.forEach((t, state) -> bus.subscribe(InvalidationBus.topic(t), () -> changed(t, state)));
+    }
+
+    private void changed(BasicTable table, TableState state) {
+        state.requested.incrementAndGet();
+        ScheduledExecutorService e;
+        synchronized (this) {
+            e = executor;
+        }
+        if (e != null) {
+            e.execute(() -> reloadQuietly(table));
+        }
+    }
+
+    /**
+     * Reloads all the mirrored tables from the main database.
+     */
+    public void reloadAll() {
+        tables.keySet().forEach(this::reloadQuietly);
+    }
+
+    private void reloadQuietly(BasicTable table) {
+        try {
+            reload(table);
+        } catch (RuntimeException e) {
+            LOGGER.error("Error while reloading replicated table {}", InvalidationBus.topic(table), e);
+        }
+    }
+
+    /**
+     * Reloads a mirrored table from the main database.
+     *
+     * @param table  table
+     */
+    public void reload(BasicTable table) {
+        TableState state = tables.get(table);
+        if (state == null || replicaPool == null) {
+            return;
+        }
+        synchronized (state) {
+            long requested = state.requested.get();
+            List<String> columns = new ArrayList<>(table.getColumns().keySet());
+            if (table instanceof VersionedElement && ((VersionedElement) table).isVersioned()) {
+                columns.add(VersionedElement.REC_VERSION);
+            }
+            String columnList = columns.stream().map(c -> "\"" + c + "\"").collect(Collectors.joining(", "));
+            String grainName = table.getGrain().getName();
+            try (Connection source = connectionPool.get();
+                 Connection target = replicaPool.get()) {
+                try (Statement delete = target.createStatement()) {
+                    delete.executeUpdate("DELETE FROM " + replicaAdaptor.tableString(grainName, table.getName()));
+                }
+                copy(table, columns, String.format("SELECT %s FROM %s", columnList,
+                                dbAdaptor.tableString(grainName, table.getName())), source,
+                        String.format("INSERT INTO %s (%s) VALUES (%s)",
+                                replicaAdaptor.tableString(grainName, table.getName()), columnList,
+                                columns.stream().map(c -> "?").collect(Collectors.joining(", "))), target);
+                target.commit();
+                source.commit();
+            } catch (SQLException e) {
+                throw new CelestaException("Can't reload replicated table %s.%s: %s",
+                        grainName, table.getName(), e.getMessage());
+            }
+            state.loaded.set(requested);
+        }
+    }
+
+    private static void copy(BasicTable table, List<String> columns, String select, Connection source,
+                             String insert, Connection target) throws SQLException {
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery(select);
+             PreparedStatement ins = target.prepareStatement(insert)) {
+            int rows = 0;
+            while (rs.next()) {
+                for (int i = 1; i <= columns.size(); i++) {
+                    ins.setObject(i, value(rs, i, table.getColumns().get(columns.get(i - 1))));
+                }
+                ins.addBatch();
+                if (++rows % BATCH_SIZE == 0) {
+                    ins.executeBatch();
+                }
+            }
+            if (rows % BATCH_SIZE != 0) {
+                ins.executeBatch();
+            }
+        }
+    }
+
+    private static Object value(ResultSet rs, int i, Column<?> column) throws SQLException {
+        Object value;
+        if (column instanceof BinaryColumn) {
+            value = rs.getBytes(i);
+        } else if (column instanceof DateTimeColumn) {
+            value = rs.getTimestamp(i);
+        } else if (column instanceof BooleanColumn) {
+            value = rs.getBoolean(i);
+        } else {
+            value = rs.getObject(i);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Whether the cursors of the table or the view in the call context read from the replica.
+     *
+     * @param context  call context
+     * @param element  table or view
+     */
+    boolean serves(CallContext context, GrainElement element) {
+        if (!ready) {
+            return false;
+        }
+        if (element instanceof ReadOnlyTable) {
+            return isActual(context, (BasicTable) element);
+        }
+        Set<BasicTable> viewTables = views.get(element);
+        if (viewTables == null) {
+            return false;
+        }
+        for (BasicTable t : viewTables) {
+            if (!isActual(context, t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isActual(CallContext context, BasicTable table) {
+        TableState state = tables.get(table);
+        return state != null && state.loaded.get() == state.requested.get() && !context.isTableModified(table);
+    }
+
+    /**
+     * Returns the connection to the replica of a call context.
+     *
+     * @param context  call context
+     */
+    Connection connection(CallContext context) {
+        return connections.computeIfAbsent(context, c -> replicaPool.get());
+    }
+
+    /**
+     * Returns the DB adaptor of the replica.
+     */
+    DBAdaptor getDbAdaptor() {
+        return replicaAdaptor;
+    }
+
+    /**
+     * Returns the connection to the replica of a call context to the pool.
+     * Called when the context is closed.
+     *
+     * @param context  call context
+     */
+    public void release(CallContext context) {
+        if (connections.isEmpty()) {
+            return;
+        }
+        Connection conn = connections.remove(context);
+        if (conn != null) {
+            closeQuietly(conn);
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            LOGGER.debug("Can't release replica connection", e);
+        }
+    }
+
+    /**
+     * Stops the periodic reloads and drops the H2 database.
+     */
+    @Override
+    public synchronized void close() {
+        ready = false;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (replicaPool != null) {
+            // the in-memory database is dropped with its last connection
+            replicaPool.close();
+            replicaPool = null;
+            synchronized (connections) {
+                for (Connection conn : connections.values()) {
+                    closeQuietly(conn);
+                }
+                connections.clear();
+            }
+        }
+    }
+
+    /**
+     * Mirrored table state.
+     */
+    private static final class TableState {
+        // number of announced changes of the table
+        private final AtomicLong requested = new AtomicLong();
+        // number of changes the loaded rows reflect
+        private final AtomicLong loaded = new AtomicLong();
+    }
+
+}
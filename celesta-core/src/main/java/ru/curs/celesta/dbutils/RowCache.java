@@ -0,0 +1,357 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.event.InvalidationBus;
+import ru.curs.celesta.score.BasicTable;
+import ru.curs.celesta.score.Grain;
+import ru.curs.celesta.score.Score;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process cache of table rows read by primary key.
+ * <p>
+ * {@code get}/{@code tryGet} of a cursor of a cached table is served from the cache if the row
+ * was read before, and otherwise the row read from the database is put to the cache. The cache
+ * is bounded by the number of rows, evicted by the W-TinyLFU policy, and a row is used for
+ * the time-to-live at most. Writes through Celesta cursors remove the rows they change from
+ * the cache, and a call context that modified a cached table reads it from the database until
+ * the context commits, rolls back or is closed, when the rows are removed once more.
+ * <p>
+ * A cached row keeps its version, so an update based on a stale row fails with the version
+ * check error of the table and removes the row from the cache. Changes made bypassing Celesta
+ * cursors are seen only after the time-to-live or an explicit {@link #invalidate(BasicTable)}.
+ */
+public final class RowCache {
+
+    // key of all the rows of a table modified by a call context
+    private static final Object ALL_ROWS = new Object();
+
+    private final Map<BasicTable, TableState> tables = new HashMap<>();
+    private final TinyLfuCache<RowKey, Row> rows;
+    private final Map<CallContext, Map<BasicTable, Set<Object>>> modifiedRows =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private final long ttlNanos;
+
+    /**
+     * Creates the cache.
+     *
+     * @param score  score
+     * @param tableNames  names of the cached tables in the form {@code grain.table},
+     *                    all the tables but the system ones are cached if empty
+     * @param maximumSize  maximum number of cached rows, {@code 0} if the cache is disabled
+     * @param ttlMs  time in milliseconds a cached row is used for, {@code 0} if rows don't expire
+     */
+    public RowCache(Score score, Collection<String> tableNames, int maximumSize, long ttlMs) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.rows = new TinyLfuCache<>(Math.max(1, maximumSize));
+        if (maximumSize == 0) {
+            return;
+        }
+        if (tableNames.isEmpty()) {
+            for (Grain g : score.getGrains().values()) {
+                if (Score.SYSTEM_SCHEMA_NAME.equals(g.getName())) {
+                    continue;
+                }
+                for (BasicTable t : g.getTables().values()) {
+                    tables.put(t, new TableState());
+                }
+            }
+        }
+        for (String name : tableNames) {
+            tables.put(TableCache.findTable(score, name), new TableState());
+        }
+    }
+
+    /**
+     * Whether the rows of the table are cached.
+     *
+     * @param table  table
+     * @return
+     */
+    public boolean isCached(BasicTable table) {
+        return tables.containsKey(table);
+    }
+
+    /**
+     * Removes the rows of a table from the cache.
+     *
+     * @param table  table
+     */
+    public void invalidate(BasicTable table) {
+        TableState state = tables.get(table);
+        if (state != null) {
+            state.version.incrementAndGet();
+            synchronized (rows) {
+                rows.removeIf(k -> k.table == table);
+            }
+        }
+    }
+
+    /**
+     * Removes all the rows from the cache.
+     */
+    public void invalidateAll() {
+        tables.values().forEach(s -> s.version.incrementAndGet());
+        synchronized (rows) {
+            rows.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached rows.
+     *
+     * @return
+     */
+    public int size() {
+        synchronized (rows) {
+            return rows.size();
+        }
+    }
+
+    /**
+     * Returns the number of rows evicted from the cache because of its size.
+     *
+     * @return
+     */
+    public long getEvictions() {
+        synchronized (rows) {
+            return rows.getEvictions();
+        }
+    }
+
+    /**
+     * Returns hit statistics of the cached tables by their names in the form {@code grain.table}.
+     *
+     * @return
+     */
+    public Map<String, Statistics> getStatistics() {
+        Map<String, Statistics> result = new LinkedHashMap<>();
+        tables.forEach((t, s) -> result.put(t.getGrain().getName() + "." + t.getName(),
+                new Statistics(s.hits.sum(), s.misses.sum())));
+        return result;
+    }
+
+    /**
+     * Subscribes the cache to the changes of the cached tables made on other nodes.
+     *
+     * @param bus  invalidation bus
+     */
+    public void subscribe(InvalidationBus bus) {
+        for (BasicTable t : tables.keySet()) {
+            bus.subscribe(InvalidationBus.topic(t), () -> invalidate(t));
+        }
+    }
+
+    /**
+     * Ends the modifications of cached tables made by a call context. Called when
+     * the context commits, rolls back or is closed.
+     *
+     * @param context  call context
+     */
+    public void release(CallContext context) {
+        if (modifiedRows.isEmpty()) {
+            return;
+        }
+        Map<BasicTable, Set<Object>> modified = modifiedRows.remove(context);
+        if (modified != null) {
+            modified.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * Registers a modification of a row of the cursor table by the cursor call context.
+     *
+     * @param cursor  cursor
+     * @param keyValues  values of the primary key of the row, {@code null} if any row
+     *                   of the table may be modified
+     */
+    void modified(Cursor cursor, Object[] keyValues) {
+        BasicTable table = cursor.meta();
+        if (!tables.containsKey(table)) {
+            return;
+        }
+        Object key = keyValues == null ? ALL_ROWS : TableSnapshot.key(keyValues);
+        modifiedRows.computeIfAbsent(cursor.callContext(), c -> new HashMap<>())
+                .computeIfAbsent(table, t -> new HashSet<>()).add(key);
+        invalidate(table, Collections.singleton(key));
+    }
+
+    /**
+     * Fills the cursor with the row of the given primary key, from the cache or from
+     * the database.
+     *
+     * @param cursor  cursor
+     * @param keyValues  values of the primary key
+     * @return {@code true} if the row is found
+     */
+    boolean get(Cursor cursor, Object[] keyValues) {
+        BasicTable table = cursor.meta();
+        TableState state = tables.get(table);
+        if (state == null || isModifiedIn(cursor.callContext(), table)) {
+            return cursor.getFromDb(keyValues);
+        }
+        RowKey key = new RowKey(table, TableSnapshot.key(keyValues));
+        Row row;
+        synchronized (rows) {
+            row = rows.get(key);
+            if (row != null && ttlNanos > 0 && System.nanoTime() - row.loadedAt >= ttlNanos) {
+                rows.remove(key);
+                row = null;
+            }
+        }
+        if (row != null) {
+            state.hits.increment();
+            cursor.parseCachedRow(row.values, row.recversion);
+            return true;
+        }
+        state.misses.increment();
+        long version = state.version.get();
+        boolean found = cursor.getFromDb(keyValues);
+        // only complete rows are cached
+        if (found && cursor.fieldsForStatement.isEmpty()) {
+            Object[] values = cursor._currentValues();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = TableSnapshot.copy(values[i]);
+            }
+            Row loaded = new Row(values, cursor.getRecversion());
+            synchronized (rows) {
+                // a row read while the table was being modified is not kept
+                if (state.version.get() == version) {
+                    rows.put(key, loaded);
+                }
+            }
+        }
+        return found;
+    }
+
+    private void invalidate(BasicTable table, Set<Object> keys) {
+        tables.get(table).version.incrementAndGet();
+        synchronized (rows) {
+            if (keys.contains(ALL_ROWS)) {
+                rows.removeIf(k -> k.table == table);
+            } else {
+                keys.forEach(k -> rows.remove(new RowKey(table, k)));
+            }
+        }
+    }
+
+    private boolean isModifiedIn(CallContext context, BasicTable table) {
+        if (modifiedRows.isEmpty()) {
+            return false;
+        }
+        Map<BasicTable, Set<Object>> modified = modifiedRows.get(context);
+        return modified != null && modified.containsKey(table);
+    }
+
+    /**
+     * Hit statistics of a cached table.
+     */
+    public static final class Statistics {
+        private final long hits;
+        private final long misses;
+
+        Statistics(long hits, long misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        /**
+         * Returns the number of rows read from the cache.
+         *
+         * @return
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Returns the number of rows looked up in the database.
+         *
+         * @return
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Returns the share of the rows read from the cache, {@code 0} if there were no reads.
+         *
+         * @return
+         */
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, hit rate=%.2f", hits, misses, getHitRate());
+        }
+    }
+
+    /**
+     * Cached table state.
+     */
+    private static final class TableState {
+        private final AtomicLong version = new AtomicLong();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+    }
+
+    /**
+     * Key of a cached row.
+     */
+    private static final class RowKey {
+        private final BasicTable table;
+        private final Object key;
+
+        RowKey(BasicTable table, Object key) {
+            this.table = table;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RowKey)) {
+                return false;
+            }
+            RowKey other = (RowKey) o;
+            return table == other.table && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(table) + Objects.hashCode(key);
+        }
+    }
+
+    /**
+     * Cached row.
+     */
+    private static final class Row {
+        private final Object[] values;
+        private final int recversion;
+        private final long loadedAt = System.nanoTime();
+
+        Row(Object[] values, int recversion) {
+            this.values = values;
+            this.recversion = recversion;
+        }
+    }
+
+}
@@ -2,6 +2,8 @@ package ru.curs.celesta.dbutils;
 
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import ru.curs.celesta.dbutils.stmt.StatementTimer;
 import ru.curs.celesta.score.ParseException;
 import ru.curs.celesta.score.SequenceElement;
 
@@ -44,7 +46,12 @@ public abstract class Sequence extends BasicDataAccessor {
      *
      */
     public final long nextValue() {
-        return db().nextSequenceValue(conn(), meta());
+        StatementTimer timer = startTimer(StatementKind.SEQUENCE_NEXT);
+        long result = db().nextSequenceValue(conn(), meta());
+        timer.executed();
+        timer.fetched(1);
+        timer.finish();
+        return result;
     }
 
     @Override
@@ -0,0 +1,194 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.event.InvalidationBus;
+import ru.curs.celesta.score.BasicTable;
+import ru.curs.celesta.score.Grain;
+import ru.curs.celesta.score.Score;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of whole tables.
+ * <p>
+ * Cursors of a cached table serve {@code get}, {@code findSet}/{@code nextInSet}, {@code navigate}
+ * and {@code count} from a snapshot of the table loaded on the first read, as long as the cursor
+ * is filtered by {@code setRange} only. The snapshot is invalidated by writes made through Celesta
+ * cursors and expires after the refresh interval. A call context that modified a cached table
+ * reads it from the database until the context commits, rolls back or is closed, when the
+ * snapshot is invalidated once more.
+ * <p>
+ * Unless the database compares strings by their characters, data sets filtered or sorted
+ * by string columns and rows of string primary keys are read from the database.
+ * <p>
+ * Changes made bypassing Celesta cursors are seen only after the refresh interval
+ * or an explicit {@link #invalidate(BasicTable)}.
+ */
+public final class TableCache {
+
+    private final Map<BasicTable, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<CallContext, Set<BasicTable>> modifiedTables =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private final long refreshNanos;
+
+    /**
+     * Creates the cache of the tables declared {@code WITH CACHE} and the given ones.
+     *
+     * @param score  score
+     * @param tableNames  names of additionally cached tables in the form {@code grain.table}
+     * @param refreshMs  time in milliseconds a snapshot of a table is used for,
+     *                   {@code 0} if snapshots don't expire
+     */
+    public TableCache(Score score, Collection<String> tableNames, long refreshMs) {
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMs);
+        for (Grain g : score.getGrains().values()) {
+            for (BasicTable t : g.getTables().values()) {
+                if (t.isCached()) {
+                    entries.put(t, new Entry());
+                }
+            }
+        }
+        for (String name : tableNames) {
+            entries.put(findTable(score, name), new Entry());
+        }
+    }
+
+    static BasicTable findTable(Score score, String name) {
+        int dot = name.indexOf('.');
+        Grain g = dot > 0 ? score.getGrains().get(name.substring(0, dot)) : null;
+        BasicTable t = g == null ? null : g.getTables().get(name.substring(dot + 1));
+        if (t == null) {
+            throw new CelestaException("Cached table %s does not exist.", name);
+        }
+        if (InvalidationBus.INVALIDATIONS_TOPIC.equals(InvalidationBus.topic(t))) {
+            throw new CelestaException("Table %s can't be cached.", name);
+        }
+        return t;
+    }
+
+    /**
+     * Whether the table is cached.
+     *
+     * @param table  table
+     * @return
+     */
+    public boolean isCached(BasicTable table) {
+        return entries.containsKey(table);
+    }
+
+    /**
+     * Discards the snapshot of a table, so that it is reloaded by the next read.
+     *
+     * @param table  table
+     */
+    public void invalidate(BasicTable table) {
+        Entry entry = entries.get(table);
+        if (entry != null) {
+            entry.invalidate();
+        }
+    }
+
+    /**
+     * Discards the snapshots of all the tables.
+     */
+    public void invalidateAll() {
+        entries.values().forEach(Entry::invalidate);
+    }
+
+    /**
+     * Subscribes the cache to the changes of the cached tables made on other nodes.
+     *
+     * @param bus  invalidation bus
+     */
+    public void subscribe(InvalidationBus bus) {
+        for (BasicTable t : entries.keySet()) {
+            bus.subscribe(InvalidationBus.topic(t), () -> invalidate(t));
+        }
+    }
+
+    /**
+     * Ends the modifications of cached tables made by a call context. Called when
+     * the context commits, rolls back or is closed.
+     *
+     * @param context  call context
+     */
+    public void release(CallContext context) {
+        if (modifiedTables.isEmpty()) {
+            return;
+        }
+        Set<BasicTable> tables = modifiedTables.remove(context);
+        if (tables != null) {
+            tables.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * Registers a modification of the cursor table by the cursor call context.
+     *
+     * @param cursor  cursor
+     */
+    void modified(BasicCursor cursor) {
+        Entry entry = entries.get(cursor.meta());
+        if (entry != null) {
+            BasicTable table = (BasicTable) cursor.meta();
+            modifiedTables.computeIfAbsent(cursor.callContext(), c -> new HashSet<>()).add(table);
+            entry.invalidate();
+        }
+    }
+
+    /**
+     * Returns an actual snapshot of the cursor table, loading it if needed, or {@code null}
+     * if the table is not cached or is modified by the cursor call context.
+     *
+     * @param cursor  cursor
+     */
+    TableSnapshot get(BasicCursor cursor) {
+        Entry entry = entries.get(cursor.meta());
+        if (entry == null || isModifiedIn(cursor.callContext(), cursor.meta())) {
+            return null;
+        }
+        long version = entry.version.get();
+        TableSnapshot snapshot = entry.snapshot;
+        if (snapshot != null && snapshot.getVersion() == version
+                && (refreshNanos == 0 || System.nanoTime() - snapshot.getLoadedAt() < refreshNanos)) {
+            return snapshot;
+        }
+        snapshot = cursor.loadSnapshot(version, 0);
+        // a snapshot loaded while the table was being modified is not kept
+        if (entry.version.get() == version) {
+            entry.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    private boolean isModifiedIn(CallContext context, Object table) {
+        if (modifiedTables.isEmpty()) {
+            return false;
+        }
+        Set<BasicTable> tables = modifiedTables.get(context);
+        return tables != null && tables.contains(table);
+    }
+
+    /**
+     * Cached table state.
+     */
+    private static final class Entry {
+        private final AtomicLong version = new AtomicLong();
+        private volatile TableSnapshot snapshot;
+
+        void invalidate() {
+            version.incrementAndGet();
+            snapshot = null;
+        }
+    }
+
+}
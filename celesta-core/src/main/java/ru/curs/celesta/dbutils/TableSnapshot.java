@@ -0,0 +1,285 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.score.BasicTable;
+import ru.curs.celesta.score.ColumnMeta;
+import ru.curs.celesta.score.DataGrainElement;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable in-memory snapshot of all the rows of a table or of a result of a function.
+ * <p>
+ * The values are kept by columns, in the order they were read in. The snapshot indexes
+ * the rows of a table by their primary keys and builds an ordered index for each sorting
+ * it is read with, so that filtered and sorted data sets are served without querying
+ * the database.
+ * <p>
+ * Values are compared in Java. Strings are compared by their characters, so columns of strings
+ * are comparable in memory only if the database compares strings the same way, otherwise
+ * the data sets filtered or sorted by them should be read from the database.
+ */
+final class TableSnapshot {
+
+    private final Object[][] columns;
+    private final int[] recversions;
+    private final int size;
+    private final int[] pkIndices;
+    private final Map<Object, Integer> pkIndex;
+    private final boolean nullsFirst;
+    private final boolean[] comparable;
+    private final long version;
+    private final long loadedAt;
+    private final Map<String, int[]> orderIndices = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param element  the table or the function
+     * @param rows  values of the rows, in the order of the columns of the element
+     * @param recversions  versions of the rows, {@code null} if the table is not versioned
+     * @param nullsFirst  whether the database sorts nulls first
+     * @param stringsByCharacters  whether the database compares strings by their characters
+     * @param version  version of the data the snapshot was loaded for
+     */
+    TableSnapshot(DataGrainElement element, List<Object[]> rows, int[] recversions, boolean nullsFirst,
+                  boolean stringsByCharacters, long version) {
+        this.size = rows.size();
+        this.columns = new Object[element.getColumns().size()][size];
+        for (int row = 0; row < size; row++) {
+            Object[] values = rows.get(row);
+            for (int col = 0; col < columns.length; col++) {
+                columns[col][row] = values[col];
+            }
+        }
+        this.recversions = recversions;
+        this.pkIndices = element instanceof BasicTable
+                ? ((BasicTable) element).getPrimaryKey().keySet().stream()
+                        .mapToInt(((BasicTable) element)::getColumnIndex).toArray()
+                : new int[0];
+        this.pkIndex = new HashMap<>(size * 2);
+        if (pkIndices.length > 0) {
+            for (int row = 0; row < size; row++) {
+                pkIndex.put(pkKey(row), row);
+            }
+        }
+        this.nullsFirst = nullsFirst;
+        this.comparable = new boolean[columns.length];
+        int col = 0;
+        for (ColumnMeta<?> c : element.getColumns().values()) {
+            comparable[col++] = stringsByCharacters || c.getJavaClass() != String.class;
+        }
+        this.version = version;
+        this.loadedAt = System.nanoTime();
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    int size() {
+        return size;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * Returns a copy of the values of a row.
+     *
+     * @param row  row number
+     */
+    Object[] values(int row) {
+        Object[] result = new Object[columns.length];
+        for (int col = 0; col < columns.length; col++) {
+            result[col] = copy(columns[col][row]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a value that can be given to a cursor buffer without sharing
+     * a mutable object.
+     *
+     * @param value  value
+     */
+    static Object copy(Object value) {
+        // dates are mutable
+        return value instanceof Date ? ((Date) value).clone() : value;
+    }
+
+    /**
+     * Returns the version of a row.
+     *
+     * @param row  row number
+     */
+    int recversion(int row) {
+        return recversions == null ? 0 : recversions[row];
+    }
+
+    /**
+     * Whether the values of the columns are compared in memory the way the database compares them.
+     *
+     * @param indices  column indices
+     */
+    boolean isComparable(int... indices) {
+        for (int col : indices) {
+            if (!comparable[col]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether rows are found by primary key in memory the way the database finds them.
+     */
+    boolean isKeyComparable() {
+        return isComparable(pkIndices);
+    }
+
+    /**
+     * Returns the number of the row with the given primary key, {@code -1} if there is no such row.
+     *
+     * @param keyValues  values of the primary key
+     */
+    int find(Object... keyValues) {
+        if (keyValues.length != pkIndices.length || pkIndices.length == 0) {
+            return -1;
+        }
+        Integer row = pkIndex.get(key(keyValues));
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Returns a key of primary key values, equal for the values equal in the database.
+     *
+     * @param keyValues  values of the primary key
+     */
+    static Object key(Object... keyValues) {
+        if (keyValues.length == 1) {
+            return normalize(keyValues[0]);
+        }
+        List<Object> l = new ArrayList<>(keyValues.length);
+        for (Object v : keyValues) {
+            l.add(normalize(v));
+        }
+        return l;
+    }
+
+    /**
+     * Returns the numbers of all the rows sorted by the given columns.
+     *
+     * @param indices  indices of the sort columns
+     * @param desc  descending flags of the sort columns
+     */
+    int[] order(int[] indices, boolean[] desc) {
+        String key = Arrays.toString(indices) + Arrays.toString(desc);
+        return orderIndices.computeIfAbsent(key, k -> {
+            Integer[] rows = new Integer[size];
+            for (int row = 0; row < size; row++) {
+                rows[row] = row;
+            }
+            Arrays.sort(rows, (r1, r2) -> compareRows(r1, r2, indices, desc));
+            return Arrays.stream(rows).mapToInt(Integer::intValue).toArray();
+        });
+    }
+
+    /**
+     * Compares a row to the values of a cursor buffer by the given sort columns.
+     *
+     * @param row  row number
+     * @param values  values of the cursor buffer
+     * @param indices  indices of the sort columns
+     * @param desc  descending flags of the sort columns
+     */
+    int compareTo(int row, Object[] values, int[] indices, boolean[] desc) {
+        for (int i = 0; i < indices.length; i++) {
+            int result = compareNullable(columns[indices[i]][row], values[indices[i]]);
+            if (result != 0) {
+                return desc[i] ? -result : result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a value of a row.
+     *
+     * @param row  row number
+     * @param col  column index
+     */
+    Object value(int row, int col) {
+        return columns[col][row];
+    }
+
+    private int compareRows(int r1, int r2, int[] indices, boolean[] desc) {
+        for (int i = 0; i < indices.length; i++) {
+            Object[] column = columns[indices[i]];
+            int result = compareNullable(column[r1], column[r2]);
+            if (result != 0) {
+                return desc[i] ? -result : result;
+            }
+        }
+        return Integer.compare(r1, r2);
+    }
+
+    private int compareNullable(Object v1, Object v2) {
+        if (v1 == null || v2 == null) {
+            if (v1 == v2) {
+                return 0;
+            }
+            return (v1 == null) == nullsFirst ? -1 : 1;
+        }
+        return compare(v1, v2);
+    }
+
+    /**
+     * Compares two non-null values of a column the way the database does (strings
+     * are compared by their characters).
+     *
+     * @param v1  first value
+     * @param v2  second value
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Object v1, Object v2) {
+        if (v1 instanceof Date && v2 instanceof Date) {
+            return Long.compare(((Date) v1).getTime(), ((Date) v2).getTime());
+        }
+        if (v1 instanceof ZonedDateTime && v2 instanceof ZonedDateTime) {
+            return ((ZonedDateTime) v1).toInstant().compareTo(((ZonedDateTime) v2).toInstant());
+        }
+        return ((Comparable<Object>) v1).compareTo(v2);
+    }
+
+    private Object pkKey(int row) {
+        Object[] keyValues = new Object[pkIndices.length];
+        for (int i = 0; i < pkIndices.length; i++) {
+            keyValues[i] = columns[pkIndices[i]][row];
+        }
+        return key(keyValues);
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).stripTrailingZeros();
+        } else if (value instanceof ZonedDateTime) {
+            return ((ZonedDateTime) value).toInstant();
+        }
+        return value;
+    }
+
+}
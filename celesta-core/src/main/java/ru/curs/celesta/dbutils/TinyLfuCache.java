@@ -0,0 +1,233 @@
+package ru.curs.celesta.dbutils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Size-bounded map evicting entries by the W-TinyLFU policy.
+ * <p>
+ * New entries are put to a small LRU admission window. An entry evicted from the window
+ * enters the main LRU segment only if it was accessed more frequently than the entry it
+ * would evict from there, so that a burst of one-off reads does not flush the entries
+ * that are read over and over. Access frequencies are estimated by a count-min sketch
+ * of 4-bit counters that are halved periodically, so that the old history fades away.
+ * <p>
+ * The class is not thread-safe.
+ *
+ * @param <K>  key type
+ * @param <V>  value type
+ */
+final class TinyLfuCache<K, V> {
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PERCENT = 100;
+
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long evictions;
+
+    /**
+     * Creates the map.
+     *
+     * @param capacity  maximum number of entries
+     */
+    TinyLfuCache(int capacity) {
+        this.windowCapacity = Math.max(1, capacity * WINDOW_PERCENT / PERCENT);
+        this.mainCapacity = Math.max(0, capacity - windowCapacity);
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    /**
+     * Returns the value of a key, {@code null} if there is no such entry.
+     * Records an access to the key.
+     *
+     * @param key  key
+     */
+    V get(K key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        return value != null ? value : main.get(key);
+    }
+
+    /**
+     * Puts an entry, possibly evicting another one or the entry itself.
+     *
+     * @param key  key
+     * @param value  value
+     */
+    void put(K key, V value) {
+        if (main.containsKey(key)) {
+            main.put(key, value);
+            return;
+        }
+        window.put(key, value);
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+        Iterator<Map.Entry<K, V>> it = window.entrySet().iterator();
+        Map.Entry<K, V> candidate = it.next();
+        it.remove();
+        if (main.size() < mainCapacity) {
+            main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        evictions++;
+        if (mainCapacity == 0) {
+            return;
+        }
+        Iterator<Map.Entry<K, V>> mit = main.entrySet().iterator();
+        Map.Entry<K, V> victim = mit.next();
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+            mit.remove();
+            main.put(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    /**
+     * Removes the entry of a key.
+     *
+     * @param key  key
+     */
+    void remove(K key) {
+        if (window.remove(key) == null) {
+            main.remove(key);
+        }
+    }
+
+    /**
+     * Removes the entries whose keys satisfy a predicate.
+     *
+     * @param filter  predicate
+     */
+    void removeIf(Predicate<? super K> filter) {
+        window.keySet().removeIf(filter);
+        main.keySet().removeIf(filter);
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    void clear() {
+        window.clear();
+        main.clear();
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    int size() {
+        return window.size() + main.size();
+    }
+
+    /**
+     * Returns the number of entries evicted or not admitted because of the capacity.
+     */
+    long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Count-min sketch of access frequencies. The 4-bit counters are packed
+     * sixteen to a {@code long}, the rows of the sketch follow each other in one array.
+     */
+    static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97cb3127, 0xb3f05a45, 0x6b2d3c1f, 0xc2b2ae35};
+        private static final int MAX_COUNT = 15;
+        private static final int SAMPLE_FACTOR = 10;
+        private static final int MIN_WIDTH = 16;
+        private static final int MAX_WIDTH = 0x1000000;
+        // counters per entry, to keep the collisions rare
+        private static final int COUNTERS_PER_ENTRY = 16;
+        private static final int GOLDEN_RATIO = 0x9e3779b9;
+        private static final int SPREAD_SHIFT = 15;
+        // 16 counters of 4 bits in a long
+        private static final int COUNTER_BITS = 4;
+        private static final int INDEX_SHIFT = 4;
+        private static final int COUNTERS_PER_WORD_MASK = 15;
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        private final long[] counters;
+        private final int rowWords;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            long n = Math.min(MAX_WIDTH, Math.max(MIN_WIDTH, (long) capacity * COUNTERS_PER_ENTRY));
+            int width = Integer.highestOneBit((int) n - 1) << 1;
+            this.rowWords = width >>> INDEX_SHIFT;
+            this.counters = new long[SEEDS.length * rowWords];
+            this.mask = width - 1;
+            this.sampleSize = SAMPLE_FACTOR * Math.max(1, capacity);
+        }
+
+        /**
+         * Records an access to a key.
+         *
+         * @param key  key
+         */
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+                int word = word(i, index);
+                int shift = shift(index);
+                if (((counters[word] >>> shift) & MAX_COUNT) < MAX_COUNT) {
+                    counters[word] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        /**
+         * Returns the estimated number of accesses to a key.
+         *
+         * @param key  key
+         */
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int result = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+                result = Math.min(result, (int) ((counters[word(i, index)] >>> shift(index)) & MAX_COUNT));
+            }
+            return result;
+        }
+
+        private void reset() {
+            for (int j = 0; j < counters.length; j++) {
+                counters[j] = (counters[j] >>> 1) & HALF_MASK;
+            }
+            additions /= 2;
+        }
+
+        private int index(int hash, int i) {
+            int h = hash * SEEDS[i];
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        private int word(int row, int index) {
+            return row * rowWords + (index >>> INDEX_SHIFT);
+        }
+
+        private static int shift(int index) {
+            return (index & COUNTERS_PER_WORD_MASK) * COUNTER_BITS;
+        }
+
+        private static int spread(int h) {
+            int x = h * GOLDEN_RATIO;
+            return x ^ (x >>> SPREAD_SHIFT);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package ru.curs.celesta.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Base of invalidation bus implementations, keeping the listeners and running them
+ * for the published topics on the publishing node.
+ */
+public abstract class AbstractInvalidationBus implements InvalidationBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractInvalidationBus.class);
+
+    private final Map<String, List<Runnable>> listeners = new ConcurrentHashMap<>();
+    // the call contexts committed while sending must not publish anything themselves
+    private final ThreadLocal<Boolean> sending = new ThreadLocal<>();
+
+    @Override
+    public final void subscribe(String topic, Runnable listener) {
+        listeners.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public final boolean isSubscribed(String topic) {
+        return listeners.containsKey(topic);
+    }
+
+    @Override
+    public final void publish(Collection<String> topics) {
+        if (sending.get() != null) {
+            return;
+        }
+        // sorted, so that concurrent publishers touch the topics in the same order
+        Set<String> subscribed = new TreeSet<>();
+        for (String topic : topics) {
+            if (isSubscribed(topic)) {
+                subscribed.add(topic);
+            }
+        }
+        if (!subscribed.isEmpty()) {
+            deliver(subscribed);
+            sending.set(Boolean.TRUE);
+            try {
+                send(subscribed);
+            } finally {
+                sending.remove();
+            }
+        }
+    }
+
+    /**
+     * Sends the published topics to the other nodes.
+     *
+     * @param topics  sorted topics having listeners
+     */
+    protected abstract void send(Set<String> topics);
+
+    /**
+     * Runs the listeners of the topics.
+     *
+     * @param topics  topics
+     */
+    protected final void deliver(Collection<String> topics) {
+        for (String topic : topics) {
+            for (Runnable listener : listeners.getOrDefault(topic, Collections.emptyList())) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Error while invalidating cached data of {}", topic, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the topics having listeners.
+     *
+     * @return
+     */
+    protected final Set<String> getTopics() {
+        return listeners.keySet();
+    }
+
+}
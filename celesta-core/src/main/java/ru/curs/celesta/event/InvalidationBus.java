@@ -0,0 +1,74 @@
+package ru.curs.celesta.event;
+
+import ru.curs.celesta.score.BasicTable;
+import ru.curs.celesta.score.Score;
+
+import java.util.Collection;
+
+/**
+ * Channel announcing the changes of cached data to the caches of all the Celesta nodes
+ * working with the same database.
+ * <p>
+ * Caches subscribe to topics, which are the names of the tables they are filled from,
+ * and a call context publishes the topics of the tables it modified when it commits.
+ * The listeners of the topics are run on the publishing node immediately and on the other
+ * nodes as soon as the transport of the bus delivers the message, so that the caches of
+ * the cluster converge without waiting for the time-to-live of their entries.
+ * <p>
+ * An implementation is chosen by the {@code invalidation.bus} setting. A custom implementation
+ * should have a public constructor taking {@link ru.curs.celesta.ICelesta}.
+ */
+public interface InvalidationBus extends AutoCloseable {
+
+    /**
+     * Topic of the table the table bus keeps its change counters in. The table is never
+     * cached and its changes are never published, as publishing writes the table itself.
+     */
+    String INVALIDATIONS_TOPIC = Score.SYSTEM_SCHEMA_NAME + ".invalidations";
+
+    /**
+     * Returns the topic of a table.
+     *
+     * @param table  table
+     * @return topic in the form {@code grain.table}
+     */
+    static String topic(BasicTable table) {
+        return table.getGrain().getName() + "." + table.getName();
+    }
+
+    /**
+     * Registers a listener run when the data of a topic changes.
+     *
+     * @param topic  topic
+     * @param listener  listener
+     */
+    void subscribe(String topic, Runnable listener);
+
+    /**
+     * Whether there are listeners of a topic. Topics without listeners are not published.
+     *
+     * @param topic  topic
+     * @return
+     */
+    boolean isSubscribed(String topic);
+
+    /**
+     * Announces that the data of the topics changed.
+     *
+     * @param topics  topics
+     */
+    void publish(Collection<String> topics);
+
+    /**
+     * Starts receiving the messages of the other nodes. Called once the database is upgraded.
+     */
+    default void start() {
+    }
+
+    /**
+     * Stops receiving the messages of the other nodes.
+     */
+    @Override
+    void close();
+
+}
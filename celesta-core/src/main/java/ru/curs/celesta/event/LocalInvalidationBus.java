@@ -0,0 +1,19 @@
+package ru.curs.celesta.event;
+
+import java.util.Set;
+
+/**
+ * In-process invalidation bus, for a single Celesta node. Published topics are only
+ * delivered to the listeners of this node.
+ */
+public final class LocalInvalidationBus extends AbstractInvalidationBus {
+
+    @Override
+    protected void send(Set<String> topics) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -1,6 +1,8 @@
 package ru.curs.celesta.event;
 
 import ru.curs.celesta.dbutils.Cursor;
+import ru.curs.celesta.diagnostics.CelestaEvents;
+import ru.curs.celesta.diagnostics.FlightRecorderEvent;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -34,8 +36,16 @@ public final class TriggerDispatcher {
         Map<Class<? extends Cursor>, List<Consumer<?>>> cursorClassMap = triggerMap.get(type);
         final Class<? extends Cursor> cursorClass = cursor.getClass();
         List<Consumer<?>> triggers = cursorClassMap.getOrDefault(cursorClass, Collections.emptyList());
+        FlightRecorderEvent event = triggers.isEmpty()
+                ? null : CelestaEvents.TRIGGER.begin();
         triggers.forEach(consumer ->
                 ((Consumer<? super Cursor>) consumer).accept(cursor));
+        if (event != null && event.isActive()) {
+            event.set("type", type.name())
+                    .set("cursor", cursorClass.getName())
+                    .set("triggers", triggers.size())
+                    .commit();
+        }
     }
 
 }
@@ -1,4 +1,4 @@
 /**
- * Trigger event dispatching.
+ * Trigger event dispatching and cache invalidation events.
  */
 package ru.curs.celesta.event;
@@ -34,7 +34,7 @@
  */
 
 /**Celesta system grain. Not for modification.*/
-create grain celesta version '1.15';
+create grain celesta version '1.16';
 
 /**Active grains list.
    {implements: [ru.curs.celesta.syscursors.ISchemaCursor]}*/
@@ -192,4 +192,13 @@ create table calllog (
   duration int not null
 ) with no version check;
 
-create index ixsessionlog on sessionlog (sessionid, userid, entryno);
\ No newline at end of file
+create index ixsessionlog on sessionlog (sessionid, userid, entryno);
+
+/**Change counters of the topics (tables) of cached data, polled by the Celesta nodes
+to invalidate their caches.*/
+create table invalidations(
+  /**topic in the form grain.table*/
+  topic varchar(100) not null primary key,
+  /**number of changes of the topic*/
+  counter int not null default 0
+);
@@ -2,14 +2,18 @@ package ru.curs.celesta.plugin.maven;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Consumer;
@@ -21,9 +25,13 @@ import org.apache.maven.plugin.MojoFailureException;
 
 import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.score.Namespace;
+import ru.curs.celesta.score.ParseException;
 import ru.curs.celesta.score.Score;
+import ru.curs.celesta.score.ScoreSnapshot;
+import ru.curs.celesta.score.discovery.ScoreByScoreResourceDiscovery;
 import ru.curs.celesta.score.io.FileResource;
 import ru.curs.celesta.score.io.Resource;
+import ru.curs.celesta.score.io.UrlResource;
 
 abstract class AbstractGenScoreResourcesMojo extends AbstractCelestaMojo {
 
@@ -69,7 +77,8 @@ abstract class AbstractGenScoreResourcesMojo extends AbstractCelestaMojo {
         }
 
         copyGrainSourceFilesToResources(grainsSources);
-        generateScoreFiles(grainsSources);
+        Collection<String> relativeSourcesPaths = generateScoreFiles(grainsSources);
+        generateScoreSnapshot(relativeSourcesPaths);
 
         org.apache.maven.model.Resource scoreResource = new org.apache.maven.model.Resource();
         scoreResource.setDirectory(getResourcesRoot().getAbsolutePath());
@@ -123,7 +132,8 @@ abstract class AbstractGenScoreResourcesMojo extends AbstractCelestaMojo {
         }
     }
 
-    private void generateScoreFiles(List<GrainSourceBag> grainsSources) throws MojoExecutionException {
+    private Collection<String> generateScoreFiles(List<GrainSourceBag> grainsSources)
+            throws MojoExecutionException {
 
         Collection<String> relativeSourcesPaths = grainsSources.stream()
                 .map(gs -> gs.getGrainSourceRelativePath().toString())
@@ -136,6 +146,35 @@ abstract class AbstractGenScoreResourcesMojo extends AbstractCelestaMojo {
         } catch (IOException ex) {
             throw new MojoExecutionException("Error writing a score.files", ex);
         }
+        return relativeSourcesPaths;
+    }
+
+    private void generateScoreSnapshot(Collection<String> relativeSourcesPaths) throws MojoExecutionException {
+
+        Path scoreSnapshotPath = new File(getResourcesRoot(), ScoreSnapshot.FILE_NAME).toPath();
+        try {
+            Files.deleteIfExists(scoreSnapshotPath);
+
+            // the score is discovered the same way it is discovered at runtime
+            URL scoreFilesUrl = new File(getResourcesRoot(), SCORE_FILES_FILE_NAME).toURI().toURL();
+            Score score = new Score.ScoreBuilder<>(Score.class)
+                    .scoreDiscovery(new ScoreByScoreResourceDiscovery(scoreFilesUrl))
+                    .build();
+
+            Resource scoreFilesResource = new UrlResource(scoreFilesUrl);
+            Map<Resource, String> relativePaths = new HashMap<>();
+            for (String path : relativeSourcesPaths) {
+                relativePaths.put(scoreFilesResource.createRelative(path), path);
+            }
+            try (OutputStream os = Files.newOutputStream(scoreSnapshotPath)) {
+                ScoreSnapshot.write(score, relativePaths::get, os);
+            }
+        } catch (ParseException | CelestaException ex) {
+            // e.g. the score refers to grains of its dependencies
+            this.getLog().info("Score snapshot is not generated: " + ex.getMessage());
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Error writing a score snapshot", ex);
+        }
     }
 
     private static class GrainSourceBag {
@@ -11,6 +11,7 @@ import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
 import com.squareup.javapoet.WildcardTypeName;
 
 import ru.curs.celesta.CallContext;
@@ -22,6 +23,7 @@ import ru.curs.celesta.dbutils.BasicDataAccessor;
 import ru.curs.celesta.dbutils.CelestaGenerated;
 import ru.curs.celesta.dbutils.Cursor;
 import ru.curs.celesta.dbutils.CursorIterator;
+import ru.curs.celesta.dbutils.CursorSpliterator;
 import ru.curs.celesta.dbutils.MaterializedViewCursor;
 import ru.curs.celesta.dbutils.ParameterizedViewCursor;
 import ru.curs.celesta.dbutils.ReadOnlyTableCursor;
@@ -80,6 +82,7 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public final class CursorGenerator {
     private static final String GRAIN_FIELD_NAME = "GRAIN_NAME";
@@ -212,6 +215,7 @@ public final class CursorGenerator {
 
             cursorClass.addMethods(buildCompileCopying(ge, classType, columns.keySet(), isVersionedGe));
             cursorClass.addMethod(buildIterator(classType));
+            cursorClass.addMethod(buildStream(classType));
         }
 
         cursorClass.addMethods(buildGrainNameAndObjectName());
@@ -895,4 +899,18 @@ public final class CursorGenerator {
                 .build();
     }
 
+    private static MethodSpec buildStream(TypeName selfTypeName) {
+        TypeVariableName r = TypeVariableName.get("R");
+        TypeName projection = ParameterizedTypeName.get(ClassName.get(Function.class),
+                WildcardTypeName.supertypeOf(selfTypeName), WildcardTypeName.subtypeOf(r));
+
+        return MethodSpec.methodBuilder("stream")
+                .addModifiers(Modifier.PUBLIC)
+                .addTypeVariable(r)
+                .returns(ParameterizedTypeName.get(ClassName.get(Stream.class), r))
+                .addParameter(projection, "projection")
+                .addStatement("return $T.stream(this, projection)", CursorSpliterator.class)
+                .build();
+    }
+
 }
@@ -7,12 +7,15 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import javax.annotation.Generated;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.CelestaGenerated;
 import ru.curs.celesta.dbutils.CursorIterator;
+import ru.curs.celesta.dbutils.CursorSpliterator;
 import ru.curs.celesta.dbutils.ReadOnlyTableCursor;
 import ru.curs.celesta.score.ColumnMeta;
 import ru.curs.celesta.score.ReadOnlyTable;
@@ -122,6 +125,10 @@ public class TestRoTableCursor extends ReadOnlyTableCursor implements Iterable<T
         return new CursorIterator<TestRoTableCursor>(this);
     }
 
+    public <R> Stream<R> stream(Function<? super TestRoTableCursor, ? extends R> projection) {
+        return CursorSpliterator.stream(this, projection);
+    }
+
     @Override
     protected String _grainName() {
         return GRAIN_NAME;
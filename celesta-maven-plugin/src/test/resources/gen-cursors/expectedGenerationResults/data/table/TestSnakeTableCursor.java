@@ -14,6 +14,8 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import javax.annotation.Generated;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.ICelesta;
@@ -22,6 +24,7 @@ import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.CelestaGenerated;
 import ru.curs.celesta.dbutils.Cursor;
 import ru.curs.celesta.dbutils.CursorIterator;
+import ru.curs.celesta.dbutils.CursorSpliterator;
 import ru.curs.celesta.event.TriggerType;
 import ru.curs.celesta.score.ColumnMeta;
 import ru.curs.celesta.score.Table;
@@ -310,6 +313,10 @@ public class TestSnakeTableCursor extends Cursor implements Iterable<TestSnakeTa
         return new CursorIterator<TestSnakeTableCursor>(this);
     }
 
+    public <R> Stream<R> stream(Function<? super TestSnakeTableCursor, ? extends R> projection) {
+        return CursorSpliterator.stream(this, projection);
+    }
+
     @Override
     protected String _grainName() {
         return GRAIN_NAME;
@@ -16,6 +16,8 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import javax.annotation.Generated;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.ICelesta;
@@ -24,6 +26,7 @@ import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.CelestaGenerated;
 import ru.curs.celesta.dbutils.Cursor;
 import ru.curs.celesta.dbutils.CursorIterator;
+import ru.curs.celesta.dbutils.CursorSpliterator;
 import ru.curs.celesta.event.TriggerType;
 import ru.curs.celesta.score.ColumnMeta;
 import ru.curs.celesta.score.Table;
@@ -389,6 +392,10 @@ public class TestTableCursor extends Cursor implements Iterable<TestTableCursor>
         return new CursorIterator<TestTableCursor>(this);
     }
 
+    public <R> Stream<R> stream(Function<? super TestTableCursor, ? extends R> projection) {
+        return CursorSpliterator.stream(this, projection);
+    }
+
     @Override
     protected String _grainName() {
         return GRAIN_NAME;
@@ -8,12 +8,15 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import javax.annotation.Generated;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.CelestaGenerated;
 import ru.curs.celesta.dbutils.CursorIterator;
+import ru.curs.celesta.dbutils.CursorSpliterator;
 import ru.curs.celesta.dbutils.MaterializedViewCursor;
 import ru.curs.celesta.score.ColumnMeta;
 import ru.curs.celesta.score.MaterializedView;
@@ -188,6 +191,10 @@ public class TestTableMvCursor extends MaterializedViewCursor implements Iterabl
         return new CursorIterator<TestTableMvCursor>(this);
     }
 
+    public <R> Stream<R> stream(Function<? super TestTableMvCursor, ? extends R> projection) {
+        return CursorSpliterator.stream(this, projection);
+    }
+
     @Override
     protected String _grainName() {
         return GRAIN_NAME;
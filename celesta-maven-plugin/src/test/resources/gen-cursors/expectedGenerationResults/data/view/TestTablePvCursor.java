@@ -9,12 +9,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import javax.annotation.Generated;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.CelestaGenerated;
 import ru.curs.celesta.dbutils.CursorIterator;
+import ru.curs.celesta.dbutils.CursorSpliterator;
 import ru.curs.celesta.dbutils.ParameterizedViewCursor;
 import ru.curs.celesta.score.ColumnMeta;
 import ru.curs.celesta.score.ParameterizedView;
@@ -140,6 +143,10 @@ public class TestTablePvCursor extends ParameterizedViewCursor implements Iterab
         return new CursorIterator<TestTablePvCursor>(this);
     }
 
+    public <R> Stream<R> stream(Function<? super TestTablePvCursor, ? extends R> projection) {
+        return CursorSpliterator.stream(this, projection);
+    }
+
     @Override
     protected String _grainName() {
         return GRAIN_NAME;
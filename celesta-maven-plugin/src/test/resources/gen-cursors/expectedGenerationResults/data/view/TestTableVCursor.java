@@ -12,12 +12,15 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import javax.annotation.Generated;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.CelestaGenerated;
 import ru.curs.celesta.dbutils.CursorIterator;
+import ru.curs.celesta.dbutils.CursorSpliterator;
 import ru.curs.celesta.dbutils.ViewCursor;
 import ru.curs.celesta.score.ColumnMeta;
 import ru.curs.celesta.score.View;
@@ -154,6 +157,10 @@ public class TestTableVCursor extends ViewCursor implements Iterable<TestTableVC
         return new CursorIterator<TestTableVCursor>(this);
     }
 
+    public <R> Stream<R> stream(Function<? super TestTableVCursor, ? extends R> projection) {
+        return CursorSpliterator.stream(this, projection);
+    }
+
     @Override
     protected String _grainName() {
         return GRAIN_NAME;
@@ -1,6 +1,8 @@
 package ru.curs.celesta;
 
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.diagnostics.CelestaEvents;
+import ru.curs.celesta.diagnostics.FlightRecorderEvent;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
@@ -20,8 +22,13 @@ public final class DatasourceConnectionPool implements ConnectionPool {
         if (isClosed.get()) {
             throw new CelestaException("ConnectionPool is closed");
         }
+        FlightRecorderEvent event = CelestaEvents.CONNECTION_ACQUISITION.begin();
         try {
-            return dataSource.getConnection();
+            Connection result = dataSource.getConnection();
+            if (event.isActive()) {
+                event.set("pool", dataSource.getClass().getName()).commit();
+            }
+            return result;
         } catch (SQLException e) {
             CelestaException celestaException =
                     new CelestaException("Could not connect to the database with error: %s",
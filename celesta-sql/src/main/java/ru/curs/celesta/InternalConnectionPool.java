@@ -11,6 +11,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.diagnostics.CelestaEvents;
+import ru.curs.celesta.diagnostics.FlightRecorderEvent;
 
 /**
  * Database connection pool.
@@ -69,11 +71,13 @@ public final class InternalConnectionPool implements ConnectionPool {
             throw new CelestaException("ConnectionPool is closed");
         }
 
+        FlightRecorderEvent event = CelestaEvents.CONNECTION_ACQUISITION.begin();
         // First, we are trying to provide a connection from pool
         Connection c = pool.poll();
         while (c != null) {
             try {
                 if (dbAdaptor.isValidConnection(c, 1)) {
+                    commitEvent(event, false);
                     return c;
                 }
             } catch (CelestaException e) {
@@ -107,6 +111,7 @@ public final class InternalConnectionPool implements ConnectionPool {
                     }
                 }
             };
+            commitEvent(event, true);
             return celestaConnection;
 
         } catch (SQLException | ClassNotFoundException e) {
@@ -116,6 +121,14 @@ public final class InternalConnectionPool implements ConnectionPool {
 
     }
 
+    private static void commitEvent(FlightRecorderEvent event, boolean newConnection) {
+        if (event.isActive()) {
+            event.set("pool", InternalConnectionPool.class.getSimpleName())
+                    .set("newConnection", newConnection)
+                    .commit();
+        }
+    }
+
     /**
      * Closes up connection pool and all its connections, and makes it inaccessible.
      */
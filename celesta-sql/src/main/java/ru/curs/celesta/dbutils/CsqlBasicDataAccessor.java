@@ -23,7 +23,7 @@ public abstract class CsqlBasicDataAccessor<T extends ICallContext> implements C
         validateInitContext(context);
 
         this.context = context;
-        this.conn = context.getConn();
+        this.conn = chooseConnection();
         try {
             if (conn.isClosed()) {
                 throw new CelestaException("Trying to create a cursor on closed connection.");
@@ -31,7 +31,27 @@ public abstract class CsqlBasicDataAccessor<T extends ICallContext> implements C
         } catch (SQLException e) {
             throw new CelestaException(e.getMessage());
         }
-        this.db = callContext().getDbAdaptor();
+        this.db = chooseDbAdaptor();
+    }
+
+    /**
+     * Returns the connection the data accessor works with. Called by the constructor,
+     * returns the connection of the call context by default.
+     *
+     * @return
+     */
+    protected Connection chooseConnection() {
+        return context.getConn();
+    }
+
+    /**
+     * Returns the DB adaptor of the connection the data accessor works with.
+     * Called by the constructor, returns the DB adaptor of the call context by default.
+     *
+     * @return
+     */
+    protected DBAdaptor chooseDbAdaptor() {
+        return context.getDbAdaptor();
     }
 
     /**
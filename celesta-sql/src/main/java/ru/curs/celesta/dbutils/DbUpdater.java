@@ -4,11 +4,14 @@ import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.ConnectionPool;
 import ru.curs.celesta.ICallContext;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
 import ru.curs.celesta.dbutils.meta.DbColumnInfo;
 import ru.curs.celesta.dbutils.meta.DbFkInfo;
 import ru.curs.celesta.dbutils.meta.DbIndexInfo;
 import ru.curs.celesta.dbutils.meta.DbPkInfo;
 import ru.curs.celesta.dbutils.meta.DbSequenceInfo;
+import ru.curs.celesta.diagnostics.CelestaEvents;
+import ru.curs.celesta.diagnostics.FlightRecorderEvent;
 import ru.curs.celesta.event.TriggerQuery;
 import ru.curs.celesta.event.TriggerType;
 import ru.curs.celesta.score.AbstractScore;
@@ -41,6 +44,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 
 public abstract class DbUpdater<T extends ICallContext> {
 
@@ -58,8 +62,11 @@ public abstract class DbUpdater<T extends ICallContext> {
     protected final DBAdaptor dbAdaptor;
     protected final AbstractScore score;
     protected final ConnectionPool connectionPool;
+    protected final boolean forceDdInitialize;
     protected ISchemaCursor schemaCursor;
-    private final boolean forceDdInitialize;
+    private int parallelism = 1;
+    private MaterializedViewBuilder mviewBuilder;
+    private final List<MaterializedView> grainViewBuilds = new ArrayList<>();
 
     public DbUpdater(
             ConnectionPool connectionPool, AbstractScore score, boolean forceDdInitialize, DBAdaptor dbAdaptor) {
@@ -73,10 +80,54 @@ public abstract class DbUpdater<T extends ICallContext> {
 
     protected abstract T createContext();
 
+    /**
+     * Creates an updater of the same kind that upgrades a grain in its own call context
+     * when grains are upgraded in parallel.
+     *
+     * @return
+     */
+    protected abstract DbUpdater<T> createWorker();
+
     protected abstract void initDataAccessors(T context);
 
     protected abstract String getSchemasTableName();
 
+    /**
+     * Sets maximum number of grains upgraded at the same time. Grains that don't
+     * depend on each other are upgraded concurrently on separate connections when
+     * it is greater than 1. Default value is 1, grains are upgraded one by one.
+     *
+     * @param parallelism  maximum number of grains upgraded at the same time
+     */
+    @SuppressWarnings("HiddenField")
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new CelestaException("DB update parallelism should be positive, got %d.", parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets building of materialized views in chunks. A view that has to be (re)created
+     * is built after the upgrade of its grain by ranges of values of its first group-by
+     * column, each range in a separate transaction, instead of a single statement within
+     * the upgrade. Default value of the number of rows is 0, views are not built in chunks.
+     *
+     * @param chunkRows  number of rows of the table per chunk, 0 to build views within the upgrade
+     * @param buildParallelism  maximum number of chunks built at the same time
+     */
+    public void setMaterializedViewBuild(long chunkRows, int buildParallelism) {
+        if (chunkRows < 0) {
+            throw new CelestaException("Materialized view chunk size should not be negative, got %d.", chunkRows);
+        }
+        if (buildParallelism < 1) {
+            throw new CelestaException("Materialized view build parallelism should be positive, got %d.",
+                    buildParallelism);
+        }
+        this.mviewBuilder = chunkRows > 0
+                ? new MaterializedViewBuilder(dbAdaptor, connectionPool, chunkRows, buildParallelism) : null;
+    }
+
     /**
      * Updates system schema.
      */
@@ -145,21 +196,29 @@ public abstract class DbUpdater<T extends ICallContext> {
 
             // Выполняем итерацию по гранулам.
             boolean success = true;
-            for (Grain g : grains) {
-                if (!g.isAutoupdate()) {
-                    continue;
-                }
-                // Запись о грануле есть?
-                GrainInfo gi = dbGrains.get(g.getName());
-                if (gi == null) {
-                    insertGrainRec(g);
-                    success = updateGrain(g) & success;
-                } else {
-                    // Запись есть -- решение об апгрейде принимается на основе
-                    // версии и контрольной суммы.
-                    success = decideToUpgrade(g, gi) & success;
+            if (parallelism > 1) {
+                success = updateGrainsInParallel(grains, dbGrains);
+            } else {
+                for (Grain g : grains) {
+                    if (!g.isAutoupdate()) {
+                        continue;
+                    }
+                    // Запись о грануле есть?
+                    GrainInfo gi = dbGrains.get(g.getName());
+                    if (gi == null) {
+                        insertGrainRec(g);
+                        success = updateGrain(g) & success;
+                    } else {
+                        // Запись есть -- решение об апгрейде принимается на основе
+                        // версии и контрольной суммы.
+                        success = decideToUpgrade(g, gi) & success;
+                    }
                 }
             }
+            restartMaterializedViewBuilds(grains, dbGrains);
+            if (mviewBuilder != null) {
+                mviewBuilder.build();
+            }
             if (!success) {
                 throw new CelestaException(
                         "Not all %s were updated successfully, see %s.%s table data for details.",
@@ -170,6 +229,39 @@ public abstract class DbUpdater<T extends ICallContext> {
     }
 
 
+    /**
+     * Restarts the builds of materialized views interrupted after the upgrade of their grains,
+     * e.g. by a failure or a shutdown. Such grains are up to date and are not upgraded again,
+     * only the remaining build queues of their views show that the views are not completely built.
+     * The views are built by chunks if chunked build is on, otherwise at once.
+     */
+    private void restartMaterializedViewBuilds(List<Grain> grains, Map<String, GrainInfo> dbGrains) {
+        Connection conn = schemaCursor.callContext().getConn();
+        List<MaterializedView> views = new ArrayList<>();
+        for (Grain g : grains) {
+            GrainInfo gi = dbGrains.get(g.getName());
+            if (!g.isAutoupdate() || gi == null || gi.lock || isUpgradeNeeded(g, gi)) {
+                continue;
+            }
+            for (MaterializedView mv : g.getElements(MaterializedView.class).values()) {
+                if (dbAdaptor.tableExists(conn, g.getName(), mv.getBuildQueueName())) {
+                    dbAdaptor.restartMaterializedViewBuild(conn, mv);
+                    views.add(mv);
+                }
+            }
+        }
+        if (views.isEmpty()) {
+            return;
+        }
+        connectionPool.commit(conn);
+        MaterializedViewBuilder builder = mviewBuilder != null ? mviewBuilder
+                : new MaterializedViewBuilder(dbAdaptor, connectionPool, Long.MAX_VALUE, 1);
+        builder.add(views);
+        if (mviewBuilder == null) {
+            builder.build();
+        }
+    }
+
     /**
      * Updates system grain.
      *
@@ -213,13 +305,47 @@ public abstract class DbUpdater<T extends ICallContext> {
                 .insert();
     }
 
+    /**
+     * Upgrades grains concurrently, each grain in a call context of its own worker.
+     * Records of new grains are inserted beforehand, so that the workers find them.
+     */
+    private boolean updateGrainsInParallel(List<Grain> grains, Map<String, GrainInfo> dbGrains) {
+        List<Grain> grainsToUpdate = new ArrayList<>();
+        for (Grain g : grains) {
+            if (!g.isAutoupdate()) {
+                continue;
+            }
+            GrainInfo gi = dbGrains.get(g.getName());
+            if (gi == null) {
+                insertGrainRec(g);
+                grainsToUpdate.add(g);
+            } else if (isUpgradeNeeded(g, gi)) {
+                grainsToUpdate.add(g);
+            }
+        }
+        connectionPool.commit(schemaCursor.callContext().getConn());
+
+        return new ParallelGrainUpdater(grainsToUpdate, parallelism, g -> {
+            DbUpdater<T> worker = createWorker();
+            worker.mviewBuilder = mviewBuilder;
+            try (T context = worker.createContext()) {
+                worker.initDataAccessors(context);
+                return worker.updateGrain(g);
+            }
+        }).update();
+    }
+
     private boolean decideToUpgrade(Grain g, GrainInfo gi) {
+        return !isUpgradeNeeded(g, gi) || updateGrain(g);
+    }
+
+    private boolean isUpgradeNeeded(Grain g, GrainInfo gi) {
         if (gi.lock) {
-            return true;
+            return false;
         }
 
         if (gi.recover) {
-            return updateGrain(g);
+            return true;
         }
 
         // Как соотносятся версии?
@@ -239,15 +365,13 @@ public abstract class DbUpdater<T extends ICallContext> {
                         g.getName(), g.getVersion().toString(), gi.version.toString());
             case GREATER:
                 // Версия выросла -- апгрейдим.
-                return updateGrain(g);
+                return true;
             case EQUALS:
                 // Версия не изменилась: апгрейдим лишь в том случае, если
                 // изменилась контрольная сумма.
-                if (gi.length != g.getLength() || gi.checksum != g.getChecksum()) {
-                    return updateGrain(g);
-                }
+                return gi.length != g.getLength() || gi.checksum != g.getChecksum();
             default:
-                return true;
+                return false;
         }
     }
 
@@ -262,61 +386,70 @@ public abstract class DbUpdater<T extends ICallContext> {
         schemaCursor.setState(ISchemaCursor.UPGRADING);
         schemaCursor.update();
         connectionPool.commit(schemaCursor.callContext().getConn());
+        grainViewBuilds.clear();
 
         // теперь собственно обновление гранулы
         try {
             // Схему создаём, если ещё не создана.
-            dbAdaptor.createSchemaIfNotExists(g.getName());
+            ddlStep(g, "createSchema", null, () -> dbAdaptor.createSchemaIfNotExists(g.getName()));
 
             beforeGrainUpdating(g);
 
             // Удаляем все представления
-            dropAllViews(g);
+            ddlStep(g, "dropViews", null, () -> dropAllViews(g));
             // Удаляем все параметризованные представления
-            dropAllParameterizedViews(g);
+            ddlStep(g, "dropParameterizedViews", null, () -> dropAllParameterizedViews(g));
+
+            // Загружаем сведения о таблицах и последовательностях схемы
+            DbCatalog catalog = ddlStep(g, "loadCatalog", null,
+                    () -> dbAdaptor.getCatalog(schemaCursor.callContext().getConn(), g));
 
             // Выполняем удаление ненужных индексов, чтобы облегчить задачу
             // обновления столбцов на таблицах.
-            dropOrphanedGrainIndices(g);
+            ddlStep(g, "dropOrphanedIndices", null, () -> dropOrphanedGrainIndices(g, catalog));
 
             // Сбрасываем внешние ключи, более не включённые в метаданные
-            List<DbFkInfo> dbFKeys = dropOrphanedGrainFKeys(g);
+            List<DbFkInfo> dbFKeys = ddlStep(g, "dropOrphanedForeignKeys", null,
+                    () -> dropOrphanedGrainFKeys(g));
 
             Set<String> modifiedTablesMap = new HashSet<>();
 
-            updateSequences(g);
+            ddlStep(g, "updateSequences", null, () -> updateSequences(g, catalog));
 
             // Обновляем все таблицы.
             for (BasicTable t : g.getElements(BasicTable.class).values()) {
-                if (updateTable(t, dbFKeys)) {
+                if (ddlStep(g, "updateTable", t.getName(), () -> updateTable(t, dbFKeys, catalog))) {
                     modifiedTablesMap.add(t.getName());
                 }
             }
 
             // Обновляем все индексы.
-            updateGrainIndices(g);
+            ddlStep(g, "updateIndices", null, () -> updateGrainIndices(g));
 
             // Обновляем внешние ключи
-            updateGrainFKeys(g);
+            ddlStep(g, "updateForeignKeys", null, () -> updateGrainFKeys(g));
 
             // Создаём параметризованные представления заново
-            createParameterizedViews(g);
+            ddlStep(g, "createParameterizedViews", null, () -> createParameterizedViews(g));
 
             // Обновляем все материализованные представления.
             for (MaterializedView mv : g.getElements(MaterializedView.class).values()) {
                 String tableName = mv.getRefTable().getTable().getName();
-                updateMaterializedView(mv, modifiedTablesMap.contains(tableName));
+                ddlStep(g, "updateMaterializedView", mv.getName(),
+                        () -> updateMaterializedView(mv, modifiedTablesMap.contains(tableName), catalog));
             }
 
             //Для всех таблиц обновляем триггеры материализованных представлений
             for (BasicTable t : g.getElements(BasicTable.class).values()) {
                 final Connection conn = schemaCursor.callContext().getConn();
-                dbAdaptor.dropTableTriggersForMaterializedViews(conn, t);
-                dbAdaptor.createTableTriggersForMaterializedViews(conn, t);
+                ddlStep(g, "updateMaterializedViewTriggers", t.getName(), () -> {
+                    dbAdaptor.dropTableTriggersForMaterializedViews(conn, t);
+                    dbAdaptor.createTableTriggersForMaterializedViews(conn, t);
+                });
             }
 
             // Создаём представления заново
-            createViews(g);
+            ddlStep(g, "createViews", null, () -> createViews(g));
 
             processGrainMeta(g);
 
@@ -331,6 +464,9 @@ public abstract class DbUpdater<T extends ICallContext> {
             schemaCursor.setVersion(g.getVersion().toString());
             schemaCursor.update();
             connectionPool.commit(schemaCursor.callContext().getConn());
+            if (mviewBuilder != null) {
+                mviewBuilder.add(grainViewBuilds);
+            }
             return true;
         } catch (CelestaException e) {
             String newMsg = "";
@@ -349,6 +485,25 @@ public abstract class DbUpdater<T extends ICallContext> {
         }
     }
 
+    private void ddlStep(Grain g, String step, String element, Runnable action) {
+        ddlStep(g, step, element, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T ddlStep(Grain g, String step, String element, Supplier<T> action) {
+        FlightRecorderEvent event = CelestaEvents.DDL_STEP.begin();
+        T result = action.get();
+        if (event.isActive()) {
+            event.set("grain", g.getName())
+                    .set("step", step)
+                    .set("element", element)
+                    .commit();
+        }
+        return result;
+    }
+
     /**
      * Called before the grain is updated.
      * @param g the grain being updated
@@ -390,12 +545,12 @@ public abstract class DbUpdater<T extends ICallContext> {
         }
     }
 
-    final void updateSequences(Grain g) {
+    final void updateSequences(Grain g, DbCatalog catalog) {
         Connection conn = schemaCursor.callContext().getConn();
 
         for (SequenceElement s : g.getElements(SequenceElement.class).values()) {
-            if (dbAdaptor.sequenceExists(conn, g.getName(), s.getName())) {
-                DbSequenceInfo sequenceInfo = dbAdaptor.getSequenceInfo(conn, s);
+            if (catalog.sequenceExists(s.getName())) {
+                DbSequenceInfo sequenceInfo = catalog.getSequenceInfo(s.getName());
                 if (sequenceInfo.reflects(s)) {
                     dbAdaptor.alterSequence(conn, s);
                 }
@@ -459,7 +614,7 @@ public abstract class DbUpdater<T extends ICallContext> {
         return dbFKeys;
     }
 
-    final void dropOrphanedGrainIndices(Grain g) {
+    final void dropOrphanedGrainIndices(Grain g, DbCatalog catalog) {
         /*
          * In general this method repeats the code from updateGrainIndices but only
          * in the part of deletion of indices. It is needed to clear up all indices
@@ -488,7 +643,7 @@ public abstract class DbUpdater<T extends ICallContext> {
 
                 // Deletion of indices at those fields that will undergo a change
                 for (Map.Entry<String, Column<?>> ee : e.getValue().getColumns().entrySet()) {
-                    DbColumnInfo ci = dbAdaptor.getColumnInfo(conn, ee.getValue());
+                    DbColumnInfo ci = catalog.getColumnInfo(ee.getValue().getParentTable().getName(), ee.getKey());
                     if (ci == null || !ci.reflects(ee.getValue())) {
                         dbAdaptor.dropIndex(g, dBIndexInfo);
                         break;
@@ -521,7 +676,7 @@ public abstract class DbUpdater<T extends ICallContext> {
         }
     }
 
-    final boolean updateTable(BasicTable t, List<DbFkInfo> dbFKeys) {
+    final boolean updateTable(BasicTable t, List<DbFkInfo> dbFKeys, DbCatalog catalog) {
         // If table was compiled with option NO AUTOUPDATE then nothing is to be done
         if (!t.isAutoUpdate()) {
             return false;
@@ -529,25 +684,28 @@ public abstract class DbUpdater<T extends ICallContext> {
 
         final Connection conn = schemaCursor.callContext().getConn();
 
-        if (!dbAdaptor.tableExists(conn, t.getGrain().getName(), t.getName())) {
+        if (!catalog.tableExists(t.getName())) {
             // Table doesn't exist in the DB, create it from scratch.
             dbAdaptor.createTable(conn, t);
             return true;
         }
 
-        DbPkInfo pkInfo;
-        Set<String> dbColumns = dbAdaptor.getColumns(conn, t);
-        boolean modified = updateColumns(t, conn, dbColumns, dbFKeys);
+        DbPkInfo pkInfo = catalog.getPKInfo(t.getName());
+        Set<String> dbColumns = catalog.getColumns(t.getName());
+        boolean modified = updateColumns(t, conn, dbColumns, dbFKeys, pkInfo, catalog);
 
         // For versioned tables synchronize 'recversion' field
         if (t instanceof Table) {
             Table tab = (Table) t;
-            modified = processRecVersion(conn, dbColumns, modified, tab);
+            modified = processRecVersion(conn, dbColumns, modified, tab, catalog);
         }
 
         // Once again check the primary key, and if needed (in case it doesn't exist or
-        // had been dropped) create it.
-        pkInfo = dbAdaptor.getPKInfo(conn, t);
+        // had been dropped) create it. The key is intact if it reflects the table and
+        // no columns were changed.
+        if (modified || pkInfo.isEmpty() || !pkInfo.reflects(t)) {
+            pkInfo = dbAdaptor.getPKInfo(conn, t);
+        }
         if (pkInfo.isEmpty()) {
             dbAdaptor.createPK(conn, t);
         }
@@ -557,10 +715,11 @@ public abstract class DbUpdater<T extends ICallContext> {
         return modified;
     }
 
-    private boolean processRecVersion(Connection conn, Set<String> dbColumns, boolean modified, Table tab) {
+    private boolean processRecVersion(
+            Connection conn, Set<String> dbColumns, boolean modified, Table tab, DbCatalog catalog) {
         if (tab.isVersioned()) {
             if (dbColumns.contains(VersionedElement.REC_VERSION)) {
-                DbColumnInfo ci = dbAdaptor.getColumnInfo(conn, tab.getRecVersionField());
+                DbColumnInfo ci = catalog.getColumnInfo(tab.getName(), VersionedElement.REC_VERSION);
                 if (!ci.reflects(tab.getRecVersionField())) {
                     dbAdaptor.updateColumn(conn, tab.getRecVersionField(), ci);
                     modified = true;
@@ -573,14 +732,17 @@ public abstract class DbUpdater<T extends ICallContext> {
         return modified;
     }
 
-    final void updateMaterializedView(MaterializedView mv, boolean refTableIsModified) {
+    final void updateMaterializedView(MaterializedView mv, boolean refTableIsModified, DbCatalog catalog) {
         final Connection conn = schemaCursor.callContext().getConn();
 
-        boolean mViewExists = dbAdaptor.tableExists(conn, mv.getGrain().getName(), mv.getName());
+        boolean mViewExists = catalog.tableExists(mv.getName());
+
+        // the build queue remains if the view was not completely built
+        boolean mViewIsBuilt = !catalog.tableExists(mv.getBuildQueueName());
 
         if (mViewExists) {
 
-            if (!refTableIsModified) {
+            if (!refTableIsModified && mViewIsBuilt) {
 
                 //В теле insert-триггера должна храниться контрольная сумма.
                 String insertTriggerName = mv.getTriggerName(TriggerType.POST_INSERT);
@@ -591,7 +753,8 @@ public abstract class DbUpdater<T extends ICallContext> {
 
                 Optional<String> insertTriggerBody = dbAdaptor.getTriggerBody(conn, query);
                 boolean checksumIsMatched = insertTriggerBody.map(b -> b.contains(
-                        String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE, mv.getChecksum()))).orElse(false);
+                        String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE,
+                                dbAdaptor.getMaterializedViewChecksum(mv)))).orElse(false);
                 if (checksumIsMatched) {
                     return;
                 }
@@ -600,18 +763,32 @@ public abstract class DbUpdater<T extends ICallContext> {
             //Удаляем materialized view
             dbAdaptor.dropTable(conn, mv);
         }
+        // queued changes are covered by the data initialization
+        if (catalog.tableExists(mv.getQueueName())) {
+            dbAdaptor.dropMaterializedViewQueue(conn, mv);
+        }
+        if (!mViewIsBuilt) {
+            dbAdaptor.dropMaterializedViewBuildQueue(conn, mv);
+        }
 
         //1. Таблицы не существует в базе данных, создаём с нуля.
         dbAdaptor.createTable(conn, mv);
+        if (mv.isDeferred()) {
+            dbAdaptor.createMaterializedViewQueue(conn, mv);
+        }
         //2. Проинициализировать данные материального представления
-        dbAdaptor.initDataForMaterializedView(conn, mv);
+        if (mviewBuilder != null) {
+            dbAdaptor.beginMaterializedViewBuild(conn, mv);
+            grainViewBuilds.add(mv);
+        } else {
+            dbAdaptor.initDataForMaterializedView(conn, mv);
+        }
     }
 
-    private boolean updateColumns(
-            TableElement t, final Connection conn, Set<String> dbColumns, List<DbFkInfo> dbFKeys) {
+    private boolean updateColumns(TableElement t, final Connection conn, Set<String> dbColumns,
+                                  List<DbFkInfo> dbFKeys, DbPkInfo pkInfo, DbCatalog catalog) {
         // Таблица существует в базе данных, определяем: надо ли удалить
         // первичный ключ
-        DbPkInfo pkInfo = dbAdaptor.getPKInfo(conn, t);
         boolean result = false;
         boolean keyDropped = pkInfo.isEmpty();
         if (!(pkInfo.reflects(t) || keyDropped)) {
@@ -625,7 +802,7 @@ public abstract class DbUpdater<T extends ICallContext> {
                 // Таблица содержит колонку с таким именем, надо проверить
                 // все её атрибуты и при необходимости -- попытаться
                 // обновить.
-                DbColumnInfo ci = dbAdaptor.getColumnInfo(conn, e.getValue());
+                DbColumnInfo ci = catalog.getColumnInfo(t.getName(), e.getKey());
                 if (!ci.reflects(e.getValue())) {
                     // Если колонка, требующая обновления, входит в первичный
                     // ключ -- сбрасываем первичный ключ.
@@ -0,0 +1,160 @@
+package ru.curs.celesta.dbutils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.ConnectionPool;
+import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.diagnostics.CelestaEvents;
+import ru.curs.celesta.diagnostics.FlightRecorderEvent;
+import ru.curs.celesta.score.MaterializedView;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds materialized views in chunks after the upgrade of their grains.
+ * <p>
+ * A view is created empty during the grain upgrade, and the triggers of its table only
+ * append the groups they change to the build queue of the view. The groups of the view
+ * are then computed by chunks, the ranges of values of its first group-by column, each
+ * chunk in a separate transaction and, optionally, several chunks at the same time, each
+ * one on its own connection. Finally, the groups changed during the build are recomputed
+ * and the triggers maintaining the view are restored in a short transaction.
+ * <p>
+ * The build queue remains if the build fails or is interrupted. The grain of the view is
+ * already upgraded then, so each database upgrade looks for the remaining build queues of
+ * the views of up-to-date grains and builds such views from scratch.
+ */
+final class MaterializedViewBuilder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MaterializedViewBuilder.class);
+
+    private final DBAdaptor dbAdaptor;
+    private final ConnectionPool connectionPool;
+    private final long chunkRows;
+    private final int parallelism;
+    private final List<MaterializedView> views = new ArrayList<>();
+
+    /**
+     * Creates the builder.
+     *
+     * @param dbAdaptor  DB adaptor
+     * @param connectionPool  connection pool
+     * @param chunkRows  number of rows of the table per chunk
+     * @param parallelism  maximum number of chunks built at the same time
+     */
+    MaterializedViewBuilder(DBAdaptor dbAdaptor, ConnectionPool connectionPool, long chunkRows, int parallelism) {
+        this.dbAdaptor = dbAdaptor;
+        this.connectionPool = connectionPool;
+        this.chunkRows = chunkRows;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Adds views whose build was started by a committed grain upgrade or restarted.
+     *
+     * @param mvs  materialized views
+     */
+    synchronized void add(Collection<MaterializedView> mvs) {
+        views.addAll(mvs);
+    }
+
+    /**
+     * Builds the added views.
+     */
+    synchronized void build() {
+        try {
+            for (MaterializedView mv : views) {
+                build(mv);
+            }
+        } finally {
+            views.clear();
+        }
+    }
+
+    private void build(MaterializedView mv) {
+        long start = System.currentTimeMillis();
+        List<Object[]> chunks = inTransaction(mv, conn -> dbAdaptor.getMaterializedViewChunks(conn, mv, chunkRows));
+        LOGGER.info("Materialized view {}.{} build started: {} chunks.",
+                mv.getGrain().getName(), mv.getName(), chunks.size());
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Math.max(1, Math.min(parallelism, chunks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "celesta-mview-build-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            AtomicInteger built = new AtomicInteger();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Object[] chunk : chunks) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    int groups = buildChunk(mv, chunk);
+                    LOGGER.info("Materialized view {}.{}: {} of {} chunks built, {} groups.",
+                            mv.getGrain().getName(), mv.getName(), built.incrementAndGet(), chunks.size(), groups);
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw ParallelGrainUpdater.unwrap(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        inTransaction(mv, conn -> {
+            dbAdaptor.finishMaterializedViewBuild(conn, mv);
+            return null;
+        });
+        LOGGER.info("Materialized view {}.{} built in {} ms.",
+                mv.getGrain().getName(), mv.getName(), System.currentTimeMillis() - start);
+    }
+
+    private int buildChunk(MaterializedView mv, Object[] chunk) {
+        FlightRecorderEvent event = CelestaEvents.DDL_STEP.begin();
+        int groups = inTransaction(mv, conn -> dbAdaptor.buildMaterializedViewChunk(conn, mv, chunk));
+        if (event.isActive()) {
+            event.set("grain", mv.getGrain().getName())
+                    .set("step", "buildMaterializedViewChunk")
+                    .set("element", mv.getName())
+                    .commit();
+        }
+        return groups;
+    }
+
+    private <T> T inTransaction(MaterializedView mv, SqlAction<T> action) {
+        try (Connection conn = connectionPool.get()) {
+            try {
+                T result = action.apply(conn);
+                conn.commit();
+                return result;
+            } catch (CelestaException | SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new CelestaException("Can't build materialized view %s.%s: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Action performed on a connection.
+     *
+     * @param <T>  result type
+     */
+    @FunctionalInterface
+    private interface SqlAction<T> {
+        T apply(Connection conn) throws SQLException;
+    }
+
+}
@@ -0,0 +1,174 @@
+package ru.curs.celesta.dbutils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.CurrentScore;
+import ru.curs.celesta.score.AbstractScore;
+import ru.curs.celesta.score.AbstractSelectStmt;
+import ru.curs.celesta.score.AbstractView;
+import ru.curs.celesta.score.BasicTable;
+import ru.curs.celesta.score.ForeignKey;
+import ru.curs.celesta.score.Grain;
+import ru.curs.celesta.score.TableRef;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Upgrades grains concurrently.
+ * <p>
+ * A grain depends on the system grain and on the grains its elements refer to: grains
+ * of the tables referenced by foreign keys and of the tables queried by views. A grain
+ * is upgraded as soon as the grains it depends on are upgraded, so that grains without
+ * mutual dependencies are upgraded at the same time, each one on its own connection.
+ * References point to grains with a lower dependency order, hence the grains are
+ * scheduled in the dependency order.
+ * <p>
+ * As in sequential upgrade, a grain is upgraded even if a grain it depends on has
+ * failed, but not if upgrade of such a grain has thrown an exception.
+ * <p>
+ * The workers see the {@link CurrentScore} of the thread starting the upgrade, which H2
+ * triggers of materialized views need while they are created.
+ */
+final class ParallelGrainUpdater {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelGrainUpdater.class);
+
+    private final List<Grain> grains;
+    private final int parallelism;
+    private final Predicate<Grain> updateGrain;
+
+    /**
+     * Creates the updater.
+     *
+     * @param grains  grains to upgrade, sorted by dependency order
+     * @param parallelism  maximum number of grains upgraded at the same time
+     * @param updateGrain  upgrade of a grain, returning {@code false} if it has failed
+     */
+    ParallelGrainUpdater(List<Grain> grains, int parallelism, Predicate<Grain> updateGrain) {
+        this.grains = grains;
+        this.parallelism = parallelism;
+        this.updateGrain = updateGrain;
+    }
+
+    /**
+     * Upgrades the grains.
+     *
+     * @return {@code true} if all the grains were upgraded successfully
+     */
+    boolean update() {
+        if (grains.isEmpty()) {
+            return true;
+        }
+        AbstractScore score = CurrentScore.get();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, grains.size()), r -> {
+            Thread t = new Thread(r, "celesta-dbupdate-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Map<Grain, CompletableFuture<Boolean>> futures = new HashMap<>();
+            for (Grain g : grains) {
+                List<CompletableFuture<Boolean>> prerequisites = new ArrayList<>();
+                for (Grain dependency : getDependencies(g)) {
+                    CompletableFuture<Boolean> f = futures.get(dependency);
+                    if (f != null) {
+                        prerequisites.add(f);
+                    }
+                }
+                futures.put(g, CompletableFuture
+                        .allOf(prerequisites.toArray(new CompletableFuture<?>[0]))
+                        .thenApplyAsync(v -> {
+                            CurrentScore.set(score);
+                            return updateGrain(g);
+                        }, executor));
+            }
+
+            boolean success = true;
+            RuntimeException error = null;
+            for (Grain g : grains) {
+                try {
+                    success = futures.get(g).join() & success;
+                } catch (CompletionException e) {
+                    if (error == null) {
+                        error = unwrap(e.getCause());
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return success;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private boolean updateGrain(Grain g) {
+        LOGGER.info("Grain {} upgrade started.", g.getName());
+        long start = System.currentTimeMillis();
+        boolean result = updateGrain.test(g);
+        if (result) {
+            LOGGER.info("Grain {} upgraded in {} ms.", g.getName(), System.currentTimeMillis() - start);
+        } else {
+            LOGGER.warn("Grain {} upgrade failed in {} ms.", g.getName(), System.currentTimeMillis() - start);
+        }
+        return result;
+    }
+
+    static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            return unwrap(cause.getCause());
+        } else if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new CelestaException(cause);
+    }
+
+    /**
+     * Returns the grains the grain depends on.
+     *
+     * @param g  grain
+     * @return
+     */
+    static Set<Grain> getDependencies(Grain g) {
+        Set<Grain> result = new LinkedHashSet<>();
+        result.add(g.getScore().getGrains().get(g.getScore().getSysSchemaName()));
+
+        for (BasicTable t : g.getElements(BasicTable.class).values()) {
+            for (ForeignKey fk : t.getForeignKeys()) {
+                result.add(fk.getReferencedTable().getGrain());
+            }
+        }
+
+        List<AbstractView> views = new ArrayList<>();
+        views.addAll(g.getViews().values());
+        views.addAll(g.getMaterializedViews().values());
+        views.addAll(g.getParameterizedViews().values());
+        for (AbstractView v : views) {
+            for (AbstractSelectStmt segment : v.getSegments()) {
+                for (TableRef tRef : segment.getTables()) {
+                    result.add(tRef.getTable().getGrain());
+                }
+            }
+        }
+
+        result.remove(g);
+        return result;
+    }
+
+}
@@ -46,6 +46,7 @@ import ru.curs.celesta.dbutils.adaptors.column.ColumnDefinerFactory;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlAdaptor;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlConsumer;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlGenerator;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
 import ru.curs.celesta.dbutils.meta.DbColumnInfo;
 import ru.curs.celesta.dbutils.meta.DbFkInfo;
 import ru.curs.celesta.dbutils.meta.DbIndexInfo;
@@ -53,6 +54,8 @@ import ru.curs.celesta.dbutils.meta.DbPkInfo;
 import ru.curs.celesta.dbutils.meta.DbSequenceInfo;
 import ru.curs.celesta.dbutils.query.FromClause;
 import ru.curs.celesta.dbutils.stmt.ParameterSetter;
+import ru.curs.celesta.dbutils.stmt.StatementMetrics;
+import ru.curs.celesta.dbutils.stmt.StatementTexts;
 import ru.curs.celesta.event.TriggerQuery;
 import ru.curs.celesta.score.BasicTable;
 import ru.curs.celesta.score.BinaryColumn;
@@ -84,6 +87,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -140,6 +144,7 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
 
     protected final ConnectionPool connectionPool;
     DdlAdaptor ddlAdaptor;
+    private volatile StatementMetrics statementMetrics = StatementMetrics.NO_OP;
 
     protected DBAdaptor(ConnectionPool connectionPool, DdlConsumer ddlConsumer) {
         this.connectionPool = connectionPool;
@@ -149,6 +154,24 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
 
     abstract DdlGenerator getDdlGenerator();
 
+    /**
+     * Returns metrics that data accessors report their statements to.
+     *
+     * @return
+     */
+    public final StatementMetrics getStatementMetrics() {
+        return statementMetrics;
+    }
+
+    /**
+     * Sets metrics that data accessors report their statements to.
+     *
+     * @param statementMetrics  metrics, {@code null} to stop reporting
+     */
+    public final void setStatementMetrics(StatementMetrics statementMetrics) {
+        this.statementMetrics = statementMetrics == null ? StatementMetrics.NO_OP : statementMetrics;
+    }
+
     // =========> PACKAGE-PRIVATE STATIC METHODS <=========
 
     /**
@@ -160,7 +183,9 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
      */
     static PreparedStatement prepareStatement(Connection conn, String sql) {
         try {
-            return conn.prepareStatement(sql);
+            PreparedStatement result = conn.prepareStatement(sql);
+            StatementTexts.register(result, sql);
+            return result;
         } catch (SQLException e) {
             throw new CelestaException(e.getMessage());
         }
@@ -244,6 +269,21 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         return result;
     }
 
+    /**
+     * Joins the first column of the result set rows into a text.
+     *
+     * @param rs  result set
+     */
+    static String joinRows(ResultSet rs) throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        while (rs.next()) {
+            if (sb.length() > 0) {
+                sb.append(System.lineSeparator());
+            }
+            sb.append(rs.getString(1));
+        }
+        return sb.toString();
+    }
     // =========> END PACKAGE-PRIVATE STATIC METHODS <=========
 
     // =========> PACKAGE-PRIVATE FINAL METHODS <=========
@@ -292,6 +332,50 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
     final ColumnDefiner getColumnDefiner(Class<? extends Column<?>> c) {
         return ColumnDefinerFactory.getColumnDefiner(getType(), c);
     }
+
+    /**
+     * Sets values of the statement parameters.
+     *
+     * @param stmt  statement
+     * @param params  parameter values
+     */
+    void setParameters(PreparedStatement stmt, List<?> params) {
+        for (int i = 0; i < params.size(); i++) {
+            ParameterSetter.createArbitrary(params.get(i), this).execute(stmt, i + 1, null, 0);
+        }
+    }
+
+    /**
+     * Releases a savepoint, where the DB supports it.
+     *
+     * @param conn  DB connection
+     * @param savepoint  savepoint
+     */
+    void releaseSavepoint(Connection conn, Savepoint savepoint) throws SQLException {
+        conn.releaseSavepoint(savepoint);
+    }
+
+    /**
+     * Returns the number of rows of the table as the DB statistics estimate it.
+     *
+     * @param conn  DB connection
+     * @param schemaName  schema name
+     * @param tableName  table name
+     * @return  {@code -1} if the DB keeps no statistics of the table
+     */
+    long tableRowsEstimate(Connection conn, String schemaName, String tableName) throws SQLException {
+        return -1;
+    }
+
+    /**
+     * Returns the number of rows of the query as the planner estimates it.
+     *
+     * @param plan  execution plan of the query, as {@link #explain(Connection, String, List)} returns it
+     * @return  {@code -1} if the plan doesn't report the number of rows
+     */
+    long rowsEstimate(String plan) {
+        return -1;
+    }
     // =========> END PACKAGE-PRIVATE METHODS <=========
 
 
@@ -331,6 +415,16 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
      * @param name  schema name
      */
     abstract void createSchemaIfNotExists(Connection conn, String name);
+
+    /**
+     * Returns execution plan of the query as the DB reports it, without executing the query.
+     *
+     * @param conn  DB connection
+     * @param sql  query
+     * @param params  values of the query parameters
+     * @return  {@code null} if the DB doesn't report plans
+     */
+    abstract String explain(Connection conn, String sql, List<?> params) throws SQLException;
     // =========> END PACKAGE-PRIVATE ABSTRACT METHODS <=========
 
     // =========> PUBLIC STATIC METHODS <=========
@@ -434,6 +528,27 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         return prepareStatement(conn, sql);
     }
 
+    /**
+     * Sets whether indices and foreign keys are created without blocking writes
+     * to their tables during DB update. Online creation is supported by PostgreSQL
+     * (indices and foreign keys), MS SQL Server (indices) and Oracle (indices and
+     * foreign keys), the other DBs create them as usual.
+     *
+     * @param onlineDdl  {@code true} - create indices and foreign keys online
+     */
+    public void setOnlineDdl(boolean onlineDdl) {
+        this.ddlAdaptor.setOnlineDdl(onlineDdl);
+    }
+
+    /**
+     * Whether indices and foreign keys are created online.
+     *
+     * @return
+     */
+    public boolean isOnlineDdl() {
+        return this.ddlAdaptor.isOnlineDdl();
+    }
+
     /**
      * Creates a table index in the DB.
      *
@@ -498,12 +613,7 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
 
             LOGGER.trace(sql);
         }
-        try {
-            PreparedStatement result = conn.prepareStatement(sql);
-            return result;
-        } catch (SQLException e) {
-            throw new CelestaException(e.getMessage());
-        }
+        return prepareStatement(conn, sql);
     }
 
     /**
@@ -521,6 +631,26 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         return result;
     }
 
+    /**
+     * Builds a SELECT statement computing aggregates over a filtered data set.
+     * The result is ordered by the group-by columns.
+     *
+     * @param conn  Connection
+     * @param from  From clause
+     * @param whereClause  Where clause
+     * @param selectList  list of group-by columns followed by aggregate expressions
+     * @param groupBy  list of group-by columns, empty if there is no grouping
+     */
+    public final PreparedStatement getAggregateStatement(
+            Connection conn, FromClause from, String whereClause, String selectList, String groupBy
+    ) {
+        String sql = "select " + selectList + " from " + from.getExpression()
+                + ("".equals(whereClause) ? "" : " where " + whereClause)
+                + ("".equals(groupBy) ? "" : " group by " + groupBy + " order by " + groupBy);
+        LOGGER.trace(sql);
+        return prepareStatement(conn, sql);
+    }
+
     /**
      * Drops a trigger from DB.
      *
@@ -571,9 +701,95 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         this.ddlAdaptor.createTableTriggersForMaterializedViews(conn, t);
     }
 
+    /**
+     * Returns the checksum kept in the insert trigger of a materialized view.
+     *
+     * @param mv  materialized view
+     * @return
+     */
+    public final String getMaterializedViewChecksum(MaterializedView mv) {
+        return this.ddlAdaptor.getMaterializedViewChecksum(mv);
+    }
+
     public final void executeNative(Connection conn, String sql) {
         this.ddlAdaptor.executeNative(conn, sql);
     }
+
+    /**
+     * Returns execution plan of the query. Inside a transaction the plan is requested
+     * under a savepoint, so that a failure doesn't abort the transaction.
+     *
+     * @param conn  DB connection
+     * @param sql  query
+     * @param params  values of the query parameters
+     * @return  {@code null} if the DB doesn't report plans
+     */
+    public final String getExecutionPlan(Connection conn, String sql, List<?> params) {
+        try {
+            return underSavepoint(conn, () -> explain(conn, sql, params));
+        } catch (SQLException e) {
+            throw new CelestaException("Cannot get execution plan of %s: %s", sql, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of rows of the table as the DB statistics estimate it, without
+     * counting them. Inside a transaction the statistics are read under a savepoint.
+     *
+     * @param conn  DB connection
+     * @param t  table or materialized view
+     * @return  {@code -1} if the DB keeps no statistics of the table or they can't be read
+     */
+    public final long getTableRowsEstimate(Connection conn, TableElement t) {
+        try {
+            return underSavepoint(conn, () -> tableRowsEstimate(conn, t.getGrain().getName(), t.getName()));
+        } catch (SQLException e) {
+            LOGGER.warn("Cannot read statistics of {}: {}", tableString(t.getGrain().getName(), t.getName()),
+                    e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the number of rows of a filtered data set as the query planner estimates it,
+     * without counting them. Inside a transaction the plan is requested under a savepoint.
+     *
+     * @param conn  DB connection
+     * @param from  From clause
+     * @param whereClause  Where clause
+     * @param params  values of the parameters of the From and Where clauses
+     * @return  {@code -1} if the DB doesn't estimate the number of rows or the plan can't be read
+     */
+    public final long getSetRowsEstimate(Connection conn, FromClause from, String whereClause, List<?> params) {
+        String sql = "select 1 from " + from.getExpression()
+                + ("".equals(whereClause) ? "" : " where " + whereClause);
+        try {
+            String plan = underSavepoint(conn, () -> explain(conn, sql, params));
+            return plan == null ? -1 : rowsEstimate(plan);
+        } catch (SQLException e) {
+            LOGGER.warn("Cannot get execution plan of {}: {}", sql, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Performs an action inside a savepoint, so that a failure of the action doesn't abort
+     * the transaction.
+     */
+    private <T> T underSavepoint(Connection conn, SqlAction<T> action) throws SQLException {
+        if (conn.getAutoCommit()) {
+            return action.perform();
+        }
+        Savepoint savepoint = conn.setSavepoint();
+        try {
+            return action.perform();
+        } catch (SQLException e) {
+            conn.rollback(savepoint);
+            throw e;
+        } finally {
+            releaseSavepoint(conn, savepoint);
+        }
+    }
     // =========> END PUBLIC FINAL METHODS <=========
 
 
@@ -678,6 +894,73 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         return result;
     }
 
+    /**
+     * Loads a snapshot of the DB catalog for the tables, materialized views and sequences
+     * of a grain. This implementation queries the catalog for each of them, adaptors override
+     * it with set-based queries for the whole schema.
+     *
+     * @param conn  DB connection
+     * @param g  grain
+     */
+    public DbCatalog getCatalog(Connection conn, Grain g) {
+        DbCatalog result = new DbCatalog(this);
+        for (BasicTable t : g.getElements(BasicTable.class).values()) {
+            if (tableExists(conn, g.getName(), t.getName())) {
+                result.addTable(t.getName());
+                for (String columnName : getColumns(conn, t)) {
+                    Column<?> c = getCatalogColumn(g, t.getName(), columnName);
+                    result.addColumn(t.getName(), columnName, c == null ? null : getColumnInfo(conn, c));
+                }
+                result.setPKInfo(t.getName(), getPKInfo(conn, t));
+            }
+        }
+        for (String tableName : getCatalogTableNames(g)) {
+            if (!result.tableExists(tableName) && tableExists(conn, g.getName(), tableName)) {
+                result.addTable(tableName);
+            }
+        }
+        for (SequenceElement s : g.getElements(SequenceElement.class).values()) {
+            if (sequenceExists(conn, g.getName(), s.getName())) {
+                result.addSequence(s.getName(), getSequenceInfo(conn, s));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns names of the tables of a grain that are looked up in the DB catalog: tables,
+     * materialized views and the queues of materialized views.
+     *
+     * @param g  grain
+     * @return
+     */
+    static Set<String> getCatalogTableNames(Grain g) {
+        Set<String> result = new LinkedHashSet<>(g.getElements(BasicTable.class).keySet());
+        for (MaterializedView mv : g.getElements(MaterializedView.class).values()) {
+            result.add(mv.getName());
+            result.add(mv.getQueueName());
+            result.add(mv.getBuildQueueName());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the score column corresponding to a column of a table in the DB.
+     *
+     * @param g  grain
+     * @param tableName  table name
+     * @param columnName  column name
+     * @return  {@code null} if the table or the column is not in the score
+     */
+    static Column<?> getCatalogColumn(Grain g, String tableName, String columnName) {
+        BasicTable t = g.getElements(BasicTable.class).get(tableName);
+        if (t == null) {
+            return null;
+        }
+        return t instanceof Table && VersionedElement.REC_VERSION.equals(columnName)
+                ? ((Table) t).getRecVersionField() : t.getColumns().get(columnName);
+    }
+
     /**
      * Drops a foreign key from the database.
      *
@@ -838,6 +1121,100 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         this.ddlAdaptor.initDataForMaterializedView(conn, mv);
     }
 
+    /**
+     * Creates the queue table of a deferred materialized view.
+     * @param conn connection
+     * @param mv deferred materialized view
+     */
+    public void createMaterializedViewQueue(Connection conn, MaterializedView mv) {
+        this.ddlAdaptor.createMaterializedViewQueue(conn, mv);
+    }
+
+    /**
+     * Drops the queue table of a deferred materialized view.
+     * @param conn connection
+     * @param mv deferred materialized view
+     */
+    public void dropMaterializedViewQueue(Connection conn, MaterializedView mv) {
+        this.ddlAdaptor.dropMaterializedViewQueue(conn, mv);
+    }
+
+    /**
+     * Applies the queue of a deferred materialized view: the queued groups are recomputed
+     * from the table and removed from the queue, within the current transaction.
+     * @param conn connection
+     * @param mv deferred materialized view
+     * @param maxGroups maximum number of groups to apply, 0 for all the queued groups
+     * @return number of the applied groups
+     */
+    public int applyMaterializedViewQueue(Connection conn, MaterializedView mv, int maxGroups) {
+        return this.ddlAdaptor.applyMaterializedViewQueue(conn, mv, maxGroups);
+    }
+
+    /**
+     * Starts a build of a materialized view in chunks: the triggers created afterwards
+     * append the groups changed during the build to the build queue of the view.
+     * @param conn connection
+     * @param mv materialized view
+     */
+    public void beginMaterializedViewBuild(Connection conn, MaterializedView mv) {
+        this.ddlAdaptor.beginMaterializedViewBuild(conn, mv);
+    }
+
+    /**
+     * Drops the build queue of a materialized view left by an interrupted build.
+     * @param conn connection
+     * @param mv materialized view
+     */
+    public void dropMaterializedViewBuildQueue(Connection conn, MaterializedView mv) {
+        this.ddlAdaptor.dropMaterializedViewBuildQueue(conn, mv);
+    }
+
+    /**
+     * Restarts a build of a materialized view in chunks interrupted after the upgrade of its grain:
+     * the groups computed so far are deleted and the groups changed since are still appended
+     * to the build queue of the view.
+     * @param conn connection
+     * @param mv materialized view
+     */
+    public void restartMaterializedViewBuild(Connection conn, MaterializedView mv) {
+        this.ddlAdaptor.restartMaterializedViewBuild(conn, mv);
+    }
+
+    /**
+     * Splits the groups of a materialized view into chunks, the ranges of values of its first
+     * group-by column.
+     * @param conn connection
+     * @param mv materialized view
+     * @param chunkRows number of rows of the table per chunk
+     * @return lower and upper bounds of the chunks
+     */
+    public List<Object[]> getMaterializedViewChunks(Connection conn, MaterializedView mv, long chunkRows) {
+        return this.ddlAdaptor.getMaterializedViewChunks(conn, mv, chunkRows);
+    }
+
+    /**
+     * Computes the groups of a materialized view within a chunk, within the current transaction.
+     * @param conn connection
+     * @param mv materialized view
+     * @param chunk bounds of the chunk
+     * @return number of the computed groups
+     */
+    public int buildMaterializedViewChunk(Connection conn, MaterializedView mv, Object[] chunk) {
+        return this.ddlAdaptor.buildMaterializedViewChunk(conn, mv, chunk);
+    }
+
+    /**
+     * Completes a build of a materialized view in chunks: the groups changed during the build
+     * are recomputed and the triggers maintaining the view are restored, within the current
+     * transaction.
+     * @param conn connection
+     * @param mv materialized view
+     */
+    public void finishMaterializedViewBuild(Connection conn, MaterializedView mv) {
+        this.ddlAdaptor.finishMaterializedViewBuild(conn, mv);
+    }
+
     /** Returned strings ordered by the database according to the current collation. This method is required
      * for operations that depend on collation rules.
      *
@@ -949,6 +1326,14 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         }
     }
 
+    /**
+     * Whether DB compares strings by their characters, the way {@link String#compareTo(String)} does,
+     * so that strings can be compared and sorted outside the database.
+     */
+    public boolean comparesStringsByCharacters() {
+        return false;
+    }
+
     /**
      * Whether DB supports cortege comparing.
      *
@@ -1159,4 +1544,14 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
      */
     public abstract DbSequenceInfo getSequenceInfo(Connection conn, SequenceElement s);
     // =========> END PUBLIC ABSTRACT METHODS <=========
+
+    /**
+     * Action performed on a DB connection.
+     *
+     * @param <T>  result type
+     */
+    @FunctionalInterface
+    private interface SqlAction<T> {
+        T perform() throws SQLException;
+    }
 }
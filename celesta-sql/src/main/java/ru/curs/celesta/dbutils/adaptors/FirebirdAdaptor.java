@@ -11,6 +11,7 @@ import ru.curs.celesta.dbutils.adaptors.ddl.DdlGenerator;
 import ru.curs.celesta.dbutils.adaptors.ddl.FirebirdDdlGenerator;
 import ru.curs.celesta.dbutils.adaptors.function.SchemalessFunctions;
 import ru.curs.celesta.dbutils.jdbc.SqlUtils;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
 import ru.curs.celesta.dbutils.meta.DbColumnInfo;
 import ru.curs.celesta.dbutils.meta.DbFkInfo;
 import ru.curs.celesta.dbutils.meta.DbIndexInfo;
@@ -44,7 +45,10 @@ import java.sql.Statement;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -76,6 +80,59 @@ public final class FirebirdAdaptor extends DBAdaptor {
     private static final String CUR_VALUE_PROC_POSTFIX = "curValueProc";
     private static final String NEXT_VALUE_PROC_POSTFIX = "nextValueProc";
 
+    private static final String SELECT_COLUMN_INFO = String.format(
+            "SELECT r.RDB$RELATION_NAME AS table_name,%n"
+                    + "        r.RDB$FIELD_NAME AS column_name,%n"
+                    + "        r.RDB$DESCRIPTION AS field_description,%n"
+                    + "        r.RDB$NULL_FLAG AS nullable,%n"
+                    + "        r.RDB$DEFAULT_SOURCE AS column_default_value,%n"
+                    + "        f.RDB$FIELD_LENGTH AS column_length,%n"
+                    + "        f.RDB$FIELD_PRECISION AS column_precision,%n"
+                    + "        f.RDB$FIELD_SCALE AS column_scale,%n"
+                    + "        CASE f.RDB$FIELD_TYPE%n"
+                    + "          WHEN 261 THEN 'BLOB'%n"
+                    + "          WHEN 14 THEN 'CHAR'%n"
+                    + "          WHEN 40 THEN 'CSTRING'%n"
+                    + "          WHEN 11 THEN 'D_FLOAT'%n"
+                    + "          WHEN 27 THEN 'DOUBLE PRECISION'%n"
+                    + "          WHEN 10 THEN 'FLOAT'%n"
+                    + "          WHEN 16 THEN 'BIGINT'%n"
+                    + "          WHEN 8 THEN 'INTEGER'%n"
+                    + "          WHEN 9 THEN 'QUAD'%n"
+                    + "          WHEN 7 THEN 'SMALLINT'%n"
+                    + "          WHEN 12 THEN 'DATE'%n"
+                    + "          WHEN 13 THEN 'TIME'%n"
+                    + "          WHEN 35 THEN 'TIMESTAMP'%n"
+                    + "          WHEN 29 THEN 'TIMESTAMP WITH TIME ZONE'%n"
+                    + "          WHEN 37 THEN 'VARCHAR'%n"
+                    + "          ELSE 'UNKNOWN'%n"
+                    + "        END AS column_type,%n"
+                    + "        f.RDB$FIELD_SUB_TYPE AS column_subtype%n"
+                    + "   FROM RDB$RELATION_FIELDS r%n"
+                    + "   LEFT JOIN RDB$FIELDS f ON r.RDB$FIELD_SOURCE = f.RDB$FIELD_NAME%n"
+                    + "   LEFT JOIN RDB$COLLATIONS coll ON f.RDB$COLLATION_ID = coll.RDB$COLLATION_ID%n"
+                    + "   LEFT JOIN RDB$CHARACTER_SETS cset ON f.RDB$CHARACTER_SET_ID = cset.RDB$CHARACTER_SET_ID%n");
+
+    private static final String SELECT_PK_INFO = String.format(
+            "select%n"
+                    + "    rc.rdb$relation_name as table_name,%n"
+                    + "    ix.rdb$index_name as pk_name,%n"
+                    + "    sg.rdb$field_name as column_name%n"
+                    + " from%n"
+                    + "    rdb$indices ix%n"
+                    + "    left join rdb$index_segments sg on ix.rdb$index_name = sg.rdb$index_name%n"
+                    + "    left join rdb$relation_constraints rc on rc.rdb$index_name = ix.rdb$index_name%n"
+                    + " where%n");
+
+    // sequences used by the triggers filling integer columns with their next values
+    private static final String SELECT_SEQUENCE_TRIGGERS = String.format(
+            "SELECT tr.RDB$DEPENDENT_NAME, proc.RDB$DEPENDED_ON_NAME %n "
+                    + "FROM RDB$DEPENDENCIES tr%n "
+                    + "JOIN RDB$DEPENDENCIES proc ON tr.RDB$DEPENDED_ON_NAME = proc.RDB$DEPENDENT_NAME%n "
+                    + "WHERE tr.RDB$DEPENDENT_TYPE = 2 "
+                    + "AND tr.RDB$DEPENDED_ON_TYPE = 5%n "
+                    + "AND proc.RDB$DEPENDENT_TYPE = 5 AND proc.RDB$DEPENDED_ON_TYPE = 14");
+
     public FirebirdAdaptor(ConnectionPool connectionPool, DdlConsumer ddlConsumer) {
         super(connectionPool, ddlConsumer);
     }
@@ -139,6 +196,11 @@ public final class FirebirdAdaptor extends DBAdaptor {
         }
     }
 
+    @Override
+    String explain(Connection conn, String sql, List<?> params) {
+        return null;
+    }
+
     @Override
     void createSchemaIfNotExists(Connection conn, String name) {
 
@@ -253,11 +315,7 @@ public final class FirebirdAdaptor extends DBAdaptor {
         // Готовим запрос на удаление
         String sql = String.format("delete from " + tableString(t.getGrain().getName(), t.getName()) + " %s;",
                 where.isEmpty() ? "" : "where " + where);
-        try {
-            return conn.prepareStatement(sql);
-        } catch (SQLException e) {
-            throw new CelestaException(e.getMessage());
-        }
+        return prepareStatement(conn, sql);
     }
 
     @Override
@@ -339,37 +397,8 @@ public final class FirebirdAdaptor extends DBAdaptor {
 
     @Override
     public DbColumnInfo getColumnInfo(Connection conn, Column<?> c) {
-        String sql = String.format(
-                "SELECT r.RDB$FIELD_NAME AS column_name,%n"
-                        + "        r.RDB$DESCRIPTION AS field_description,%n"
-                        + "        r.RDB$NULL_FLAG AS nullable,%n"
-                        + "        f.RDB$FIELD_LENGTH AS column_length,%n"
-                        + "        f.RDB$FIELD_PRECISION AS column_precision,%n"
-                        + "        f.RDB$FIELD_SCALE AS column_scale,%n"
-                        + "        CASE f.RDB$FIELD_TYPE%n"
-                        + "          WHEN 261 THEN 'BLOB'%n"
-                        + "          WHEN 14 THEN 'CHAR'%n"
-                        + "          WHEN 40 THEN 'CSTRING'%n"
-                        + "          WHEN 11 THEN 'D_FLOAT'%n"
-                        + "          WHEN 27 THEN 'DOUBLE PRECISION'%n"
-                        + "          WHEN 10 THEN 'FLOAT'%n"
-                        + "          WHEN 16 THEN 'BIGINT'%n"
-                        + "          WHEN 8 THEN 'INTEGER'%n"
-                        + "          WHEN 9 THEN 'QUAD'%n"
-                        + "          WHEN 7 THEN 'SMALLINT'%n"
-                        + "          WHEN 12 THEN 'DATE'%n"
-                        + "          WHEN 13 THEN 'TIME'%n"
-                        + "          WHEN 35 THEN 'TIMESTAMP'%n"
-                        + "          WHEN 29 THEN 'TIMESTAMP WITH TIME ZONE'%n"
-                        + "          WHEN 37 THEN 'VARCHAR'%n"
-                        + "          ELSE 'UNKNOWN'%n"
-                        + "        END AS column_type,%n"
-                        + "        f.RDB$FIELD_SUB_TYPE AS column_subtype%n"
-                        + "   FROM RDB$RELATION_FIELDS r%n"
-                        + "   LEFT JOIN RDB$FIELDS f ON r.RDB$FIELD_SOURCE = f.RDB$FIELD_NAME%n"
-                        + "   LEFT JOIN RDB$COLLATIONS coll ON f.RDB$COLLATION_ID = coll.RDB$COLLATION_ID%n"
-                        + "   LEFT JOIN RDB$CHARACTER_SETS cset ON f.RDB$CHARACTER_SET_ID = cset.RDB$CHARACTER_SET_ID%n"
-                        + "  WHERE r.RDB$RELATION_NAME='%s_%s' AND r.RDB$FIELD_NAME = '%s'",
+        String sql = SELECT_COLUMN_INFO + String.format(
+                "  WHERE r.RDB$RELATION_NAME='%s_%s' AND r.RDB$FIELD_NAME = '%s'",
                 c.getParentTable().getGrain().getName(),
                 c.getParentTable().getName(),
                 c.getName()
@@ -377,36 +406,7 @@ public final class FirebirdAdaptor extends DBAdaptor {
 
         try (ResultSet rs = SqlUtils.executeQuery(conn, sql)) {
             if (rs.next()) {
-                DbColumnInfo result = new DbColumnInfo();
-
-                result.setName(rs.getString("column_name").trim());
-                String columnType = rs.getString("column_type").trim();
-                Integer columnSubType = rs.getInt("column_subtype");
-
-                if (
-                        ("BIGINT".equals(columnType) || "INTEGER".equals(columnType))
-                                && Integer.valueOf(2).equals(columnSubType)
-                ) {
-                    result.setType(DecimalColumn.class);
-                    result.setLength(rs.getInt("column_precision"));
-                    result.setScale(Math.abs(rs.getInt("column_scale")));
-                } else if ("BLOB".equals(columnType) && Integer.valueOf(1).equals(columnSubType)) {
-                    result.setType(StringColumn.class);
-                    result.setMax(true);
-                } else {
-                    for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
-                        if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(columnType)) {
-                            result.setType(cc);
-                            break;
-                        }
-                    }
-                }
-
-                result.setNullable(rs.getInt("nullable") != 1);
-
-                if (result.getType() == StringColumn.class) {
-                    result.setLength(rs.getInt("column_length"));
-                }
+                DbColumnInfo result = readColumnInfo(rs);
 
                 this.processDefaults(conn, c, result);
 
@@ -420,6 +420,46 @@ public final class FirebirdAdaptor extends DBAdaptor {
 
     }
 
+    /**
+     * Reads information on a column from the current row of a result set
+     * of {@link #SELECT_COLUMN_INFO}. The default value is not read.
+     *
+     * @param rs  result set of the column metadata
+     */
+    private DbColumnInfo readColumnInfo(ResultSet rs) throws SQLException {
+        DbColumnInfo result = new DbColumnInfo();
+
+        result.setName(rs.getString("column_name").trim());
+        String columnType = rs.getString("column_type").trim();
+        Integer columnSubType = rs.getInt("column_subtype");
+
+        if (
+                ("BIGINT".equals(columnType) || "INTEGER".equals(columnType))
+                        && Integer.valueOf(2).equals(columnSubType)
+        ) {
+            result.setType(DecimalColumn.class);
+            result.setLength(rs.getInt("column_precision"));
+            result.setScale(Math.abs(rs.getInt("column_scale")));
+        } else if ("BLOB".equals(columnType) && Integer.valueOf(1).equals(columnSubType)) {
+            result.setType(StringColumn.class);
+            result.setMax(true);
+        } else {
+            for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
+                if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(columnType)) {
+                    result.setType(cc);
+                    break;
+                }
+            }
+        }
+
+        result.setNullable(rs.getInt("nullable") != 1);
+
+        if (result.getType() == StringColumn.class) {
+            result.setLength(rs.getInt("column_length"));
+        }
+        return result;
+    }
+
     private void processDefaults(Connection conn, Column<?> c, DbColumnInfo dbColumnInfo) throws SQLException {
         String defaultValue = null;
 
@@ -443,23 +483,12 @@ public final class FirebirdAdaptor extends DBAdaptor {
             if (defaultSource == null) {
                 if (IntegerColumn.class.equals(dbColumnInfo.getType())) {
                     String triggerName = SchemalessFunctions.generateSequenceTriggerName((IntegerColumn) c);
-                    sql = String.format(
-                        "SELECT proc.RDB$DEPENDED_ON_NAME %n "
-                                + "FROM RDB$DEPENDENCIES tr%n "
-                                + "JOIN RDB$DEPENDENCIES proc ON tr.RDB$DEPENDED_ON_NAME = proc.RDB$DEPENDENT_NAME%n "
-                                + "WHERE tr.RDB$DEPENDENT_NAME = '%s' AND tr.RDB$DEPENDENT_TYPE = 2 "
-                                + "AND tr.RDB$DEPENDED_ON_TYPE = 5%n "
-                                + "AND proc.RDB$DEPENDENT_TYPE = 5 AND proc.RDB$DEPENDED_ON_TYPE = 14",
-                        triggerName
-                    );
+                    sql = SELECT_SEQUENCE_TRIGGERS + String.format(
+                            "%n AND tr.RDB$DEPENDENT_NAME = '%s'", triggerName);
 
                     try (ResultSet sequenceRs = SqlUtils.executeQuery(conn, sql)) {
                         if (sequenceRs.next()) {
-                            String sequenceName = sequenceRs.getString(1).trim();
-                            defaultValue = "NEXTVAL("
-                                    // TODO: score sequence name could be spoiled here because of name limitation
-                                    + sequenceName.replace(g.getName() + "_", "")
-                                    + ")";
+                            defaultValue = getSequenceDefault(g, sequenceRs.getString(2).trim());
                         }
                     }
                 }
@@ -474,6 +503,13 @@ public final class FirebirdAdaptor extends DBAdaptor {
         }
     }
 
+    private static String getSequenceDefault(Grain g, String sequenceName) {
+        return "NEXTVAL("
+                // TODO: score sequence name could be spoiled here because of name limitation
+                + sequenceName.replace(g.getName() + "_", "")
+                + ")";
+    }
+
     private static String getDefaultValue(DbColumnInfo dbColumnInfo, String defaultSource) {
         String defaultValue = defaultSource.replace("default", "").trim();
 
@@ -499,16 +535,8 @@ public final class FirebirdAdaptor extends DBAdaptor {
 
     @Override
     public DbPkInfo getPKInfo(Connection conn, TableElement t) {
-        String sql = String.format(
-                "select%n"
-                        + "    ix.rdb$index_name as pk_name,%n"
-                        + "    sg.rdb$field_name as column_name%n"
-                        + " from%n"
-                        + "    rdb$indices ix%n"
-                        + "    left join rdb$index_segments sg on ix.rdb$index_name = sg.rdb$index_name%n"
-                        + "    left join rdb$relation_constraints rc on rc.rdb$index_name = ix.rdb$index_name%n"
-                        + " where%n"
-                        + "    rc.rdb$constraint_type = 'PRIMARY KEY' AND rc.rdb$relation_name = '%s_%s'",
+        String sql = SELECT_PK_INFO + String.format(
+                "    rc.rdb$constraint_type = 'PRIMARY KEY' AND rc.rdb$relation_name = '%s_%s'",
                 t.getGrain().getName(),
                 t.getName()
         );
@@ -533,6 +561,144 @@ public final class FirebirdAdaptor extends DBAdaptor {
         return result;
     }
 
+    @Override
+    public DbCatalog getCatalog(Connection conn, Grain g) {
+        // names of the tables in the score by their names in the DB
+        Map<String, String> tableNames = new HashMap<>();
+        for (String tableName : getCatalogTableNames(g)) {
+            tableNames.put(getSchemaUnderscoreNameTemplate(g.getName(), tableName), tableName);
+        }
+        String namePattern = g.getName().replace("_", "@_") + "@_%";
+
+        DbCatalog result = new DbCatalog(this);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT RDB$RELATION_NAME FROM RDB$RELATIONS WHERE RDB$RELATION_NAME LIKE ? ESCAPE '@'")) {
+                stmt.setString(1, namePattern);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String tableName = tableNames.get(rs.getString(1).trim());
+                        if (tableName != null) {
+                            result.addTable(tableName);
+                        }
+                    }
+                }
+            }
+
+            loadColumnInfo(conn, g, namePattern, tableNames, result);
+            loadPKInfo(conn, namePattern, tableNames, result);
+            loadSequenceInfo(conn, g, result);
+        } catch (SQLException e) {
+            throw new CelestaException("Could not load catalog of schema %s: %s", g.getName(), e.getMessage());
+        }
+        return result;
+    }
+
+    private void loadColumnInfo(Connection conn, Grain g, String namePattern, Map<String, String> tableNames,
+                                DbCatalog catalog) throws SQLException {
+        // sequences of the integer columns by the names of their triggers
+        Map<String, String> sequenceTriggers = new HashMap<>();
+        try (ResultSet rs = SqlUtils.executeQuery(conn, SELECT_SEQUENCE_TRIGGERS)) {
+            while (rs.next()) {
+                sequenceTriggers.put(rs.getString(1).trim(), rs.getString(2).trim());
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_COLUMN_INFO
+                + "  WHERE r.RDB$RELATION_NAME LIKE ? ESCAPE '@' "
+                + "ORDER BY r.RDB$RELATION_NAME, r.RDB$FIELD_POSITION")) {
+            stmt.setString(1, namePattern);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = tableNames.get(rs.getString("table_name").trim());
+                    if (tableName == null) {
+                        continue;
+                    }
+                    DbColumnInfo columnInfo = readColumnInfo(rs);
+                    String defaultSource = rs.getString("column_default_value");
+                    if (defaultSource != null) {
+                        columnInfo.setDefaultValue(getDefaultValue(columnInfo, defaultSource));
+                    } else if (IntegerColumn.class.equals(columnInfo.getType())) {
+                        Column<?> c = getCatalogColumn(g, tableName, columnInfo.getName());
+                        String sequenceName = c instanceof IntegerColumn ? sequenceTriggers.get(
+                                SchemalessFunctions.generateSequenceTriggerName((IntegerColumn) c)) : null;
+                        if (sequenceName != null) {
+                            columnInfo.setDefaultValue(getSequenceDefault(g, sequenceName));
+                        }
+                    }
+                    catalog.addColumn(tableName, columnInfo);
+                }
+            }
+        }
+    }
+
+    private void loadPKInfo(Connection conn, String namePattern, Map<String, String> tableNames,
+                            DbCatalog catalog) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_PK_INFO
+                + "    rc.rdb$constraint_type = 'PRIMARY KEY' AND rc.rdb$relation_name LIKE ? ESCAPE '@' "
+                + "ORDER BY rc.rdb$relation_name, sg.rdb$field_position")) {
+            stmt.setString(1, namePattern);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = tableNames.get(rs.getString("table_name").trim());
+                    if (tableName == null) {
+                        continue;
+                    }
+                    DbPkInfo pkInfo = catalog.getPKInfo(tableName);
+                    if (pkInfo.getName() == null) {
+                        pkInfo.setName(rs.getString("pk_name").trim());
+                        catalog.setPKInfo(tableName, pkInfo);
+                    }
+                    pkInfo.addColumnName(rs.getString("column_name").trim());
+                }
+            }
+        }
+    }
+
+    private void loadSequenceInfo(Connection conn, Grain g, DbCatalog catalog) throws SQLException {
+        Collection<SequenceElement> sequences = g.getElements(SequenceElement.class).values();
+        if (sequences.isEmpty()) {
+            return;
+        }
+        String params = String.join(", ", Collections.nCopies(sequences.size(), "?"));
+
+        Set<String> generators = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT RDB$GENERATOR_NAME FROM RDB$GENERATORS WHERE RDB$GENERATOR_NAME IN (" + params + ")")) {
+            int i = 1;
+            for (SequenceElement s : sequences) {
+                stmt.setString(i++, sequenceString(g.getName(), s.getName(), false));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    generators.add(rs.getString(1).trim());
+                }
+            }
+        }
+
+        Map<String, String> procedureSources = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT RDB$PROCEDURE_NAME, RDB$PROCEDURE_SOURCE FROM RDB$PROCEDURES "
+                        + "WHERE RDB$PROCEDURE_NAME IN (" + params + ")")) {
+            int i = 1;
+            for (SequenceElement s : sequences) {
+                stmt.setString(i++, sequenceNextValueProcString(g.getName(), s.getName(), false));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    procedureSources.put(rs.getString(1).trim(), rs.getString(2));
+                }
+            }
+        }
+
+        for (SequenceElement s : sequences) {
+            if (generators.contains(sequenceString(g.getName(), s.getName(), false))) {
+                String body = procedureSources.get(sequenceNextValueProcString(g.getName(), s.getName(), false));
+                catalog.addSequence(s.getName(), parseSequenceInfo(body));
+            }
+        }
+    }
+
     @Override
     public List<DbFkInfo> getFKInfo(Connection conn, Grain g) {
         String sql = String.format(
@@ -771,23 +937,29 @@ public final class FirebirdAdaptor extends DBAdaptor {
 
         try (ResultSet rs = SqlUtils.executeQuery(conn, sql)) {
             rs.next();
-            String body = rs.getString(1);
-
-            Matcher matcher = SEQUENCE_INFO_PATTERN.matcher(body);
+            return parseSequenceInfo(rs.getString(1));
+        } catch (Exception e) {
+            throw new CelestaException(e);
+        }
+    }
 
-            matcher.find();
+    /**
+     * Reads the sequence parameters kept in a comment of the procedure returning its next value.
+     *
+     * @param body  source of the procedure
+     */
+    private static DbSequenceInfo parseSequenceInfo(String body) {
+        Matcher matcher = SEQUENCE_INFO_PATTERN.matcher(body);
 
-            DbSequenceInfo dbSequenceInfo = new DbSequenceInfo();
-            dbSequenceInfo.setIncrementBy(Long.parseLong(matcher.group(1)));
-            dbSequenceInfo.setMinValue(Long.parseLong(matcher.group(2)));
-            dbSequenceInfo.setMaxValue(Long.parseLong(matcher.group(3)));
-            dbSequenceInfo.setCycle(Boolean.parseBoolean(matcher.group(4)));
+        matcher.find();
 
-            return dbSequenceInfo;
+        DbSequenceInfo dbSequenceInfo = new DbSequenceInfo();
+        dbSequenceInfo.setIncrementBy(Long.parseLong(matcher.group(1)));
+        dbSequenceInfo.setMinValue(Long.parseLong(matcher.group(2)));
+        dbSequenceInfo.setMaxValue(Long.parseLong(matcher.group(3)));
+        dbSequenceInfo.setCycle(Boolean.parseBoolean(matcher.group(4)));
 
-        } catch (Exception e) {
-            throw new CelestaException(e);
-        }
+        return dbSequenceInfo;
     }
 
     @Override
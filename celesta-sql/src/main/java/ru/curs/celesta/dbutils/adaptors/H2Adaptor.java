@@ -7,6 +7,7 @@ import ru.curs.celesta.dbutils.adaptors.ddl.DdlConsumer;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlGenerator;
 import ru.curs.celesta.dbutils.adaptors.ddl.H2DdlGenerator;
 import ru.curs.celesta.dbutils.jdbc.SqlUtils;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
 import ru.curs.celesta.dbutils.meta.DbColumnInfo;
 import ru.curs.celesta.dbutils.meta.DbFkInfo;
 import ru.curs.celesta.dbutils.meta.DbIndexInfo;
@@ -53,13 +54,27 @@ import java.util.stream.Collectors;
  */
 public final class H2Adaptor extends OpenSourceDbAdaptor {
     private static final Pattern HEX_STRING = Pattern.compile("X'([0-9A-Fa-f]+)'");
+    /**
+     * Guards DDL statements: H2 creating a schema and a table at the same time locks the database
+     * and its metadata in opposite orders, so grains upgraded in parallel would wait for each other
+     * until the lock timeout.
+     */
+    private static final Object DDL_LOCK = new Object();
 
 
     public H2Adaptor(ConnectionPool connectionPool, DdlConsumer ddlConsumer, boolean isH2ReferentialIntegrity) {
-        super(connectionPool, ddlConsumer);
+        super(connectionPool, serialized(ddlConsumer));
         configureDb(isH2ReferentialIntegrity);
     }
 
+    private static DdlConsumer serialized(DdlConsumer ddlConsumer) {
+        return (conn, sql) -> {
+            synchronized (DDL_LOCK) {
+                ddlConsumer.consume(conn, sql);
+            }
+        };
+    }
+
     @Override
     DdlGenerator getDdlGenerator() {
         return new H2DdlGenerator(this);
@@ -91,6 +106,28 @@ public final class H2Adaptor extends OpenSourceDbAdaptor {
         }
     }
 
+    @Override
+    String explain(Connection conn, String sql, List<?> params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + sql)) {
+            setParameters(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return joinRows(rs);
+            }
+        }
+    }
+
+    @Override
+    long tableRowsEstimate(Connection conn, String schemaName, String tableName) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT ROW_COUNT_ESTIMATE FROM INFORMATION_SCHEMA.TABLES"
+                + " WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?")) {
+            stmt.setString(1, schemaName);
+            stmt.setString(2, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
     @Override
     public int getCurrentIdent(Connection conn, BasicTable t) {
         IntegerColumn idColumn = t.getPrimaryKey().values().stream()
@@ -170,45 +207,46 @@ public final class H2Adaptor extends OpenSourceDbAdaptor {
             String tableName = c.getParentTable().getName();
 
             try (ResultSet rs = metaData.getColumns(null, grainName, tableName, c.getName())) {
-                if (rs.next()) {
-                    DbColumnInfo result = new DbColumnInfo();
-                    result.setName(rs.getString(COLUMN_NAME));
-                    String typeName = rs.getString("TYPE_NAME");
-                    String columnDefault = rs.getString("COLUMN_DEF");
-
-                    if ("character large object".equalsIgnoreCase(typeName)) {
-                        result.setType(StringColumn.class);
-                        result.setMax(true);
-                    } else {
-                        for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
-                            if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
-                                result.setType(cc);
-                                break;
-                            }
-                        }
-                    }
-                    result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
-                    if (result.getType() == StringColumn.class || result.getType() == DecimalColumn.class) {
-                        result.setLength(rs.getInt("COLUMN_SIZE"));
-                    }
-                    if (result.getType() == DecimalColumn.class) {
-                        result.setScale(rs.getInt("DECIMAL_DIGITS"));
-                    }
-
-                    if (columnDefault != null) {
-                        columnDefault = modifyDefault(result, columnDefault, conn);
-                        result.setDefaultValue(columnDefault);
-                    }
-                    return result;
-                } else {
-                    return null;
-                }
+                return rs.next() ? readColumnInfo(conn, rs) : null;
             }
         } catch (SQLException e) {
             throw new CelestaException(e.getMessage());
         }
     }
 
+    @Override
+    DbColumnInfo readColumnInfo(Connection conn, ResultSet rs) throws SQLException {
+        DbColumnInfo result = new DbColumnInfo();
+        result.setName(rs.getString(COLUMN_NAME));
+        String typeName = rs.getString("TYPE_NAME");
+        String columnDefault = rs.getString("COLUMN_DEF");
+
+        if ("character large object".equalsIgnoreCase(typeName)) {
+            result.setType(StringColumn.class);
+            result.setMax(true);
+        } else {
+            for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
+                if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
+                    result.setType(cc);
+                    break;
+                }
+            }
+        }
+        result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+        if (result.getType() == StringColumn.class || result.getType() == DecimalColumn.class) {
+            result.setLength(rs.getInt("COLUMN_SIZE"));
+        }
+        if (result.getType() == DecimalColumn.class) {
+            result.setScale(rs.getInt("DECIMAL_DIGITS"));
+        }
+
+        if (columnDefault != null) {
+            columnDefault = modifyDefault(result, columnDefault, conn);
+            result.setDefaultValue(columnDefault);
+        }
+        return result;
+    }
+
     private String modifyDefault(DbColumnInfo ci, String defaultBody, Connection conn) {
         String result = defaultBody;
 
@@ -292,6 +330,33 @@ public final class H2Adaptor extends OpenSourceDbAdaptor {
         return result;
     }
 
+    @Override
+    void loadPKInfo(Connection conn, String schema, DbCatalog catalog) throws SQLException {
+        String sql = "SELECT tc.TABLE_NAME, tc.CONSTRAINT_NAME, kcu.COLUMN_NAME "
+                + "FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS tc "
+                + "INNER JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE kcu "
+                + "ON kcu.CONSTRAINT_CATALOG = tc.CONSTRAINT_CATALOG "
+                + "AND kcu.CONSTRAINT_SCHEMA = tc.CONSTRAINT_SCHEMA "
+                + "AND kcu.CONSTRAINT_NAME = tc.CONSTRAINT_NAME "
+                + "WHERE tc.CONSTRAINT_TYPE = 'PRIMARY KEY' AND tc.TABLE_SCHEMA = ? "
+                + "ORDER BY tc.TABLE_NAME, tc.CONSTRAINT_NAME, kcu.ORDINAL_POSITION";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = rs.getString("TABLE_NAME");
+                    DbPkInfo pkInfo = catalog.getPKInfo(tableName);
+                    if (pkInfo.getName() == null) {
+                        pkInfo.setName(rs.getString("CONSTRAINT_NAME"));
+                        catalog.setPKInfo(tableName, pkInfo);
+                    }
+                    pkInfo.addColumnName(rs.getString("COLUMN_NAME"));
+                }
+            }
+        }
+    }
+
     @Override
     public List<DbFkInfo> getFKInfo(Connection conn, Grain g) {
 
@@ -491,6 +556,12 @@ public final class H2Adaptor extends OpenSourceDbAdaptor {
         return DBType.H2;
     }
 
+    @Override
+    public boolean comparesStringsByCharacters() {
+        // Celesta doesn't set a collation, so H2 compares strings by their characters
+        return true;
+    }
+
     @Override
     public DbSequenceInfo getSequenceInfo(Connection conn, SequenceElement s) {
         String sql = "SELECT INCREMENT, MINIMUM_VALUE, MAXIMUM_VALUE, CYCLE_OPTION "
@@ -44,6 +44,7 @@ import ru.curs.celesta.dbutils.adaptors.ddl.DdlConsumer;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlGenerator;
 import ru.curs.celesta.dbutils.adaptors.ddl.MsSqlDdlGenerator;
 import ru.curs.celesta.dbutils.jdbc.SqlUtils;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
 import ru.curs.celesta.dbutils.meta.DbColumnInfo;
 import ru.curs.celesta.dbutils.meta.DbFkInfo;
 import ru.curs.celesta.dbutils.meta.DbIndexInfo;
@@ -72,8 +73,11 @@ import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -93,6 +97,7 @@ public final class MSSQLAdaptor extends DBAdaptor {
 
     private static final String SELECT_TOP_1 = "select top 1 %s from ";
     private static final String WHERE_S = " where %s;";
+    private static final Pattern PLAN_ROWS = Pattern.compile("StatementEstRows=\"([^\"]+)\"");
 
     public MSSQLAdaptor(ConnectionPool connectionPool, DdlConsumer ddlConsumer) {
         super(connectionPool, ddlConsumer);
@@ -119,6 +124,49 @@ public final class MSSQLAdaptor extends DBAdaptor {
         }
     }
 
+    @Override
+    String explain(Connection conn, String sql, List<?> params) throws SQLException {
+        // SHOWPLAN_XML must be the only statement of its batch
+        try (Statement showplan = conn.createStatement()) {
+            showplan.execute("SET SHOWPLAN_XML ON");
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                setParameters(stmt, params);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return joinRows(rs);
+                }
+            } finally {
+                showplan.execute("SET SHOWPLAN_XML OFF");
+            }
+        }
+    }
+
+    @Override
+    long rowsEstimate(String plan) {
+        Matcher m = PLAN_ROWS.matcher(plan);
+        return m.find() ? Math.round(Double.parseDouble(m.group(1))) : -1;
+    }
+
+    @Override
+    long tableRowsEstimate(Connection conn, String schemaName, String tableName) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("select sum(row_count) from sys.dm_db_partition_stats"
+                + " where object_id = object_id(quotename(?) + '.' + quotename(?)) and index_id < 2")) {
+            stmt.setString(1, schemaName);
+            stmt.setString(2, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                long rows = rs.getLong(1);
+                return rs.wasNull() ? -1 : rows;
+            }
+        }
+    }
+
+    @Override
+    void releaseSavepoint(Connection conn, Savepoint savepoint) {
+        // SQL Server doesn't release savepoints, they live until the transaction ends
+    }
+
     @Override
     void createSchemaIfNotExists(Connection conn, String name) {
         String sql = String.format(
@@ -291,34 +339,8 @@ public final class MSSQLAdaptor extends DBAdaptor {
             try (ResultSet rs = metaData.getColumns(null, c.getParentTable().getGrain().getName(),
                     c.getParentTable().getName(), c.getName())) {
                 if (rs.next()) {
-                    DbColumnInfo result = new DbColumnInfo();
-                    result.setName(rs.getString(COLUMN_NAME));
-                    String typeName = rs.getString("TYPE_NAME");
-                    if ("varbinary".equalsIgnoreCase(typeName) && checkIfVarcharMax(conn, c)) {
-                        result.setType(BinaryColumn.class);
-                    } else if ("int".equalsIgnoreCase(typeName)) {
-                        result.setType(IntegerColumn.class);
-                    } else if ("float".equalsIgnoreCase(typeName) && rs.getInt("COLUMN_SIZE") == DOUBLE_PRECISION) {
-                        result.setType(FloatingColumn.class);
-                    } else {
-                        for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
-                            if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
-                                result.setType(cc);
-                                break;
-                            }
-                        }
-                    }
-                    result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
-                    if (result.getType() == StringColumn.class) {
-                        result.setLength(rs.getInt("COLUMN_SIZE"));
-                        result.setMax(checkIfVarcharMax(conn, c));
-                    }
-                    if (result.getType() == DecimalColumn.class) {
-                        result.setLength(rs.getInt("COLUMN_SIZE"));
-                        result.setScale(rs.getInt("DECIMAL_DIGITS"));
-                    }
-                    defineDefaultValue(rs, result);
-                    return result;
+                    boolean max = isMaxLengthType(rs.getString("TYPE_NAME")) && checkIfVarcharMax(conn, c);
+                    return readColumnInfo(rs, max);
                 } else {
                     return null;
                 }
@@ -329,6 +351,142 @@ public final class MSSQLAdaptor extends DBAdaptor {
 
     }
 
+    /**
+     * Reads information on a column from the current row of the result set
+     * returned by {@link DatabaseMetaData#getColumns}.
+     *
+     * @param rs   result set of the column metadata
+     * @param max  whether the column is of the maximum length
+     */
+    private DbColumnInfo readColumnInfo(ResultSet rs, boolean max) throws SQLException {
+        DbColumnInfo result = new DbColumnInfo();
+        result.setName(rs.getString(COLUMN_NAME));
+        String typeName = rs.getString("TYPE_NAME");
+        if ("varbinary".equalsIgnoreCase(typeName) && max) {
+            result.setType(BinaryColumn.class);
+        } else if ("int".equalsIgnoreCase(typeName)) {
+            result.setType(IntegerColumn.class);
+        } else if ("float".equalsIgnoreCase(typeName) && rs.getInt("COLUMN_SIZE") == DOUBLE_PRECISION) {
+            result.setType(FloatingColumn.class);
+        } else {
+            for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
+                if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
+                    result.setType(cc);
+                    break;
+                }
+            }
+        }
+        result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+        if (result.getType() == StringColumn.class) {
+            result.setLength(rs.getInt("COLUMN_SIZE"));
+            result.setMax(max);
+        }
+        if (result.getType() == DecimalColumn.class) {
+            result.setLength(rs.getInt("COLUMN_SIZE"));
+            result.setScale(rs.getInt("DECIMAL_DIGITS"));
+        }
+        defineDefaultValue(rs, result);
+        return result;
+    }
+
+    private boolean isMaxLengthType(String typeName) {
+        return "varbinary".equalsIgnoreCase(typeName)
+                || getColumnDefiner(StringColumn.class).dbFieldType().equalsIgnoreCase(typeName);
+    }
+
+    @Override
+    public DbCatalog getCatalog(Connection conn, Grain g) {
+        String schema = g.getName();
+        DbCatalog result = new DbCatalog(this);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT name FROM sys.tables WHERE schema_id = SCHEMA_ID(?)")) {
+                stmt.setString(1, schema);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        result.addTable(rs.getString(1));
+                    }
+                }
+            }
+
+            loadColumnInfo(conn, schema, result);
+            loadPKInfo(conn, schema, result);
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT NAME, CAST(INCREMENT AS varchar(max)) AS INCREMENT,"
+                            + " CAST(MINIMUM_VALUE AS varchar(max)) AS MINIMUM_VALUE,"
+                            + " CAST(MAXIMUM_VALUE AS varchar(max)) AS MAXIMUM_VALUE,"
+                            + " CAST(IS_CYCLING AS varchar(max)) AS IS_CYCLING"
+                            + " FROM SYS.SEQUENCES WHERE SCHEMA_ID = SCHEMA_ID (?)")) {
+                stmt.setString(1, schema);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        DbSequenceInfo sequenceInfo = new DbSequenceInfo();
+                        sequenceInfo.setIncrementBy(rs.getLong("INCREMENT"));
+                        sequenceInfo.setMinValue(rs.getLong("MINIMUM_VALUE"));
+                        sequenceInfo.setMaxValue(rs.getLong("MAXIMUM_VALUE"));
+                        sequenceInfo.setCycle(rs.getBoolean("IS_CYCLING"));
+                        result.addSequence(rs.getString("NAME"), sequenceInfo);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new CelestaException("Could not load catalog of schema %s: %s", schema, e.getMessage());
+        }
+        return result;
+    }
+
+    private void loadColumnInfo(Connection conn, String schema, DbCatalog catalog) throws SQLException {
+        // columns of the maximum length, by table
+        Map<String, Set<String>> maxColumns = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT t.name, c.name FROM sys.columns c INNER JOIN sys.tables t ON t.object_id = c.object_id "
+                        + "WHERE t.schema_id = SCHEMA_ID(?) AND c.max_length = -1")) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    maxColumns.computeIfAbsent(rs.getString(1), t -> new HashSet<>()).add(rs.getString(2));
+                }
+            }
+        }
+
+        try (ResultSet rs = conn.getMetaData().getColumns(null, schema, null, null)) {
+            while (rs.next()) {
+                String tableName = rs.getString("TABLE_NAME");
+                // the schema name is a pattern for the driver
+                if (schema.equals(rs.getString("TABLE_SCHEM")) && catalog.tableExists(tableName)) {
+                    boolean max = maxColumns.getOrDefault(tableName, Collections.emptySet())
+                            .contains(rs.getString(COLUMN_NAME));
+                    catalog.addColumn(tableName, readColumnInfo(rs, max));
+                }
+            }
+        }
+    }
+
+    private void loadPKInfo(Connection conn, String schema, DbCatalog catalog) throws SQLException {
+        String sql = "select cons.TABLE_NAME, cons.CONSTRAINT_NAME, cols.COLUMN_NAME "
+                + "from INFORMATION_SCHEMA.KEY_COLUMN_USAGE cols "
+                + "inner join INFORMATION_SCHEMA.TABLE_CONSTRAINTS cons "
+                + "on cols.TABLE_SCHEMA = cons.TABLE_SCHEMA " + "and cols.TABLE_NAME = cons.TABLE_NAME "
+                + "and cols.CONSTRAINT_NAME = cons.CONSTRAINT_NAME "
+                + "where cons.CONSTRAINT_TYPE = 'PRIMARY KEY' and cons.TABLE_SCHEMA = ? "
+                + "order by cons.TABLE_NAME, cols.ORDINAL_POSITION";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = rs.getString(1);
+                    DbPkInfo pkInfo = catalog.getPKInfo(tableName);
+                    if (pkInfo.getName() == null) {
+                        pkInfo.setName(rs.getString(2));
+                        catalog.setPKInfo(tableName, pkInfo);
+                    }
+                    pkInfo.addColumnName(rs.getString(3));
+                }
+            }
+        }
+    }
+
     private static void defineDefaultValue(ResultSet rs, DbColumnInfo result) throws SQLException {
         String defaultBody = rs.getString("COLUMN_DEF");
         if (defaultBody != null) {
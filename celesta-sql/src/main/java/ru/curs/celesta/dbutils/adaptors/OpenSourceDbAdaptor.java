@@ -6,9 +6,13 @@ import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.ConnectionPool;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlConsumer;
 import ru.curs.celesta.dbutils.jdbc.SqlUtils;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
+import ru.curs.celesta.dbutils.meta.DbColumnInfo;
+import ru.curs.celesta.dbutils.meta.DbSequenceInfo;
 import ru.curs.celesta.dbutils.query.FromClause;
 import ru.curs.celesta.score.Column;
 import ru.curs.celesta.score.DataGrainElement;
+import ru.curs.celesta.score.Grain;
 import ru.curs.celesta.score.SequenceElement;
 import ru.curs.celesta.score.TableElement;
 
@@ -104,17 +108,77 @@ public abstract class OpenSourceDbAdaptor extends DBAdaptor {
         return sqlToStringSet(conn, sql);
     }
 
+    @Override
+    public DbCatalog getCatalog(Connection conn, Grain g) {
+        String schema = g.getName().replace("\"", "");
+        DbCatalog result = new DbCatalog(this);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT table_name FROM information_schema.tables WHERE table_schema = ?")) {
+                stmt.setString(1, schema);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        result.addTable(rs.getString(1));
+                    }
+                }
+            }
+
+            try (ResultSet rs = conn.getMetaData().getColumns(null, schema, null, null)) {
+                while (rs.next()) {
+                    // the schema name is a pattern for the driver
+                    if (schema.equals(rs.getString("TABLE_SCHEM"))) {
+                        result.addColumn(rs.getString("TABLE_NAME"), readColumnInfo(conn, rs));
+                    }
+                }
+            }
+
+            loadPKInfo(conn, schema, result);
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT SEQUENCE_NAME, INCREMENT, MINIMUM_VALUE, MAXIMUM_VALUE, CYCLE_OPTION"
+                            + " FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_SCHEMA = ?")) {
+                stmt.setString(1, schema);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        DbSequenceInfo sequenceInfo = new DbSequenceInfo();
+                        sequenceInfo.setIncrementBy(rs.getLong("INCREMENT"));
+                        sequenceInfo.setMinValue(rs.getLong("MINIMUM_VALUE"));
+                        sequenceInfo.setMaxValue(rs.getLong("MAXIMUM_VALUE"));
+                        sequenceInfo.setCycle(rs.getBoolean("CYCLE_OPTION"));
+                        result.addSequence(rs.getString("SEQUENCE_NAME"), sequenceInfo);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new CelestaException("Could not load catalog of schema %s: %s", schema, e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Reads information on a column from the current row of the result set
+     * returned by {@link java.sql.DatabaseMetaData#getColumns}.
+     *
+     * @param conn  DB connection
+     * @param rs  result set of the column metadata
+     */
+    abstract DbColumnInfo readColumnInfo(Connection conn, ResultSet rs) throws SQLException;
+
+    /**
+     * Loads primary keys of all the tables of a schema into the catalog.
+     *
+     * @param conn  DB connection
+     * @param schema  schema name
+     * @param catalog  catalog of the schema
+     */
+    abstract void loadPKInfo(Connection conn, String schema, DbCatalog catalog) throws SQLException;
+
     @Override
     public PreparedStatement deleteRecordSetStatement(Connection conn, TableElement t, String where) {
         // Готовим запрос на удаление
         String sql = String.format("delete from " + tableString(t.getGrain().getName(), t.getName()) + " %s;",
                 where.isEmpty() ? "" : "where " + where);
-        try {
-            PreparedStatement result = conn.prepareStatement(sql);
-            return result;
-        } catch (SQLException e) {
-            throw new CelestaException(e.getMessage());
-        }
+        return prepareStatement(conn, sql);
     }
 
     @Override
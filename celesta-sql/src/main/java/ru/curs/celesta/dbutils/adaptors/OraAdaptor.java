@@ -42,6 +42,7 @@ import ru.curs.celesta.dbutils.adaptors.ddl.DdlConsumer;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlGenerator;
 import ru.curs.celesta.dbutils.adaptors.ddl.OraDdlGenerator;
 import ru.curs.celesta.dbutils.adaptors.function.OraFunctions;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
 import ru.curs.celesta.dbutils.meta.DbColumnInfo;
 import ru.curs.celesta.dbutils.meta.DbFkInfo;
 import ru.curs.celesta.dbutils.meta.DbIndexInfo;
@@ -75,12 +76,15 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -109,6 +113,10 @@ public final class OraAdaptor extends DBAdaptor {
     private static final Pattern BOOLEAN_CHECK = Pattern.compile("\"([^\"]+)\" *[iI][nN] *\\( *0 *, *1 *\\)");
     private static final Pattern DATE_PATTERN = Pattern.compile("'(\\d\\d\\d\\d)-([01]\\d)-([0123]\\d)'");
     private static final Pattern HEX_STRING = Pattern.compile("'([0-9A-F]+)'");
+    // the Rows column of the plan's root operation, with K, M, G... multipliers
+    private static final Pattern PLAN_ROWS =
+            Pattern.compile("\\|\\s*0\\s*\\|[^|]*\\|[^|]*\\|\\s*(\\d+)([KMGTPE]?)\\s*\\|");
+    private static final long PLAN_ROWS_MULTIPLIER = 1000;
     private static final Pattern TABLE_PATTERN = Pattern.compile("([a-zA-Z][a-zA-Z0-9]*)_([a-zA-Z_][a-zA-Z0-9_]*)");
 
     private static final Map<TriggerType, String> TRIGGER_EVENT_TYPE_DICT = new HashMap<>();
@@ -162,6 +170,50 @@ public final class OraAdaptor extends DBAdaptor {
         }
     }
 
+    @Override
+    String explain(Connection conn, String sql, List<?> params) throws SQLException {
+        // bind variables are left unbound: EXPLAIN PLAN doesn't peek at their values
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("EXPLAIN PLAN FOR " + sql);
+            try (ResultSet rs = stmt.executeQuery("SELECT PLAN_TABLE_OUTPUT FROM TABLE(DBMS_XPLAN.DISPLAY())")) {
+                return joinRows(rs);
+            }
+        }
+    }
+
+    @Override
+    long rowsEstimate(String plan) {
+        Matcher m = PLAN_ROWS.matcher(plan);
+        if (!m.find()) {
+            return -1;
+        }
+        long rows = Long.parseLong(m.group(1));
+        int power = m.group(2).isEmpty() ? 0 : "KMGTPE".indexOf(m.group(2)) + 1;
+        for (int i = 0; i < power; i++) {
+            rows *= PLAN_ROWS_MULTIPLIER;
+        }
+        return rows;
+    }
+
+    @Override
+    long tableRowsEstimate(Connection conn, String schemaName, String tableName) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("select num_rows from user_tables where table_name = ?")) {
+            stmt.setString(1, getSchemaUnderscoreNameTemplate(schemaName, tableName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                long rows = rs.getLong(1);
+                return rs.wasNull() ? -1 : rows;
+            }
+        }
+    }
+
+    @Override
+    void releaseSavepoint(Connection conn, Savepoint savepoint) {
+        // Oracle doesn't release savepoints, they live until the transaction ends
+    }
+
     @Override
     void createSchemaIfNotExists(Connection conn, String schema) {
         ddlAdaptor.createSchema(conn, schema);
@@ -262,12 +314,7 @@ public final class OraAdaptor extends DBAdaptor {
     public PreparedStatement deleteRecordSetStatement(Connection conn, TableElement t, String where) {
         String sql = String.format("delete from " + tableString(t.getGrain().getName(), t.getName()) + " %s",
                 where.isEmpty() ? "" : "where " + where);
-        try {
-            PreparedStatement result = conn.prepareStatement(sql);
-            return result;
-        } catch (SQLException e) {
-            throw new CelestaException(e.getMessage());
-        }
+        return prepareStatement(conn, sql);
     }
 
     @Override
@@ -390,34 +437,7 @@ public final class OraAdaptor extends DBAdaptor {
             try (Statement stmt = conn.createStatement();
                  ResultSet rs = stmt.executeQuery(sql)) {
                 if (rs.next()) {
-                    result = new DbColumnInfo();
-                    result.setName(rs.getString(COLUMN_NAME));
-                    String typeName = rs.getString("DATA_TYPE");
-
-                    if (typeName.startsWith("TIMESTAMP")) {
-                        if (typeName.endsWith("WITH TIME ZONE")) {
-                            result.setType(ZonedDateTimeColumn.class);
-                        } else {
-                            result.setType(DateTimeColumn.class);
-                        }
-                    } else if ("float".equalsIgnoreCase(typeName)) {
-                        result.setType(FloatingColumn.class);
-                    } else if ("nclob".equalsIgnoreCase(typeName)) {
-                        result.setType(StringColumn.class);
-                        result.setMax(true);
-                    } else if ("number".equalsIgnoreCase(typeName)
-                            && rs.getInt("DATA_PRECISION") != 0 && rs.getInt("DATA_SCALE") != 0) {
-                        result.setType(DecimalColumn.class);
-                        result.setLength(rs.getInt("DATA_PRECISION"));
-                        result.setScale(rs.getInt("DATA_SCALE"));
-                    } else {
-                        for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
-                            if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
-                                result.setType(cc);
-                                break;
-                            }
-                        }
-                    }
+                    result = readColumnInfo(rs);
                     if (IntegerColumn.class == result.getType()) {
                         // В Oracle булевские столбцы имеют тот же тип данных,
                         // что и INT-столбцы: просматриваем, есть ли на них
@@ -426,10 +446,6 @@ public final class OraAdaptor extends DBAdaptor {
                             result.setType(BooleanColumn.class);
                         }
                     }
-                    result.setNullable("Y".equalsIgnoreCase(rs.getString("NULLABLE")));
-                    if (result.getType() == StringColumn.class) {
-                        result.setLength(rs.getInt("CHAR_LENGTH"));
-                    }
                 } else {
                     return null;
                 }
@@ -444,6 +460,48 @@ public final class OraAdaptor extends DBAdaptor {
 
     }
 
+    /**
+     * Reads information on a column from the current row of a result set over user_tab_cols.
+     * Boolean columns are read as integer ones, the default value is not read.
+     *
+     * @param rs  result set of the column metadata
+     */
+    private DbColumnInfo readColumnInfo(ResultSet rs) throws SQLException {
+        DbColumnInfo result = new DbColumnInfo();
+        result.setName(rs.getString(COLUMN_NAME));
+        String typeName = rs.getString("DATA_TYPE");
+
+        if (typeName.startsWith("TIMESTAMP")) {
+            if (typeName.endsWith("WITH TIME ZONE")) {
+                result.setType(ZonedDateTimeColumn.class);
+            } else {
+                result.setType(DateTimeColumn.class);
+            }
+        } else if ("float".equalsIgnoreCase(typeName)) {
+            result.setType(FloatingColumn.class);
+        } else if ("nclob".equalsIgnoreCase(typeName)) {
+            result.setType(StringColumn.class);
+            result.setMax(true);
+        } else if ("number".equalsIgnoreCase(typeName)
+                && rs.getInt("DATA_PRECISION") != 0 && rs.getInt("DATA_SCALE") != 0) {
+            result.setType(DecimalColumn.class);
+            result.setLength(rs.getInt("DATA_PRECISION"));
+            result.setScale(rs.getInt("DATA_SCALE"));
+        } else {
+            for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
+                if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
+                    result.setType(cc);
+                    break;
+                }
+            }
+        }
+        result.setNullable("Y".equalsIgnoreCase(rs.getString("NULLABLE")));
+        if (result.getType() == StringColumn.class) {
+            result.setLength(rs.getInt("CHAR_LENGTH"));
+        }
+        return result;
+    }
+
     private void processDefaults(Connection conn, Column<?> c, DbColumnInfo result) throws SQLException {
 
         TableElement te = c.getParentTable();
@@ -473,8 +531,7 @@ public final class OraAdaptor extends DBAdaptor {
                     try (Statement stmt = conn.createStatement();
                          ResultSet sequenceRs = stmt.executeQuery(sql)) {
                         if (sequenceRs.next()) {
-                            String sequenceName = sequenceRs.getString(1);
-                            body = "NEXTVAL(" + sequenceName.replace(g.getName() + "_", "") + ")";
+                            body = getSequenceDefault(g, sequenceRs.getString(1));
                         } else {
                             return;
                         }
@@ -484,27 +541,186 @@ public final class OraAdaptor extends DBAdaptor {
                     return;
                 }
             }
-            if (BooleanColumn.class == result.getType()) {
-                body = "0".equals(body.trim()) ? "'FALSE'" : "'TRUE'";
-            } else if (DateTimeColumn.class == result.getType()) {
-                if (body.toLowerCase().contains("sysdate")) {
-                    body = "GETDATE()";
-                } else {
-                    Matcher m = DATE_PATTERN.matcher(body);
+            setDefaultValue(result, body);
+
+        }
+    }
+
+    private static String getSequenceDefault(Grain g, String sequenceName) {
+        return "NEXTVAL(" + sequenceName.replace(g.getName() + "_", "") + ")";
+    }
+
+    private static void setDefaultValue(DbColumnInfo result, String body) {
+        if (BooleanColumn.class == result.getType()) {
+            body = "0".equals(body.trim()) ? "'FALSE'" : "'TRUE'";
+        } else if (DateTimeColumn.class == result.getType()) {
+            if (body.toLowerCase().contains("sysdate")) {
+                body = "GETDATE()";
+            } else {
+                Matcher m = DATE_PATTERN.matcher(body);
+                if (m.find()) {
+                    body = String.format("'%s%s%s'", m.group(1), m.group(2), m.group(3));
+                }
+            }
+        } else if (BinaryColumn.class == result.getType()) {
+            Matcher m = HEX_STRING.matcher(body);
+            if (m.find()) {
+                body = "0x" + m.group(1);
+            }
+        } else {
+            body = body.trim();
+        }
+        result.setDefaultValue(body);
+    }
+
+    @Override
+    public DbCatalog getCatalog(Connection conn, Grain g) {
+        // names of the tables in the score by their names in the DB
+        Map<String, String> tableNames = new HashMap<>();
+        for (String tableName : getCatalogTableNames(g)) {
+            tableNames.put(getSchemaUnderscoreNameTemplate(g.getName(), tableName), tableName);
+        }
+        String namePattern = g.getName().replace("_", "@_") + "@_%";
+
+        DbCatalog result = new DbCatalog(this);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "select table_name from all_tables where owner = sys_context('userenv','session_user') "
+                            + "and table_name like ? escape '@'")) {
+                stmt.setString(1, namePattern);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String tableName = tableNames.get(rs.getString(1));
+                        if (tableName != null) {
+                            result.addTable(tableName);
+                        }
+                    }
+                }
+            }
+
+            loadColumnInfo(conn, g, namePattern, tableNames, result);
+            loadPKInfo(conn, namePattern, tableNames, result);
+            loadSequenceInfo(conn, g, namePattern, result);
+        } catch (SQLException e) {
+            throw new CelestaException("Could not load catalog of schema %s: %s", g.getName(), e.getMessage());
+        }
+        return result;
+    }
+
+    private void loadColumnInfo(Connection conn, Grain g, String namePattern, Map<String, String> tableNames,
+                                DbCatalog catalog) throws SQLException {
+        // boolean columns are integer ones with a CHECK constraint
+        Map<String, Set<String>> booleanColumns = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT TABLE_NAME, SEARCH_CONDITION FROM ALL_CONSTRAINTS WHERE "
+                        + "OWNER = sys_context('userenv','session_user') "
+                        + "AND CONSTRAINT_TYPE = 'C' AND TABLE_NAME LIKE ? ESCAPE '@'")) {
+            stmt.setString(1, namePattern);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = rs.getString(1);
+                    Matcher m = BOOLEAN_CHECK.matcher(rs.getString(2));
                     if (m.find()) {
-                        body = String.format("'%s%s%s'", m.group(1), m.group(2), m.group(3));
+                        booleanColumns.computeIfAbsent(tableName, t -> new HashSet<>()).add(m.group(1));
                     }
                 }
-            } else if (BinaryColumn.class == result.getType()) {
-                Matcher m = HEX_STRING.matcher(body);
-                if (m.find()) {
-                    body = "0x" + m.group(1);
+            }
+        }
+
+        // sequences of the integer columns by the names of their triggers
+        Map<String, String> sequenceTriggers = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT NAME, REFERENCED_NAME FROM USER_DEPENDENCIES "
+                     + "WHERE TYPE = 'TRIGGER' AND REFERENCED_TYPE = 'SEQUENCE'")) {
+            while (rs.next()) {
+                sequenceTriggers.put(rs.getString(1), rs.getString(2));
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE, NULLABLE, CHAR_LENGTH, DATA_PRECISION, DATA_SCALE, "
+                        + "DATA_DEFAULT FROM user_tab_cols WHERE TABLE_NAME LIKE ? ESCAPE '@' "
+                        + "ORDER BY TABLE_NAME, COLUMN_ID")) {
+            stmt.setString(1, namePattern);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String dbTableName = rs.getString("TABLE_NAME");
+                    String tableName = tableNames.get(dbTableName);
+                    if (tableName == null) {
+                        continue;
+                    }
+                    DbColumnInfo columnInfo = readColumnInfo(rs);
+                    if (IntegerColumn.class == columnInfo.getType() && booleanColumns
+                            .getOrDefault(dbTableName, Collections.emptySet()).contains(columnInfo.getName())) {
+                        columnInfo.setType(BooleanColumn.class);
+                    }
+                    // DATA_DEFAULT is a LONG column, which is read the last
+                    String body = rs.getString("DATA_DEFAULT");
+                    if (body == null || "null".equalsIgnoreCase(body)) {
+                        Column<?> c = getCatalogColumn(g, tableName, columnInfo.getName());
+                        String sequenceName = c instanceof IntegerColumn
+                                ? sequenceTriggers.get(generateSequenceTriggerName((IntegerColumn) c)) : null;
+                        body = sequenceName == null ? null : getSequenceDefault(g, sequenceName);
+                    }
+                    if (body != null) {
+                        setDefaultValue(columnInfo, body);
+                    }
+                    catalog.addColumn(tableName, columnInfo);
+                }
+            }
+        }
+    }
+
+    private void loadPKInfo(Connection conn, String namePattern, Map<String, String> tableNames,
+                            DbCatalog catalog) throws SQLException {
+        String sql = "select cons.table_name, cons.constraint_name, cols.column_name from all_constraints cons "
+                + "inner join all_cons_columns cols on cons.constraint_name = cols.constraint_name  "
+                + "and cons.owner = cols.owner where "
+                + "cons.owner = sys_context('userenv','session_user') "
+                + "and cons.table_name like ? escape '@'"
+                + " and cons.constraint_type = 'P' order by cons.table_name, cols.position";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, namePattern);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = tableNames.get(rs.getString(1));
+                    if (tableName == null) {
+                        continue;
+                    }
+                    DbPkInfo pkInfo = catalog.getPKInfo(tableName);
+                    if (pkInfo.getName() == null) {
+                        pkInfo.setName(rs.getString(2));
+                        catalog.setPKInfo(tableName, pkInfo);
+                    }
+                    pkInfo.addColumnName(rs.getString(3));
                 }
-            } else {
-                body = body.trim();
             }
-            result.setDefaultValue(body);
+        }
+    }
 
+    private void loadSequenceInfo(Connection conn, Grain g, String namePattern,
+                                  DbCatalog catalog) throws SQLException {
+        Map<String, DbSequenceInfo> sequences = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT SEQUENCE_NAME, INCREMENT_BY, MIN_VALUE, MAX_VALUE, CYCLE_FLAG"
+                        + " FROM USER_SEQUENCES WHERE SEQUENCE_NAME LIKE ? ESCAPE '@'")) {
+            stmt.setString(1, namePattern);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    DbSequenceInfo sequenceInfo = new DbSequenceInfo();
+                    sequenceInfo.setIncrementBy(rs.getLong("INCREMENT_BY"));
+                    sequenceInfo.setMinValue(rs.getLong("MIN_VALUE"));
+                    sequenceInfo.setMaxValue(rs.getLong("MAX_VALUE"));
+                    sequenceInfo.setCycle("Y".equals(rs.getString("CYCLE_FLAG")));
+                    sequences.put(rs.getString("SEQUENCE_NAME"), sequenceInfo);
+                }
+            }
+        }
+        for (SequenceElement s : g.getElements(SequenceElement.class).values()) {
+            DbSequenceInfo sequenceInfo = sequences.get(sequenceString(g.getName(), s.getName(), false));
+            if (sequenceInfo != null) {
+                catalog.addSequence(s.getName(), sequenceInfo);
+            }
         }
     }
 
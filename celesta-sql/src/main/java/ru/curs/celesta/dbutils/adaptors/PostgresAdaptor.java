@@ -44,6 +44,7 @@ import ru.curs.celesta.DBType;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlConsumer;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlGenerator;
 import ru.curs.celesta.dbutils.adaptors.ddl.PostgresDdlGenerator;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
 import ru.curs.celesta.dbutils.meta.DbColumnInfo;
 import ru.curs.celesta.dbutils.meta.DbFkInfo;
 import ru.curs.celesta.dbutils.meta.DbIndexInfo;
@@ -96,6 +97,8 @@ public final class PostgresAdaptor extends OpenSourceDbAdaptor {
     private static final Logger LOGGER = LoggerFactory.getLogger(PostgresAdaptor.class);
 
     private static final Pattern HEX_STRING = Pattern.compile("'\\\\x([0-9A-Fa-f]+)'");
+    // the first estimate of the plan is the one of its top node
+    private static final Pattern PLAN_ROWS = Pattern.compile(" rows=(\\d+)");
 
     public PostgresAdaptor(ConnectionPool connectionPool, DdlConsumer ddlConsumer) {
         super(connectionPool, ddlConsumer);
@@ -116,6 +119,39 @@ public final class PostgresAdaptor extends OpenSourceDbAdaptor {
         }
     }
 
+    @Override
+    String explain(Connection conn, String sql, List<?> params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN (ANALYZE off) " + sql)) {
+            setParameters(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return joinRows(rs);
+            }
+        }
+    }
+
+    @Override
+    long rowsEstimate(String plan) {
+        Matcher m = PLAN_ROWS.matcher(plan);
+        return m.find() ? Long.parseLong(m.group(1)) : -1;
+    }
+
+    @Override
+    long tableRowsEstimate(Connection conn, String schemaName, String tableName) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("select c.reltuples, c.relpages from pg_class c"
+                + " join pg_namespace n on n.oid = c.relnamespace where n.nspname = ? and c.relname = ?")) {
+            stmt.setString(1, schemaName);
+            stmt.setString(2, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                float reltuples = rs.getFloat(1);
+                // a table never vacuumed or analyzed has -1 tuples, or 0 tuples in 0 pages before PostgreSQL 14
+                return reltuples < 0 || reltuples == 0 && rs.getInt(2) == 0 ? -1 : Math.round((double) reltuples);
+            }
+        }
+    }
+
     @Override
     public int getCurrentIdent(Connection conn, BasicTable t) {
 
@@ -194,57 +230,58 @@ public final class PostgresAdaptor extends OpenSourceDbAdaptor {
                             .replace("\"", ""),
                     c.getParentTable().getName().replace("\"", ""), c.getName()
                             .replace("\"", ""))) {
-                if (rs.next()) {
-                    DbColumnInfo result = new DbColumnInfo();
-                    result.setName(rs.getString(COLUMN_NAME));
-                    String typeName = rs.getString("TYPE_NAME");
-                    if ("serial".equalsIgnoreCase(typeName)) {
-                        result.setType(IntegerColumn.class);
-                        result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
-
-                        String defaultBody = rs.getString("COLUMN_DEF");
-                        Pattern p = Pattern.compile("nextval\\('[\"]?[^\"]+[\"]?\\.[\"]?([^\"]+)+[\"]?'::regclass\\)");
-                        Matcher m = p.matcher(defaultBody);
-
-                        if (m.matches()) {
-                            String sequenceName = m.group(1);
-                            result.setDefaultValue("NEXTVAL(" + sequenceName + ")");
-                        }
-
-                        return result;
-                    } else if ("text".equalsIgnoreCase(typeName)) {
-                        result.setType(StringColumn.class);
-                        result.setMax(true);
-                    } else {
-                        for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
-                            if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
-                                result.setType(cc);
-                                break;
-                            }
-                        }
-                    }
-                    result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
-                    if (result.getType() == StringColumn.class || result.getType() == DecimalColumn.class) {
-                        result.setLength(rs.getInt("COLUMN_SIZE"));
-                    }
-                    if (result.getType() == DecimalColumn.class) {
-                        result.setScale(rs.getInt("DECIMAL_DIGITS"));
-                    }
-                    String defaultBody = rs.getString("COLUMN_DEF");
-                    if (defaultBody != null) {
-                        defaultBody = modifyDefault(result, defaultBody);
-                        result.setDefaultValue(defaultBody);
-                    }
-                    return result;
-                } else {
-                    return null;
-                }
+                return rs.next() ? readColumnInfo(conn, rs) : null;
             }
         } catch (SQLException e) {
             throw new CelestaException(e.getMessage());
         }
     }
 
+    @Override
+    DbColumnInfo readColumnInfo(Connection conn, ResultSet rs) throws SQLException {
+        DbColumnInfo result = new DbColumnInfo();
+        result.setName(rs.getString(COLUMN_NAME));
+        String typeName = rs.getString("TYPE_NAME");
+        if ("serial".equalsIgnoreCase(typeName)) {
+            result.setType(IntegerColumn.class);
+            result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+
+            String defaultBody = rs.getString("COLUMN_DEF");
+            Pattern p = Pattern.compile("nextval\\('[\"]?[^\"]+[\"]?\\.[\"]?([^\"]+)+[\"]?'::regclass\\)");
+            Matcher m = p.matcher(defaultBody);
+
+            if (m.matches()) {
+                String sequenceName = m.group(1);
+                result.setDefaultValue("NEXTVAL(" + sequenceName + ")");
+            }
+
+            return result;
+        } else if ("text".equalsIgnoreCase(typeName)) {
+            result.setType(StringColumn.class);
+            result.setMax(true);
+        } else {
+            for (Class<? extends Column<?>> cc : COLUMN_CLASSES) {
+                if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
+                    result.setType(cc);
+                    break;
+                }
+            }
+        }
+        result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+        if (result.getType() == StringColumn.class || result.getType() == DecimalColumn.class) {
+            result.setLength(rs.getInt("COLUMN_SIZE"));
+        }
+        if (result.getType() == DecimalColumn.class) {
+            result.setScale(rs.getInt("DECIMAL_DIGITS"));
+        }
+        String defaultBody = rs.getString("COLUMN_DEF");
+        if (defaultBody != null) {
+            defaultBody = modifyDefault(result, defaultBody);
+            result.setDefaultValue(defaultBody);
+        }
+        return result;
+    }
+
     private String modifyDefault(DbColumnInfo ci, String defaultBody) {
         String result = defaultBody;
         if (DateTimeColumn.class == ci.getType()) {
@@ -373,6 +410,35 @@ public final class PostgresAdaptor extends OpenSourceDbAdaptor {
         return result;
     }
 
+    @Override
+    void loadPKInfo(Connection conn, String schema, DbCatalog catalog) throws SQLException {
+        String sql = "SELECT c.relname AS tablename, i.relname AS indexname, a.attname AS columnname "
+                + "FROM pg_index x "
+                + "INNER JOIN pg_class c ON c.oid = x.indrelid "
+                + "INNER JOIN pg_class i ON i.oid = x.indexrelid "
+                + "INNER JOIN pg_namespace n ON n.oid = c.relnamespace "
+                + "CROSS JOIN LATERAL unnest(x.indkey) WITH ORDINALITY AS k(attnum, ord) "
+                + "INNER JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum = k.attnum "
+                + "WHERE c.relkind = 'r'::\"char\" AND i.relkind = 'i'::\"char\" "
+                + "AND n.nspname = ? AND x.indisprimary "
+                + "ORDER BY c.relname, k.ord";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String tableName = rs.getString("tablename");
+                    DbPkInfo pkInfo = catalog.getPKInfo(tableName);
+                    if (pkInfo.getName() == null) {
+                        pkInfo.setName(rs.getString("indexname"));
+                        catalog.setPKInfo(tableName, pkInfo);
+                    }
+                    pkInfo.addColumnName(rs.getString("columnname"));
+                }
+            }
+        }
+    }
+
     @Override
     public List<DbFkInfo> getFKInfo(Connection conn, Grain g) {
         // Full foreign key information query
@@ -426,7 +492,7 @@ public final class PostgresAdaptor extends OpenSourceDbAdaptor {
                 + "INNER JOIN pg_class c ON c.oid = x.indrelid " + "INNER JOIN pg_class i ON i.oid = x.indexrelid "
                 + "INNER JOIN pg_namespace n ON n.oid = c.relnamespace "
                 + "WHERE c.relkind = 'r'::\"char\" AND i.relkind = 'i'::\"char\" "
-                + "and n.nspname = '%s' and x.indisunique = false;", g.getName());
+                + "and n.nspname = '%s' and x.indisunique = false and x.indisvalid;", g.getName());
         Map<String, DbIndexInfo> result = new HashMap<>();
         try (Statement stmt = conn.createStatement();
              PreparedStatement stmt2 = conn.prepareStatement("select pg_get_indexdef(?, ?, false)");
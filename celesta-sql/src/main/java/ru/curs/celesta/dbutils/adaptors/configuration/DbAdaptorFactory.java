@@ -28,6 +28,7 @@ public final class DbAdaptorFactory {
   private ConnectionPool connectionPool;
   private DdlConsumer ddlConsumer;
   private boolean h2ReferentialIntegrity;
+  private boolean onlineDdl;
 
   /**
    * Sets DB type.
@@ -74,30 +75,47 @@ public final class DbAdaptorFactory {
     return this;
   }
 
+  /**
+   * Whether indices and foreign keys have to be created without blocking writes
+   * to their tables.
+   *
+   * @param onlineDdl  {@code true} - create online, {@code false} - create as usual.
+   *        Default value is {@code false}.
+   * @return
+   */
+  public DbAdaptorFactory setOnlineDdl(boolean onlineDdl) {
+    this.onlineDdl = onlineDdl;
+    return this;
+  }
+
   /**
    * Builds DB adaptor for concrete DB type.
    *
    * @return
    */
   public DBAdaptor createDbAdaptor() {
+    DBAdaptor result = null;
 
     if (DBType.H2.equals(dbType)) {
-      return new H2Adaptor(this.connectionPool, this.ddlConsumer, this.h2ReferentialIntegrity);
+      result = new H2Adaptor(this.connectionPool, this.ddlConsumer, this.h2ReferentialIntegrity);
     }
     if (DBType.POSTGRESQL.equals(dbType)) {
-      return new PostgresAdaptor(this.connectionPool, this.ddlConsumer);
+      result = new PostgresAdaptor(this.connectionPool, this.ddlConsumer);
     }
     if (DBType.MSSQL.equals(dbType)) {
-      return new MSSQLAdaptor(this.connectionPool, this.ddlConsumer);
+      result = new MSSQLAdaptor(this.connectionPool, this.ddlConsumer);
     }
     if (DBType.ORACLE.equals(dbType)) {
-      return new OraAdaptor(this.connectionPool, this.ddlConsumer);
+      result = new OraAdaptor(this.connectionPool, this.ddlConsumer);
     }
     if (DBType.FIREBIRD.equals(dbType)) {
-      return new FirebirdAdaptor(this.connectionPool, this.ddlConsumer);
+      result = new FirebirdAdaptor(this.connectionPool, this.ddlConsumer);
     }
 
-    return null;
+    if (result != null) {
+      result.setOnlineDdl(this.onlineDdl);
+    }
+    return result;
   }
 
 }
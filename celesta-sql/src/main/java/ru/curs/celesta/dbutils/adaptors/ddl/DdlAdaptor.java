@@ -17,8 +17,13 @@ import ru.curs.celesta.score.TableElement;
 import ru.curs.celesta.score.View;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,12 +31,32 @@ import java.util.Optional;
 public final class DdlAdaptor {
     private final DdlGenerator ddlGenerator;
     private final DdlConsumer ddlConsumer;
+    private volatile boolean onlineDdl;
 
     public DdlAdaptor(DdlGenerator ddlGenerator, DdlConsumer ddlConsumer) {
         this.ddlGenerator = ddlGenerator;
         this.ddlConsumer = ddlConsumer;
     }
 
+    /**
+     * Sets whether indices and foreign keys are created without blocking writes
+     * to their tables, where the DB supports it.
+     *
+     * @param onlineDdl  {@code true} - create indices and foreign keys online
+     */
+    public void setOnlineDdl(boolean onlineDdl) {
+        this.onlineDdl = onlineDdl;
+    }
+
+    /**
+     * Whether indices and foreign keys are created online.
+     *
+     * @return
+     */
+    public boolean isOnlineDdl() {
+        return onlineDdl;
+    }
+
     /**
      * Creates DB schema.
      *
@@ -259,6 +284,10 @@ public final class DdlAdaptor {
      * @param index index description
      */
     public void createIndex(Connection conn, Index index) {
+        if (onlineDdl) {
+            createIndexOnline(conn, index);
+            return;
+        }
         List<String> sqlList = ddlGenerator.createIndex(index);
 
         try {
@@ -271,6 +300,36 @@ public final class DdlAdaptor {
         }
     }
 
+    /**
+     * Creates an index online. The statements are executed outside of a transaction,
+     * since some DBs build indices online only in autocommit mode. If creation fails,
+     * the index left invalid is dropped.
+     */
+    private void createIndexOnline(Connection conn, Index index) {
+        List<String> sqlList = ddlGenerator.createIndexOnline(conn, index);
+
+        try {
+            conn.commit();
+            conn.setAutoCommit(true);
+            try {
+                processSql(conn, sqlList);
+            } catch (CelestaException e) {
+                try {
+                    processSql(conn, ddlGenerator.dropInvalidIndex(index));
+                } catch (CelestaException e1) {
+                    e.addSuppressed(e1);
+                }
+                throw e;
+            } finally {
+                conn.setAutoCommit(false);
+            }
+        } catch (Exception e) {
+            throw new CelestaException(
+                    String.format("Cannot create index '%s': %s", index.getName(), e.getMessage()), e
+            );
+        }
+    }
+
     /**
      * Creates foreign key in the DB.
      *
@@ -279,14 +338,40 @@ public final class DdlAdaptor {
      */
     public void createFk(Connection conn, ForeignKey fk) {
         try {
-            List<String> sqlList = ddlGenerator.createFk(conn, fk);
-            processSql(conn, sqlList);
+            if (onlineDdl) {
+                processSql(conn, ddlGenerator.createFkOnline(conn, fk));
+                validateFk(conn, fk);
+            } else {
+                processSql(conn, ddlGenerator.createFk(conn, fk));
+            }
         } catch (CelestaException e) {
             throw new CelestaException("Cannot create foreign key '%s': %s", fk.getConstraintName(),
                     e.getMessage());
         }
     }
 
+    /**
+     * Checks the existing rows against a foreign key created online. The foreign key
+     * is committed first, and the check runs in its own transaction.
+     */
+    private void validateFk(Connection conn, ForeignKey fk) {
+        List<String> sqlList = ddlGenerator.validateFk(fk);
+        if (sqlList.isEmpty()) {
+            return;
+        }
+        try {
+            conn.commit();
+            conn.setAutoCommit(true);
+            try {
+                processSql(conn, sqlList);
+            } finally {
+                conn.setAutoCommit(false);
+            }
+        } catch (SQLException e) {
+            throw new CelestaException(e.getMessage());
+        }
+    }
+
     /**
      * Creates a view in the database from metadata.
      *
@@ -357,6 +442,238 @@ public final class DdlAdaptor {
 
     }
 
+    /**
+     * Creates the queue table of a deferred materialized view.
+     *
+     * @param conn  DB connection
+     * @param mv  deferred materialized view
+     */
+    public void createMaterializedViewQueue(Connection conn, MaterializedView mv) {
+        try {
+            processSql(conn, this.ddlGenerator.createMaterializedViewQueue(mv));
+        } catch (CelestaException e) {
+            throw new CelestaException("Can't create queue of materialized view %s.%s: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the queue table of a deferred materialized view.
+     *
+     * @param conn  DB connection
+     * @param mv  deferred materialized view
+     */
+    public void dropMaterializedViewQueue(Connection conn, MaterializedView mv) {
+        try {
+            processSql(conn, this.ddlGenerator.dropMaterializedViewQueue(mv));
+        } catch (CelestaException e) {
+            throw new CelestaException("Can't drop queue of materialized view %s.%s: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the queue of a deferred materialized view: recomputes the queued groups
+     * from the table and removes them from the queue. The transaction is not committed.
+     *
+     * @param conn  DB connection
+     * @param mv  deferred materialized view
+     * @param maxGroups  maximum number of groups to apply, 0 for all the queued groups
+     * @return  number of the applied groups
+     */
+    public int applyMaterializedViewQueue(Connection conn, MaterializedView mv, int maxGroups) {
+        try {
+            if (selectMaterializedViewQueue(conn, mv, 1).isEmpty()) {
+                return 0;
+            }
+            Optional<String> lock = this.ddlGenerator.lockMaterializedView(mv);
+            if (lock.isPresent()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(lock.get());
+                }
+            }
+
+            // the queue is read again since another transaction could apply it before the lock
+            List<Object[]> groups = selectMaterializedViewQueue(conn, mv, maxGroups);
+            if (groups.isEmpty()) {
+                return 0;
+            }
+            int keyCount = groups.get(0).length;
+
+            for (String sql : this.ddlGenerator.applyMaterializedViewQueue(mv)) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (Object[] key : groups) {
+                        for (int i = 0; i < keyCount; i++) {
+                            stmt.setObject(i + 1, key[i]);
+                        }
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            }
+            return groups.size();
+        } catch (SQLException e) {
+            throw new CelestaException("Can't apply queue of materialized view %s.%s: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a build of a materialized view in chunks: creates the build queue of the view,
+     * so that the triggers created afterwards append the groups changed during the build
+     * to it instead of modifying the view.
+     *
+     * @param conn  DB connection
+     * @param mv  materialized view
+     */
+    public void beginMaterializedViewBuild(Connection conn, MaterializedView mv) {
+        try {
+            processSql(conn, this.ddlGenerator.createMaterializedViewBuildQueue(mv));
+        } catch (CelestaException e) {
+            throw new CelestaException("Can't create build queue of materialized view %s.%s: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+        this.ddlGenerator.setUnderBuild(mv, true);
+    }
+
+    /**
+     * Drops the build queue of a materialized view left by an interrupted build.
+     *
+     * @param conn  DB connection
+     * @param mv  materialized view
+     */
+    public void dropMaterializedViewBuildQueue(Connection conn, MaterializedView mv) {
+        try {
+            processSql(conn, this.ddlGenerator.dropMaterializedViewBuildQueue(mv));
+        } catch (CelestaException e) {
+            throw new CelestaException("Can't drop build queue of materialized view %s.%s: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+        this.ddlGenerator.setUnderBuild(mv, false);
+    }
+
+    /**
+     * Restarts a build of a materialized view in chunks interrupted after the upgrade of its grain:
+     * keeps the build queue of the view, recreates the triggers of the table so that they append
+     * the changed groups to it and deletes the groups computed by the interrupted build.
+     * The transaction is not committed.
+     *
+     * @param conn  DB connection
+     * @param mv  materialized view
+     */
+    public void restartMaterializedViewBuild(Connection conn, MaterializedView mv) {
+        BasicTable t = (BasicTable) mv.getRefTable().getTable();
+        this.ddlGenerator.setUnderBuild(mv, true);
+        dropTableTriggersForMaterializedViews(conn, t);
+        createTableTriggersForMaterializedViews(conn, t);
+        try {
+            processSql(conn, this.ddlGenerator.clearMaterializedView(mv));
+        } catch (CelestaException e) {
+            throw new CelestaException("Can't restart build of materialized view %s.%s: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Splits the groups of a materialized view into chunks, the ranges of values of the first
+     * group-by column comprising about the given number of rows of the table. A chunk can
+     * exceed it if a single value has more rows.
+     *
+     * @param conn  DB connection
+     * @param mv  materialized view
+     * @param chunkRows  number of rows of the table per chunk
+     * @return  lower and upper bounds of the chunks, both inclusive; a single chunk without
+     *          bounds if the view has no group-by columns
+     */
+    public List<Object[]> getMaterializedViewChunks(Connection conn, MaterializedView mv, long chunkRows) {
+        Optional<String> sql = this.ddlGenerator.selectMaterializedViewChunks(mv);
+        if (!sql.isPresent()) {
+            return Collections.singletonList(new Object[0]);
+        }
+        List<Object[]> result = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql.get())) {
+            Object lower = null;
+            Object upper = null;
+            long rows = 0;
+            while (rs.next()) {
+                upper = rs.getObject(1);
+                if (lower == null) {
+                    lower = upper;
+                }
+                rows += rs.getLong(2);
+                if (rows >= chunkRows) {
+                    result.add(new Object[] {lower, upper});
+                    lower = null;
+                    rows = 0;
+                }
+            }
+            if (lower != null) {
+                result.add(new Object[] {lower, upper});
+            }
+        } catch (SQLException e) {
+            throw new CelestaException("Can't split materialized view %s.%s into chunks: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Computes the groups of a materialized view within a chunk. The transaction is not committed.
+     *
+     * @param conn  DB connection
+     * @param mv  materialized view
+     * @param chunk  bounds of the chunk as returned by {@link #getMaterializedViewChunks}
+     * @return  number of the computed groups
+     */
+    public int buildMaterializedViewChunk(Connection conn, MaterializedView mv, Object[] chunk) {
+        try (PreparedStatement stmt = conn.prepareStatement(this.ddlGenerator.insertMaterializedViewChunk(mv))) {
+            for (int i = 0; i < chunk.length; i++) {
+                stmt.setObject(i + 1, chunk[i]);
+            }
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new CelestaException("Can't build chunk of materialized view %s.%s: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Completes a build of a materialized view in chunks: recomputes the groups changed
+     * during the build, drops the build queue and recreates the triggers of the table,
+     * so that they maintain the view again. The transaction is not committed.
+     *
+     * @param conn  DB connection
+     * @param mv  materialized view
+     */
+    public void finishMaterializedViewBuild(Connection conn, MaterializedView mv) {
+        BasicTable t = (BasicTable) mv.getRefTable().getTable();
+        this.ddlGenerator.lockMaterializedView(mv).ifPresent(lock -> processSql(conn, lock));
+        dropTableTriggersForMaterializedViews(conn, t);
+        applyMaterializedViewQueue(conn, mv, 0);
+        dropMaterializedViewBuildQueue(conn, mv);
+        createTableTriggersForMaterializedViews(conn, t);
+    }
+
+    private List<Object[]> selectMaterializedViewQueue(Connection conn, MaterializedView mv, int maxGroups)
+            throws SQLException {
+        int keyCount = (int) mv.getColumns().keySet().stream().filter(mv::isGroupByColumn).count();
+        List<Object[]> result = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(this.ddlGenerator.selectMaterializedViewQueue(mv))) {
+            stmt.setMaxRows(maxGroups);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Object[] key = new Object[keyCount];
+                    for (int i = 0; i < keyCount; i++) {
+                        key[i] = rs.getObject(i + 1);
+                    }
+                    result.add(key);
+                }
+            }
+        }
+        return result;
+    }
+
     //TODO: Javadoc
     public void dropTableTriggersForMaterializedViews(Connection conn, BasicTable t) {
         List<String> sqlList = this.ddlGenerator.dropTableTriggersForMaterializedViews(conn, t);
@@ -367,6 +684,10 @@ public final class DdlAdaptor {
         }
     }
 
+    public String getMaterializedViewChecksum(MaterializedView mv) {
+        return this.ddlGenerator.getMaterializedViewChecksum(mv);
+    }
+
     public void createTableTriggersForMaterializedViews(Connection conn, BasicTable t) {
         List<String> sqlList = this.ddlGenerator.createTableTriggersForMaterializedViews(t);
         try {
@@ -21,6 +21,9 @@ import ru.curs.celesta.score.Grain;
 import ru.curs.celesta.score.Index;
 import ru.curs.celesta.score.IntegerColumn;
 import ru.curs.celesta.score.MaterializedView;
+import ru.curs.celesta.score.NamedElement;
+import ru.curs.celesta.score.Max;
+import ru.curs.celesta.score.Min;
 import ru.curs.celesta.score.ParameterizedView;
 import ru.curs.celesta.score.SQLGenerator;
 import ru.curs.celesta.score.SequenceElement;
@@ -38,17 +41,19 @@ import java.io.StringWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static ru.curs.celesta.dbutils.adaptors.constants.CommonConstants.ALTER_TABLE;
 
@@ -72,7 +77,11 @@ public abstract class DdlGenerator {
 
     DBAdaptor dmlAdaptor;
 
-    Map<String, Map<String, Set<String>>> triggers = new HashMap<>();
+    /** Known triggers by schemas and tables, shared by the grains upgraded in parallel. */
+    final Map<String, Map<String, Set<String>>> triggers = new ConcurrentHashMap<>();
+
+    /** Materialized views being built in chunks. */
+    private final Set<MaterializedView> viewsUnderBuild = ConcurrentHashMap.newKeySet();
 
     public DdlGenerator(DBAdaptor dmlAdaptor) {
         this.dmlAdaptor = dmlAdaptor;
@@ -287,6 +296,28 @@ public abstract class DdlGenerator {
 
     abstract List<String> createIndex(Index index);
 
+    /**
+     * Generates SQL for index creation that doesn't block writes to the table while
+     * the index is built. By default the index is created as usual.
+     * <p>
+     * The statements are executed in autocommit mode.
+     *
+     * @param conn  connection
+     * @param index  index description
+     */
+    List<String> createIndexOnline(Connection conn, Index index) {
+        return createIndex(index);
+    }
+
+    /**
+     * Generates SQL dropping an index left invalid after its online creation has failed.
+     *
+     * @param index  index description
+     */
+    List<String> dropInvalidIndex(Index index) {
+        return Collections.emptyList();
+    }
+
     /**
      * Alters a table column.
      *
@@ -376,6 +407,29 @@ public abstract class DdlGenerator {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Generates SQL for foreign key creation that doesn't block writes to the table
+     * while the existing rows are checked. By default the foreign key is created as usual.
+     * The existing rows are checked afterwards by {@link #validateFk(ForeignKey)}.
+     *
+     * @param conn  connection
+     * @param fk  foreign key
+     */
+    List<String> createFkOnline(Connection conn, ForeignKey fk) {
+        return createFk(conn, fk);
+    }
+
+    /**
+     * Generates SQL checking the existing rows against a foreign key created online.
+     * <p>
+     * The statements are executed in autocommit mode, once the foreign key is committed.
+     *
+     * @param fk  foreign key
+     */
+    List<String> validateFk(ForeignKey fk) {
+        return Collections.emptyList();
+    }
+
     /**
      * Add on update rules to sql syntax.
      * @param conn connection
@@ -429,13 +483,25 @@ public abstract class DdlGenerator {
                 tableString(t.getGrain().getName(), t.getName())
         );
 
-        this.triggers.computeIfAbsent(t.getGrain().getName(), s -> new HashMap<>())
+        this.triggers.computeIfAbsent(t.getGrain().getName(), s -> new ConcurrentHashMap<>())
                 .remove(t.getName());
 
         return sql;
     }
 
     final List<String> initDataForMaterializedView(MaterializedView mv) {
+        String mvIdentifier = tableString(mv.getGrain().getName(), mv.getName());
+        String deleteSql = this.truncateTable(mvIdentifier);
+        return Arrays.asList(deleteSql, insertDataForMaterializedView(mv, ""));
+    }
+
+    /**
+     * Returns INSERT statement computing the groups of a materialized view from its table.
+     *
+     * @param mv  materialized view
+     * @param where  WHERE clause restricting the rows of the table, empty for all the rows
+     */
+    private String insertDataForMaterializedView(MaterializedView mv, String where) {
         TableElement t = mv.getRefTable().getTable();
 
         String mvIdentifier = tableString(mv.getGrain().getName(), mv.getName());
@@ -458,8 +524,6 @@ public abstract class DdlGenerator {
                 })
                 .collect(Collectors.joining(", "));
 
-        String deleteSql = this.truncateTable(mvIdentifier);
-
         String colsToSelect = mv.getColumns().keySet().stream()
                 .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
                 .map(alias -> {
@@ -472,6 +536,10 @@ public abstract class DdlGenerator {
                             return "COUNT(*)";
                         } else if (agrExpr instanceof Sum) {
                             return "SUM(\"" + colRef.getName() + "\")";
+                        } else if (agrExpr instanceof Max) {
+                            return "MAX(\"" + colRef.getName() + "\")";
+                        } else if (agrExpr instanceof Min) {
+                            return "MIN(\"" + colRef.getName() + "\")";
                         } else {
                             throw new RuntimeException(
                                     String.format(
@@ -489,12 +557,235 @@ public abstract class DdlGenerator {
                     }
                 }).collect(Collectors.joining(", "));
 
+        // without GROUP BY the only group exists as long as the table has rows
         String selectScript = String.format("SELECT " + colsToSelect + ", COUNT(*)"
-                        + " FROM " + tableString(t.getGrain().getName(), t.getName()) + " GROUP BY %s",
-                tableGroupByColumns);
-        String insertSql = String.format("INSERT INTO %s (%s) " + selectScript, mvIdentifier, mvColumns);
+                        + " FROM " + tableString(t.getGrain().getName(), t.getName()) + "%s %s",
+                where, tableGroupByColumns.isEmpty() ? "HAVING COUNT(*) > 0" : "GROUP BY " + tableGroupByColumns);
+        return String.format("INSERT INTO %s (%s) " + selectScript, mvIdentifier, mvColumns);
+    }
+
+    /**
+     * Returns statements creating the queue table of a deferred materialized view and
+     * the index on its group-by columns.
+     *
+     * @param mv  deferred materialized view
+     */
+    final List<String> createMaterializedViewQueue(MaterializedView mv) {
+        return createQueue(mv, mv.getQueueName());
+    }
+
+    /**
+     * Returns statements creating the queue table collecting the groups changed while
+     * a materialized view is built in chunks.
+     *
+     * @param mv  materialized view
+     */
+    final List<String> createMaterializedViewBuildQueue(MaterializedView mv) {
+        return createQueue(mv, mv.getBuildQueueName());
+    }
+
+    private List<String> createQueue(MaterializedView mv, String queueName) {
+        List<String> result = new ArrayList<>();
+        String queue = tableString(mv.getGrain().getName(), queueName);
+        List<String> keys = getGroupByAliases(mv);
+
+        // DEFAULT is omitted since some databases name its constraint after the view
+        String columns = mv.getColumns().values().stream()
+                .filter(c -> keys.contains(c.getName()) || c == mv.getSurrogateCount())
+                .map(c -> ColumnDefinerFactory.getColumnDefiner(getType(), getColumnClass(c)).getMainDefinition(c))
+                .collect(Collectors.joining(",\n  "));
+        result.add(String.format("create table %s(\n  %s\n)", queue, columns));
+
+        if (!keys.isEmpty()) {
+            result.add(String.format("create index \"%s\" on %s (%s)",
+                    NamedElement.limitName(queueName, "_keys"), queue,
+                    keys.stream().map(k -> "\"" + k + "\"").collect(Collectors.joining(", "))));
+        }
+        return result;
+    }
 
-        return Arrays.asList(deleteSql, insertSql);
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Column<?>> getColumnClass(Column<?> c) {
+        return (Class<Column<?>>) c.getClass();
+    }
+
+    /**
+     * Returns statement dropping the queue table of a deferred materialized view.
+     *
+     * @param mv  deferred materialized view
+     */
+    final String dropMaterializedViewQueue(MaterializedView mv) {
+        return String.format("DROP TABLE %s", tableString(mv.getGrain().getName(), mv.getQueueName()));
+    }
+
+    /**
+     * Returns statement dropping the queue table of a materialized view build.
+     *
+     * @param mv  materialized view
+     */
+    final String dropMaterializedViewBuildQueue(MaterializedView mv) {
+        return String.format("DROP TABLE %s", tableString(mv.getGrain().getName(), mv.getBuildQueueName()));
+    }
+
+    /**
+     * Returns statement deleting the groups of a materialized view computed by an interrupted build.
+     *
+     * @param mv  materialized view
+     */
+    final String clearMaterializedView(MaterializedView mv) {
+        return truncateTable(tableString(mv.getGrain().getName(), mv.getName()));
+    }
+
+    /**
+     * Marks a materialized view as being built in chunks. Triggers generated for a view
+     * under build append the changed groups to its build queue.
+     *
+     * @param mv  materialized view
+     * @param underBuild  whether the view is being built
+     */
+    final void setUnderBuild(MaterializedView mv, boolean underBuild) {
+        if (underBuild) {
+            viewsUnderBuild.add(mv);
+        } else {
+            viewsUnderBuild.remove(mv);
+        }
+    }
+
+    /**
+     * Whether triggers of the table only append the changed groups of a materialized view
+     * to a queue instead of modifying the view.
+     *
+     * @param mv  materialized view
+     */
+    final boolean isQueued(MaterializedView mv) {
+        return mv.isDeferred() || viewsUnderBuild.contains(mv);
+    }
+
+    private String queueString(MaterializedView mv) {
+        return tableString(mv.getGrain().getName(),
+                viewsUnderBuild.contains(mv) ? mv.getBuildQueueName() : mv.getQueueName());
+    }
+
+    /**
+     * Returns query of the chunks a materialized view is built in: the values of its first
+     * group-by column with the numbers of rows of the table, in the ascending order.
+     * Empty if the view has no group-by columns.
+     *
+     * @param mv  materialized view
+     */
+    final Optional<String> selectMaterializedViewChunks(MaterializedView mv) {
+        List<String> keys = getGroupByAliases(mv);
+        if (keys.isEmpty()) {
+            return Optional.empty();
+        }
+        TableElement t = mv.getRefTable().getTable();
+        String key = groupByColumnString(mv, keys.get(0));
+        return Optional.of(String.format("SELECT %1$s, COUNT(*) FROM %2$s GROUP BY %1$s ORDER BY %1$s",
+                key, tableString(t.getGrain().getName(), t.getName())));
+    }
+
+    /**
+     * Returns INSERT statement computing the groups of a materialized view whose first
+     * group-by column is within a range. Parameters of the statement are the bounds
+     * of the range, both inclusive. The statement has no parameters and computes all
+     * the groups if the view has no group-by columns.
+     *
+     * @param mv  materialized view
+     */
+    final String insertMaterializedViewChunk(MaterializedView mv) {
+        List<String> keys = getGroupByAliases(mv);
+        if (keys.isEmpty()) {
+            return insertDataForMaterializedView(mv, "");
+        }
+        String key = groupByColumnString(mv, keys.get(0));
+        return insertDataForMaterializedView(mv, String.format(" WHERE %1$s >= ? AND %1$s <= ?", key));
+    }
+
+    private String groupByColumnString(MaterializedView mv, String alias) {
+        Column<?> colRef = mv.getColumnRef(alias);
+        String column = "\"" + colRef.getName() + "\"";
+        return DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType()) ? truncDate(column) : column;
+    }
+
+    /**
+     * Returns statement appending keys of the groups of the rows to the queue of a deferred
+     * materialized view, or to the build queue of a view under build.
+     *
+     * @param mv  queued materialized view
+     * @param rows  source of the rows, e.g. a transition table
+     * @param row  reference to the columns of a row
+     * @param delta  change of the row count of the group: 1 for an added row, -1 for a removed one
+     */
+    final String enqueueMaterializedViewRows(MaterializedView mv, String rows, String row, int delta) {
+        List<String> keys = getGroupByAliases(mv);
+        String columns = Stream.concat(keys.stream(), Stream.of(MaterializedView.SURROGATE_COUNT))
+                .map(alias -> "\"" + alias + "\"")
+                .collect(Collectors.joining(", "));
+        String values = Stream.concat(
+                keys.stream().map(alias -> {
+                    Column<?> colRef = mv.getColumnRef(alias);
+                    String value = row + ".\"" + colRef.getName() + "\"";
+                    return DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType()) ? truncDate(value) : value;
+                }),
+                Stream.of(Integer.toString(delta)))
+                .collect(Collectors.joining(", "));
+        return String.format("INSERT INTO %s (%s) SELECT %s FROM %s",
+                queueString(mv), columns, values, rows);
+    }
+
+    /**
+     * Returns query of the distinct keys of the groups in the queue of a deferred materialized
+     * view (the build queue of a view under build), in the order of the group-by columns of the view.
+     *
+     * @param mv  queued materialized view
+     */
+    final String selectMaterializedViewQueue(MaterializedView mv) {
+        List<String> keys = getGroupByAliases(mv);
+        return String.format("SELECT DISTINCT %s FROM %s",
+                keys.isEmpty() ? "1 AS \"" + MaterializedView.SURROGATE_COUNT + "\""
+                        : keys.stream().map(k -> "\"" + k + "\"").collect(Collectors.joining(", ")),
+                queueString(mv));
+    }
+
+    /**
+     * Returns statements applying the queue of a deferred materialized view for a group:
+     * the group is removed from the queue and recomputed from the table. Parameters of
+     * the statements are the key of the group as returned by
+     * {@link #selectMaterializedViewQueue(MaterializedView)}.
+     *
+     * @param mv  queued materialized view
+     */
+    final List<String> applyMaterializedViewQueue(MaterializedView mv) {
+        List<String> keys = getGroupByAliases(mv);
+        String keyCondition = keys.stream()
+                .map(alias -> "\"" + alias + "\" = ?")
+                .collect(Collectors.joining(" AND "));
+        String tableCondition = keys.stream()
+                .map(alias -> groupByColumnString(mv, alias) + " = ?")
+                .collect(Collectors.joining(" AND "));
+        String where = keys.isEmpty() ? "" : " WHERE ";
+
+        return Arrays.asList(
+                String.format("DELETE FROM %s%s%s", queueString(mv), where, keyCondition),
+                String.format("DELETE FROM %s%s%s",
+                        tableString(mv.getGrain().getName(), mv.getName()), where, keyCondition),
+                insertDataForMaterializedView(mv, where + tableCondition));
+    }
+
+    /**
+     * Returns statement locking a materialized view against concurrent modification
+     * until the end of the transaction, if the database supports it.
+     *
+     * @param mv  materialized view
+     */
+    Optional<String> lockMaterializedView(MaterializedView mv) {
+        return Optional.empty();
+    }
+
+    private static List<String> getGroupByAliases(MaterializedView mv) {
+        return mv.getColumns().keySet().stream()
+                .filter(mv::isGroupByColumn)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -514,20 +805,20 @@ public abstract class DdlGenerator {
     }
 
     final void rememberTrigger(TriggerQuery query) {
-        this.triggers.computeIfAbsent(query.getSchema(), s -> new HashMap<>())
-                .computeIfAbsent(query.getTableName(), t -> new HashSet<>())
+        this.triggers.computeIfAbsent(query.getSchema(), s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(query.getTableName(), t -> ConcurrentHashMap.newKeySet())
                 .add(query.getName());
     }
 
     final void forgetTrigger(TriggerQuery query) {
-        this.triggers.computeIfAbsent(query.getSchema(), s -> new HashMap<>())
-                .computeIfAbsent(query.getTableName(), t -> new HashSet<>())
+        this.triggers.computeIfAbsent(query.getSchema(), s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(query.getTableName(), t -> ConcurrentHashMap.newKeySet())
                 .remove(query.getName());
     }
 
     final boolean isTriggerKnown(TriggerQuery query) {
-        return this.triggers.computeIfAbsent(query.getSchema(), s -> new HashMap<>())
-                .computeIfAbsent(query.getTableName(), t -> new HashSet<>())
+        return this.triggers.computeIfAbsent(query.getSchema(), s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(query.getTableName(), t -> ConcurrentHashMap.newKeySet())
                 .contains(query.getName());
     }
 
@@ -545,6 +836,17 @@ public abstract class DdlGenerator {
 
     public abstract List<String> createTableTriggersForMaterializedViews(BasicTable t);
 
+    /**
+     * Returns the checksum kept in the insert trigger of a materialized view. A DBMS changing
+     * the way its triggers maintain the view mixes the trigger format into it.
+     *
+     * @param mv  materialized view
+     * @return
+     */
+    String getMaterializedViewChecksum(MaterializedView mv) {
+        return mv.getChecksum();
+    }
+
     /**
      * Returns an SQL with the rounding function of timestamp to date.
      *
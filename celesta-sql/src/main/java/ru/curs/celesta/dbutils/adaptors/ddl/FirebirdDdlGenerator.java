@@ -25,6 +25,8 @@ import ru.curs.celesta.score.Index;
 import ru.curs.celesta.score.IntegerColumn;
 import ru.curs.celesta.score.LogicValuedExpr;
 import ru.curs.celesta.score.MaterializedView;
+import ru.curs.celesta.score.Max;
+import ru.curs.celesta.score.Min;
 import ru.curs.celesta.score.ParameterRef;
 import ru.curs.celesta.score.ParameterizedView;
 import ru.curs.celesta.score.ParameterizedViewSelectStmt;
@@ -840,7 +842,8 @@ public final class FirebirdDdlGenerator extends DdlGenerator {
                                 return "1 as \"" + alias + "\"";
                             }
                             return "";
-                        } else if (aggrCols.get(alias) instanceof Sum) {
+                        } else if (aggrCols.get(alias) instanceof Sum || aggrCols.get(alias) instanceof Max
+                                || aggrCols.get(alias) instanceof Min) {
                             return "%1$s.\"" + colRef.getName() + "\" as " + "\"" + alias + "\"";
                         } else {
                             return "";
@@ -869,23 +872,6 @@ public final class FirebirdDdlGenerator extends DdlGenerator {
                 .append("WHEN NOT MATCHED THEN \n")
                 .append("INSERT (%s) VALUES (%s); \n");
 
-        String setStatementTemplate = mv.getAggregateColumns().keySet().stream()
-                .map(alias -> "\"mv\".\"" + alias
-                        + "\" = \"mv\".\"" + alias
-                        + "\" %1$s \"aggregate\".\"" + alias + "\"").collect(Collectors.joining(", "))
-                .concat(", \"mv\".\"").concat(MaterializedView.SURROGATE_COUNT).concat("\" = ")
-                .concat("\"mv\".\"").concat(MaterializedView.SURROGATE_COUNT)
-                .concat("\" %1$s \"aggregate\".\"")
-                .concat(MaterializedView.SURROGATE_COUNT).concat("\"");
-
-        String insertSql = String.format(insertSqlBuilder.toString(), fullMvName,
-                String.format(selectPartOfScriptTemplate, "NEW"), String.format(rowConditionTemplate, "aggregate"),
-                String.format(setStatementTemplate, "+"), mvColumns, aggregateColumns);
-
-        String deleteMatchedCondTemplate = mv.getAggregateColumns().keySet().stream()
-                .map(alias -> "\"mv\".\"" + alias + "\" %1$s \"aggregate\".\"" + alias + "\"")
-                .collect(Collectors.joining(" %2$s "));
-
         String rowConditionForExistsTemplate = mv.getColumns().keySet().stream()
                 .filter(mv::isGroupByColumn)
                 .map(alias -> {
@@ -900,6 +886,19 @@ public final class FirebirdDdlGenerator extends DdlGenerator {
                 })
                 .collect(Collectors.joining(" AND "));
 
+        String insertSql = isQueued(mv) ? enqueueMaterializedViewRows(mv, "RDB$DATABASE", "NEW", 1) + ";"
+                : String.format(insertSqlBuilder.toString(), fullMvName,
+                String.format(selectPartOfScriptTemplate, "NEW"), String.format(rowConditionTemplate, "aggregate"),
+                getSetStatement(mv, "+", fullTableName, rowConditionForExistsTemplate), mvColumns, aggregateColumns);
+
+        String deleteMatchedCondTemplate = Stream.concat(
+                mv.getAggregateColumns().entrySet().stream()
+                        .filter(e -> !(e.getValue() instanceof Max || e.getValue() instanceof Min))
+                        .map(Map.Entry::getKey),
+                Stream.of(MaterializedView.SURROGATE_COUNT))
+                .map(alias -> "\"mv\".\"" + alias + "\" %1$s \"aggregate\".\"" + alias + "\"")
+                .collect(Collectors.joining(" %2$s "));
+
         String existsSql = "EXISTS(SELECT * FROM " + fullTableName + " AS \"t\" WHERE "
                 + String.format(rowConditionForExistsTemplate, "t") + ")";
 
@@ -909,20 +908,21 @@ public final class FirebirdDdlGenerator extends DdlGenerator {
                 .append("WHEN MATCHED AND (%s) THEN \n")
                 .append("UPDATE SET %s; \n");
 
-        String deleteSql = String.format(deleteSqlBuilder.toString(), fullMvName,
+        String deleteSql = isQueued(mv) ? enqueueMaterializedViewRows(mv, "RDB$DATABASE", "OLD", -1) + ";"
+                : String.format(deleteSqlBuilder.toString(), fullMvName,
                 String.format(selectPartOfScriptTemplate, "OLD"), String.format(rowConditionTemplate, "aggregate"),
                 String.format(deleteMatchedCondTemplate, "=", "AND").concat(" AND NOT " + existsSql),
                 String.format(deleteMatchedCondTemplate, "<>", "OR")
                         .concat(" OR (" + String.format(deleteMatchedCondTemplate, "=", "AND")
                                 .concat(" AND " + existsSql + ")")),
-                String.format(setStatementTemplate, "-"));
+                getSetStatement(mv, "-", fullTableName, rowConditionForExistsTemplate));
 
         String sql = "CREATE TRIGGER \"" + insertTriggerName + "\" "
                 + "for " + fullTableName
                 + " AFTER INSERT \n"
                 + " AS \n"
                 + " BEGIN \n"
-                + String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE, mv.getChecksum())
+                + String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE, getMaterializedViewChecksum(mv))
                 + "\n " + insertSql + "\n END;";
 
         result.add(sql);
@@ -932,7 +932,7 @@ public final class FirebirdDdlGenerator extends DdlGenerator {
                 + " AFTER DELETE \n"
                 + " AS \n"
                 + " BEGIN \n"
-                + String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE, mv.getChecksum())
+                + String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE, getMaterializedViewChecksum(mv))
                 + "\n " + deleteSql + "\n END;";
 
         result.add(sql);
@@ -943,12 +943,45 @@ public final class FirebirdDdlGenerator extends DdlGenerator {
                 + " AFTER UPDATE \n"
                 + " AS \n"
                 + " BEGIN \n"
-                + String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE, mv.getChecksum())
+                + String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE, getMaterializedViewChecksum(mv))
                 + "\n " + updateSql + "\n END;";
 
         result.add(sql);
     }
 
+    /**
+     * Returns SET clause applying values of the inserted ({@code "+"}) or deleted
+     * ({@code "-"}) row to the view. MIN/MAX are recomputed over the rows of the group
+     * only when the deleted row held the extremum.
+     */
+    private static String getSetStatement(MaterializedView mv, String sign, String fullTableName,
+                                          String rowConditionForExistsTemplate) {
+        return mv.getAggregateColumns().entrySet().stream()
+                .map(e -> {
+                    String alias = e.getKey();
+                    if (!(e.getValue() instanceof Max || e.getValue() instanceof Min)) {
+                        return String.format("\"mv\".\"%1$s\" = \"mv\".\"%1$s\" %2$s \"aggregate\".\"%1$s\"",
+                                alias, sign);
+                    } else if ("+".equals(sign)) {
+                        return String.format("\"mv\".\"%1$s\" = CASE WHEN \"mv\".\"%1$s\" IS NULL "
+                                        + "OR \"aggregate\".\"%1$s\" %2$s \"mv\".\"%1$s\" "
+                                        + "THEN \"aggregate\".\"%1$s\" ELSE \"mv\".\"%1$s\" END",
+                                alias, e.getValue() instanceof Max ? ">" : "<");
+                    } else {
+                        return String.format("\"mv\".\"%1$s\" = CASE WHEN \"mv\".\"%1$s\" = \"aggregate\".\"%1$s\" "
+                                        + "THEN (SELECT %2$s(\"t\".\"%3$s\") FROM %4$s AS \"t\" WHERE %5$s) "
+                                        + "ELSE \"mv\".\"%1$s\" END",
+                                alias, e.getValue() instanceof Max ? "MAX" : "MIN",
+                                mv.getColumnRef(alias).getName(), fullTableName,
+                                String.format(rowConditionForExistsTemplate, "t"));
+                    }
+                }).collect(Collectors.joining(", "))
+                .concat(", \"mv\".\"").concat(MaterializedView.SURROGATE_COUNT).concat("\" = ")
+                .concat("\"mv\".\"").concat(MaterializedView.SURROGATE_COUNT)
+                .concat("\" " + sign + " \"aggregate\".\"")
+                .concat(MaterializedView.SURROGATE_COUNT).concat("\"");
+    }
+
     @Override
     String truncDate(String dateStr) {
         return String.format("CAST(CAST(%s as Date) AS TIMESTAMP)", dateStr);
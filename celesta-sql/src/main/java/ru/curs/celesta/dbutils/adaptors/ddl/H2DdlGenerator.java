@@ -55,6 +55,12 @@ public final class H2DdlGenerator extends OpenSourceDdlGenerator {
         return DBType.H2;
     }
 
+    @Override
+    String dropTriggerSql(TriggerQuery query) {
+        // a trigger belongs to the schema of its table
+        return String.format("DROP TRIGGER %s", tableString(query.getSchema(), query.getName()));
+    }
+
     @Override
     List<String> updateVersioningTrigger(Connection conn, TableElement t)  {
         // First of all, we are about to check if trigger exists
@@ -288,7 +294,7 @@ public final class H2DdlGenerator extends OpenSourceDdlGenerator {
                             + tableString(t.getGrain().getName(), t.getName()) + " FOR EACH ROW CALL %n "
                             + MaterializedView.CHECKSUM_COMMENT_TEMPLATE + "%n"
                             + "\"%s\"",
-                    mv.getChecksum(),
+                    getMaterializedViewChecksum(mv),
                     MaterializedViewInsertTrigger.class.getName());
             result.add(sql);
             this.rememberTrigger(query.withName(insertTriggerName));
@@ -20,6 +20,8 @@ import ru.curs.celesta.score.Expr;
 import ru.curs.celesta.score.Grain;
 import ru.curs.celesta.score.Index;
 import ru.curs.celesta.score.MaterializedView;
+import ru.curs.celesta.score.Max;
+import ru.curs.celesta.score.Min;
 import ru.curs.celesta.score.ParameterizedView;
 import ru.curs.celesta.score.SQLGenerator;
 import ru.curs.celesta.score.Sum;
@@ -30,12 +32,18 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static ru.curs.celesta.dbutils.adaptors.constants.CommonConstants.ALTER_TABLE;
 import static ru.curs.celesta.dbutils.adaptors.function.CommonFunctions.getFieldList;
@@ -47,6 +55,11 @@ public final class MsSqlDdlGenerator extends DdlGenerator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MsSqlDdlGenerator.class);
 
+    // SERVERPROPERTY('EngineEdition') of Enterprise, Azure SQL Database and Managed Instance
+    private static final Set<Integer> ONLINE_INDEX_EDITIONS = new HashSet<>(Arrays.asList(3, 5, 8));
+
+    private volatile Boolean onlineIndexSupported;
+
     public MsSqlDdlGenerator(DBAdaptor dmlAdaptor) {
         super(dmlAdaptor);
     }
@@ -205,6 +218,33 @@ public final class MsSqlDdlGenerator extends DdlGenerator {
         return Arrays.asList(sql);
     }
 
+    /**
+     * Builds the index online on the editions supporting it, Standard and Express
+     * editions build it offline.
+     */
+    @Override
+    List<String> createIndexOnline(Connection conn, Index index) {
+        if (!isOnlineIndexSupported(conn)) {
+            return createIndex(index);
+        }
+        return createIndex(index).stream()
+                .map(sql -> sql + " WITH (ONLINE = ON)")
+                .collect(Collectors.toList());
+    }
+
+    private boolean isOnlineIndexSupported(Connection conn) {
+        if (onlineIndexSupported == null) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT CAST(SERVERPROPERTY('EngineEdition') AS int)")) {
+                onlineIndexSupported = rs.next() && ONLINE_INDEX_EDITIONS.contains(rs.getInt(1));
+            } catch (SQLException e) {
+                LOGGER.warn("Can't determine the edition of the server, indices are built offline", e);
+                return false;
+            }
+        }
+        return onlineIndexSupported;
+    }
+
     @Override
     public SQLGenerator getViewSQLGenerator() {
         return new SQLGenerator() {
@@ -406,20 +446,8 @@ public final class MsSqlDdlGenerator extends DdlGenerator {
                 })
                 .collect(Collectors.joining(" AND "));
 
-        String setStatementTemplate = mv.getAggregateColumns().entrySet().stream()
-                .map(e -> {
-                    StringBuilder sb = new StringBuilder();
-                    String alias = e.getKey();
-
-                    sb.append("mv.").append(alias)
-                            .append(" = mv.").append(alias)
-                            .append(" %1$s aggregate.").append(alias);
-
-                    return sb.toString();
-                }).collect(Collectors.joining(", "))
-                .concat(", mv.").concat(MaterializedView.SURROGATE_COUNT).concat(" = ")
-                .concat("mv.").concat(MaterializedView.SURROGATE_COUNT).concat(" %1$s aggregate.")
-                .concat(MaterializedView.SURROGATE_COUNT);
+        String insertSetStatement = getSetStatement(mv, "+", fullTableName, rowConditionForExistsTemplate);
+        String deleteSetStatement = getSetStatement(mv, "-", fullTableName, rowConditionForExistsTemplate);
 
         String tableGroupByColumns = mv.getColumns().values().stream()
                 .filter(v -> mv.isGroupByColumn(v.getName()))
@@ -446,6 +474,10 @@ public final class MsSqlDdlGenerator extends DdlGenerator {
                             return "";
                         } else if (aggrCols.get(alias) instanceof Sum) {
                             return "SUM(\"" + colRef.getName() + "\") as \"" + alias + "\"";
+                        } else if (aggrCols.get(alias) instanceof Max) {
+                            return "MAX(\"" + colRef.getName() + "\") as \"" + alias + "\"";
+                        } else if (aggrCols.get(alias) instanceof Min) {
+                            return "MIN(\"" + colRef.getName() + "\") as \"" + alias + "\"";
                         } else {
                             return "";
                         }
@@ -469,11 +501,16 @@ public final class MsSqlDdlGenerator extends DdlGenerator {
                 .append("WHEN NOT MATCHED THEN \n")
                 .append("INSERT (%s) VALUES (%s); \n");
 
-        String insertSql = String.format(insertSqlBuilder.toString(), fullMvName,
+        String insertSql = isQueued(mv) ? enqueueMaterializedViewRows(mv, "inserted", "inserted", 1) + ";"
+                : String.format(insertSqlBuilder.toString(), fullMvName,
                 selectPartOfScript, tableGroupByColumns, String.format(rowConditionTemplate, "aggregate"),
-                String.format(setStatementTemplate, "+"), mvColumns, aggregateColumns);
+                insertSetStatement, mvColumns, aggregateColumns);
 
-        String deleteMatchedCondTemplate = mv.getAggregateColumns().keySet().stream()
+        String deleteMatchedCondTemplate = Stream.concat(
+                mv.getAggregateColumns().entrySet().stream()
+                        .filter(e -> !(e.getValue() instanceof Max || e.getValue() instanceof Min))
+                        .map(Map.Entry::getKey),
+                Stream.of(MaterializedView.SURROGATE_COUNT))
                 .map(alias -> "mv." + alias + " %1$s aggregate." + alias)
                 .collect(Collectors.joining(" %2$s "));
 
@@ -486,13 +523,14 @@ public final class MsSqlDdlGenerator extends DdlGenerator {
                 .append("WHEN MATCHED AND (%s) THEN \n")
                 .append("UPDATE SET %s; \n");
 
-        String deleteSql = String.format(deleteSqlBuilder.toString(), fullMvName,
+        String deleteSql = isQueued(mv) ? enqueueMaterializedViewRows(mv, "deleted", "deleted", -1) + ";"
+                : String.format(deleteSqlBuilder.toString(), fullMvName,
                 selectPartOfScript, tableGroupByColumns, String.format(rowConditionTemplate, "aggregate"),
                 String.format(deleteMatchedCondTemplate, "=", "AND").concat(" AND NOT " + existsSql),
                 String.format(deleteMatchedCondTemplate, "<>", "OR")
                         .concat(" OR (" + String.format(deleteMatchedCondTemplate, "=", "AND")
                                 .concat(" AND " + existsSql + ")")),
-                String.format(setStatementTemplate, "-"));
+                deleteSetStatement);
 
         String sql;
         //INSERT
@@ -501,7 +539,8 @@ public final class MsSqlDdlGenerator extends DdlGenerator {
                         + "on %s after insert as begin %n"
                         + MaterializedView.CHECKSUM_COMMENT_TEMPLATE
                         + "%n %s %n END;",
-                t.getGrain().getName(), insertTriggerName, fullTableName, mv.getChecksum(), insertSql);
+                t.getGrain().getName(), insertTriggerName, fullTableName, getMaterializedViewChecksum(mv),
+                insertSql);
         LOGGER.trace(sql);
         result.add(sql);
         this.rememberTrigger(query.withName(insertTriggerName));
@@ -518,4 +557,34 @@ public final class MsSqlDdlGenerator extends DdlGenerator {
         this.rememberTrigger(query.withName(deleteTriggerName));
     }
 
+    /**
+     * Returns SET clause applying aggregates of the inserted ({@code "+"}) or deleted
+     * ({@code "-"}) rows to the view. MIN/MAX are recomputed over the rows of the group
+     * only when the deleted rows held the extremum.
+     */
+    private static String getSetStatement(MaterializedView mv, String sign, String fullTableName,
+                                          String rowConditionForExistsTemplate) {
+        return mv.getAggregateColumns().entrySet().stream()
+                .map(e -> {
+                    String alias = e.getKey();
+                    if (!(e.getValue() instanceof Max || e.getValue() instanceof Min)) {
+                        return String.format("mv.%1$s = mv.%1$s %2$s aggregate.%1$s", alias, sign);
+                    } else if ("+".equals(sign)) {
+                        return String.format("mv.%1$s = CASE WHEN mv.%1$s IS NULL OR aggregate.%1$s %2$s mv.%1$s "
+                                        + "THEN aggregate.%1$s ELSE mv.%1$s END",
+                                alias, e.getValue() instanceof Max ? ">" : "<");
+                    } else {
+                        return String.format("mv.%1$s = CASE WHEN mv.%1$s = aggregate.%1$s "
+                                        + "THEN (SELECT %2$s(t.\"%3$s\") FROM %4$s AS t WHERE %5$s) "
+                                        + "ELSE mv.%1$s END",
+                                alias, e.getValue() instanceof Max ? "MAX" : "MIN",
+                                mv.getColumnRef(alias).getName(), fullTableName,
+                                String.format(rowConditionForExistsTemplate, "t"));
+                    }
+                }).collect(Collectors.joining(", "))
+                .concat(", mv.").concat(MaterializedView.SURROGATE_COUNT).concat(" = ")
+                .concat("mv.").concat(MaterializedView.SURROGATE_COUNT).concat(" " + sign + " aggregate.")
+                .concat(MaterializedView.SURROGATE_COUNT);
+    }
+
 }
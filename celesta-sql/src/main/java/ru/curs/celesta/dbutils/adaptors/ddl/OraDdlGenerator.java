@@ -33,6 +33,7 @@ import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +52,8 @@ import ru.curs.celesta.score.Grain;
 import ru.curs.celesta.score.Index;
 import ru.curs.celesta.score.IntegerColumn;
 import ru.curs.celesta.score.MaterializedView;
+import ru.curs.celesta.score.Max;
+import ru.curs.celesta.score.Min;
 import ru.curs.celesta.score.NamedElement;
 import ru.curs.celesta.score.ParameterizedView;
 import ru.curs.celesta.score.SQLGenerator;
@@ -445,6 +448,31 @@ public final class OraDdlGenerator extends DdlGenerator {
         return Collections.singletonList(sql);
     }
 
+    @Override
+    List<String> createIndexOnline(Connection conn, Index index) {
+        return Collections.singletonList(createIndex(index).get(0) + " ONLINE");
+    }
+
+    /**
+     * Enables the foreign key without checking the existing rows.
+     */
+    @Override
+    List<String> createFkOnline(Connection conn, ForeignKey fk) {
+        List<String> result = new ArrayList<>(createFk(conn, fk));
+        result.set(0, result.get(0) + " ENABLE NOVALIDATE");
+        return result;
+    }
+
+    /**
+     * Validates the foreign key, which doesn't block writes to the table.
+     */
+    @Override
+    List<String> validateFk(ForeignKey fk) {
+        return Collections.singletonList(String.format("ALTER TABLE %s MODIFY CONSTRAINT \"%s\" VALIDATE",
+                tableString(fk.getParentTable().getGrain().getName(), fk.getParentTable().getName()),
+                fk.getConstraintName()));
+    }
+
     private String createOrReplaceSequenceTriggerForColumn(
             String triggerName, IntegerColumn ic, String quotedSequenceName) {
 
@@ -720,6 +748,12 @@ public final class OraDdlGenerator extends DdlGenerator {
         }
     }
 
+    @Override
+    Optional<String> lockMaterializedView(MaterializedView mv) {
+        return Optional.of(String.format("LOCK TABLE %s IN EXCLUSIVE MODE",
+                tableString(mv.getGrain().getName(), mv.getName())));
+    }
+
     @Override
     String truncDate(String dateStr) {
         return "TRUNC(" + dateStr + " , 'DD')";
@@ -786,7 +820,7 @@ public final class OraDdlGenerator extends DdlGenerator {
         String updateTriggerName = mv.getTriggerName(TriggerType.POST_UPDATE);
         String deleteTriggerName = mv.getTriggerName(TriggerType.POST_DELETE);
 
-        String lockTable = String.format("LOCK TABLE %s IN EXCLUSIVE MODE;\n", fullMvName);
+        String lockTable = isQueued(mv) ? "" : String.format("LOCK TABLE %s IN EXCLUSIVE MODE;\n", fullMvName);
 
         String mvColumns = mv.getColumns().keySet().stream()
                 .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
@@ -823,25 +857,29 @@ public final class OraDdlGenerator extends DdlGenerator {
         String setStatementTemplate = getSetStatementTemplate(mv);
 
 
-        String setStatementTemplateForDelete = mv.getAggregateColumns().entrySet().stream()
-                .map(e -> {
-                    StringBuilder sb = new StringBuilder();
-                    String alias = e.getKey();
-
-                    sb.append("mv.\"").append(alias)
-                            .append("\" = mv.\"").append(alias)
-                            .append("\" %1$s ");
-
-                    if (e.getValue() instanceof Sum) {
-                        sb.append("%2$s.\"").append(mv.getColumnRef(alias).getName()).append("\"");
-                    } else if (e.getValue() instanceof Count) {
-                        sb.append("1");
-                    }
-
-                    return sb.toString();
-                }).collect(Collectors.joining(", "))
-                .concat(", mv.\"").concat(MaterializedView.SURROGATE_COUNT).concat("\" = ")
-                .concat("mv.\"").concat(MaterializedView.SURROGATE_COUNT).concat("\" %1$s 1");
+        // MIN/MAX columns are recomputed after the statement, see getRecomputeExtremaTrigger
+        String setStatementTemplateForDelete = Stream.concat(
+                mv.getAggregateColumns().entrySet().stream()
+                        .filter(e -> !isExtremum(e.getValue()))
+                        .map(e -> {
+                            StringBuilder sb = new StringBuilder();
+                            String alias = e.getKey();
+
+                            sb.append("mv.\"").append(alias)
+                                    .append("\" = mv.\"").append(alias)
+                                    .append("\" %1$s ");
+
+                            if (e.getValue() instanceof Sum) {
+                                sb.append("%2$s.\"").append(mv.getColumnRef(alias).getName()).append("\"");
+                            } else if (e.getValue() instanceof Count) {
+                                sb.append("1");
+                            }
+
+                            return sb.toString();
+                        }),
+                Stream.of("mv.\"" + MaterializedView.SURROGATE_COUNT + "\" = "
+                        + "mv.\"" + MaterializedView.SURROGATE_COUNT + "\" %1$s 1"))
+                .collect(Collectors.joining(", "));
 
 
         StringBuilder insertSqlBuilder = new StringBuilder("MERGE INTO %s mv \n")
@@ -851,7 +889,8 @@ public final class OraDdlGenerator extends DdlGenerator {
                 .append("WHEN NOT MATCHED THEN \n")
                 .append("INSERT (%s) VALUES (%s); \n");
 
-        String insertSql = String.format(insertSqlBuilder.toString(), fullMvName,
+        String insertSql = isQueued(mv) ? enqueueMaterializedViewRows(mv, "dual", ":new", 1) + ";\n"
+                : String.format(insertSqlBuilder.toString(), fullMvName,
                 String.format(selectFromRowTemplate, ":new"), String.format(rowConditionTemplate, "\"inserted\""),
                 String.format(setStatementTemplate, "+", "\"inserted\""),
                 mvColumns + ", \"" + MaterializedView.SURROGATE_COUNT + "\"",
@@ -864,9 +903,13 @@ public final class OraDdlGenerator extends DdlGenerator {
                 .append("WHERE ").append(String.format(rowConditionTemplateForDelete, ":old")).append(";\n")
                 .append(String.format("DELETE FROM %s mv ", fullMvName))
                 .append("WHERE ").append(delStatement).append(";\n");
+        String deleteSql = isQueued(mv) ? enqueueMaterializedViewRows(mv, "dual", ":old", -1) + ";\n"
+                : deleteSqlBuilder.toString();
 
 
         String sql;
+        boolean hasExtrema = !isQueued(mv)
+                && mv.getAggregateColumns().values().stream().anyMatch(OraDdlGenerator::isExtremum);
 
         //INSERT
         sql = String.format(
@@ -874,37 +917,127 @@ public final class OraDdlGenerator extends DdlGenerator {
                         + "on %s for each row\n"
                         + "begin \n" + MaterializedView.CHECKSUM_COMMENT_TEMPLATE
                         + "\n %s \n %s \n END;",
-                insertTriggerName, fullTableName, mv.getChecksum(), lockTable, insertSql);
+                insertTriggerName, fullTableName, getMaterializedViewChecksum(mv), lockTable, insertSql);
         traceAndAdd(result, sql);
         this.rememberTrigger(query.withName(insertTriggerName));
 
         //UPDATE
-        sql = String.format(
-                "create or replace trigger \"%s\" after update "
-                        + "on %s for each row\n"
-                        + "begin %s \n %s\n %s\n END;",
-                updateTriggerName, fullTableName, lockTable, deleteSqlBuilder, insertSql);
+        if (hasExtrema) {
+            sql = getRecomputeExtremaTrigger(mv, updateTriggerName, "update", fullTableName,
+                    lockTable + deleteSql + insertSql);
+        } else {
+            sql = String.format(
+                    "create or replace trigger \"%s\" after update "
+                            + "on %s for each row\n"
+                            + "begin %s \n %s\n %s\n END;",
+                    updateTriggerName, fullTableName, lockTable, deleteSql, insertSql);
+        }
 
         traceAndAdd(result, sql);
         this.rememberTrigger(query.withName(updateTriggerName));
 
         //DELETE
-        sql = String.format(
-                "create or replace trigger \"%s\" after delete "
-                        + "on %s for each row\n "
-                        + " begin %s \n %s\n END;",
-                deleteTriggerName, fullTableName, lockTable, deleteSqlBuilder);
+        if (hasExtrema) {
+            sql = getRecomputeExtremaTrigger(mv, deleteTriggerName, "delete", fullTableName,
+                    lockTable + deleteSql);
+        } else {
+            sql = String.format(
+                    "create or replace trigger \"%s\" after delete "
+                            + "on %s for each row\n "
+                            + " begin %s \n %s\n END;",
+                    deleteTriggerName, fullTableName, lockTable, deleteSql);
+        }
 
         result.add(sql);
         this.rememberTrigger(query.withName(deleteTriggerName));
     }
 
+    /**
+     * Returns compound trigger maintaining a materialized view with MIN/MAX columns.
+     * Rows of the table cannot be queried by a row level trigger, so the removed values
+     * are collected for each row and MIN/MAX of a group are recomputed after the statement,
+     * only if the removed value was the extremum of the group.
+     */
+    private String getRecomputeExtremaTrigger(MaterializedView mv, String triggerName, String event,
+                                              String fullTableName, String rowSql) {
+        String fullMvName = tableString(mv.getGrain().getName(), mv.getName());
+
+        String collectRemoved = mv.getColumns().keySet().stream()
+                .filter(alias -> mv.isGroupByColumn(alias) || isExtremum(mv.getAggregateColumns().get(alias)))
+                .map(alias -> {
+                    String column = ":old.\"" + mv.getColumnRef(alias).getName() + "\"";
+                    if (mv.isGroupByColumn(alias)
+                            && DateTimeColumn.CELESTA_TYPE.equals(mv.getColumnRef(alias).getCelestaType())) {
+                        column = "TRUNC(" + column + ", 'DD')";
+                    }
+                    return "removed(removed.LAST).\"" + alias + "\" := " + column + ";\n";
+                })
+                .collect(Collectors.joining());
+
+        String recomputeSet = mv.getAggregateColumns().entrySet().stream()
+                .filter(e -> isExtremum(e.getValue()))
+                .map(e -> {
+                    String alias = e.getKey();
+                    String groupCondition = mv.getColumns().keySet().stream()
+                            .filter(mv::isGroupByColumn)
+                            .map(groupAlias -> {
+                                String column = "t.\"" + mv.getColumnRef(groupAlias).getName() + "\"";
+                                if (DateTimeColumn.CELESTA_TYPE.equals(
+                                        mv.getColumnRef(groupAlias).getCelestaType())) {
+                                    column = "TRUNC(" + column + ", 'DD')";
+                                }
+                                return column + " = mv.\"" + groupAlias + "\"";
+                            })
+                            .collect(Collectors.joining(" AND "));
+                    return String.format("mv.\"%1$s\" = CASE WHEN mv.\"%1$s\" = removed(i).\"%1$s\" "
+                                    + "THEN (SELECT %2$s(t.\"%3$s\") FROM %4$s t WHERE %5$s) "
+                                    + "ELSE mv.\"%1$s\" END",
+                            alias, e.getValue() instanceof Max ? "MAX" : "MIN",
+                            mv.getColumnRef(alias).getName(), fullTableName, groupCondition);
+                })
+                .collect(Collectors.joining(", "));
+
+        String removedCondition = mv.getColumns().keySet().stream()
+                .filter(mv::isGroupByColumn)
+                .map(alias -> "mv.\"" + alias + "\" = removed(i).\"" + alias + "\"")
+                .collect(Collectors.joining(" AND "));
+
+        return String.format(
+                "create or replace trigger \"%1$s\" for %2$s on %3$s compound trigger\n"
+                        + "TYPE t_removed IS TABLE OF %4$s%%ROWTYPE;\n"
+                        + "removed t_removed := t_removed();\n"
+                        + "after each row is\n"
+                        + "begin \n%5$s\n"
+                        + "removed.EXTEND;\n%6$s"
+                        + "end after each row;\n"
+                        + "after statement is\n"
+                        + "begin\n"
+                        + "FOR i IN 1 .. removed.COUNT LOOP\n"
+                        + "UPDATE %4$s mv SET %7$s WHERE %8$s;\n"
+                        + "END LOOP;\n"
+                        + "end after statement;\n"
+                        + "END;",
+                triggerName, event, fullTableName, fullMvName, rowSql, collectRemoved,
+                recomputeSet, removedCondition);
+    }
+
+    private static boolean isExtremum(Expr aggregate) {
+        return aggregate instanceof Max || aggregate instanceof Min;
+    }
+
     private static String getSetStatementTemplate(MaterializedView mv) {
         return mv.getAggregateColumns().entrySet().stream()
                 .map(e -> {
                     StringBuilder sb = new StringBuilder();
                     String alias = e.getKey();
 
+                    if (isExtremum(e.getValue())) {
+                        return String.format("mv.\"%1$s\" = CASE WHEN mv.\"%1$s\" IS NULL "
+                                        + "OR %%2$s.\"%1$s\" %2$s mv.\"%1$s\" "
+                                        + "THEN %%2$s.\"%1$s\" ELSE mv.\"%1$s\" END",
+                                alias, e.getValue() instanceof Max ? ">" : "<");
+                    }
+
                     sb.append("mv.\"").append(alias)
                             .append("\" = mv.\"").append(alias)
                             .append("\" %1$s ");
@@ -935,7 +1068,7 @@ public final class OraDdlGenerator extends DdlGenerator {
                         return "";
                     }
 
-                    if (DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType())) {
+                    if (mv.isGroupByColumn(alias) && DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType())) {
                         return "TRUNC(%1$s.\"" + mv.getColumnRef(alias).getName() + "\", 'DD') as \""
                                 + alias + "\"";
                     }
@@ -17,13 +17,15 @@ import ru.curs.celesta.score.Count;
 import ru.curs.celesta.score.DateTimeColumn;
 import ru.curs.celesta.score.DecimalColumn;
 import ru.curs.celesta.score.Expr;
+import ru.curs.celesta.score.ForeignKey;
 import ru.curs.celesta.score.Index;
 import ru.curs.celesta.score.IntegerColumn;
 import ru.curs.celesta.score.MaterializedView;
+import ru.curs.celesta.score.Max;
+import ru.curs.celesta.score.Min;
 import ru.curs.celesta.score.ParameterizedView;
 import ru.curs.celesta.score.SQLGenerator;
 import ru.curs.celesta.score.StringColumn;
-import ru.curs.celesta.score.Sum;
 import ru.curs.celesta.score.TableElement;
 import ru.curs.celesta.score.VersionedElement;
 import ru.curs.celesta.score.ViewColumnType;
@@ -35,9 +37,12 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static ru.curs.celesta.dbutils.adaptors.constants.CommonConstants.ALTER_TABLE;
@@ -48,8 +53,17 @@ import static ru.curs.celesta.dbutils.adaptors.constants.OpenSourceConstants.CON
  */
 public final class PostgresDdlGenerator extends OpenSourceDdlGenerator {
 
+    /**
+     * Format of the triggers maintaining materialized views. The row-level triggers
+     * of the earlier versions have no format.
+     */
+    static final String MV_TRIGGER_FORMAT = "statement-level";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PostgresDdlGenerator.class);
 
+    private static final String NEW_ROWS = "new_rows";
+    private static final String OLD_ROWS = "old_rows";
+
     public PostgresDdlGenerator(DBAdaptor dmlAdaptor) {
         super(dmlAdaptor);
     }
@@ -221,6 +235,48 @@ public final class PostgresDdlGenerator extends OpenSourceDdlGenerator {
         return result;
     }
 
+    /**
+     * Builds the index concurrently. An invalid index left by a failed concurrent build
+     * is not reported by the adaptor, hence it is dropped first.
+     */
+    @Override
+    List<String> createIndexOnline(Connection conn, Index index) {
+        List<String> result = new ArrayList<>(dropInvalidIndex(index));
+        for (String sql : createIndex(index)) {
+            result.add(sql.replaceFirst("^CREATE INDEX ", "CREATE INDEX CONCURRENTLY "));
+        }
+        return result;
+    }
+
+    @Override
+    List<String> dropInvalidIndex(Index index) {
+        String grainName = index.getTable().getGrain().getName();
+        return Arrays.asList(
+                "DROP INDEX CONCURRENTLY IF EXISTS " + tableString(grainName, index.getName()),
+                "DROP INDEX CONCURRENTLY IF EXISTS "
+                        + tableString(grainName, index.getName() + CONJUGATE_INDEX_POSTFIX));
+    }
+
+    /**
+     * Adds the foreign key without checking the existing rows.
+     */
+    @Override
+    List<String> createFkOnline(Connection conn, ForeignKey fk) {
+        List<String> result = new ArrayList<>(createFk(conn, fk));
+        result.set(0, result.get(0) + " NOT VALID");
+        return result;
+    }
+
+    /**
+     * Validates the foreign key, which doesn't block writes to the table.
+     */
+    @Override
+    List<String> validateFk(ForeignKey fk) {
+        return Collections.singletonList(String.format("ALTER TABLE %s VALIDATE CONSTRAINT \"%s\"",
+                tableString(fk.getParentTable().getGrain().getName(), fk.getParentTable().getName()),
+                fk.getConstraintName()));
+    }
+
     @Override
     public SQLGenerator getViewSQLGenerator() {
         return new SQLGenerator() {
@@ -289,6 +345,12 @@ public final class PostgresDdlGenerator extends OpenSourceDdlGenerator {
         return Collections.singletonList(sql);
     }
 
+    @Override
+    Optional<String> lockMaterializedView(MaterializedView mv) {
+        return Optional.of(String.format("LOCK TABLE ONLY %s IN EXCLUSIVE MODE",
+                tableString(mv.getGrain().getName(), mv.getName())));
+    }
+
     @Override
     String truncDate(String dateStr) {
         return "date_trunc('DAY'," + dateStr + ")";
@@ -373,6 +435,18 @@ public final class PostgresDdlGenerator extends OpenSourceDdlGenerator {
         return result;
     }
 
+    @Override
+    String getMaterializedViewChecksum(MaterializedView mv) {
+        return mv.getChecksum(MV_TRIGGER_FORMAT);
+    }
+
+    /**
+     * Creates statement-level triggers maintaining a materialized view. Rows affected
+     * by a statement are read from the transition tables, aggregated by the group-by
+     * columns of the view and merged into the view by a single statement per trigger
+     * execution. MIN/MAX of a group are recomputed only when the removed rows held
+     * the extremum. Triggers of a deferred view append the rows to the queue of the view.
+     */
     private void createTableTriggersForMv(BasicTable t, List<String> result, String fullTableName,
                                           TriggerQuery query, MaterializedView mv) {
         String fullMvName = tableString(mv.getGrain().getName(), mv.getName());
@@ -389,107 +463,56 @@ public final class PostgresDdlGenerator extends OpenSourceDdlGenerator {
         String deleteTriggerFunctionFullName = String.format("\"%s\".\"%s_deleteTriggerFunc\"()",
                 t.getGrain().getName(), mv.getName());
 
-        String mvColumns = mv.getColumns().keySet().stream()
-                .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
-                .collect(Collectors.joining(", "));
-
-        String whereCondition = mv.getColumns().keySet().stream()
-                .filter(mv::isGroupByColumn)
-                .map(alias -> alias + " = $1." + alias + " ")
-                .collect(Collectors.joining(" AND "));
-
-        StringBuilder selectStmtBuilder = new StringBuilder(mv.getSelectPartOfScript())
-                .append(" FROM ").append(fullTableName).append(" ");
-        selectStmtBuilder.append(" WHERE ").append(whereCondition)
-                .append(mv.getGroupByPartOfScript());
-
-
-        String setStatementTemplate = getSetStatementTemplate(mv);
-
-        String rowConditionTemplate = mv.getColumns().keySet().stream()
-                .filter(mv::isGroupByColumn)
-                .map(alias -> {
-                            Column<?> colRef = mv.getColumnRef(alias);
-                            if (DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType())) {
-                                return "\"" + alias + "\" = date_trunc('DAY', %1$s.\"" + colRef.getName() + "\")";
-                            }
-                            return "\"" + alias + "\" = %1$s.\"" + colRef.getName() + "\"";
-                        }
-                ).collect(Collectors.joining(" AND "));
-
-        String rowColumnsTemplate = mv.getColumns().keySet().stream()
-                .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
-                .map(alias -> {
-                    Map<String, Expr> aggrCols = mv.getAggregateColumns();
-
-                    if (aggrCols.containsKey(alias) && aggrCols.get(alias) instanceof Count) {
-                        return "1";
-                    } else {
-                        Column<?> colRef = mv.getColumnRef(alias);
-
-                        if (DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType())) {
-                            return "date_trunc('DAY', %1$s.\"" + mv.getColumnRef(alias) + "\")";
-                        }
-                        return "%1$s.\"" + mv.getColumnRef(alias) + "\"";
-                    }
-                })
-                .collect(Collectors.joining(", "));
-
-        String whereForDelete = String.format(rowConditionTemplate, "OLD")
-                + " AND \"" + MaterializedView.SURROGATE_COUNT + "\" = 0 ";
-
-        String insertSql = String.format(
-                "UPDATE %s SET %s WHERE %s ;\n"
-                        + "GET DIAGNOSTICS updatedCount = ROW_COUNT; \n"
-                        + "IF updatedCount = 0 THEN \n"
-                        + " INSERT INTO %s (%s) VALUES(%s); \n"
-                        + "END IF;\n",
-                fullMvName, String.format(setStatementTemplate, "+", "NEW"),
-                String.format(rowConditionTemplate, "NEW"), fullMvName,
-                mvColumns + ", " + MaterializedView.SURROGATE_COUNT,
-                String.format(rowColumnsTemplate, "NEW") + ", 1");
-
-        String deleteSql = String.format(
-                "UPDATE %s SET %s WHERE %s ;\n"
-                        + "DELETE FROM %s WHERE %s ;\n",
-                fullMvName, String.format(setStatementTemplate, "-", "OLD"),
-                String.format(rowConditionTemplate, "OLD"), fullMvName, whereForDelete);
+        String insertBody;
+        String updateBody;
+        String deleteBody;
+        if (isQueued(mv)) {
+            insertBody = enqueueMaterializedViewRows(mv, NEW_ROWS, NEW_ROWS, 1) + "; \n";
+            deleteBody = enqueueMaterializedViewRows(mv, OLD_ROWS, OLD_ROWS, -1) + "; \n";
+            updateBody = deleteBody + insertBody;
+        } else {
+            String lock = String.format("LOCK TABLE ONLY %s IN EXCLUSIVE MODE; \n", fullMvName);
+            String insertDelta = getDeltaRowsTemplate(mv, "", NEW_ROWS);
+            String deleteDelta = getDeltaRowsTemplate(mv, "-", OLD_ROWS);
+            insertBody = lock + getMergeSql(mv, fullMvName, insertDelta);
+            updateBody = lock + getMergeSql(mv, fullMvName, deleteDelta + " UNION ALL " + insertDelta)
+                    + getDeleteEmptyGroupsSql(mv, fullMvName, OLD_ROWS)
+                    + getRecomputeExtremaSql(mv, fullMvName, OLD_ROWS);
+            deleteBody = lock + getMergeSql(mv, fullMvName, deleteDelta)
+                    + getDeleteEmptyGroupsSql(mv, fullMvName, OLD_ROWS)
+                    + getRecomputeExtremaSql(mv, fullMvName, OLD_ROWS);
+        }
 
         //INSERT
         String sql = String.format(
                 "CREATE OR REPLACE FUNCTION %s RETURNS trigger AS $BODY$ \n "
-                        + "DECLARE\n"
-                        + "updatedCount int;\n"
                         + "BEGIN \n"
                         + MaterializedView.CHECKSUM_COMMENT_TEMPLATE + "\n"
-                        + "LOCK TABLE ONLY %s IN EXCLUSIVE MODE; \n"
-                        + "%s "
-                        + "RETURN NEW; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
-                insertTriggerFunctionFullName, mv.getChecksum(), fullMvName, insertSql);
+                        + "%s"
+                        + "RETURN NULL; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
+                insertTriggerFunctionFullName, getMaterializedViewChecksum(mv), insertBody);
         traceAndAdd(result, sql);
 
         sql = String.format(
-                "CREATE TRIGGER \"%s\" AFTER INSERT ON %s FOR EACH ROW EXECUTE PROCEDURE %s",
-                insertTriggerName, fullTableName, insertTriggerFunctionFullName);
+                "CREATE TRIGGER \"%s\" AFTER INSERT ON %s REFERENCING NEW TABLE AS %s "
+                        + "FOR EACH STATEMENT EXECUTE PROCEDURE %s",
+                insertTriggerName, fullTableName, NEW_ROWS, insertTriggerFunctionFullName);
         traceAndAdd(result, sql);
         this.rememberTrigger(query.withName(insertTriggerName));
 
         //UPDATE
         sql = String.format(
                 "CREATE OR REPLACE FUNCTION %s RETURNS trigger AS $BODY$ \n "
-                        + "DECLARE\n"
-                        + "updatedCount int;\n"
                         + "BEGIN \n"
-                        + "LOCK TABLE ONLY %s IN EXCLUSIVE MODE; \n"
-                        + "%s " //DELETE
-                        + "%s " //INSERT
-                        + "RETURN NEW; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
-                updateTriggerFunctionFullName, fullMvName, deleteSql, insertSql);
+                        + "%s"
+                        + "RETURN NULL; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
+                updateTriggerFunctionFullName, updateBody);
         traceAndAdd(result, sql);
 
         sql = String.format(
-                "CREATE TRIGGER \"%s\" AFTER UPDATE ON %s FOR EACH ROW EXECUTE PROCEDURE %s",
-                updateTriggerName, fullTableName, updateTriggerFunctionFullName);
+                "CREATE TRIGGER \"%s\" AFTER UPDATE ON %s REFERENCING OLD TABLE AS %s NEW TABLE AS %s "
+                        + "FOR EACH STATEMENT EXECUTE PROCEDURE %s",
+                updateTriggerName, fullTableName, OLD_ROWS, NEW_ROWS, updateTriggerFunctionFullName);
         traceAndAdd(result, sql);
         this.rememberTrigger(query.withName(updateTriggerName));
 
@@ -497,42 +520,197 @@ public final class PostgresDdlGenerator extends OpenSourceDdlGenerator {
         sql = String.format(
                 "CREATE OR REPLACE FUNCTION %s RETURNS trigger AS $BODY$ \n "
                         + "BEGIN \n"
-                        + "LOCK TABLE ONLY %s IN EXCLUSIVE MODE; \n"
                         + "%s"
-                        + "RETURN OLD; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
-                deleteTriggerFunctionFullName, fullMvName, deleteSql
-        );
+                        + "RETURN NULL; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
+                deleteTriggerFunctionFullName, deleteBody);
         traceAndAdd(result, sql);
 
         sql = String.format(
-                "CREATE TRIGGER \"%s\" AFTER DELETE ON %s FOR EACH ROW EXECUTE PROCEDURE %s",
-                deleteTriggerName, fullTableName, deleteTriggerFunctionFullName);
+                "CREATE TRIGGER \"%s\" AFTER DELETE ON %s REFERENCING OLD TABLE AS %s "
+                        + "FOR EACH STATEMENT EXECUTE PROCEDURE %s",
+                deleteTriggerName, fullTableName, OLD_ROWS, deleteTriggerFunctionFullName);
         traceAndAdd(result, sql);
         this.rememberTrigger(query.withName(deleteTriggerName));
     }
 
-    private static String getSetStatementTemplate(MaterializedView mv) {
-        return mv.getAggregateColumns().entrySet().stream()
-                .map(e -> {
-                    StringBuilder sb = new StringBuilder();
-                    String alias = e.getKey();
-
-                    sb.append("\"").append(alias.replace("\"", ""))
-                            .append("\" = \"").append(alias.replace("\"", ""))
-                            .append("\" %1$s ");
-
-                    if (e.getValue() instanceof Sum) {
-                        sb.append("%2$s.\"")
-                                .append(mv.getColumnRef(alias.replace("\"", "")).getName())
-                                .append("\"");
-                    } else if (e.getValue() instanceof Count) {
-                        sb.append("1");
+    /**
+     * Returns the query selecting the contribution of each row of a transition table
+     * to the materialized view: the group-by values, the values of the aggregates and
+     * the row count, negated for the removed rows. Removed rows don't contribute to MIN/MAX.
+     */
+    private static String getDeltaRowsTemplate(MaterializedView mv, String sign, String transitionTable) {
+        Map<String, Expr> aggrCols = mv.getAggregateColumns();
+        String columns = mv.getColumns().keySet().stream()
+                .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
+                .map(alias -> {
+                    if (mv.isGroupByColumn(alias)) {
+                        return getGroupByExpression(mv, alias, transitionTable) + " AS " + quote(alias);
+                    } else if (aggrCols.get(alias) instanceof Count) {
+                        return sign + "1 AS " + quote(alias);
+                    }
+                    String column = transitionTable + ".\"" + mv.getColumnRef(unquote(alias)).getName() + "\"";
+                    if (isExtremum(aggrCols.get(alias)) && !sign.isEmpty()) {
+                        // removed rows don't contribute to MIN/MAX, NULLIF keeps the column type
+                        return String.format("NULLIF(%1$s, %1$s) AS %2$s", column, quote(alias));
+                    } else if (isExtremum(aggrCols.get(alias))) {
+                        return column + " AS " + quote(alias);
+                    } else {
+                        return sign + column + " AS " + quote(alias);
                     }
+                })
+                .collect(Collectors.joining(", "));
+        return String.format("SELECT %s, %s1 AS \"%s\" FROM %s",
+                columns, sign, MaterializedView.SURROGATE_COUNT, transitionTable);
+    }
+
+    private static String getGroupByExpression(MaterializedView mv, String alias, String transitionTable) {
+        Column<?> colRef = mv.getColumnRef(alias);
+        if (DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType())) {
+            return "date_trunc('DAY', " + transitionTable + ".\"" + colRef.getName() + "\")";
+        }
+        return transitionTable + ".\"" + colRef.getName() + "\"";
+    }
+
+    /**
+     * Returns the statement that aggregates the delta rows by the group-by columns,
+     * adds the aggregates to the existing groups of the materialized view and inserts
+     * the new groups.
+     */
+    private static String getMergeSql(MaterializedView mv, String fullMvName, String deltaRows) {
+        List<String> groupByColumns = mv.getColumns().keySet().stream()
+                .filter(mv::isGroupByColumn)
+                .map(PostgresDdlGenerator::quote)
+                .collect(Collectors.toList());
+        List<String> aggregateColumns = new ArrayList<>();
+        List<String> aggregates = new ArrayList<>();
+        List<String> set = new ArrayList<>();
+        for (Map.Entry<String, Expr> e : mv.getAggregateColumns().entrySet()) {
+            String c = quote(e.getKey());
+            aggregateColumns.add(c);
+            if (e.getValue() instanceof Max) {
+                aggregates.add("MAX(" + c + ") AS " + c);
+                set.add(c + " = GREATEST(mv." + c + ", delta." + c + ")");
+            } else if (e.getValue() instanceof Min) {
+                aggregates.add("MIN(" + c + ") AS " + c);
+                set.add(c + " = LEAST(mv." + c + ", delta." + c + ")");
+            } else {
+                aggregates.add("SUM(" + c + ") AS " + c);
+                set.add(c + " = mv." + c + " + COALESCE(delta." + c + ", 0)");
+            }
+        }
+        String surrogateCount = quote(MaterializedView.SURROGATE_COUNT);
+        aggregateColumns.add(surrogateCount);
+        aggregates.add("SUM(" + surrogateCount + ") AS " + surrogateCount);
+        set.add(surrogateCount + " = mv." + surrogateCount + " + delta." + surrogateCount);
+
+        String groupBy = String.join(", ", groupByColumns);
+        List<String> allColumns = new ArrayList<>(groupByColumns);
+        allColumns.addAll(aggregateColumns);
+
+        return String.format(
+                "WITH delta AS (SELECT %s, %s FROM (%s) AS changes GROUP BY %s), \n"
+                        + "updated AS (UPDATE %s AS mv SET %s FROM delta WHERE %s RETURNING %s) \n"
+                        + "INSERT INTO %s (%s) SELECT %s FROM delta \n"
+                        + "WHERE delta.\"%s\" > 0 AND NOT EXISTS (SELECT 1 FROM updated WHERE %s);\n",
+                groupBy, String.join(", ", aggregates), deltaRows, groupBy,
+                fullMvName, String.join(", ", set), joinCondition(groupByColumns, "mv", "delta"),
+                groupByColumns.stream().map(c -> "mv." + c).collect(Collectors.joining(", ")),
+                fullMvName, String.join(", ", allColumns),
+                allColumns.stream().map(c -> "delta." + c).collect(Collectors.joining(", ")),
+                MaterializedView.SURROGATE_COUNT, joinCondition(groupByColumns, "updated", "delta"));
+    }
+
+    /**
+     * Returns the statement deleting the groups of the materialized view that are left
+     * without rows, looking up only the groups of the removed rows.
+     */
+    private static String getDeleteEmptyGroupsSql(MaterializedView mv, String fullMvName, String transitionTable) {
+        List<String> groupByColumns = mv.getColumns().keySet().stream()
+                .filter(mv::isGroupByColumn)
+                .map(PostgresDdlGenerator::quote)
+                .collect(Collectors.toList());
+        String groupKeys = mv.getColumns().keySet().stream()
+                .filter(mv::isGroupByColumn)
+                .map(alias -> getGroupByExpression(mv, alias, transitionTable) + " AS " + quote(alias))
+                .collect(Collectors.joining(", "));
+
+        return String.format(
+                "DELETE FROM %s AS mv USING (SELECT DISTINCT %s FROM %s) AS removed \n"
+                        + "WHERE %s AND mv.\"%s\" = 0;\n",
+                fullMvName, groupKeys, transitionTable,
+                joinCondition(groupByColumns, "mv", "removed"), MaterializedView.SURROGATE_COUNT);
+    }
+
+    /**
+     * Returns the statement recomputing MIN/MAX of the groups whose extremum was among
+     * the removed values, by a lookup of the rows of each such group in the table.
+     */
+    private String getRecomputeExtremaSql(MaterializedView mv, String fullMvName, String transitionTable) {
+        Map<String, Expr> extrema = new LinkedHashMap<>();
+        mv.getAggregateColumns().forEach((alias, aggregate) -> {
+            if (isExtremum(aggregate)) {
+                extrema.put(alias, aggregate);
+            }
+        });
+        if (extrema.isEmpty()) {
+            return "";
+        }
+
+        TableElement t = mv.getRefTable().getTable();
+        List<String> groupByAliases = mv.getColumns().keySet().stream()
+                .filter(mv::isGroupByColumn)
+                .collect(Collectors.toList());
+        String tableRowsCondition = groupByAliases.stream()
+                .map(alias -> getGroupByExpression(mv, alias, "t") + " = mv." + quote(alias))
+                .collect(Collectors.joining(" AND "));
+        String groupKeys = groupByAliases.stream()
+                .map(alias -> getGroupByExpression(mv, alias, transitionTable) + " AS " + quote(alias))
+                .collect(Collectors.joining(", "));
+        String groupBy = groupByAliases.stream()
+                .map(alias -> getGroupByExpression(mv, alias, transitionTable))
+                .collect(Collectors.joining(", "));
+
+        List<String> removedExtrema = new ArrayList<>();
+        List<String> set = new ArrayList<>();
+        List<String> matches = new ArrayList<>();
+        extrema.forEach((alias, aggregate) -> {
+            String c = quote(alias);
+            String function = aggregate instanceof Max ? "MAX" : "MIN";
+            String column = "\"" + mv.getColumnRef(unquote(alias)).getName() + "\"";
+            removedExtrema.add(String.format("%s(%s.%s) AS %s", function, transitionTable, column, c));
+            set.add(String.format("%1$s = CASE WHEN mv.%1$s = removed.%1$s THEN "
+                            + "(SELECT %2$s(t.%3$s) FROM %4$s AS t WHERE %5$s) ELSE mv.%1$s END",
+                    c, function, column, tableString(t.getGrain().getName(), t.getName()), tableRowsCondition));
+            matches.add(String.format("mv.%1$s = removed.%1$s", c));
+        });
+
+        return String.format(
+                "UPDATE %s AS mv SET %s \n"
+                        + "FROM (SELECT %s, %s FROM %s GROUP BY %s) AS removed \n"
+                        + "WHERE %s AND (%s);\n",
+                fullMvName, String.join(", ", set),
+                groupKeys, String.join(", ", removedExtrema), transitionTable, groupBy,
+                joinCondition(groupByAliases.stream().map(PostgresDdlGenerator::quote).collect(Collectors.toList()),
+                        "mv", "removed"),
+                String.join(" OR ", matches));
+    }
+
+    private static boolean isExtremum(Expr aggregate) {
+        return aggregate instanceof Max || aggregate instanceof Min;
+    }
+
+    private static String joinCondition(List<String> columns, String left, String right) {
+        return columns.stream()
+                .map(c -> left + "." + c + " = " + right + "." + c)
+                .collect(Collectors.joining(" AND "));
+    }
+
+    private static String quote(String alias) {
+        return "\"" + unquote(alias) + "\"";
+    }
 
-                    return sb.toString();
-                }).collect(Collectors.joining(", "))
-                .concat(", \"").concat(MaterializedView.SURROGATE_COUNT).concat("\" = ")
-                .concat("\"").concat(MaterializedView.SURROGATE_COUNT).concat("\" %1$s 1");
+    private static String unquote(String alias) {
+        return alias.replace("\"", "");
     }
 
     private static void traceAndAdd(List<String> result, String sql) {
@@ -1,6 +1,7 @@
 package ru.curs.celesta.dbutils.h2;
 
 import org.h2.api.Trigger;
+import org.h2.jdbc.JdbcConnection;
 import ru.curs.celesta.CurrentScore;
 import ru.curs.celesta.event.TriggerType;
 import ru.curs.celesta.score.AbstractScore;
@@ -11,22 +12,35 @@ import ru.curs.celesta.score.DateTimeColumn;
 import ru.curs.celesta.score.Expr;
 import ru.curs.celesta.score.Grain;
 import ru.curs.celesta.score.MaterializedView;
-import ru.curs.celesta.score.ParseException;
+import ru.curs.celesta.score.Max;
 import ru.curs.celesta.score.Sum;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 
 /**
  * Base class for all triggers of materialized view.
+ * <p>
+ * A trigger applies the contribution of the affected row to its group of the view:
+ * the aggregates are incremented for an added row and decremented for a removed one,
+ * MIN/MAX are recomputed over the rows of the group only when the removed value was
+ * the extremum. A group is inserted when its first row is added and deleted when its
+ * last row is removed. Statements are prepared once per session and reused.
+ * <p>
+ * Triggers of a deferred view append keys of the affected groups to the queue of the view,
+ * as do triggers of a view being built in chunks to its build queue.
  *
  * @author ioann
  * @since 2017-07-07
@@ -44,12 +58,21 @@ public abstract class AbstractMaterializeViewTrigger implements Trigger {
     private BasicTable t;
     private MaterializedView mv;
 
-    private String tFullName;
-    private String mvFullName;
-    private String keySearchTerm;
-    private String mvAllColumns;
+    private String incrementSql;
+    private String decrementSql;
+    private String adjustSql;
+    private String insertSql;
+    private String deleteLastSql;
+    private String enqueueSql;
     private HashMap<Integer, String> tGroupByColumnIndices = new LinkedHashMap<>();
     private HashMap<Integer, String> mvColumnRefs = new LinkedHashMap<>();
+    private final List<Param> incrementParams = new ArrayList<>();
+    private final List<Param> decrementParams = new ArrayList<>();
+    private final List<Param> adjustParams = new ArrayList<>();
+    /** Table row indices of the inserted view columns, -1 standing for a count. */
+    private final List<Integer> insertIndices = new ArrayList<>();
+
+    private final Map<Object, SessionStatements> statements = new IdentityHashMap<>();
 
     @Override
     public void init(Connection connection, String schemaName, String triggerName, String tableName,
@@ -68,122 +91,260 @@ public abstract class AbstractMaterializeViewTrigger implements Trigger {
             throw new RuntimeException(e);
         }
 
-        tFullName = String.format("\"%s\".\"%s\"", t.getGrain().getName(), t.getName());
-        mvFullName = String.format("\"%s\".\"%s\"", mv.getGrain().getName(), mv.getName());
-
-        mvAllColumns = mv.getColumns().keySet().stream()
-                .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
-                .map(v -> "\"" + v + "\"")
-                .collect(Collectors.joining(", "));
+        List<String> tColumns = new ArrayList<>(t.getColumns().keySet());
+        List<String> columnRefNames = mv.getColumnRefNames();
+        for (int i = 0; i < tColumns.size(); i++) {
+            if (columnRefNames.contains(tColumns.get(i))) {
+                mvColumnRefs.put(i, tColumns.get(i));
+            }
+        }
 
         List<String> keySearchTerms = new ArrayList<>();
-        List<String> columnRefNames = mv.getColumnRefNames();
-        int curIndex = 0;
-        for (String tCol : t.getColumns().keySet()) {
+        List<String> keyColumns = new ArrayList<>();
+        List<String> keyParameters = new ArrayList<>();
+        for (int i = 0; i < tColumns.size(); i++) {
             for (Map.Entry<String, Column<?>> col : mv.getColumns().entrySet()) {
-                if (mv.isGroupByColumn(col.getKey()) && tCol.equals(mv.getColumnRef(col.getKey()).getName())) {
-                    tGroupByColumnIndices.put(curIndex, tCol);
+                if (mv.isGroupByColumn(col.getKey())
+                        && tColumns.get(i).equals(mv.getColumnRef(col.getKey()).getName())) {
+                    tGroupByColumnIndices.put(i, tColumns.get(i));
                     keySearchTerms.add(String.format("(\"%s\" = %s)",
-                            col.getKey(),
-                            DateTimeColumn.CELESTA_TYPE.equals(
-                                    col.getValue().getCelestaType()) ? "DATE_TRUNC(DAY, CAST(? AS TIMESTAMP))" : "?"));
+                            col.getKey(), groupByParameter(col.getValue())));
+                    keyColumns.add("\"" + col.getKey() + "\"");
+                    keyParameters.add(groupByParameter(col.getValue()));
                     break;
                 }
             }
-
-            if (columnRefNames.contains(tCol)) {
-                mvColumnRefs.put(curIndex, tCol);
-            }
-            ++curIndex;
         }
-        keySearchTerm = String.join(" and ", keySearchTerms);
-    }
-
-
-    final void delete(Connection conn, Object[] row) throws SQLException {
-
-        HashMap<String, Object> groupByColumnValues = getTableRowGroupByColumns(row);
-
-        String deleteSql = String.format("DELETE FROM %s WHERE %s", mvFullName, keySearchTerm);
+        String keySearchTerm = String.join(" and ", keySearchTerms);
+
+        boolean underBuild = tableExists(connection, schemaName, mv.getBuildQueueName());
+        if (mv.isDeferred() || underBuild) {
+            keyColumns.add("\"" + MaterializedView.SURROGATE_COUNT + "\"");
+            keyParameters.add("?");
+            enqueueSql = String.format("INSERT INTO \"%s\".\"%s\" (%s) VALUES (%s)",
+                    mv.getGrain().getName(), underBuild ? mv.getBuildQueueName() : mv.getQueueName(),
+                    String.join(", ", keyColumns), String.join(", ", keyParameters));
+            return;
+        }
 
-        setParamsAndRun(conn, groupByColumnValues, deleteSql);
+        initUpdateSql(tColumns, keySearchTerm);
+        initInsertSql(tColumns);
     }
 
-    final void insert(Connection conn, Object[] row) throws SQLException {
-
-        HashMap<String, Object> groupByColumnValues = getTableRowGroupByColumns(row);
-
-        String whereCondition = groupByColumnValues.keySet().stream()
-                .map(alias -> {
-                    try {
-                        return DateTimeColumn.CELESTA_TYPE.equals(
-                                t.getColumn(alias).getCelestaType())
-                                ? "DATE_TRUNC(DAY, \"" + alias + "\") = DATE_TRUNC(DAY, CAST(? AS TIMESTAMP))"
-                                : "\"" + alias + "\" = ?";
-                    } catch (ParseException e) {
-                        throw new RuntimeException(e);
-                    }
-                })
-                .collect(Collectors.joining(" AND "));
+    private static boolean tableExists(Connection connection, String schemaName, String tableName) {
+        try (ResultSet rs = connection.getMetaData().getTables(null, schemaName, tableName, null)) {
+            return rs.next();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
+    private void initUpdateSql(List<String> tColumns, String keySearchTerm) {
+        String mvFullName = String.format("\"%s\".\"%s\"", mv.getGrain().getName(), mv.getName());
+        String tFullName = String.format("\"%s\".\"%s\"", t.getGrain().getName(), t.getName());
 
-        String selectPartOfScript = mv.getColumns().keySet().stream()
-                .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
+        String groupRowsCondition = mv.getColumns().keySet().stream()
+                .filter(mv::isGroupByColumn)
                 .map(alias -> {
                     Column<?> colRef = mv.getColumnRef(alias);
+                    return String.format(DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType())
+                            ? "DATE_TRUNC(DAY, \"t\".\"%s\") = \"mv\".\"%s\"" : "\"t\".\"%s\" = \"mv\".\"%s\"",
+                            colRef.getName(), alias);
+                })
+                .collect(Collectors.joining(" and "));
+
+        Map<String, Expr> aggrCols = mv.getAggregateColumns();
+        List<String> incrementTerms = new ArrayList<>();
+        List<String> decrementTerms = new ArrayList<>();
+        List<String> adjustTerms = new ArrayList<>();
+        for (String alias : aggrCols.keySet()) {
+            Expr aggregate = aggrCols.get(alias);
+            if (aggregate instanceof Count) {
+                incrementTerms.add(String.format("\"%1$s\" = \"%1$s\" + 1", alias));
+                decrementTerms.add(String.format("\"%1$s\" = \"%1$s\" - 1", alias));
+                continue;
+            }
+            int index = tColumns.indexOf(mv.getColumnRef(alias).getName());
+            if (aggregate instanceof Sum) {
+                incrementTerms.add(String.format("\"%1$s\" = COALESCE(\"%1$s\", 0) + ?", alias));
+                incrementParams.add(new Param(index, false, true));
+                decrementTerms.add(String.format("\"%1$s\" = COALESCE(\"%1$s\", 0) - ?", alias));
+                decrementParams.add(new Param(index, false, true));
+                adjustTerms.add(String.format("\"%1$s\" = COALESCE(\"%1$s\", 0) + ? - ?", alias));
+                adjustParams.add(new Param(index, false, true));
+                adjustParams.add(new Param(index, true, true));
+            } else {
+                // the extremum is recomputed over the rows of the group only if the removed value was it
+                String function = aggregate instanceof Max ? "MAX" : "MIN";
+                String recompute = String.format("CASE WHEN \"%1$s\" = ? THEN (SELECT %2$s(\"t\".\"%3$s\") "
+                                + "FROM %4$s AS \"t\" WHERE %5$s) ELSE %%s END",
+                        alias, function, mv.getColumnRef(alias).getName(), tFullName, groupRowsCondition);
+                String extremum = String.format("%s(\"%s\", ?)",
+                        aggregate instanceof Max ? "GREATEST" : "LEAST", alias);
+                incrementTerms.add(String.format("\"%s\" = %s", alias, extremum));
+                incrementParams.add(new Param(index, false, false));
+                decrementTerms.add(String.format("\"%s\" = %s", alias,
+                        String.format(recompute, "\"" + alias + "\"")));
+                decrementParams.add(new Param(index, false, false));
+                adjustTerms.add(String.format("\"%s\" = %s", alias, String.format(recompute, extremum)));
+                adjustParams.add(new Param(index, true, false));
+                adjustParams.add(new Param(index, false, false));
+            }
+        }
+        incrementTerms.add(String.format("\"%1$s\" = \"%1$s\" + 1", MaterializedView.SURROGATE_COUNT));
+        decrementTerms.add(String.format("\"%1$s\" = \"%1$s\" - 1", MaterializedView.SURROGATE_COUNT));
+
+        incrementSql = String.format("UPDATE %s AS \"mv\" SET %s WHERE %s",
+                mvFullName, String.join(", ", incrementTerms), keySearchTerm);
+        decrementSql = String.format("UPDATE %s AS \"mv\" SET %s WHERE %s",
+                mvFullName, String.join(", ", decrementTerms), keySearchTerm);
+        adjustSql = adjustTerms.isEmpty() ? null : String.format("UPDATE %s AS \"mv\" SET %s WHERE %s",
+                mvFullName, String.join(", ", adjustTerms), keySearchTerm);
+        deleteLastSql = String.format("DELETE FROM %s WHERE %s and (\"%s\" = 1)",
+                mvFullName, keySearchTerm, MaterializedView.SURROGATE_COUNT);
+    }
 
-                    Map<String, Expr> aggrCols = mv.getAggregateColumns();
-                    if (aggrCols.containsKey(alias)) {
-                        if (colRef == null) {
-                            if (aggrCols.get(alias) instanceof Count) {
-                                return "COUNT(*) as \"" + alias + "\"";
-                            }
-                            return "";
-                        } else if (aggrCols.get(alias) instanceof Sum) {
-                            return "SUM(\"" + colRef.getName() + "\") as \"" + alias + "\"";
-                        } else {
-                            return "";
-                        }
-                    }
+    private void initInsertSql(List<String> tColumns) {
+        String mvFullName = String.format("\"%s\".\"%s\"", mv.getGrain().getName(), mv.getName());
+        Map<String, Expr> aggrCols = mv.getAggregateColumns();
+        List<String> insertColumns = new ArrayList<>();
+        List<String> insertValues = new ArrayList<>();
+        for (Map.Entry<String, Column<?>> col : mv.getColumns().entrySet()) {
+            String alias = col.getKey();
+            insertColumns.add("\"" + alias + "\"");
+            if (MaterializedView.SURROGATE_COUNT.equals(alias) || aggrCols.get(alias) instanceof Count) {
+                insertIndices.add(-1);
+                insertValues.add("1");
+            } else {
+                insertIndices.add(tColumns.indexOf(mv.getColumnRef(alias).getName()));
+                insertValues.add(mv.isGroupByColumn(alias) ? groupByParameter(col.getValue()) : "?");
+            }
+        }
+        insertSql = String.format("INSERT INTO %s (%s) VALUES (%s)",
+                mvFullName, String.join(", ", insertColumns), String.join(", ", insertValues));
+    }
 
-                    if (DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType())) {
-                        return "DATE_TRUNC(DAY, \"" + colRef.getName() + "\") as \"" + alias + "\"";
-                    }
+    private static String groupByParameter(Column<?> mvColumn) {
+        return DateTimeColumn.CELESTA_TYPE.equals(mvColumn.getCelestaType())
+                ? "DATE_TRUNC(DAY, CAST(? AS TIMESTAMP))" : "?";
+    }
 
-                    return "\"" + colRef.getName() + "\" as " + "\"" + alias + "\"";
-                })
-                .filter(str -> !str.isEmpty())
-                .collect(Collectors.joining(", "))
-                .concat(", COUNT(*) AS " + MaterializedView.SURROGATE_COUNT);
+    /**
+     * Removes contribution of a table row from the view.
+     */
+    final void remove(Connection conn, Object[] row) throws SQLException {
+        if (enqueueSql != null) {
+            enqueue(conn, row, -1);
+            return;
+        }
+        SessionStatements s = getStatements(conn);
+        PreparedStatement stmt = s.get(deleteLastSql);
+        setKey(stmt, 1, row);
+        if (stmt.executeUpdate() == 0) {
+            stmt = s.get(decrementSql);
+            setKey(stmt, setParams(stmt, decrementParams, null, row), row);
+            stmt.executeUpdate();
+        }
+    }
 
-        StringBuilder selectStmtBuilder = new StringBuilder("SELECT ")
-                .append(selectPartOfScript)
-                .append(" FROM ").append(tFullName).append(" ");
-        selectStmtBuilder.append(" WHERE ").append(whereCondition)
-                .append(mv.getGroupByPartOfScript());
+    /**
+     * Adds contribution of a table row to the view.
+     */
+    final void add(Connection conn, Object[] row) throws SQLException {
+        if (enqueueSql != null) {
+            enqueue(conn, row, 1);
+            return;
+        }
+        SessionStatements s = getStatements(conn);
+        PreparedStatement stmt = s.get(incrementSql);
+        setKey(stmt, setParams(stmt, incrementParams, null, row), row);
+        if (stmt.executeUpdate() == 0) {
+            stmt = s.get(insertSql);
+            int i = 0;
+            for (int index : insertIndices) {
+                if (index >= 0) {
+                    stmt.setObject(++i, row[index]);
+                }
+            }
+            stmt.executeUpdate();
+        }
+    }
 
-        String insertSql = String.format("INSERT INTO %s (%s) %s", mvFullName,
-                mvAllColumns + ", \"" + MaterializedView.SURROGATE_COUNT + "\"", selectStmtBuilder.toString());
+    /**
+     * Replaces contribution of the old table row with the contribution of the new one.
+     */
+    final void replace(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        boolean sameGroup = tGroupByColumnIndices.keySet().stream()
+                .allMatch(i -> Objects.equals(oldRow[i], newRow[i]));
+        if (!sameGroup || enqueueSql != null) {
+            remove(conn, oldRow);
+            add(conn, newRow);
+        } else if (adjustSql != null) {
+            PreparedStatement stmt = getStatements(conn).get(adjustSql);
+            setKey(stmt, setParams(stmt, adjustParams, oldRow, newRow), newRow);
+            stmt.executeUpdate();
+        }
+    }
 
+    /**
+     * Appends key of the group of a table row to the queue of the view.
+     */
+    private void enqueue(Connection conn, Object[] row, int delta) throws SQLException {
+        PreparedStatement stmt = getStatements(conn).get(enqueueSql);
+        stmt.setInt(tGroupByColumnIndices.size() + 1, delta);
+        setKey(stmt, 1, row);
+        stmt.executeUpdate();
+    }
 
-        setParamsAndRun(conn, groupByColumnValues, insertSql);
+    private static int setParams(PreparedStatement stmt, List<Param> params, Object[] oldRow, Object[] row)
+            throws SQLException {
+        int i = 1;
+        for (Param p : params) {
+            Object value = (p.fromOldRow ? oldRow : row)[p.index];
+            // SUM ignores NULLs
+            stmt.setObject(i++, value == null && p.nullAsZero ? 0 : value);
+        }
+        return i;
     }
 
-    private void setParamsAndRun(
-            Connection conn, HashMap<String, Object> groupByColumnValues, String insertSql) throws SQLException {
+    private void setKey(PreparedStatement stmt, int first, Object[] row) throws SQLException {
+        int i = first;
+        for (int index : tGroupByColumnIndices.keySet()) {
+            stmt.setObject(i++, row[index]);
+        }
+    }
 
-        try (PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-            int i = 0;
-            for (Object value : groupByColumnValues.values()) {
-                stmt.setObject(++i, value);
+    /**
+     * Returns statements of the session the connection belongs to. Trigger connections
+     * are created by H2 on each firing, while prepared statements stay valid as long
+     * as the session is open.
+     */
+    private SessionStatements getStatements(Connection conn) throws SQLException {
+        Object session = conn instanceof JdbcConnection ? ((JdbcConnection) conn).getSession() : conn;
+        synchronized (statements) {
+            SessionStatements result = statements.get(session);
+            if (result == null) {
+                Iterator<SessionStatements> i = statements.values().iterator();
+                while (i.hasNext()) {
+                    if (i.next().conn.isClosed()) {
+                        i.remove();
+                    }
+                }
+                result = new SessionStatements(conn);
+                statements.put(session, result);
             }
-            stmt.execute();
+            return result;
         }
     }
 
     @Override
-    public void close() {
-        //nothing to do
+    public void close() throws SQLException {
+        synchronized (statements) {
+            for (SessionStatements s : statements.values()) {
+                s.close();
+            }
+            statements.clear();
+        }
     }
 
     @Override
@@ -193,16 +354,51 @@ public abstract class AbstractMaterializeViewTrigger implements Trigger {
 
     abstract String getNamePrefix();
 
-    private HashMap<String, Object> getTableRowGroupByColumns(Object[] row) {
-        HashMap<String, Object> result = new LinkedHashMap<>();
-
-        tGroupByColumnIndices.entrySet().stream()
-                .forEach(e -> result.put(e.getValue(), row[e.getKey()]));
+    final HashMap<Integer, String> getMvColumnRefs() {
+        return mvColumnRefs;
+    }
 
-        return result;
+    /**
+     * Statement parameter taking value of a table row column.
+     */
+    private static final class Param {
+        private final int index;
+        private final boolean fromOldRow;
+        private final boolean nullAsZero;
+
+        Param(int index, boolean fromOldRow, boolean nullAsZero) {
+            this.index = index;
+            this.fromOldRow = fromOldRow;
+            this.nullAsZero = nullAsZero;
+        }
     }
 
-    final HashMap<Integer, String> getMvColumnRefs() {
-        return mvColumnRefs;
+    /**
+     * Prepared statements of a session.
+     */
+    private static final class SessionStatements {
+        private final Connection conn;
+        private final Map<String, PreparedStatement> prepared = new HashMap<>();
+
+        SessionStatements(Connection conn) {
+            this.conn = conn;
+        }
+
+        PreparedStatement get(String sql) throws SQLException {
+            PreparedStatement result = prepared.get(sql);
+            if (result == null) {
+                result = conn.prepareStatement(sql);
+                prepared.put(sql, result);
+            }
+            return result;
+        }
+
+        void close() throws SQLException {
+            if (!conn.isClosed()) {
+                for (PreparedStatement stmt : prepared.values()) {
+                    stmt.close();
+                }
+            }
+        }
     }
 }
@@ -16,8 +16,7 @@ public final class MaterializedViewInsertTrigger extends AbstractMaterializeView
 
   @Override
   public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
-    delete(connection, newRow);
-    insert(connection, newRow);
+    add(connection, newRow);
   }
 
   @Override
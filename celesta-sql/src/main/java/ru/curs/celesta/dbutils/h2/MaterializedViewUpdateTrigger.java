@@ -18,12 +18,7 @@ public final class MaterializedViewUpdateTrigger extends AbstractMaterializeView
   @Override
   public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
     if (mvColumnsAreChanged(oldRow, newRow)) {
-      //process old
-      delete(connection, oldRow);
-      insert(connection, oldRow);
-      //process new
-      delete(connection, newRow);
-      insert(connection, newRow);
+      replace(connection, oldRow, newRow);
     }
   }
 
@@ -0,0 +1,145 @@
+package ru.curs.celesta.dbutils.meta;
+
+import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshot of the database catalog for a schema: tables with their columns and
+ * primary keys, and sequences. It is loaded once per grain update, so that tables
+ * and sequences are compared with their metadata without querying the catalog
+ * for each of them.
+ * <p>
+ * The snapshot doesn't follow changes made to the database after it was loaded.
+ */
+public final class DbCatalog {
+    private final DBAdaptor dbAdaptor;
+    private final Set<String> tables = new HashSet<>();
+    private final Map<String, Map<String, DbColumnInfo>> columns = new HashMap<>();
+    private final Map<String, DbPkInfo> primaryKeys = new HashMap<>();
+    private final Map<String, DbSequenceInfo> sequences = new HashMap<>();
+
+    public DbCatalog(DBAdaptor dbAdaptor) {
+        this.dbAdaptor = dbAdaptor;
+    }
+
+    /**
+     * Adds a table.
+     *
+     * @param tableName  table name
+     */
+    public void addTable(String tableName) {
+        tables.add(tableName);
+    }
+
+    /**
+     * Adds a column of a table.
+     *
+     * @param tableName  table name
+     * @param columnName  column name
+     * @param columnInfo  column information, {@code null} if it is not loaded
+     */
+    public void addColumn(String tableName, String columnName, DbColumnInfo columnInfo) {
+        columns.computeIfAbsent(tableName, t -> new LinkedHashMap<>()).put(columnName, columnInfo);
+    }
+
+    /**
+     * Adds a column of a table.
+     *
+     * @param tableName  table name
+     * @param columnInfo  column information
+     */
+    public void addColumn(String tableName, DbColumnInfo columnInfo) {
+        addColumn(tableName, columnInfo.getName(), columnInfo);
+    }
+
+    /**
+     * Sets primary key of a table.
+     *
+     * @param tableName  table name
+     * @param pkInfo  primary key information
+     */
+    public void setPKInfo(String tableName, DbPkInfo pkInfo) {
+        primaryKeys.put(tableName, pkInfo);
+    }
+
+    /**
+     * Adds a sequence.
+     *
+     * @param sequenceName  sequence name
+     * @param sequenceInfo  sequence information
+     */
+    public void addSequence(String sequenceName, DbSequenceInfo sequenceInfo) {
+        sequences.put(sequenceName, sequenceInfo);
+    }
+
+    /**
+     * Checks if table exists.
+     *
+     * @param tableName  table name
+     * @return
+     */
+    public boolean tableExists(String tableName) {
+        return tables.contains(tableName);
+    }
+
+    /**
+     * Returns names of the table columns.
+     *
+     * @param tableName  table name
+     * @return
+     */
+    public Set<String> getColumns(String tableName) {
+        Map<String, DbColumnInfo> result = columns.get(tableName);
+        return result == null ? Collections.emptySet() : Collections.unmodifiableSet(result.keySet());
+    }
+
+    /**
+     * Returns information on a column.
+     *
+     * @param tableName  table name
+     * @param columnName  column name
+     * @return  {@code null} if the column doesn't exist
+     */
+    public DbColumnInfo getColumnInfo(String tableName, String columnName) {
+        Map<String, DbColumnInfo> result = columns.get(tableName);
+        return result == null ? null : result.get(columnName);
+    }
+
+    /**
+     * Returns information on the primary key of a table.
+     *
+     * @param tableName  table name
+     * @return  empty primary key information if the table has no primary key
+     */
+    public DbPkInfo getPKInfo(String tableName) {
+        DbPkInfo result = primaryKeys.get(tableName);
+        return result == null ? new DbPkInfo(dbAdaptor) : result;
+    }
+
+    /**
+     * Checks if sequence exists.
+     *
+     * @param sequenceName  sequence name
+     * @return
+     */
+    public boolean sequenceExists(String sequenceName) {
+        return sequences.containsKey(sequenceName);
+    }
+
+    /**
+     * Returns information on a sequence.
+     *
+     * @param sequenceName  sequence name
+     * @return  {@code null} if the sequence doesn't exist
+     */
+    public DbSequenceInfo getSequenceInfo(String sequenceName) {
+        return sequences.get(sequenceName);
+    }
+
+}
@@ -20,4 +20,9 @@ public class ArbitraryParameterSetter extends ParameterSetter {
   public void execute(PreparedStatement stmt, int paramNum, Object[] rec, int recversion)  {
     setParam(stmt, paramNum, v);
   }
+
+  @Override
+  public Object getValue(Object[] rec, int recversion) {
+    return v;
+  }
 }
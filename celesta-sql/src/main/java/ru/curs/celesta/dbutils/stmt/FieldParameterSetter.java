@@ -22,4 +22,9 @@ public final class FieldParameterSetter extends ParameterSetter {
         setParam(stmt, paramNum, rec[fieldNum]);
     }
 
+    @Override
+    public Object getValue(Object[] rec, int recversion) {
+        return rec[fieldNum];
+    }
+
 }
@@ -0,0 +1,173 @@
+package ru.curs.celesta.dbutils.stmt;
+
+import ru.curs.celesta.score.Grain;
+import ru.curs.celesta.score.GrainElement;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statement metrics aggregated in memory by grain element and statement kind.
+ * <p>
+ * Recording is lock-free: after the first execution of a statement kind on an element
+ * it costs two map lookups and a few {@link LongAdder} increments.
+ */
+public final class InMemoryStatementMetrics implements StatementMetrics {
+
+    private static final int KINDS = StatementKind.values().length;
+
+    private final Map<Grain, Map<GrainElement, AtomicReferenceArray<Counters>>> counters =
+            new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Counters> totals = newCountersArray();
+
+    @Override
+    public void record(StatementExecution execution) {
+        GrainElement element = execution.getElement();
+        AtomicReferenceArray<Counters> byKind = counters
+                .computeIfAbsent(element.getGrain(), g -> new ConcurrentHashMap<>())
+                .computeIfAbsent(element, e -> newCountersArray());
+        int kind = execution.getKind().ordinal();
+        byKind.get(kind).add(execution);
+        totals.get(kind).add(execution);
+    }
+
+    /**
+     * Returns counters of the statements of the given kind executed for the element.
+     *
+     * @param kind  statement kind
+     * @param element  grain element
+     * @return  counters with zero values if nothing was recorded
+     */
+    public Counters get(StatementKind kind, GrainElement element) {
+        Map<GrainElement, AtomicReferenceArray<Counters>> byElement = counters.get(element.getGrain());
+        AtomicReferenceArray<Counters> byKind = byElement == null ? null : byElement.get(element);
+        return byKind == null ? new Counters() : byKind.get(kind.ordinal());
+    }
+
+    /**
+     * Returns counters of the statements of the given kind executed for all the elements.
+     *
+     * @param kind  statement kind
+     * @return
+     */
+    public Counters getTotal(StatementKind kind) {
+        return totals.get(kind.ordinal());
+    }
+
+    /**
+     * Clears all the counters.
+     */
+    public void reset() {
+        counters.clear();
+        for (int i = 0; i < KINDS; i++) {
+            totals.set(i, new Counters());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (StatementKind kind : StatementKind.values()) {
+            Counters c = getTotal(kind);
+            if (c.getCount() > 0) {
+                sb.append(kind).append(": ").append(c).append(System.lineSeparator());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static AtomicReferenceArray<Counters> newCountersArray() {
+        AtomicReferenceArray<Counters> result = new AtomicReferenceArray<>(KINDS);
+        for (int i = 0; i < KINDS; i++) {
+            result.set(i, new Counters());
+        }
+        return result;
+    }
+
+    /**
+     * Accumulated counters of statement executions.
+     */
+    public static final class Counters {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder cacheHits = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder prepareNanos = new LongAdder();
+        private final LongAdder executeNanos = new LongAdder();
+        private final LongAdder fetchNanos = new LongAdder();
+
+        void add(StatementExecution execution) {
+            count.increment();
+            if (execution.isCacheHit()) {
+                cacheHits.increment();
+            }
+            rows.add(execution.getRows());
+            prepareNanos.add(execution.getPrepareNanos());
+            executeNanos.add(execution.getExecuteNanos());
+            fetchNanos.add(execution.getFetchNanos());
+        }
+
+        /**
+         * Number of executions.
+         *
+         * @return
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Number of executions of cached prepared statements.
+         *
+         * @return
+         */
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        /**
+         * Number of fetched or affected rows.
+         *
+         * @return
+         */
+        public long getRows() {
+            return rows.sum();
+        }
+
+        /**
+         * Total preparation time.
+         *
+         * @return
+         */
+        public long getPrepareNanos() {
+            return prepareNanos.sum();
+        }
+
+        /**
+         * Total execution time.
+         *
+         * @return
+         */
+        public long getExecuteNanos() {
+            return executeNanos.sum();
+        }
+
+        /**
+         * Total fetch time.
+         *
+         * @return
+         */
+        public long getFetchNanos() {
+            return fetchNanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, cacheHits=%d, rows=%d, prepare=%dns, execute=%dns, fetch=%dns",
+                    getCount(), getCacheHits(), getRows(), getPrepareNanos(), getExecuteNanos(),
+                    getFetchNanos());
+        }
+    }
+
+}
@@ -29,6 +29,15 @@ public abstract class ParameterSetter {
 
     public abstract void execute(PreparedStatement stmt, int paramNum, Object[] rec, int recversion);
 
+    /**
+     * Returns the value that is set to the parameter.
+     *
+     * @param rec  array of record fields' values
+     * @param recversion  record version
+     * @return
+     */
+    public abstract Object getValue(Object[] rec, int recversion);
+
     final void setParam(PreparedStatement stmt, int i, Object v)  {
         try {
             if (v == null) {
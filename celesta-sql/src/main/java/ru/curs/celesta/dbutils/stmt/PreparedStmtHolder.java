@@ -55,6 +55,22 @@ public abstract class PreparedStmtHolder {
         return stmt;
     }
 
+    /**
+     * Returns values of the statement parameters, as they are set by
+     * {@link #getStatement(Object[], int)} with the same arguments.
+     *
+     * @param rec         Array of record fields' values.
+     * @param recversion  record version
+     * @return  empty list if the statement is not prepared
+     */
+    public synchronized List<Object> getParameters(Object[] rec, int recversion) {
+        List<Object> result = new ArrayList<>(program.size());
+        for (ParameterSetter f : program) {
+            result.add(f.getValue(rec, recversion));
+        }
+        return result;
+    }
+
     /**
      * Closes the statement.
      */
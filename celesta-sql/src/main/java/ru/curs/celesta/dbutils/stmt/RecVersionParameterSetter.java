@@ -24,4 +24,9 @@ public final class RecVersionParameterSetter extends ParameterSetter {
         }
     }
 
+    @Override
+    public Object getValue(Object[] rec, int recversion) {
+        return recversion;
+    }
+
 }
@@ -20,4 +20,9 @@ public final class SingleValueParameterSetter extends ParameterSetter {
     public void execute(PreparedStatement stmt, int paramNum, Object[] rec, int recversion)  {
         setParam(stmt, paramNum, v.getValue());
     }
+
+    @Override
+    public Object getValue(Object[] rec, int recversion) {
+        return v.getValue();
+    }
 }
@@ -0,0 +1,164 @@
+package ru.curs.celesta.dbutils.stmt;
+
+import ru.curs.celesta.score.GrainElement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Timings of a completed statement execution.
+ * <p>
+ * Besides the timings, the execution gives access to the statement itself, its
+ * parameters and connection. They are valid only while the execution is being
+ * recorded by {@link StatementMetrics#record(StatementExecution)}.
+ */
+public final class StatementExecution {
+
+    private final StatementKind kind;
+    private final GrainElement element;
+    private final long prepareNanos;
+    private final long executeNanos;
+    private final long fetchNanos;
+    private final long rows;
+    private final boolean cacheHit;
+    private final String procName;
+    private final Connection conn;
+    private final PreparedStmtHolder holder;
+    private final Object[] rec;
+    private final int recversion;
+    private final PreparedStatement statement;
+
+    StatementExecution(StatementTimer timer) {
+        this.kind = timer.kind;
+        this.element = timer.element;
+        this.prepareNanos = timer.prepareNanos;
+        this.executeNanos = timer.executeNanos;
+        this.fetchNanos = timer.fetchNanos;
+        this.rows = timer.rows;
+        this.cacheHit = timer.cacheHit;
+        this.procName = timer.procName;
+        this.conn = timer.conn;
+        this.holder = timer.stmtHolder;
+        this.rec = timer.stmtRec;
+        this.recversion = timer.stmtRecversion;
+        this.statement = timer.statement;
+    }
+
+    /**
+     * Kind of the statement.
+     *
+     * @return
+     */
+    public StatementKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Grain element the statement was executed for.
+     *
+     * @return
+     */
+    public GrainElement getElement() {
+        return element;
+    }
+
+    /**
+     * Time spent on obtaining the prepared statement and setting its parameters.
+     *
+     * @return
+     */
+    public long getPrepareNanos() {
+        return prepareNanos;
+    }
+
+    /**
+     * Time spent on the statement execution.
+     *
+     * @return
+     */
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /**
+     * Time spent on fetching and parsing the result rows.
+     *
+     * @return
+     */
+    public long getFetchNanos() {
+        return fetchNanos;
+    }
+
+    /**
+     * Number of fetched rows or, for data modification statements, number of affected rows.
+     *
+     * @return
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Whether the prepared statement was taken from the statement cache of the data accessor.
+     *
+     * @return
+     */
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    /**
+     * Name of the procedure that executed the statement.
+     *
+     * @return
+     */
+    public String getProcName() {
+        return procName;
+    }
+
+    /**
+     * Connection the statement was executed on.
+     *
+     * @return
+     */
+    public Connection getConnection() {
+        return conn;
+    }
+
+    /**
+     * SQL text of the statement.
+     *
+     * @return  {@code null} if the text was not captured, see {@link StatementTexts}
+     */
+    public String getSql() {
+        return StatementTexts.get(statement);
+    }
+
+    /**
+     * Values of the statement parameters.
+     *
+     * @return  empty list if the parameters are not known
+     */
+    public List<Object> getParameters() {
+        return holder == null ? Collections.emptyList() : holder.getParameters(rec, recversion);
+    }
+
+    /**
+     * Total time of the execution.
+     *
+     * @return
+     */
+    public long getTotalNanos() {
+        return prepareNanos + executeNanos + fetchNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s.%s: prepare=%dns, execute=%dns, fetch=%dns, rows=%d, cacheHit=%s",
+                kind, element.getGrain().getName(), element.getName(),
+                prepareNanos, executeNanos, fetchNanos, rows, cacheHit);
+    }
+
+}
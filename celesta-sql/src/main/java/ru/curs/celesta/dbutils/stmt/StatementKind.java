@@ -0,0 +1,67 @@
+package ru.curs.celesta.dbutils.stmt;
+
+/**
+ * Kind of a statement executed by a data accessor, as reported to {@link StatementMetrics}.
+ */
+public enum StatementKind {
+    /**
+     * Query of the filtered data set ({@code findSet}, {@code tryFindSet}, iteration).
+     */
+    FIND_SET,
+    /**
+     * Navigation in the filtered data set ({@code navigate}, {@code next}, {@code previous} etc).
+     */
+    NAVIGATE,
+    /**
+     * Count of the filtered data set.
+     */
+    COUNT,
+    /**
+     * Position of the current record in the filtered data set.
+     */
+    POSITION,
+    /**
+     * Record retrieval by the primary key.
+     */
+    GET,
+    /**
+     * Record retrieval by the primary key that precedes an insert or an update.
+     */
+    GET_BEFORE_WRITE,
+    /**
+     * Record insert.
+     */
+    INSERT,
+    /**
+     * Record update.
+     */
+    UPDATE,
+    /**
+     * Record delete.
+     */
+    DELETE,
+    /**
+     * Delete of the filtered data set.
+     */
+    DELETE_ALL,
+    /**
+     * Read of a BLOB field.
+     */
+    READ_BLOB,
+    /**
+     * Next value of a sequence.
+     */
+    SEQUENCE_NEXT,
+    /**
+     * Aggregate query over the filtered data set.
+     */
+    AGGREGATE,
+    /**
+     * Permission check, which may query the permission tables.
+     */
+    PERMISSION_CHECK,
+    /**
+     * Change logging, which may query the log setup and insert into the log.
+     */
+    CHANGE_LOG
+}
@@ -0,0 +1,69 @@
+package ru.curs.celesta.dbutils.stmt;
+
+import java.util.Arrays;
+
+/**
+ * Receiver of statement execution metrics.
+ * <p>
+ * Data accessors report every statement they execute, with its kind, grain element
+ * and timings, to the metrics registered on the DB adaptor. Implementations are called
+ * concurrently from all the call contexts and should not block.
+ *
+ * @see InMemoryStatementMetrics
+ */
+public interface StatementMetrics {
+
+    /**
+     * Metrics that ignore everything. When they are registered, data accessors
+     * don't measure statements at all.
+     */
+    StatementMetrics NO_OP = new StatementMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void record(StatementExecution execution) {
+        }
+    };
+
+    /**
+     * Whether statements should be measured and reported.
+     *
+     * @return
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Records a completed statement execution.
+     *
+     * @param execution  statement execution
+     */
+    void record(StatementExecution execution);
+
+    /**
+     * Combines several metrics into one, reporting every execution to all the enabled ones.
+     *
+     * @param metrics  metrics to combine
+     * @return
+     */
+    static StatementMetrics of(StatementMetrics... metrics) {
+        StatementMetrics[] enabled = Arrays.stream(metrics)
+                .filter(StatementMetrics::isEnabled)
+                .toArray(StatementMetrics[]::new);
+        if (enabled.length == 0) {
+            return NO_OP;
+        } else if (enabled.length == 1) {
+            return enabled[0];
+        }
+        return execution -> {
+            for (StatementMetrics m : enabled) {
+                m.record(execution);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,64 @@
+package ru.curs.celesta.dbutils.stmt;
+
+import java.sql.PreparedStatement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SQL texts of prepared statements, which JDBC doesn't expose.
+ * <p>
+ * Texts are remembered only while some diagnostic tool needs them (see {@link #capture()}),
+ * so that statement preparation doesn't pay for a synchronized map otherwise.
+ */
+public final class StatementTexts {
+
+    private static final Map<PreparedStatement, String> TEXTS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicInteger CAPTURES = new AtomicInteger();
+
+    private StatementTexts() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Remembers the SQL text of a statement, if texts are being captured.
+     *
+     * @param stmt  prepared statement
+     * @param sql  SQL text the statement was prepared from
+     */
+    public static void register(PreparedStatement stmt, String sql) {
+        if (CAPTURES.get() > 0) {
+            TEXTS.put(stmt, sql);
+        }
+    }
+
+    /**
+     * Returns the SQL text of a statement.
+     *
+     * @param stmt  prepared statement
+     * @return  {@code null} if the statement was prepared while texts were not captured
+     */
+    public static String get(PreparedStatement stmt) {
+        return stmt == null ? null : TEXTS.get(stmt);
+    }
+
+    /**
+     * Starts capturing texts of statements prepared from now on.
+     * Every call should be paired with {@link #release()}.
+     */
+    public static void capture() {
+        CAPTURES.incrementAndGet();
+    }
+
+    /**
+     * Stops capturing texts when no other capture is active.
+     */
+    public static void release() {
+        if (CAPTURES.decrementAndGet() == 0) {
+            TEXTS.clear();
+        }
+    }
+
+}
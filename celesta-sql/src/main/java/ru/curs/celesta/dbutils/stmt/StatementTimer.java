@@ -0,0 +1,186 @@
+package ru.curs.celesta.dbutils.stmt;
+
+import ru.curs.celesta.diagnostics.CelestaEvents;
+import ru.curs.celesta.diagnostics.FlightRecorderEvent;
+import ru.curs.celesta.score.GrainElement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+/**
+ * Measures phases of a single statement execution and reports them to
+ * {@link StatementMetrics} and as {@link CelestaEvents#STATEMENT} flight recorder
+ * event when finished.
+ * <p>
+ * When both the metrics and the event are disabled a shared inactive timer is returned
+ * which doesn't read the clock, so measuring costs a couple of checks.
+ */
+public final class StatementTimer {
+
+    private static final StatementTimer INACTIVE = new StatementTimer(null, null, null, null);
+
+    final StatementMetrics metrics;
+    final StatementKind kind;
+    final GrainElement element;
+    Connection conn;
+    String procName;
+    long prepareNanos;
+    long executeNanos;
+    long fetchNanos;
+    long rows;
+    boolean cacheHit;
+    PreparedStmtHolder stmtHolder;
+    Object[] stmtRec;
+    int stmtRecversion;
+    PreparedStatement statement;
+
+    private final FlightRecorderEvent event;
+    private long mark;
+    private boolean finished;
+
+    private StatementTimer(StatementMetrics metrics, StatementKind kind, GrainElement element,
+                           FlightRecorderEvent event) {
+        this.metrics = metrics;
+        this.kind = kind;
+        this.element = element;
+        this.event = event;
+    }
+
+    /**
+     * Starts measuring a statement.
+     *
+     * @param metrics  metrics to report to
+     * @param kind  statement kind
+     * @param element  grain element
+     * @param conn  connection the statement is executed on
+     * @param procName  name of the called procedure
+     * @return
+     */
+    public static StatementTimer start(StatementMetrics metrics, StatementKind kind, GrainElement element,
+                                       Connection conn, String procName) {
+        boolean recorded = CelestaEvents.STATEMENT.isEnabled();
+        if (!(recorded || metrics.isEnabled())) {
+            return INACTIVE;
+        }
+        StatementTimer timer = new StatementTimer(metrics, kind, element,
+                recorded ? CelestaEvents.STATEMENT.begin() : null);
+        timer.conn = conn;
+        timer.procName = procName;
+        timer.mark = System.nanoTime();
+        return timer;
+    }
+
+    /**
+     * Whether the timer measures anything.
+     *
+     * @return
+     */
+    public boolean isActive() {
+        return metrics != null;
+    }
+
+    /**
+     * Returns the statement of the holder with refreshed parameters, measuring
+     * the preparation and detecting whether the statement was cached.
+     *
+     * @param holder  statement holder
+     * @param rec  array of record fields' values
+     * @param recversion  record version
+     * @return
+     */
+    public PreparedStatement prepare(PreparedStmtHolder holder, Object[] rec, int recversion) {
+        if (metrics == null) {
+            return holder.getStatement(rec, recversion);
+        }
+        boolean cached = holder.isStmtValid();
+        PreparedStatement result = holder.getStatement(rec, recversion);
+        prepared(cached);
+        this.stmtHolder = holder;
+        this.stmtRec = rec;
+        this.stmtRecversion = recversion;
+        this.statement = result;
+        return result;
+    }
+
+    /**
+     * Ends the preparation phase.
+     *
+     * @param cached  whether the statement was taken from a cache
+     */
+    public void prepared(boolean cached) {
+        if (metrics != null) {
+            long now = System.nanoTime();
+            prepareNanos += now - mark;
+            mark = now;
+            cacheHit = cached;
+        }
+    }
+
+    /**
+     * Ends the execution phase.
+     */
+    public void executed() {
+        if (metrics != null) {
+            long now = System.nanoTime();
+            executeNanos += now - mark;
+            mark = now;
+        }
+    }
+
+    /**
+     * Ends the execution phase of a data modification statement.
+     *
+     * @param affectedRows  number of affected rows
+     */
+    public void executed(long affectedRows) {
+        executed();
+        rows += affectedRows;
+    }
+
+    /**
+     * Ends a fetch phase.
+     *
+     * @param fetchedRows  number of fetched rows
+     */
+    public void fetched(long fetchedRows) {
+        if (metrics != null) {
+            long now = System.nanoTime();
+            fetchNanos += now - mark;
+            mark = now;
+            rows += fetchedRows;
+        }
+    }
+
+    /**
+     * Resumes measuring after a pause, e.g. between fetches of an open record set.
+     */
+    public void resume() {
+        if (metrics != null) {
+            mark = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reports the measured execution. Subsequent calls are ignored.
+     */
+    public void finish() {
+        if (metrics != null && !finished) {
+            finished = true;
+            if (metrics.isEnabled()) {
+                metrics.record(new StatementExecution(this));
+            }
+            if (event != null) {
+                event.set("grain", element.getGrain().getName())
+                        .set("element", element.getName())
+                        .set("kind", kind.name())
+                        .set("rows", rows)
+                        .set("cacheHit", cacheHit)
+                        .set("prepareTime", prepareNanos)
+                        .set("executeTime", executeNanos)
+                        .set("fetchTime", fetchNanos)
+                        .commit();
+            }
+        }
+    }
+
+}
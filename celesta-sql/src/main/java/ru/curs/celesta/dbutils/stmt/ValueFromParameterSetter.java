@@ -21,4 +21,9 @@ public final class ValueFromParameterSetter extends ParameterSetter {
     public void execute(PreparedStatement stmt, int paramNum, Object[] rec, int recversion)  {
         setParam(stmt, paramNum, r.getValueFrom());
     }
+
+    @Override
+    public Object getValue(Object[] rec, int recversion) {
+        return r.getValueFrom();
+    }
 }
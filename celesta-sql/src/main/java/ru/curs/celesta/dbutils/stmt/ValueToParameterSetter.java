@@ -21,4 +21,9 @@ public final class ValueToParameterSetter extends ParameterSetter {
     setParam(stmt, paramNum, r.getValueTo());
   }
 
+  @Override
+  public Object getValue(Object[] rec, int recversion) {
+    return r.getValueTo();
+  }
+
 }
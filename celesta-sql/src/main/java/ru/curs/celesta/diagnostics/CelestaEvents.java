@@ -0,0 +1,77 @@
+package ru.curs.celesta.diagnostics;
+
+/**
+ * JDK Flight Recorder event types of Celesta operations.
+ * <p>
+ * The events are recorded only while a recording that enables them is running,
+ * e.g. one started with {@code -XX:StartFlightRecording} or {@code jcmd JFR.start},
+ * and cost a single check otherwise.
+ */
+public final class CelestaEvents {
+
+    /**
+     * Call context operation: activation, commit, rollback or close.
+     */
+    public static final FlightRecorderEventType CALL_CONTEXT = FlightRecorderEventType
+            .builder("ru.curs.celesta.CallContext", "Call Context")
+            .description("Activation, commit, rollback or close of a call context")
+            .field("action", String.class)
+            .field("procName", String.class)
+            .field("userId", String.class)
+            .field("dbPid", int.class)
+            .build();
+
+    /**
+     * Wait for a connection from the connection pool.
+     */
+    public static final FlightRecorderEventType CONNECTION_ACQUISITION = FlightRecorderEventType
+            .builder("ru.curs.celesta.ConnectionAcquisition", "Connection Acquisition")
+            .description("Wait for a connection from the connection pool")
+            .field("pool", String.class)
+            .field("newConnection", boolean.class)
+            .build();
+
+    /**
+     * SQL statement executed by a data accessor.
+     */
+    public static final FlightRecorderEventType STATEMENT = FlightRecorderEventType
+            .builder("ru.curs.celesta.Statement", "Statement")
+            .description("SQL statement executed by a data accessor, "
+                    + "until its record set is exhausted or closed")
+            .field("grain", String.class)
+            .field("element", String.class)
+            .field("kind", String.class)
+            .field("rows", long.class)
+            .field("cacheHit", boolean.class)
+            .timespan("prepareTime")
+            .timespan("executeTime")
+            .timespan("fetchTime")
+            .build();
+
+    /**
+     * Dispatch of a cursor event to the registered triggers.
+     */
+    public static final FlightRecorderEventType TRIGGER = FlightRecorderEventType
+            .builder("ru.curs.celesta.Trigger", "Trigger Dispatch")
+            .description("Dispatch of a cursor event to the registered triggers")
+            .field("type", String.class)
+            .field("cursor", String.class)
+            .field("triggers", int.class)
+            .build();
+
+    /**
+     * Step of a grain update.
+     */
+    public static final FlightRecorderEventType DDL_STEP = FlightRecorderEventType
+            .builder("ru.curs.celesta.DdlStep", "DDL Step")
+            .description("Step of a grain update")
+            .field("grain", String.class)
+            .field("step", String.class)
+            .field("element", String.class)
+            .build();
+
+    private CelestaEvents() {
+        throw new AssertionError();
+    }
+
+}
@@ -0,0 +1,67 @@
+package ru.curs.celesta.diagnostics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JDK Flight Recorder event being timed.
+ *
+ * @see FlightRecorderEventType#begin()
+ */
+public final class FlightRecorderEvent {
+
+    static final FlightRecorderEvent INACTIVE = new FlightRecorderEvent(null, null);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecorderEvent.class);
+
+    private final FlightRecorderEventType type;
+    private final Object event;
+
+    FlightRecorderEvent(FlightRecorderEventType type, Object event) {
+        this.type = type;
+        this.event = event;
+    }
+
+    /**
+     * Whether the event is going to be recorded.
+     *
+     * @return
+     */
+    public boolean isActive() {
+        return event != null;
+    }
+
+    /**
+     * Sets a field value.
+     *
+     * @param field  field name
+     * @param value  value of the field type
+     * @return
+     */
+    public FlightRecorderEvent set(String field, Object value) {
+        if (event != null) {
+            try {
+                type.set(event, field, value);
+            } catch (IllegalArgumentException e) {
+                throw e;
+            } catch (Throwable e) {
+                LOGGER.debug("Can't set JFR event field", e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ends timing and records the event.
+     */
+    public void commit() {
+        if (event != null) {
+            try {
+                type.commit(event);
+            } catch (Throwable e) {
+                LOGGER.debug("Can't commit JFR event", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,272 @@
+package ru.curs.celesta.diagnostics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Type of JDK Flight Recorder event.
+ * <p>
+ * Event types are defined at runtime through {@code jdk.jfr.EventFactory}, which is
+ * accessed reflectively: Celesta is built for Java 8 where the JFR API is not part of
+ * the platform. When the JVM has no JFR support, event types are never enabled and
+ * {@link #begin()} returns an inactive event.
+ */
+public final class FlightRecorderEventType {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecorderEventType.class);
+
+    private static final String CATEGORY = "Celesta";
+
+    private static final Jfr JFR = Jfr.load();
+
+    private final Object eventType;
+    private final Object factory;
+    private final Map<String, Integer> fieldIndices;
+
+    private FlightRecorderEventType(Object eventType, Object factory, Map<String, Integer> fieldIndices) {
+        this.eventType = eventType;
+        this.factory = factory;
+        this.fieldIndices = fieldIndices;
+    }
+
+    /**
+     * Creates a builder of an event type.
+     *
+     * @param name  event name, e.g. {@code ru.curs.celesta.Statement}
+     * @param label  human-readable event name
+     * @return
+     */
+    public static Builder builder(String name, String label) {
+        return new Builder(name, label);
+    }
+
+    /**
+     * Whether JFR events can be recorded in the current JVM.
+     *
+     * @return
+     */
+    public static boolean isSupported() {
+        return JFR != null;
+    }
+
+    /**
+     * Whether events of this type are recorded by a running recording.
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        if (eventType == null) {
+            return false;
+        }
+        try {
+            return (boolean) JFR.isEnabled.invoke(eventType);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * Begins timing of an event. Fields of the event should be set and the event
+     * committed when the timed operation is over.
+     *
+     * @return  inactive event if the type is not enabled
+     */
+    public FlightRecorderEvent begin() {
+        if (!isEnabled()) {
+            return FlightRecorderEvent.INACTIVE;
+        }
+        try {
+            Object event = JFR.newEvent.invoke(factory);
+            JFR.begin.invoke(event);
+            return new FlightRecorderEvent(this, event);
+        } catch (Throwable e) {
+            LOGGER.debug("Can't create JFR event", e);
+            return FlightRecorderEvent.INACTIVE;
+        }
+    }
+
+    void set(Object event, String field, Object value) throws Throwable {
+        Integer index = fieldIndices.get(field);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown event field: " + field);
+        }
+        JFR.set.invoke(event, index.intValue(), value);
+    }
+
+    void commit(Object event) throws Throwable {
+        JFR.end.invoke(event);
+        if ((boolean) JFR.shouldCommit.invoke(event)) {
+            JFR.commit.invoke(event);
+        }
+    }
+
+    /**
+     * Builder of an event type.
+     */
+    public static final class Builder {
+        private final String name;
+        private final String label;
+        private String description;
+        private final List<String> fieldNames = new ArrayList<>();
+        private final List<Class<?>> fieldTypes = new ArrayList<>();
+        private final List<Boolean> timespans = new ArrayList<>();
+
+        private Builder(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+
+        /**
+         * Sets description of the event type.
+         *
+         * @param description  description
+         * @return
+         */
+        @SuppressWarnings("HiddenField")
+        public Builder description(String description) {
+            this.description = description;
+            return this;
+        }
+
+        /**
+         * Adds a field of a primitive type or {@link String}.
+         *
+         * @param fieldName  field name
+         * @param type  field type
+         * @return
+         */
+        public Builder field(String fieldName, Class<?> type) {
+            fieldNames.add(fieldName);
+            fieldTypes.add(type);
+            timespans.add(false);
+            return this;
+        }
+
+        /**
+         * Adds a {@code long} field holding a duration in nanoseconds.
+         *
+         * @param fieldName  field name
+         * @return
+         */
+        public Builder timespan(String fieldName) {
+            fieldNames.add(fieldName);
+            fieldTypes.add(long.class);
+            timespans.add(true);
+            return this;
+        }
+
+        /**
+         * Registers the event type.
+         *
+         * @return  event type that is never enabled if JFR is not supported
+         */
+        public FlightRecorderEventType build() {
+            Map<String, Integer> indices = new HashMap<>();
+            for (int i = 0; i < fieldNames.size(); i++) {
+                indices.put(fieldNames.get(i), i);
+            }
+            if (JFR == null) {
+                return new FlightRecorderEventType(null, null, indices);
+            }
+            try {
+                Object factory = JFR.createFactory(this);
+                return new FlightRecorderEventType(JFR.getEventType.invoke(factory), factory, indices);
+            } catch (Throwable e) {
+                LOGGER.warn("Can't register JFR event type {}: {}", name, e.toString());
+                return new FlightRecorderEventType(null, null, indices);
+            }
+        }
+    }
+
+    /**
+     * Reflective access to the JFR API.
+     */
+    private static final class Jfr {
+        private Class<?> nameAnnotation;
+        private Class<?> labelAnnotation;
+        private Class<?> descriptionAnnotation;
+        private Class<?> categoryAnnotation;
+        private Class<?> timespanAnnotation;
+        private Constructor<?> annotationElement;
+        private Constructor<?> valueDescriptor;
+        private Method create;
+        private MethodHandle getEventType;
+        private MethodHandle isEnabled;
+        private MethodHandle newEvent;
+        private MethodHandle begin;
+        private MethodHandle end;
+        private MethodHandle set;
+        private MethodHandle shouldCommit;
+        private MethodHandle commit;
+
+        static Jfr load() {
+            try {
+                ClassLoader cl = ClassLoader.getSystemClassLoader();
+                Jfr jfr = new Jfr();
+                jfr.nameAnnotation = Class.forName("jdk.jfr.Name", false, cl);
+                jfr.labelAnnotation = Class.forName("jdk.jfr.Label", false, cl);
+                jfr.descriptionAnnotation = Class.forName("jdk.jfr.Description", false, cl);
+                jfr.categoryAnnotation = Class.forName("jdk.jfr.Category", false, cl);
+                jfr.timespanAnnotation = Class.forName("jdk.jfr.Timespan", false, cl);
+                Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement", false, cl);
+                jfr.annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+                jfr.valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", false, cl)
+                        .getConstructor(Class.class, String.class, List.class);
+                Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory", false, cl);
+                jfr.create = factoryClass.getMethod("create", List.class, List.class);
+                Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType", false, cl);
+                Class<?> eventClass = Class.forName("jdk.jfr.Event", false, cl);
+
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                jfr.getEventType = lookup.findVirtual(factoryClass, "getEventType",
+                        MethodType.methodType(eventTypeClass));
+                jfr.isEnabled = lookup.findVirtual(eventTypeClass, "isEnabled",
+                        MethodType.methodType(boolean.class));
+                jfr.newEvent = lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(eventClass));
+                jfr.begin = lookup.findVirtual(eventClass, "begin", MethodType.methodType(void.class));
+                jfr.end = lookup.findVirtual(eventClass, "end", MethodType.methodType(void.class));
+                jfr.set = lookup.findVirtual(eventClass, "set",
+                        MethodType.methodType(void.class, int.class, Object.class));
+                jfr.shouldCommit = lookup.findVirtual(eventClass, "shouldCommit",
+                        MethodType.methodType(boolean.class));
+                jfr.commit = lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class));
+                return jfr;
+            } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+                LOGGER.debug("JDK Flight Recorder is not available: {}", e.toString());
+                return null;
+            }
+        }
+
+        Object createFactory(Builder b) throws ReflectiveOperationException {
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotationElement.newInstance(nameAnnotation, b.name));
+            annotations.add(annotationElement.newInstance(labelAnnotation, b.label));
+            annotations.add(annotationElement.newInstance(categoryAnnotation, new String[]{CATEGORY}));
+            if (b.description != null) {
+                annotations.add(annotationElement.newInstance(descriptionAnnotation, b.description));
+            }
+            List<Object> fields = new ArrayList<>();
+            for (int i = 0; i < b.fieldNames.size(); i++) {
+                List<Object> fieldAnnotations = b.timespans.get(i)
+                        ? Arrays.asList(annotationElement.newInstance(timespanAnnotation, "NANOSECONDS"))
+                        : Collections.emptyList();
+                fields.add(valueDescriptor.newInstance(b.fieldTypes.get(i), b.fieldNames.get(i),
+                        fieldAnnotations));
+            }
+            return create.invoke(null, annotations, fields);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package ru.curs.celesta.diagnostics;
+
+import ru.curs.celesta.dbutils.stmt.StatementExecution;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import ru.curs.celesta.score.GrainElement;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statement execution that exceeded the threshold of {@link SlowStatementLog}.
+ */
+public final class SlowStatement {
+
+    private final long sequence;
+    private final Instant timestamp;
+    private final String procName;
+    private final StatementKind kind;
+    private final GrainElement element;
+    private final String sql;
+    private final List<Object> parameters;
+    private final long prepareNanos;
+    private final long executeNanos;
+    private final long fetchNanos;
+    private final long rows;
+    private final String plan;
+
+    SlowStatement(long sequence, StatementExecution execution, List<Object> parameters, String plan) {
+        this.sequence = sequence;
+        this.timestamp = Instant.now();
+        this.procName = execution.getProcName();
+        this.kind = execution.getKind();
+        this.element = execution.getElement();
+        this.sql = execution.getSql();
+        this.parameters = Collections.unmodifiableList(parameters);
+        this.prepareNanos = execution.getPrepareNanos();
+        this.executeNanos = execution.getExecuteNanos();
+        this.fetchNanos = execution.getFetchNanos();
+        this.rows = execution.getRows();
+        this.plan = plan;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Time when the statement execution was completed.
+     *
+     * @return
+     */
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Name of the procedure that executed the statement.
+     *
+     * @return
+     */
+    public String getProcName() {
+        return procName;
+    }
+
+    /**
+     * Statement kind.
+     *
+     * @return
+     */
+    public StatementKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Grain element the statement was executed for.
+     *
+     * @return
+     */
+    public GrainElement getElement() {
+        return element;
+    }
+
+    /**
+     * SQL text of the statement.
+     *
+     * @return  {@code null} if the statement was prepared before the log was created
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Bind values of the statement, masked if the log masks them.
+     *
+     * @return
+     */
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Total time of the execution.
+     *
+     * @return
+     */
+    public Duration getDuration() {
+        return Duration.ofNanos(prepareNanos + executeNanos + fetchNanos);
+    }
+
+    /**
+     * Time spent preparing the statement, in nanoseconds.
+     *
+     * @return
+     */
+    public long getPrepareNanos() {
+        return prepareNanos;
+    }
+
+    /**
+     * Time spent executing the statement, in nanoseconds.
+     *
+     * @return
+     */
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /**
+     * Time spent fetching the results, in nanoseconds.
+     *
+     * @return
+     */
+    public long getFetchNanos() {
+        return fetchNanos;
+    }
+
+    /**
+     * Number of rows fetched or affected.
+     *
+     * @return
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Execution plan as the DB reports it.
+     *
+     * @return  {@code null} if plans are not captured or the DB doesn't report them
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    @Override
+    public String toString() {
+        String result = String.format("%s %s.%s in %s (%d ms, %d rows)",
+                kind, element.getGrain().getName(), element.getName(), procName,
+                getDuration().toMillis(), rows);
+        return sql == null ? result : result + ": " + sql + " " + parameters;
+    }
+
+}
@@ -0,0 +1,236 @@
+package ru.curs.celesta.diagnostics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.DBType;
+import ru.curs.celesta.dbutils.BLOB;
+import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.dbutils.stmt.StatementExecution;
+import ru.curs.celesta.dbutils.stmt.StatementMetrics;
+import ru.curs.celesta.dbutils.stmt.StatementTexts;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Log of statements executed slower than a threshold.
+ * <p>
+ * Slow statements are written to the log with their SQL text, bind values and the
+ * name of the calling procedure, and are kept in a bounded in-memory ring buffer,
+ * newest replacing oldest. Optionally, the execution plan of a slow statement is
+ * requested from the DB on the same connection right after the execution.
+ * <p>
+ * The log is registered on the DB adaptor as statement metrics, possibly combined
+ * with other metrics by {@link StatementMetrics#of(StatementMetrics...)}. SQL texts
+ * are known only for statements prepared after the log was created and until it is closed.
+ */
+public final class SlowStatementLog implements StatementMetrics, AutoCloseable {
+
+    /**
+     * Default number of slow statements kept in memory.
+     */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /**
+     * Default threshold in milliseconds.
+     */
+    public static final long DEFAULT_THRESHOLD_MS = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowStatementLog.class);
+
+    private final DBAdaptor dbAdaptor;
+    private final AtomicReferenceArray<SlowStatement> entries;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<DBType, Long> thresholds = new EnumMap<>(DBType.class);
+    private long defaultThresholdMs = DEFAULT_THRESHOLD_MS;
+    private volatile long thresholdNanos;
+    private volatile boolean capturePlans = false;
+    private volatile boolean maskBindValues = true;
+    private volatile boolean closed;
+
+    public SlowStatementLog(DBAdaptor dbAdaptor) {
+        this(dbAdaptor, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates slow statement log.
+     *
+     * @param dbAdaptor  DB adaptor the log is registered on
+     * @param capacity  number of slow statements kept in memory
+     */
+    public SlowStatementLog(DBAdaptor dbAdaptor, int capacity) {
+        if (capacity < 1) {
+            throw new CelestaException("Slow statement log capacity must be positive, got %d.", capacity);
+        }
+        this.dbAdaptor = dbAdaptor;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        updateThreshold();
+        StatementTexts.capture();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !closed;
+    }
+
+    @Override
+    public void record(StatementExecution execution) {
+        if (closed || execution.getTotalNanos() < thresholdNanos) {
+            return;
+        }
+        List<Object> parameters = new ArrayList<>();
+        for (Object v : execution.getParameters()) {
+            parameters.add(maskBindValues ? mask(v) : v);
+        }
+        String plan = capturePlans ? capturePlan(execution) : null;
+
+        SlowStatement entry = new SlowStatement(sequence.getAndIncrement(), execution, parameters, plan);
+        entries.set((int) (entry.getSequence() % entries.length()), entry);
+        if (plan == null) {
+            LOGGER.warn("Slow statement: {}", entry);
+        } else {
+            LOGGER.warn("Slow statement: {}{}{}", entry, System.lineSeparator(), plan);
+        }
+    }
+
+    /**
+     * Returns the slow statements kept in memory, newest first.
+     *
+     * @return
+     */
+    public List<SlowStatement> getEntries() {
+        long last = sequence.get();
+        long first = Math.max(0, last - entries.length());
+        List<SlowStatement> result = new ArrayList<>((int) (last - first));
+        for (long i = last - 1; i >= first; i--) {
+            SlowStatement entry = entries.get((int) (i % entries.length()));
+            // the slot may be already reused or not yet filled by a concurrent record
+            if (entry != null && entry.getSequence() == i) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the slow statements kept in memory.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+    }
+
+    /**
+     * Sets the threshold for all the DB types without their own threshold.
+     *
+     * @param millis  threshold in milliseconds
+     */
+    public synchronized void setThreshold(long millis) {
+        this.defaultThresholdMs = millis;
+        updateThreshold();
+    }
+
+    /**
+     * Sets the threshold for a DB type. It applies when the DB adaptor of the log
+     * is of that type.
+     *
+     * @param dbType  DB type
+     * @param millis  threshold in milliseconds
+     */
+    public synchronized void setThreshold(DBType dbType, long millis) {
+        thresholds.put(dbType, millis);
+        updateThreshold();
+    }
+
+    /**
+     * Returns the threshold effective for the DB adaptor.
+     *
+     * @return  threshold in milliseconds
+     */
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * Whether execution plans of slow statements are requested from the DB.
+     *
+     * @return
+     */
+    public boolean isCapturePlans() {
+        return capturePlans;
+    }
+
+    /**
+     * Sets whether execution plans of slow statements are requested from the DB. Plans are
+     * requested synchronously, before the slow statement returns control to the caller.
+     *
+     * @param capturePlans  {@code true} to request plans
+     */
+    public void setCapturePlans(boolean capturePlans) {
+        this.capturePlans = capturePlans;
+    }
+
+    /**
+     * Whether string and binary bind values are replaced with their types and lengths.
+     *
+     * @return
+     */
+    public boolean isMaskBindValues() {
+        return maskBindValues;
+    }
+
+    /**
+     * Sets whether string and binary bind values are replaced with their types and lengths.
+     *
+     * @param maskBindValues  {@code true} to mask values
+     */
+    public void setMaskBindValues(boolean maskBindValues) {
+        this.maskBindValues = maskBindValues;
+    }
+
+    /**
+     * Stops capturing statement texts. The closed log doesn't record statements.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            StatementTexts.release();
+        }
+    }
+
+    private void updateThreshold() {
+        long millis = thresholds.getOrDefault(dbAdaptor.getType(), defaultThresholdMs);
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private String capturePlan(StatementExecution execution) {
+        String sql = execution.getSql();
+        if (sql == null || execution.getConnection() == null) {
+            return null;
+        }
+        try {
+            return dbAdaptor.getExecutionPlan(execution.getConnection(), sql, execution.getParameters());
+        } catch (CelestaException e) {
+            LOGGER.debug("Cannot capture execution plan", e);
+            return null;
+        }
+    }
+
+    static Object mask(Object v) {
+        if (v instanceof String) {
+            return "<string:" + ((String) v).length() + ">";
+        } else if (v instanceof BLOB) {
+            return "<blob:" + ((BLOB) v).size() + ">";
+        }
+        return v;
+    }
+
+}
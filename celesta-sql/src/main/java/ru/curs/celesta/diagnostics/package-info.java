@@ -0,0 +1,4 @@
+/**
+ * Diagnostic events and tools of Celesta operations.
+ */
+package ru.curs.celesta.diagnostics;
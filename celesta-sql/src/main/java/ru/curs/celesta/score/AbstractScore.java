@@ -44,15 +44,17 @@ import ru.curs.celesta.score.validator.IdentifierParser;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -61,7 +63,7 @@ import java.util.zip.CRC32;
 /**
  * Root class for complete data model of grains.
  */
-public abstract class AbstractScore {
+public abstract class AbstractScore implements Serializable {
 
     static final String DEPENDENCY_SCHEMA_DOES_NOT_EXIST_ERROR_TEMPLATE
             = "Couldn't parse schema '%s'. Dependency schema '%s' does not exist.";
@@ -72,25 +74,23 @@ public abstract class AbstractScore {
 
     private final Map<String, Grain> grains = new HashMap<>();
 
-    private final Map<String, List<GrainPart>> grainNameToGrainParts = new LinkedHashMap<>();
+    private final transient Map<String, List<GrainPart>> grainNameToGrainParts = new LinkedHashMap<>();
 
-    private int orderCounter;
+    private final AtomicInteger orderCounter = new AtomicInteger();
 
-    private final Set<GrainPart> currentlyParsingGrainParts = new HashSet<>();
+    private final transient Set<GrainPart> currentlyParsingGrainParts = ConcurrentHashMap.newKeySet();
+
+    private transient int parsingParallelism = Runtime.getRuntime().availableProcessors();
 
     protected AbstractScore() {
     }
 
     /**
-     * Core initialization by providing a set of paths to 'score' directories
-     * delimited by semicolon.
+     * Core initialization by providing a set of discovered grain resources.
      *
-     * @throws CelestaException in case if non-existing path is provided or in case if
-     *                          there's a double definition of a grain with the same name.
+     * @throws CelestaException in case if there's a double definition of a grain with the same name.
      */
-    void init(ScoreDiscovery scoreDiscovery) throws ParseException {
-
-        Set<Resource> grainResources = scoreDiscovery.discoverScore();
+    void init(Set<Resource> grainResources) throws ParseException {
 
         initSystemGrain();
 
@@ -139,6 +139,10 @@ public abstract class AbstractScore {
     }
 
     private void parseGrains(StringBuilder errorScript) throws ParseException {
+        if (parsingParallelism > 1 && grainNameToGrainParts.size() > 1) {
+            new ParallelGrainParser(this, grainNameToGrainParts, parsingParallelism).parse();
+            return;
+        }
 
         for (String grainName : grainNameToGrainParts.keySet()) {
             try {
@@ -323,7 +327,7 @@ public abstract class AbstractScore {
 
     }
 
-    private InputStream getSysSchemaInputStream() {
+    final InputStream getSysSchemaInputStream() {
         return this.getClass().getResourceAsStream(getSysSchemaName() + ".sql");
     }
 
@@ -347,7 +351,7 @@ public abstract class AbstractScore {
     }
 
     final int nextOrderCounter() {
-        return ++orderCounter;
+        return orderCounter.incrementAndGet();
     }
 
     /**
@@ -358,6 +362,7 @@ public abstract class AbstractScore {
     public static final class ScoreBuilder<T extends AbstractScore> {
         private ScoreDiscovery scoreDiscovery;
         private Class<T> scoreClass;
+        private int parsingParallelism = Runtime.getRuntime().availableProcessors();
 
         public ScoreBuilder(Class<T> scoreClass) {
             this.scoreClass = scoreClass;
@@ -388,14 +393,41 @@ public abstract class AbstractScore {
         }
 
         /**
-         * Builds the score.
+         * Sets the number of grains parsed concurrently. By default it is the number
+         * of available processors, 1 means sequential parsing.
+         *
+         * @param parsingParallelism number of grains parsed concurrently
+         */
+        @SuppressWarnings("HiddenField")
+        public ScoreBuilder<T> parsingParallelism(int parsingParallelism) {
+            if (parsingParallelism < 1) {
+                throw new CelestaException("Parsing parallelism must be positive, got %d.", parsingParallelism);
+            }
+            this.parsingParallelism = parsingParallelism;
+            return this;
+        }
+
+        /**
+         * Builds the score. If the score discovery provides a score snapshot that matches
+         * the discovered grain resources, the score is loaded from the snapshot without parsing.
          *
          * @throws ParseException when score parsing fails
          */
         public T build() throws ParseException {
+            Set<Resource> grainResources = this.scoreDiscovery.discoverScore();
+
+            Resource snapshot = this.scoreDiscovery.getScoreSnapshot();
+            if (snapshot != null) {
+                T t = ScoreSnapshot.read(scoreClass, snapshot, grainResources);
+                if (t != null) {
+                    return t;
+                }
+            }
+
             try {
                 T t = scoreClass.newInstance();
-                t.init(this.scoreDiscovery);
+                ((AbstractScore) t).parsingParallelism = this.parsingParallelism;
+                t.init(grainResources);
 
                 return t;
 
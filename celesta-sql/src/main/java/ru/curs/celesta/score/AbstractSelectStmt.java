@@ -2,7 +2,10 @@ package ru.curs.celesta.score;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,7 +15,7 @@ import java.util.stream.Collectors;
 /**
  * A segment of a UNION chain in a SQL UNION ALL query.
  */
-public abstract class AbstractSelectStmt {
+public abstract class AbstractSelectStmt implements Serializable {
     final AbstractView view;
 
     final Map<String, Expr> columns = new LinkedHashMap<>();
@@ -179,6 +182,15 @@ public abstract class AbstractSelectStmt {
     }
 
 
+    /**
+     * Returns references to the tables of the FROM clause.
+     *
+     * @return
+     */
+    public final Collection<TableRef> getTables() {
+        return Collections.unmodifiableCollection(tables.values());
+    }
+
     /**
      * Adds a table reference to the view.
      *
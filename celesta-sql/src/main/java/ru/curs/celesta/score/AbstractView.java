@@ -37,6 +37,14 @@ public abstract class AbstractView extends DataGrainElement {
             FieldRef fr = (FieldRef) sum.term;
             return fr.getColumn();
         });
+        EXPR_CLASSES_AND_COLUMN_EXTRACTORS.put(Max.class, (Expr maxExpr) -> {
+            Expr term = ((Max) maxExpr).term;
+            return term instanceof FieldRef ? ((FieldRef) term).getColumn() : null;
+        });
+        EXPR_CLASSES_AND_COLUMN_EXTRACTORS.put(Min.class, (Expr minExpr) -> {
+            Expr term = ((Min) minExpr).term;
+            return term instanceof FieldRef ? ((FieldRef) term).getColumn() : null;
+        });
     }
 
     private final List<AbstractSelectStmt> segments = new ArrayList<>();
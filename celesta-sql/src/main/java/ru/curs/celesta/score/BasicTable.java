@@ -45,6 +45,8 @@ public abstract class BasicTable extends DataGrainElement implements TableElemen
 
     private boolean autoUpdate = true;
 
+    private boolean cached;
+
     private String pkConstraintName;
 
     protected BasicTable(GrainPart grainPart, String name, boolean canHaveEmptyPK) throws ParseException {
@@ -288,6 +290,29 @@ public abstract class BasicTable extends DataGrainElement implements TableElemen
         this.autoUpdate = autoUpdate;
     }
 
+    /**
+     * Whether the table is cached in memory (the option WITH CACHE).<br/>
+     * <br/>
+     * Cursors of a cached table read its data from a snapshot of the whole table
+     * held in memory by Celesta.
+     *
+     * @return
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Sets or clears the option WITH CACHE.
+     *
+     * @param cached
+     *            {@code true} if the table is cached in memory,
+     *            {@code false} - in the opposite case.
+     */
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
     @Override
     public final int getColumnIndex(String name) {
         return columns.getIndex(name);
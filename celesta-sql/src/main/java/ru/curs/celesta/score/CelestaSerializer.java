@@ -176,12 +176,16 @@ public final class CelestaSerializer {
      */
     void save(Table t) throws IOException {
         saveHead(t);
+        boolean isWith = true;
         if (!t.isVersioned()) {
             writer.write(" WITH NO VERSION CHECK");
-            saveTail(t, false);
-        } else {
-            saveTail(t, true);
+            isWith = false;
+        }
+        if (t.isCached()) {
+            writer.write(isWith ? " WITH CACHE" : " CACHE");
+            isWith = false;
         }
+        saveTail(t, isWith);
     }
 
     /**
@@ -193,6 +197,9 @@ public final class CelestaSerializer {
     void save(ReadOnlyTable t) throws IOException {
         saveHead(t);
         writer.write(" WITH READ ONLY");
+        if (t.isCached()) {
+            writer.write(" CACHE");
+        }
         saveTail(t, false);
     }
 
@@ -576,6 +583,12 @@ public final class CelestaSerializer {
         MaterializedViewCelestaSQLGen(MaterializedView view) {
             super(view);
         }
+
+        @Override
+        protected String preamble(AbstractView dummyView) {
+            return String.format("create %s %s%s as", view.viewType(), viewName(view),
+                    view.isDeferred() ? " with deferred" : "");
+        }
     }
 
     private static class ParameterizedViewCelestaSQLGen extends AbstractViewCelestaSQLGen<ParameterizedView> {
@@ -585,12 +598,13 @@ public final class CelestaSerializer {
 
         @Override
         protected String preamble(AbstractView dummyView) {
-            return String.format("create %s %s (%s) as",
+            return String.format("create %s %s (%s)%s as",
                     view.viewType(),
                     viewName(view),
                     view.getParameters().values().stream()
                         .map(p -> p.getName() + " " + p.getType().toString())
-                        .collect(Collectors.joining(", ")));
+                        .collect(Collectors.joining(", ")),
+                    view.isCached() ? " with cache" : "");
         }
     }
 
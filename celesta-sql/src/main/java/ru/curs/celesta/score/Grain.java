@@ -377,6 +377,10 @@ public final class Grain extends NamedElement {
         return dependencyOrder;
     }
 
+    void setDependencyOrder(int dependencyOrder) {
+        this.dependencyOrder = dependencyOrder;
+    }
+
     /**
      * Indicates that the grain parsing is completed. A system method.
      *
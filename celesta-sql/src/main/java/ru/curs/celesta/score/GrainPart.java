@@ -2,12 +2,14 @@ package ru.curs.celesta.score;
 
 import ru.curs.celesta.score.io.Resource;
 
-public final class GrainPart {
+import java.io.Serializable;
+
+public final class GrainPart implements Serializable {
 
     private final Grain grain;
     private final boolean isDefinition;
 
-    private final Resource source;
+    private transient Resource source;
 
     public GrainPart(Grain grain, boolean isDefinition, Resource source) {
         this.grain = grain;
@@ -55,6 +57,10 @@ public final class GrainPart {
         return source;
     }
 
+    void setSource(Resource source) {
+        this.source = source;
+    }
+
     public boolean isDefinition() {
         return isDefinition;
     }
@@ -52,7 +52,12 @@ final class MaterializedSelectStmt extends AbstractSelectStmt {
                 matColFabricFunction = MaterializedView.COL_CLASSES_AND_FABRIC_FUNCS.get(colRef.getClass());
             }
 
-            if (matColFabricFunction == null) {
+            if ((expr instanceof Max || expr instanceof Min)
+                    && (colRef instanceof BooleanColumn || colRef instanceof BinaryColumn)) {
+                throw new ParseException(String.format(
+                        "Unsupported type '%s' of MIN/MAX column '%s' in materialized view %s was found",
+                        expr.getMeta().getCelestaType(), alias, view.getName()));
+            } else if (matColFabricFunction == null) {
                 throw new ParseException(String.format(
                         "Unsupported type '%s' of column '%s' in materialized view %s was found",
                         expr.getMeta().getCelestaType(), alias, view.getName()));
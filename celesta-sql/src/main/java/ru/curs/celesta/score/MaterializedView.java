@@ -29,6 +29,14 @@ public final class MaterializedView extends AbstractView implements TableElement
      * Checksum comment template.
      */
     public static final String CHECKSUM_COMMENT_TEMPLATE = "/*CHECKSUM%sCHECKSUM*/";
+    /**
+     * Postfix of the queue table name of a deferred materialized view.
+     */
+    public static final String QUEUE_POSTFIX = "_queue";
+    /**
+     * Postfix of the table name of the queue filled while a materialized view is built in chunks.
+     */
+    public static final String BUILD_QUEUE_POSTFIX = "_build";
 
     static final Map<Class<? extends Column<?>>, MatColFabricFunction>
             COL_CLASSES_AND_FABRIC_FUNCS = new HashMap<>();
@@ -41,6 +49,7 @@ public final class MaterializedView extends AbstractView implements TableElement
     };
 
     private final IntegerColumn surrogateCount;
+    private boolean deferred;
     private final NamedElementHolder<Column<?>> realColumns = new NamedElementHolder<Column<?>>() {
         @Override
         protected String getErrorMsg(String name) {
@@ -58,6 +67,44 @@ public final class MaterializedView extends AbstractView implements TableElement
         return surrogateCount;
     }
 
+    /**
+     * Whether the view is maintained in deferred mode: triggers of the table append keys
+     * of the affected groups to the queue table of the view, and the groups are recomputed
+     * when the queue is applied.
+     *
+     * @return
+     */
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    void setDeferred(boolean deferred) throws ParseException {
+        getGrain().modify();
+        this.deferred = deferred;
+    }
+
+    /**
+     * Returns name of the queue table of a deferred view. The queue table consists of
+     * the group-by columns of the view and the {@link #SURROGATE_COUNT} column holding
+     * the change of the row count of the group.
+     *
+     * @return
+     */
+    public String getQueueName() {
+        return limitName(getName(), QUEUE_POSTFIX);
+    }
+
+    /**
+     * Returns name of the queue table collecting the groups changed while the view
+     * is built in chunks. The table has the structure of the queue of a deferred view
+     * and exists only until the build is completed.
+     *
+     * @return
+     */
+    public String getBuildQueueName() {
+        return limitName(getName(), BUILD_QUEUE_POSTFIX);
+    }
+
     @FunctionalInterface
     interface MatColFabricFunction {
         Column<?> apply(MaterializedView mView, Column<?> colRef, String alias) throws ParseException;
@@ -219,12 +266,24 @@ public final class MaterializedView extends AbstractView implements TableElement
         }
     }
 
-    @SuppressWarnings("EmptyStatement")
     public String getChecksum() {
+        return getChecksum("");
+    }
+
+    /**
+     * Returns the checksum of the view definition together with the format of the triggers
+     * maintaining it, so that the triggers of an older format are rebuilt.
+     *
+     * @param triggerFormat  version of the trigger format, empty for the original one
+     * @return
+     */
+    @SuppressWarnings("EmptyStatement")
+    public String getChecksum(String triggerFormat) {
         // TODO: CelestaSerializer is not intended to be used from GrainElement classes.
         //       Consider using a different approach for checksum calculation.
         try (ChecksumInputStream is = new ChecksumInputStream(
-                new ByteArrayInputStream(CelestaSerializer.toString(this).getBytes(StandardCharsets.UTF_8))
+                new ByteArrayInputStream((CelestaSerializer.toString(this) + triggerFormat)
+                        .getBytes(StandardCharsets.UTF_8))
         )) {
             while (is.read() != -1) ;
             return String.format("%08X", is.getCRC32());
@@ -1,9 +1,11 @@
 package ru.curs.celesta.score;
 
+import java.io.Serializable;
+
 /**
  * Native SQL holder for a grain part.
  */
-public final class NativeSqlElement {
+public final class NativeSqlElement implements Serializable {
 
     private GrainPart grainPart;
     private String sql;
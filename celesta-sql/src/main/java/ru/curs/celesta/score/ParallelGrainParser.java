@@ -0,0 +1,251 @@
+package ru.curs.celesta.score;
+
+import ru.curs.celesta.CelestaException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses grains of a score concurrently.
+ * <p>
+ * Grain headers don't declare dependencies, so a conservative dependency graph is
+ * built first: a grain is considered to depend on every other grain whose name occurs
+ * in its text as an identifier. Strongly connected components of the graph are parsed
+ * on a fork-join pool as soon as the components they depend on are parsed, the grains
+ * of a component being parsed sequentially as before, so that all the grains a grain
+ * actually refers to are complete when the parser reaches the reference.
+ * <p>
+ * Errors are reported for the first failed grain in the order of grain discovery, and
+ * dependency orders of the grains are renumbered in the topological order of the graph,
+ * so that both don't depend on thread scheduling.
+ */
+final class ParallelGrainParser {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("\"([^\"]+)\"|([A-Za-z_][A-Za-z_0-9]*)");
+    private static final int BUFFER_SIZE = 8192;
+
+    private final AbstractScore score;
+    private final Map<String, List<GrainPart>> grainParts;
+    private final int parallelism;
+
+    ParallelGrainParser(AbstractScore score, Map<String, List<GrainPart>> grainParts, int parallelism) {
+        this.score = score;
+        this.grainParts = grainParts;
+        this.parallelism = parallelism;
+    }
+
+    void parse() throws ParseException {
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, grainParts.size()));
+        try {
+            Map<String, Set<String>> dependencies = findDependencies(pool);
+            List<List<String>> components = new Tarjan(dependencies).components();
+
+            Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+            for (List<String> component : components) {
+                List<CompletableFuture<Void>> prerequisites = new ArrayList<>();
+                for (String grainName : component) {
+                    for (String dependency : dependencies.get(grainName)) {
+                        CompletableFuture<Void> f = futures.get(dependency);
+                        if (f != null) {
+                            prerequisites.add(f);
+                        }
+                    }
+                }
+                CompletableFuture<Void> future = CompletableFuture
+                        .allOf(prerequisites.toArray(new CompletableFuture<?>[0]))
+                        .thenRunAsync(() -> parseComponent(component), pool);
+                for (String grainName : component) {
+                    futures.put(grainName, future);
+                }
+            }
+
+            for (String grainName : grainParts.keySet()) {
+                try {
+                    futures.get(grainName).join();
+                } catch (CompletionException e) {
+                    throw rethrow(e.getCause());
+                }
+            }
+            renumber(components);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void parseComponent(List<String> component) {
+        for (String grainName : component) {
+            try {
+                score.parseGrain(grainName);
+            } catch (ParseException e) {
+                throw new CompletionException(e);
+            }
+        }
+    }
+
+    private static ParseException rethrow(Throwable cause) {
+        if (cause instanceof ParseException) {
+            return new ParseException(cause.getMessage());
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new CelestaException(cause);
+    }
+
+    /**
+     * Scans the texts of all the grain parts for names of other grains.
+     */
+    private Map<String, Set<String>> findDependencies(ForkJoinPool pool) throws ParseException {
+        Map<String, String> namesByKey = new HashMap<>();
+        for (String grainName : grainParts.keySet()) {
+            namesByKey.put(grainName.toUpperCase(Locale.ROOT), grainName);
+        }
+
+        Map<String, CompletableFuture<Set<String>>> scans = new HashMap<>();
+        for (Map.Entry<String, List<GrainPart>> e : grainParts.entrySet()) {
+            scans.put(e.getKey(), CompletableFuture.supplyAsync(() -> scan(e.getKey(), e.getValue(), namesByKey),
+                    pool));
+        }
+        Map<String, Set<String>> result = new HashMap<>();
+        for (String grainName : grainParts.keySet()) {
+            try {
+                result.put(grainName, scans.get(grainName).join());
+            } catch (CompletionException e) {
+                throw rethrow(e.getCause());
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> scan(String grainName, List<GrainPart> parts, Map<String, String> namesByKey) {
+        Set<String> result = new LinkedHashSet<>();
+        for (GrainPart part : parts) {
+            Matcher m = IDENTIFIER.matcher(read(part));
+            while (m.find()) {
+                String identifier = m.group(1) != null ? m.group(1) : m.group(2);
+                String name = namesByKey.get(identifier.toUpperCase(Locale.ROOT));
+                if (name != null && !name.equals(grainName)) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String read(GrainPart part) {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[BUFFER_SIZE];
+        try (InputStream is = part.getSource().getInputStream();
+             Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+            int n;
+            while ((n = reader.read(buffer)) >= 0) {
+                sb.append(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new CompletionException(new ParseException(
+                    String.format("Cannot open resource '%s'.", part.getSource().toString())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renumbers dependency orders of the grains: components in topological order,
+     * grains of a component in the order of their parsing.
+     */
+    private void renumber(List<List<String>> components) {
+        int order = Integer.MAX_VALUE;
+        for (String grainName : grainParts.keySet()) {
+            order = Math.min(order, score.getGrains().get(grainName).getDependencyOrder());
+        }
+        order--;
+        for (List<String> component : components) {
+            List<Grain> grains = new ArrayList<>(component.size());
+            for (String grainName : component) {
+                grains.add(score.getGrains().get(grainName));
+            }
+            grains.sort(Comparator.comparingInt(Grain::getDependencyOrder));
+            for (Grain g : grains) {
+                g.setDependencyOrder(++order);
+            }
+        }
+    }
+
+    /**
+     * Tarjan's algorithm, producing strongly connected components of the dependency
+     * graph in such an order that dependencies of a component precede it.
+     */
+    private final class Tarjan {
+        private final Map<String, Set<String>> edges;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final Map<String, Integer> lowLink = new HashMap<>();
+        private final Deque<String> stack = new ArrayDeque<>();
+        private final Set<String> onStack = new HashSet<>();
+        private final List<List<String>> result = new ArrayList<>();
+
+        Tarjan(Map<String, Set<String>> edges) {
+            this.edges = edges;
+        }
+
+        List<List<String>> components() {
+            for (String grainName : grainParts.keySet()) {
+                if (!index.containsKey(grainName)) {
+                    visit(grainName);
+                }
+            }
+            return result;
+        }
+
+        private void visit(String v) {
+            index.put(v, index.size());
+            lowLink.put(v, index.get(v));
+            stack.push(v);
+            onStack.add(v);
+            for (String w : edges.get(v)) {
+                if (!index.containsKey(w)) {
+                    visit(w);
+                    lowLink.put(v, Math.min(lowLink.get(v), lowLink.get(w)));
+                } else if (onStack.contains(w)) {
+                    lowLink.put(v, Math.min(lowLink.get(v), index.get(w)));
+                }
+            }
+            if (lowLink.get(v).equals(index.get(v))) {
+                List<String> component = new ArrayList<>();
+                String w;
+                do {
+                    w = stack.pop();
+                    onStack.remove(w);
+                    component.add(w);
+                } while (!w.equals(v));
+                // grains of a component are parsed in the order of discovery
+                List<String> ordered = new ArrayList<>();
+                for (String grainName : grainParts.keySet()) {
+                    if (component.contains(grainName)) {
+                        ordered.add(grainName);
+                    }
+                }
+                result.add(ordered);
+            }
+        }
+    }
+
+}
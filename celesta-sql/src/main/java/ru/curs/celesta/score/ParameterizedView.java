@@ -7,7 +7,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Supplier;
 
 /**
  * Parameterized View object in metadata.
@@ -19,7 +18,8 @@ public final class ParameterizedView extends View {
 
     final Map<String, Parameter> parameters = new LinkedHashMap<>();
     final List<String> parameterRefsWithOrder = new ArrayList<>();
-    private final List<Supplier<Set<String>>> unusedParametersSuppliers = new ArrayList<>();
+    private final List<ParameterizedViewSelectStmt> selectStatements = new ArrayList<>();
+    private boolean cached;
 
     public ParameterizedView(GrainPart grainPart, String name) throws ParseException {
         super(grainPart, name);
@@ -33,7 +33,7 @@ public final class ParameterizedView extends View {
     @Override
     AbstractSelectStmt newSelectStatement() {
         ParameterizedViewSelectStmt result = new ParameterizedViewSelectStmt(this);
-        unusedParametersSuppliers.add(result::getUnusedParameters);
+        selectStatements.add(result);
         return result;
     }
 
@@ -77,12 +77,30 @@ public final class ParameterizedView extends View {
         return parameterRefsWithOrder;
     }
 
+    /**
+     * Whether the results of the function are cached in memory by their parameters.
+     *
+     * @return
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Sets whether the results of the function are cached in memory by their parameters.
+     *
+     * @param cached  the flag
+     */
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
     @Override
     void finalizeParsing() throws ParseException {
         super.finalizeParsing();
-        Set<String> unused = new HashSet<>(unusedParametersSuppliers.get(0).get());
-        for (int i = 1; i < unusedParametersSuppliers.size(); i++) {
-            unused.retainAll(unusedParametersSuppliers.get(i).get());
+        Set<String> unused = new HashSet<>(selectStatements.get(0).getUnusedParameters());
+        for (int i = 1; i < selectStatements.size(); i++) {
+            unused.retainAll(selectStatements.get(i).getUnusedParameters());
         }
         if (!unused.isEmpty()) {
             String unusedParametersStr = String.join(", ", unused);
@@ -0,0 +1,241 @@
+package ru.curs.celesta.score;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.score.io.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized snapshot of a parsed score, generated at build time next to the score
+ * resources so that the score is loaded at startup without parsing.
+ * <p>
+ * The snapshot starts with a header that lists the grains of the score with their
+ * checksums and lengths, and paths of their grain parts relative to the snapshot.
+ * The snapshot is loaded only if the grain parts it lists are exactly the discovered
+ * grain resources, and their checksums and lengths are the same as at build time.
+ * Otherwise, as well as when the score classes have changed since the snapshot was
+ * written, the score is parsed as usual.
+ */
+public final class ScoreSnapshot {
+
+    /**
+     * Name of the snapshot file in score resources.
+     */
+    public static final String FILE_NAME = "score.snapshot";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScoreSnapshot.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private ScoreSnapshot() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Writes snapshot of a parsed score.
+     *
+     * @param score  parsed score
+     * @param relativePath  function returning path of a grain resource relative to the snapshot
+     * @param out  output stream the snapshot is written to
+     * @throws IOException  when the snapshot cannot be written
+     */
+    public static void write(AbstractScore score, Function<Resource, String> relativePath, OutputStream out)
+            throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        ObjectOutputStream oos = new ObjectOutputStream(gzip);
+        oos.writeInt(FORMAT_VERSION);
+        oos.writeUTF(score.getClass().getName());
+
+        List<Grain> grains = new ArrayList<>();
+        for (Grain g : score.getGrains().values()) {
+            if (!score.getSysSchemaName().equals(g.getName())) {
+                grains.add(g);
+            }
+        }
+        oos.writeInt(grains.size());
+        for (Grain g : grains) {
+            oos.writeUTF(g.getName());
+            oos.writeInt(g.getChecksum());
+            oos.writeInt(g.getLength());
+            oos.writeInt(g.getGrainParts().size());
+            for (GrainPart gp : g.getGrainParts()) {
+                String path = relativePath.apply(gp.getSource());
+                if (path == null) {
+                    throw new CelestaException("Grain resource %s is not relative to the score snapshot.",
+                            gp.getSource());
+                }
+                oos.writeUTF(path);
+                oos.writeBoolean(gp.isDefinition());
+            }
+        }
+
+        oos.writeObject(score);
+        oos.flush();
+        gzip.finish();
+    }
+
+    /**
+     * Reads score from snapshot if the snapshot matches the discovered grain resources.
+     *
+     * @return  {@code null} if the snapshot doesn't match grain resources or cannot be read
+     */
+    static <T extends AbstractScore> T read(Class<T> scoreClass, Resource snapshot, Set<Resource> grainResources) {
+        try (SnapshotInputStream in = new SnapshotInputStream(snapshot.getInputStream(), scoreClass)) {
+            if (in.readInt() != FORMAT_VERSION || !scoreClass.getName().equals(in.readUTF())) {
+                return outOfDate(snapshot, "it was written by another version of Celesta");
+            }
+
+            List<Resource> discovered = new ArrayList<>(grainResources);
+            Map<Resource, Integer> resourceOrder = new HashMap<>();
+            for (Resource r : discovered) {
+                resourceOrder.put(r, resourceOrder.size());
+            }
+            Map<String, List<PartHeader>> grainParts = new LinkedHashMap<>();
+            int grainCount = in.readInt();
+            for (int i = 0; i < grainCount; i++) {
+                String grainName = in.readUTF();
+                int checksum = in.readInt();
+                int length = in.readInt();
+                List<PartHeader> parts = new ArrayList<>();
+                int partCount = in.readInt();
+                for (int j = 0; j < partCount; j++) {
+                    Resource r = snapshot.createRelative(in.readUTF());
+                    Integer order = resourceOrder.remove(r);
+                    if (order == null) {
+                        return outOfDate(snapshot, String.format("grain resource %s is not discovered", r));
+                    }
+                    // the discovered resource carries the name space
+                    parts.add(new PartHeader(discovered.get(order), order, in.readBoolean()));
+                }
+                if (!matches(parts, checksum, length)) {
+                    return outOfDate(snapshot, String.format("grain %s has changed", grainName));
+                }
+                grainParts.put(grainName, parts);
+            }
+            if (!resourceOrder.isEmpty()) {
+                return outOfDate(snapshot, String.format("grain resources %s are not in the snapshot",
+                        resourceOrder.keySet()));
+            }
+
+            AbstractScore score = (AbstractScore) in.readObject();
+            if (score.getClass() != scoreClass || !matchesSystemGrain(score)) {
+                return outOfDate(snapshot, "system grain has changed");
+            }
+            for (Map.Entry<String, List<PartHeader>> e : grainParts.entrySet()) {
+                Iterator<PartHeader> parts = e.getValue().iterator();
+                for (GrainPart gp : score.getGrain(e.getKey()).getGrainParts()) {
+                    gp.setSource(parts.next().resource);
+                }
+            }
+            LOGGER.debug("Score is loaded from snapshot {}", snapshot);
+            return scoreClass.cast(score);
+        } catch (IOException | ClassNotFoundException | ClassCastException | ParseException e) {
+            LOGGER.info("Score snapshot {} cannot be read, parsing the score: {}", snapshot, e.toString());
+            return null;
+        }
+    }
+
+    private static <T> T outOfDate(Resource snapshot, String reason) {
+        LOGGER.info("Score snapshot {} is out of date, parsing the score: {}", snapshot, reason);
+        return null;
+    }
+
+    /**
+     * Checks the grain parts against the checksum and length, the parts being read
+     * in the order the score parser reads them.
+     */
+    private static boolean matches(List<PartHeader> parts, int checksum, int length) throws IOException {
+        List<PartHeader> ordered = new ArrayList<>(parts);
+        ordered.sort((p1, p2) -> p1.isDefinition != p2.isDefinition
+                ? Boolean.compare(p2.isDefinition, p1.isDefinition)
+                : Integer.compare(p1.order, p2.order));
+
+        ChecksumInputStream cis = null;
+        for (PartHeader p : ordered) {
+            try (ChecksumInputStream is = cis == null
+                    ? new ChecksumInputStream(new BufferedInputStream(p.resource.getInputStream()))
+                    : new ChecksumInputStream(new BufferedInputStream(p.resource.getInputStream()), cis)) {
+                drain(is);
+                cis = is;
+            }
+        }
+        return cis != null && cis.getCRC32() == checksum && cis.getCount() == length;
+    }
+
+    private static boolean matchesSystemGrain(AbstractScore score) throws IOException, ParseException {
+        Grain sysGrain = score.getGrain(score.getSysSchemaName());
+        try (ChecksumInputStream is =
+                     new ChecksumInputStream(new BufferedInputStream(score.getSysSchemaInputStream()))) {
+            drain(is);
+            return is.getCRC32() == sysGrain.getChecksum() && is.getCount() == sysGrain.getLength();
+        }
+    }
+
+    private static void drain(InputStream is) throws IOException {
+        int b;
+        do {
+            b = is.read();
+        } while (b >= 0);
+    }
+
+    /**
+     * Grain part as listed in the snapshot header.
+     */
+    private static final class PartHeader {
+        private final Resource resource;
+        private final int order;
+        private final boolean isDefinition;
+
+        PartHeader(Resource resource, int order, boolean isDefinition) {
+            this.resource = resource;
+            this.order = order;
+            this.isDefinition = isDefinition;
+        }
+    }
+
+    /**
+     * Object input stream resolving only Celesta and JDK classes, with the class loader
+     * of the score class.
+     */
+    private static final class SnapshotInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        SnapshotInputStream(InputStream in, Class<?> scoreClass) throws IOException {
+            super(new GZIPInputStream(in));
+            this.classLoader = scoreClass.getClassLoader();
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName().replaceFirst("^\\[+L", "");
+            if (!name.startsWith("ru.curs.celesta.") && !name.startsWith("java.") && !name.startsWith("[")) {
+                throw new ClassNotFoundException(String.format("Class %s is not allowed in score snapshot.",
+                        desc.getName()));
+            }
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+}
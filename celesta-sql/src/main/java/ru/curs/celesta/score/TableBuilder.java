@@ -69,6 +69,10 @@ final class TableBuilder {
         actions.add(() -> table.setAutoUpdate(isAutoUpdate));
     }
 
+    public void setCached(boolean isCached) {
+        actions.add(() -> table.setCached(isCached));
+    }
+
     public void addPK(String columnName) {
         actions.add(() -> table.addPK(columnName));
     }
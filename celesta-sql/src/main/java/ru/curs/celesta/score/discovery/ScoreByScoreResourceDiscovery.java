@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.score.Namespace;
+import ru.curs.celesta.score.ScoreSnapshot;
 import ru.curs.celesta.score.io.Resource;
 import ru.curs.celesta.score.io.UrlResource;
 
@@ -13,10 +14,13 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,20 +33,80 @@ public final class ScoreByScoreResourceDiscovery implements ScoreDiscovery {
 
     private static final String SCORE_FILES_LOCATION = "score/score.files";
 
+    private static final String SCORE_SNAPSHOT_LOCATION = "score/" + ScoreSnapshot.FILE_NAME;
+
+    private final List<URL> scoreIndexUrls;
+
+    /**
+     * Creates discovery of the score indexed by all {@code score/score.files} resources
+     * of the class path.
+     */
+    public ScoreByScoreResourceDiscovery() {
+        this.scoreIndexUrls = null;
+    }
+
+    /**
+     * Creates discovery of the score indexed by the given score index files.
+     *
+     * @param scoreFilesUrls  URLs of score index files
+     */
+    public ScoreByScoreResourceDiscovery(URL... scoreFilesUrls) {
+        this.scoreIndexUrls = Arrays.asList(scoreFilesUrls);
+    }
+
     @Override
     public Set<Resource> discoverScore() {
+        try {
+            return discoverScore(getScoreFilesUrls());
+        } catch (IOException ex) {
+            throw new CelestaException("Unable to load score files from resources.", ex);
+        }
+    }
 
-        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    @Override
+    public Resource getScoreSnapshot() {
         try {
-            Enumeration<URL> urls = (classLoader != null)
-                    ? classLoader.getResources(SCORE_FILES_LOCATION)
-                    : ClassLoader.getSystemResources(SCORE_FILES_LOCATION);
+            List<URL> snapshotUrls = new ArrayList<>();
+            if (scoreIndexUrls == null) {
+                snapshotUrls.addAll(Collections.list(getResources(SCORE_SNAPSHOT_LOCATION)));
+            } else {
+                for (URL url : scoreIndexUrls) {
+                    URL snapshotUrl = new URL(url, ScoreSnapshot.FILE_NAME);
+                    try (InputStream is = snapshotUrl.openStream()) {
+                        snapshotUrls.add(snapshotUrl);
+                    } catch (IOException ex) {
+                        LOGGER.debug("score snapshot is missing: {}", snapshotUrl);
+                    }
+                }
+            }
+            return getScoreSnapshot(Collections.list(getScoreFilesUrls()), snapshotUrls);
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to look up score snapshot in resources.", ex);
+            return null;
+        }
+    }
 
-            return discoverScore(urls);
+    private Enumeration<URL> getScoreFilesUrls() throws IOException {
+        return scoreIndexUrls == null
+                ? getResources(SCORE_FILES_LOCATION)
+                : Collections.enumeration(scoreIndexUrls);
+    }
 
-        } catch (IOException ex) {
-            throw new CelestaException("Unable to load score files from resources.", ex);
+    private static Enumeration<URL> getResources(String location) throws IOException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return (classLoader != null)
+                ? classLoader.getResources(location)
+                : ClassLoader.getSystemResources(location);
+    }
+
+    Resource getScoreSnapshot(List<URL> indexUrls, List<URL> snapshotUrls) throws IOException {
+        // a snapshot covers the grains of its own score index file only
+        if (indexUrls.size() != 1 || snapshotUrls.size() != 1) {
+            return null;
         }
+        Resource snapshot = new UrlResource(snapshotUrls.get(0));
+        Resource expected = new UrlResource(indexUrls.get(0)).createRelative(ScoreSnapshot.FILE_NAME);
+        return snapshot.equals(expected) ? snapshot : null;
     }
 
     Set<Resource> discoverScore(Enumeration<URL> scoreFilesUrls) throws IOException {
@@ -16,4 +16,14 @@ public interface ScoreDiscovery {
      */
     Set<Resource> discoverScore();
 
+    /**
+     * Returns resource of the score snapshot generated at build time along with the
+     * discovered grain scripts, or {@code null} if there is no snapshot.
+     *
+     * @return
+     */
+    default Resource getScoreSnapshot() {
+        return null;
+    }
+
 }
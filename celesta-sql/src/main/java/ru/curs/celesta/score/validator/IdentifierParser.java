@@ -2,13 +2,14 @@ package ru.curs.celesta.score.validator;
 
 import ru.curs.celesta.score.ParseException;
 
+import java.io.Serializable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Identifier parser and validator.
  */
-public abstract class IdentifierParser {
+public abstract class IdentifierParser implements Serializable {
     /**
      * Plain name regular expression.
      */
@@ -0,0 +1,66 @@
+package ru.curs.celesta.dbutils.adaptors.ddl;
+
+import org.junit.jupiter.api.BeforeAll;
+import ru.curs.celesta.ConnectionPool;
+import ru.curs.celesta.score.AbstractScore;
+import ru.curs.celesta.score.BasicTable;
+import ru.curs.celesta.score.ForeignKey;
+import ru.curs.celesta.score.Grain;
+import ru.curs.celesta.score.Index;
+import ru.curs.celesta.score.MaterializedView;
+import ru.curs.celesta.score.ScoreUtil;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Base of the tests pinning the DDL generated for a DBMS, which don't need the DBMS itself.
+ */
+public abstract class AbstractDdlGeneratorTest {
+
+    static final DdlConsumer NO_DDL = (conn, sql) -> { };
+
+    static Grain grain;
+
+    final ConnectionPool connectionPool = mock(ConnectionPool.class);
+    final Connection conn = mock(Connection.class);
+
+    @BeforeAll
+    static void parseScore() throws Exception {
+        AbstractScore score = ScoreUtil.createCelestaSqlTestScore(AbstractDdlGeneratorTest.class, "score");
+        grain = score.getGrain("ddl");
+    }
+
+    abstract DdlGenerator generator();
+
+    static BasicTable table(String name) {
+        return grain.getElements(BasicTable.class).get(name);
+    }
+
+    static Index index(String name) {
+        return grain.getIndices().get(name);
+    }
+
+    static MaterializedView materializedView(String name) {
+        return grain.getElements(MaterializedView.class).get(name);
+    }
+
+    static ForeignKey foreignKey(String tableName) {
+        return table(tableName).getForeignKeys().iterator().next();
+    }
+
+    /**
+     * Returns the statements maintaining a materialized view, created by the triggers of its table.
+     * Line separators of the platform are replaced by \n.
+     */
+    List<String> triggersOf(String tableName, String viewName) {
+        return generator().createTableTriggersForMaterializedViews(table(tableName)).stream()
+                .filter(sql -> sql.contains(viewName))
+                .map(sql -> sql.replace(System.lineSeparator(), "\n"))
+                .collect(Collectors.toList());
+    }
+
+}
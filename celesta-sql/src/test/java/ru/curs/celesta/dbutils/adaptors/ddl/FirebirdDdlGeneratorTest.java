@@ -0,0 +1,47 @@
+package ru.curs.celesta.dbutils.adaptors.ddl;
+
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.dbutils.adaptors.FirebirdAdaptor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FirebirdDdlGeneratorTest extends AbstractDdlGeneratorTest {
+
+    private final FirebirdDdlGenerator generator =
+            new FirebirdDdlGenerator(new FirebirdAdaptor(connectionPool, NO_DDL));
+
+    @Override
+    DdlGenerator generator() {
+        return generator;
+    }
+
+    @Test
+    public void deletedExtremaAreRecomputedFromTable() {
+        assertEquals("CREATE TRIGGER \"mvDeleteFromddl_saleTo4EAF205B\" for \"ddl_sale\" AFTER DELETE \n"
+                + " AS \n"
+                + " BEGIN \n"
+                + "/*CHECKSUMF3DBDABECHECKSUM*/\n"
+                + " MERGE INTO \"ddl_saleExtrema\" AS \"mv\" \n"
+                + "USING (SELECT OLD.\"region\" as \"region\", OLD.\"amount\" as \"minAmount\", OLD.\"amount\" as "
+                + "\"maxAmount\", 1 as \"c\", 1 AS \"surrogate_count\" FROM RDB$DATABASE) AS \"aggregate\" ON "
+                + "\"mv\".\"region\" = \"aggregate\".\"region\"  \n"
+                + "WHEN MATCHED AND \"mv\".\"c\" = \"aggregate\".\"c\" AND \"mv\".\"surrogate_count\" = "
+                + "\"aggregate\".\"surrogate_count\" AND NOT EXISTS(SELECT * FROM \"ddl_sale\" AS \"t\" WHERE "
+                + "\"mv\".\"region\" = \"t\".\"region\" ) THEN DELETE\n"
+                + " WHEN MATCHED AND (\"mv\".\"c\" <> \"aggregate\".\"c\" OR \"mv\".\"surrogate_count\" <> "
+                + "\"aggregate\".\"surrogate_count\" OR (\"mv\".\"c\" = \"aggregate\".\"c\" AND "
+                + "\"mv\".\"surrogate_count\" = \"aggregate\".\"surrogate_count\" AND EXISTS(SELECT * FROM "
+                + "\"ddl_sale\" AS \"t\" WHERE \"mv\".\"region\" = \"t\".\"region\" ))) THEN \n"
+                + "UPDATE SET \"mv\".\"minAmount\" = CASE WHEN \"mv\".\"minAmount\" = \"aggregate\".\"minAmount\" "
+                + "THEN (SELECT MIN(\"t\".\"amount\") FROM \"ddl_sale\" AS \"t\" WHERE \"mv\".\"region\" = "
+                + "\"t\".\"region\" ) ELSE \"mv\".\"minAmount\" END, \"mv\".\"maxAmount\" = CASE WHEN "
+                + "\"mv\".\"maxAmount\" = \"aggregate\".\"maxAmount\" THEN (SELECT MAX(\"t\".\"amount\") FROM "
+                + "\"ddl_sale\" AS \"t\" WHERE \"mv\".\"region\" = \"t\".\"region\" ) ELSE \"mv\".\"maxAmount\" "
+                + "END, \"mv\".\"c\" = \"mv\".\"c\" - \"aggregate\".\"c\", \"mv\".\"surrogate_count\" = "
+                + "\"mv\".\"surrogate_count\" - \"aggregate\".\"surrogate_count\"; \n"
+                + "\n"
+                + " END;",
+                triggersOf("sale", "saleExtrema").get(1));
+    }
+
+}
@@ -0,0 +1,83 @@
+package ru.curs.celesta.dbutils.adaptors.ddl;
+
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.dbutils.adaptors.MSSQLAdaptor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class MsSqlDdlGeneratorTest extends AbstractDdlGeneratorTest {
+
+    private static final String CREATE_INDEX =
+            "CREATE INDEX \"idxSaleAmount\" ON \"ddl\".\"sale\" (\"amount\")";
+
+    private final MsSqlDdlGenerator generator =
+            new MsSqlDdlGenerator(new MSSQLAdaptor(connectionPool, NO_DDL));
+
+    @Override
+    DdlGenerator generator() {
+        return generator;
+    }
+
+    @Test
+    public void indexIsBuiltOnlineOnEnterpriseEdition() throws SQLException {
+        engineEdition(3);
+        assertEquals(Collections.singletonList(CREATE_INDEX + " WITH (ONLINE = ON)"),
+                generator.createIndexOnline(conn, index("idxSaleAmount")));
+        generator.createIndexOnline(conn, index("idxSaleAmount"));
+        verify(conn, times(1)).createStatement();
+    }
+
+    @Test
+    public void indexIsBuiltOfflineOnStandardEdition() throws SQLException {
+        engineEdition(2);
+        assertEquals(Collections.singletonList(CREATE_INDEX),
+                generator.createIndexOnline(conn, index("idxSaleAmount")));
+    }
+
+    @Test
+    public void indexIsBuiltOfflineWhenEditionIsUnknown() throws SQLException {
+        when(conn.createStatement()).thenThrow(new SQLException("no permission"));
+        assertEquals(Collections.singletonList(CREATE_INDEX),
+                generator.createIndexOnline(conn, index("idxSaleAmount")));
+    }
+
+    private void engineEdition(int edition) throws SQLException {
+        Statement stmt = mock(Statement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(conn.createStatement()).thenReturn(stmt);
+        when(stmt.executeQuery(anyString())).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getInt(1)).thenReturn(edition);
+    }
+
+    @Test
+    public void deletedExtremaAreRecomputedFromTable() {
+        assertEquals("create trigger \"ddl\".\"mvDeleteFromddl_saleTo4EAF205B\" on \"ddl\".\"sale\" after delete as "
+                + "begin \n"
+                + " MERGE INTO \"ddl\".\"saleExtrema\" WITH (HOLDLOCK) AS mv \n"
+                + "USING (SELECT \"region\" as \"region\", MIN(\"amount\") as \"minAmount\", MAX(\"amount\") as "
+                + "\"maxAmount\", COUNT(*) as \"c\", COUNT(*) AS surrogate_count FROM deleted GROUP BY \"region\") "
+                + "AS aggregate ON mv.region = aggregate.region  \n"
+                + "WHEN MATCHED AND mv.c = aggregate.c AND mv.surrogate_count = aggregate.surrogate_count AND NOT "
+                + "EXISTS(SELECT * FROM \"ddl\".\"sale\" AS t WHERE mv.region = t.region ) THEN DELETE\n"
+                + " WHEN MATCHED AND (mv.c <> aggregate.c OR mv.surrogate_count <> aggregate.surrogate_count OR "
+                + "(mv.c = aggregate.c AND mv.surrogate_count = aggregate.surrogate_count AND EXISTS(SELECT * FROM "
+                + "\"ddl\".\"sale\" AS t WHERE mv.region = t.region ))) THEN \n"
+                + "UPDATE SET mv.minAmount = CASE WHEN mv.minAmount = aggregate.minAmount THEN (SELECT "
+                + "MIN(t.\"amount\") FROM \"ddl\".\"sale\" AS t WHERE mv.region = t.region ) ELSE mv.minAmount END, "
+                + "mv.maxAmount = CASE WHEN mv.maxAmount = aggregate.maxAmount THEN (SELECT MAX(t.\"amount\") FROM "
+                + "\"ddl\".\"sale\" AS t WHERE mv.region = t.region ) ELSE mv.maxAmount END, mv.c = mv.c - "
+                + "aggregate.c, mv.surrogate_count = mv.surrogate_count - aggregate.surrogate_count; \n"
+                + " \n"
+                + " END;",
+                triggersOf("sale", "saleExtrema").get(1));
+    }
+
+}
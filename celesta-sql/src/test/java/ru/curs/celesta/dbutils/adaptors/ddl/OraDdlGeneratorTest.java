@@ -0,0 +1,51 @@
+package ru.curs.celesta.dbutils.adaptors.ddl;
+
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.dbutils.adaptors.OraAdaptor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OraDdlGeneratorTest extends AbstractDdlGeneratorTest {
+
+    private final OraDdlGenerator generator =
+            new OraDdlGenerator(new OraAdaptor(connectionPool, NO_DDL));
+
+    @Override
+    DdlGenerator generator() {
+        return generator;
+    }
+
+    @Test
+    public void deletedExtremaAreRecomputedAfterStatement() {
+        assertEquals("create or replace trigger \"mvDeleteFromddl_saleTo4EAF205B\" for delete on \"ddl_sale\" compound "
+                + "trigger\n"
+                + "TYPE t_removed IS TABLE OF \"ddl_saleExtrema\"%ROWTYPE;\n"
+                + "removed t_removed := t_removed();\n"
+                + "after each row is\n"
+                + "begin \n"
+                + "LOCK TABLE \"ddl_saleExtrema\" IN EXCLUSIVE MODE;\n"
+                + "UPDATE \"ddl_saleExtrema\" mv \n"
+                + "SET mv.\"c\" = mv.\"c\" - 1, mv.\"surrogate_count\" = mv.\"surrogate_count\" - 1 WHERE "
+                + "mv.\"region\" = :old.\"region\";\n"
+                + "DELETE FROM \"ddl_saleExtrema\" mv WHERE mv.\"surrogate_count\" = 0;\n"
+                + "\n"
+                + "removed.EXTEND;\n"
+                + "removed(removed.LAST).\"region\" := :old.\"region\";\n"
+                + "removed(removed.LAST).\"minAmount\" := :old.\"amount\";\n"
+                + "removed(removed.LAST).\"maxAmount\" := :old.\"amount\";\n"
+                + "end after each row;\n"
+                + "after statement is\n"
+                + "begin\n"
+                + "FOR i IN 1 .. removed.COUNT LOOP\n"
+                + "UPDATE \"ddl_saleExtrema\" mv SET mv.\"minAmount\" = CASE WHEN mv.\"minAmount\" = "
+                + "removed(i).\"minAmount\" THEN (SELECT MIN(t.\"amount\") FROM \"ddl_sale\" t WHERE t.\"region\" = "
+                + "mv.\"region\") ELSE mv.\"minAmount\" END, mv.\"maxAmount\" = CASE WHEN mv.\"maxAmount\" = "
+                + "removed(i).\"maxAmount\" THEN (SELECT MAX(t.\"amount\") FROM \"ddl_sale\" t WHERE t.\"region\" = "
+                + "mv.\"region\") ELSE mv.\"maxAmount\" END WHERE mv.\"region\" = removed(i).\"region\";\n"
+                + "END LOOP;\n"
+                + "end after statement;\n"
+                + "END;",
+                triggersOf("sale", "saleExtrema").get(2));
+    }
+
+}
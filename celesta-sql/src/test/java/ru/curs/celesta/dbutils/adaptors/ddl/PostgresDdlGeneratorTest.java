@@ -0,0 +1,162 @@
+package ru.curs.celesta.dbutils.adaptors.ddl;
+
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.dbutils.adaptors.PostgresAdaptor;
+import ru.curs.celesta.score.MaterializedView;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostgresDdlGeneratorTest extends AbstractDdlGeneratorTest {
+
+    private final PostgresDdlGenerator generator =
+            new PostgresDdlGenerator(new PostgresAdaptor(connectionPool, NO_DDL));
+
+    @Override
+    DdlGenerator generator() {
+        return generator;
+    }
+
+    @Test
+    public void indexIsBuiltConcurrentlyAfterDroppingAnInvalidOne() {
+        assertEquals(Arrays.asList(
+                "DROP INDEX CONCURRENTLY IF EXISTS \"ddl\".\"idxSaleAmount\"",
+                "DROP INDEX CONCURRENTLY IF EXISTS \"ddl\".\"idxSaleAmount__vpo\"",
+                "CREATE INDEX CONCURRENTLY \"idxSaleAmount\" ON \"ddl\".\"sale\" (\"amount\")"),
+                generator.createIndexOnline(conn, index("idxSaleAmount")));
+    }
+
+    @Test
+    public void onlineForeignKeyIsAddedNotValidAndValidatedSeparately() {
+        List<String> sql = generator.createFkOnline(conn, foreignKey("sale"));
+        assertEquals(Collections.singletonList(
+                "alter table \"ddl\".\"sale\" add constraint \"fk_ddl_sale_ddl_region_region\" "
+                        + "foreign key (\"region\") references \"ddl\".\"region\"(\"id\") NOT VALID"),
+                sql);
+
+        assertEquals(Collections.singletonList(
+                "ALTER TABLE \"ddl\".\"sale\" VALIDATE CONSTRAINT \"fk_ddl_sale_ddl_region_region\""),
+                generator.validateFk(foreignKey("sale")));
+    }
+
+    @Test
+    public void materializedViewIsMaintainedByStatementLevelTriggers() {
+        List<String> sql = triggersOf("sale", "saleTotals");
+        assertEquals(6, sql.size());
+        assertEquals("CREATE TRIGGER \"mvInsertFromddl_saleToF644D3AA\" AFTER INSERT ON \"ddl\".\"sale\" REFERENCING "
+                + "NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE "
+                + "\"ddl\".\"saleTotals_insertTriggerFunc\"()",
+                sql.get(1));
+        assertEquals("CREATE TRIGGER \"mvUpdateFromddl_saleTo16A591BA\" AFTER UPDATE ON \"ddl\".\"sale\" REFERENCING "
+                + "OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE "
+                + "\"ddl\".\"saleTotals_updateTriggerFunc\"()",
+                sql.get(3));
+        assertEquals("CREATE TRIGGER \"mvDeleteFromddl_saleTo3469979C\" AFTER DELETE ON \"ddl\".\"sale\" REFERENCING "
+                + "OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE "
+                + "\"ddl\".\"saleTotals_deleteTriggerFunc\"()",
+                sql.get(5));
+    }
+
+    @Test
+    public void insertedRowsAreAggregatedAndMergedByOneStatement() {
+        assertEquals("CREATE OR REPLACE FUNCTION \"ddl\".\"saleTotals_insertTriggerFunc\"() RETURNS trigger AS $BODY$ "
+                + "\n"
+                + " BEGIN \n"
+                + "/*CHECKSUMC61C0F6DCHECKSUM*/\n"
+                + "LOCK TABLE ONLY \"ddl\".\"saleTotals\" IN EXCLUSIVE MODE; \n"
+                + "WITH delta AS (SELECT \"region\", SUM(\"total\") AS \"total\", SUM(\"c\") AS \"c\", "
+                + "SUM(\"surrogate_count\") AS \"surrogate_count\" FROM (SELECT new_rows.\"region\" AS \"region\", "
+                + "new_rows.\"amount\" AS \"total\", 1 AS \"c\", 1 AS \"surrogate_count\" FROM new_rows) AS changes "
+                + "GROUP BY \"region\"), \n"
+                + "updated AS (UPDATE \"ddl\".\"saleTotals\" AS mv SET \"total\" = mv.\"total\" + "
+                + "COALESCE(delta.\"total\", 0), \"c\" = mv.\"c\" + COALESCE(delta.\"c\", 0), \"surrogate_count\" = "
+                + "mv.\"surrogate_count\" + delta.\"surrogate_count\" FROM delta WHERE mv.\"region\" = "
+                + "delta.\"region\" RETURNING mv.\"region\") \n"
+                + "INSERT INTO \"ddl\".\"saleTotals\" (\"region\", \"total\", \"c\", \"surrogate_count\") SELECT "
+                + "delta.\"region\", delta.\"total\", delta.\"c\", delta.\"surrogate_count\" FROM delta \n"
+                + "WHERE delta.\"surrogate_count\" > 0 AND NOT EXISTS (SELECT 1 FROM updated WHERE "
+                + "updated.\"region\" = delta.\"region\");\n"
+                + "RETURN NULL; END; $BODY$\n"
+                + "  LANGUAGE plpgsql VOLATILE COST 100;",
+                triggersOf("sale", "saleTotals").get(0));
+    }
+
+    @Test
+    public void deletedRowsAreMergedAndEmptyGroupsDeleted() {
+        assertEquals("CREATE OR REPLACE FUNCTION \"ddl\".\"saleTotals_deleteTriggerFunc\"() RETURNS trigger AS $BODY$ "
+                + "\n"
+                + " BEGIN \n"
+                + "LOCK TABLE ONLY \"ddl\".\"saleTotals\" IN EXCLUSIVE MODE; \n"
+                + "WITH delta AS (SELECT \"region\", SUM(\"total\") AS \"total\", SUM(\"c\") AS \"c\", "
+                + "SUM(\"surrogate_count\") AS \"surrogate_count\" FROM (SELECT old_rows.\"region\" AS \"region\", "
+                + "-old_rows.\"amount\" AS \"total\", -1 AS \"c\", -1 AS \"surrogate_count\" FROM old_rows) AS "
+                + "changes GROUP BY \"region\"), \n"
+                + "updated AS (UPDATE \"ddl\".\"saleTotals\" AS mv SET \"total\" = mv.\"total\" + "
+                + "COALESCE(delta.\"total\", 0), \"c\" = mv.\"c\" + COALESCE(delta.\"c\", 0), \"surrogate_count\" = "
+                + "mv.\"surrogate_count\" + delta.\"surrogate_count\" FROM delta WHERE mv.\"region\" = "
+                + "delta.\"region\" RETURNING mv.\"region\") \n"
+                + "INSERT INTO \"ddl\".\"saleTotals\" (\"region\", \"total\", \"c\", \"surrogate_count\") SELECT "
+                + "delta.\"region\", delta.\"total\", delta.\"c\", delta.\"surrogate_count\" FROM delta \n"
+                + "WHERE delta.\"surrogate_count\" > 0 AND NOT EXISTS (SELECT 1 FROM updated WHERE "
+                + "updated.\"region\" = delta.\"region\");\n"
+                + "DELETE FROM \"ddl\".\"saleTotals\" AS mv USING (SELECT DISTINCT old_rows.\"region\" AS "
+                + "\"region\" FROM old_rows) AS removed \n"
+                + "WHERE mv.\"region\" = removed.\"region\" AND mv.\"surrogate_count\" = 0;\n"
+                + "RETURN NULL; END; $BODY$\n"
+                + "  LANGUAGE plpgsql VOLATILE COST 100;",
+                triggersOf("sale", "saleTotals").get(4));
+    }
+
+    @Test
+    public void checksumChangesWithTriggerFormat() {
+        MaterializedView mv = materializedView("saleTotals");
+        String checksum = generator.getMaterializedViewChecksum(mv);
+        assertEquals("C61C0F6D", checksum);
+        assertEquals(mv.getChecksum(PostgresDdlGenerator.MV_TRIGGER_FORMAT), checksum);
+        assertNotEquals(mv.getChecksum(), checksum);
+        assertTrue(triggersOf("sale", "saleTotals").get(0)
+                .contains(String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE, checksum)));
+    }
+
+    @Test
+    public void deletedExtremaAreRecomputedOnlyForAffectedGroups() {
+        assertEquals("CREATE OR REPLACE FUNCTION \"ddl\".\"saleExtrema_deleteTriggerFunc\"() RETURNS trigger AS $BODY$ "
+                + "\n"
+                + " BEGIN \n"
+                + "LOCK TABLE ONLY \"ddl\".\"saleExtrema\" IN EXCLUSIVE MODE; \n"
+                + "WITH delta AS (SELECT \"region\", MIN(\"minAmount\") AS \"minAmount\", MAX(\"maxAmount\") AS "
+                + "\"maxAmount\", SUM(\"c\") AS \"c\", SUM(\"surrogate_count\") AS \"surrogate_count\" FROM (SELECT "
+                + "old_rows.\"region\" AS \"region\", NULLIF(old_rows.\"amount\", old_rows.\"amount\") AS "
+                + "\"minAmount\", NULLIF(old_rows.\"amount\", old_rows.\"amount\") AS \"maxAmount\", -1 AS \"c\", "
+                + "-1 AS \"surrogate_count\" FROM old_rows) AS changes GROUP BY \"region\"), \n"
+                + "updated AS (UPDATE \"ddl\".\"saleExtrema\" AS mv SET \"minAmount\" = LEAST(mv.\"minAmount\", "
+                + "delta.\"minAmount\"), \"maxAmount\" = GREATEST(mv.\"maxAmount\", delta.\"maxAmount\"), \"c\" = "
+                + "mv.\"c\" + COALESCE(delta.\"c\", 0), \"surrogate_count\" = mv.\"surrogate_count\" + "
+                + "delta.\"surrogate_count\" FROM delta WHERE mv.\"region\" = delta.\"region\" RETURNING "
+                + "mv.\"region\") \n"
+                + "INSERT INTO \"ddl\".\"saleExtrema\" (\"region\", \"minAmount\", \"maxAmount\", \"c\", "
+                + "\"surrogate_count\") SELECT delta.\"region\", delta.\"minAmount\", delta.\"maxAmount\", "
+                + "delta.\"c\", delta.\"surrogate_count\" FROM delta \n"
+                + "WHERE delta.\"surrogate_count\" > 0 AND NOT EXISTS (SELECT 1 FROM updated WHERE "
+                + "updated.\"region\" = delta.\"region\");\n"
+                + "DELETE FROM \"ddl\".\"saleExtrema\" AS mv USING (SELECT DISTINCT old_rows.\"region\" AS "
+                + "\"region\" FROM old_rows) AS removed \n"
+                + "WHERE mv.\"region\" = removed.\"region\" AND mv.\"surrogate_count\" = 0;\n"
+                + "UPDATE \"ddl\".\"saleExtrema\" AS mv SET \"minAmount\" = CASE WHEN mv.\"minAmount\" = "
+                + "removed.\"minAmount\" THEN (SELECT MIN(t.\"amount\") FROM \"ddl\".\"sale\" AS t WHERE "
+                + "t.\"region\" = mv.\"region\") ELSE mv.\"minAmount\" END, \"maxAmount\" = CASE WHEN "
+                + "mv.\"maxAmount\" = removed.\"maxAmount\" THEN (SELECT MAX(t.\"amount\") FROM \"ddl\".\"sale\" AS "
+                + "t WHERE t.\"region\" = mv.\"region\") ELSE mv.\"maxAmount\" END \n"
+                + "FROM (SELECT old_rows.\"region\" AS \"region\", MIN(old_rows.\"amount\") AS \"minAmount\", "
+                + "MAX(old_rows.\"amount\") AS \"maxAmount\" FROM old_rows GROUP BY old_rows.\"region\") AS removed \n"
+                + "WHERE mv.\"region\" = removed.\"region\" AND (mv.\"minAmount\" = removed.\"minAmount\" OR "
+                + "mv.\"maxAmount\" = removed.\"maxAmount\");\n"
+                + "RETURN NULL; END; $BODY$\n"
+                + "  LANGUAGE plpgsql VOLATILE COST 100;",
+                triggersOf("sale", "saleExtrema").get(4));
+    }
+
+}
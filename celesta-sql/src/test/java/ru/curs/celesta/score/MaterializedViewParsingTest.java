@@ -5,6 +5,8 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 
 /**
  * Created by ioann on 15.06.2017.
@@ -111,4 +113,53 @@ public class MaterializedViewParsingTest extends AbstractParsingTest {
     assertThrows(ParseException.class, () -> parse(f));
   }
 
+  @Test
+  public void testParsingNotFailsWithMinMax() throws Exception {
+    File f = ResourceUtil.getResourceAsFile(
+            ParserTest.class,
+            "materializedView/testParsingNotFailsWithMinMax.sql"
+    );
+    Grain g = parse(f);
+    MaterializedView mv = g.getElement("testView1", MaterializedView.class);
+
+    Column<?> c = mv.getColumn("maxv");
+    assertEquals(IntegerColumn.CELESTA_TYPE, c.getCelestaType());
+    assertTrue(mv.getAggregateColumns().get(c.getName()) instanceof Max);
+
+    c = mv.getColumn("minv");
+    assertEquals(DateTimeColumn.CELESTA_TYPE, c.getCelestaType());
+    assertTrue(mv.getAggregateColumns().get(c.getName()) instanceof Min);
+  }
+
+  @Test
+  public void testParsingFailsWithBooleanInMinMax() {
+    File f = ResourceUtil.getResourceAsFile(
+            ParserTest.class,
+            "materializedView/testParsingFailsWithBooleanInMinMax.sql"
+    );
+    assertThrows(ParseException.class, () -> parse(f));
+  }
+
+  @Test
+  public void testParsingNotFailsWithDeferred() throws Exception {
+    File f = ResourceUtil.getResourceAsFile(
+            ParserTest.class,
+            "materializedView/testParsingNotFailsWithDeferred.sql"
+    );
+    Grain g = parse(f);
+    MaterializedView mv1 = g.getElement("testView1", MaterializedView.class);
+    MaterializedView mv2 = g.getElement("testView2", MaterializedView.class);
+
+    assertTrue(mv1.isDeferred());
+    assertEquals("testView1_queue", mv1.getQueueName());
+    assertFalse(mv2.isDeferred());
+
+    StringWriter sw = new StringWriter();
+    try (PrintWriter pw = new PrintWriter(sw)) {
+      new CelestaSerializer(pw).save(g);
+    }
+    assertTrue(sw.toString().contains("create materialized view testView1 with deferred as"));
+    assertTrue(sw.toString().contains("create materialized view testView2 as"));
+  }
+
 }
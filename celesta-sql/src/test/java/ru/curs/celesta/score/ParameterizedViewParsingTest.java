@@ -3,6 +3,8 @@ package ru.curs.celesta.score;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -50,6 +52,24 @@ public class ParameterizedViewParsingTest extends AbstractParsingTest {
     assertEquals(ViewColumnType.INT, p.getType());
   }
 
+  @Test
+  public void testParsingNotFailsWithCache() throws Exception {
+    File f = ResourceUtil.getResourceAsFile(
+            ParserTest.class,
+            "parameterizedView/testParsingNotFailsWithCache.sql"
+    );
+    Grain g = parse(f);
+    assertTrue(g.getElement("pView1", ParameterizedView.class).isCached());
+    assertFalse(g.getElement("pView2", ParameterizedView.class).isCached());
+
+    StringWriter sw = new StringWriter();
+    try (PrintWriter pw = new PrintWriter(sw)) {
+      new CelestaSerializer(pw).save(g);
+    }
+    assertTrue(sw.toString().contains("create function pView1 (p INT) with cache as"));
+    assertTrue(sw.toString().contains("create function pView2 (p INT) as"));
+  }
+
   @Test
   public void testParsingFailsWhenParamIsNotUsed() {
     File f = ResourceUtil.getResourceAsFile(
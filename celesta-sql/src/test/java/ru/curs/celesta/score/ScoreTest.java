@@ -2,21 +2,34 @@ package ru.curs.celesta.score;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.score.discovery.ScoreByScorePathDiscovery;
+import ru.curs.celesta.score.discovery.ScoreByScoreResourceDiscovery;
+import ru.curs.celesta.score.discovery.ScoreDiscovery;
 import ru.curs.celesta.score.io.FileResource;
 import ru.curs.celesta.score.io.Resource;
+import ru.curs.celesta.score.io.UrlResource;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringJoiner;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -570,4 +583,90 @@ public class ScoreTest {
             nameBuilder.append('A');
         }
     }
+
+    @Test
+    void parallelParsingMatchesSequentialParsing() throws ParseException {
+        String path = COMPOSITE_SCORE_PATH_2 + File.pathSeparator + COMPOSITE_SCORE_PATH_1;
+        AbstractScore sequential = new AbstractScore.ScoreBuilder<>(CelestaSqlTestScore.class)
+                .scoreDiscovery(new ScoreByScorePathDiscovery(path))
+                .parsingParallelism(1)
+                .build();
+        for (int i = 0; i < 3; i++) {
+            AbstractScore parallel = new AbstractScore.ScoreBuilder<>(CelestaSqlTestScore.class)
+                    .scoreDiscovery(new ScoreByScorePathDiscovery(path))
+                    .parsingParallelism(4)
+                    .build();
+            assertEquals(sequential.getGrains().keySet(), parallel.getGrains().keySet());
+            for (Grain g : sequential.getGrains().values()) {
+                Grain p = parallel.getGrain(g.getName());
+                assertTrue(p.isParsingComplete());
+                assertEquals(g.getChecksum(), p.getChecksum(), g.getName());
+                assertEquals(g.getLength(), p.getLength(), g.getName());
+                assertEquals(g.getDependencyOrder(), p.getDependencyOrder(), g.getName());
+            }
+            assertEquals(sequential.describeGrains(), parallel.describeGrains());
+        }
+        assertThrows(CelestaException.class,
+                () -> new AbstractScore.ScoreBuilder<>(CelestaSqlTestScore.class).parsingParallelism(0));
+    }
+
+    @Test
+    void scoreIsLoadedFromMatchingSnapshot() throws Exception {
+        Path scoreDir = Files.createTempDirectory("scoreSnapshot");
+        Path source = Paths.get(TEST_SCORE_PATH);
+        List<String> grainPaths = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path p : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                String grainPath = source.relativize(p).toString().replace(File.separatorChar, '/');
+                Files.createDirectories(scoreDir.resolve(grainPath).getParent());
+                Files.copy(p, scoreDir.resolve(grainPath));
+                grainPaths.add(grainPath);
+            }
+        }
+        Path scoreFiles = Files.write(scoreDir.resolve("score.files"), grainPaths);
+        ScoreDiscovery discovery = new ScoreByScoreResourceDiscovery(scoreFiles.toUri().toURL());
+        assertNull(discovery.getScoreSnapshot());
+
+        AbstractScore parsed = new AbstractScore.ScoreBuilder<>(CelestaSqlTestScore.class)
+                .scoreDiscovery(discovery)
+                .build();
+        Resource scoreFilesResource = new UrlResource(scoreFiles.toUri().toURL());
+        Map<Resource, String> relativePaths = new HashMap<>();
+        for (String grainPath : grainPaths) {
+            relativePaths.put(scoreFilesResource.createRelative(grainPath), grainPath);
+        }
+        try (OutputStream os = Files.newOutputStream(scoreDir.resolve(ScoreSnapshot.FILE_NAME))) {
+            ScoreSnapshot.write(parsed, relativePaths::get, os);
+        }
+
+        Resource snapshot = discovery.getScoreSnapshot();
+        assertNotNull(snapshot);
+        CelestaSqlTestScore loaded = ScoreSnapshot.read(CelestaSqlTestScore.class, snapshot,
+                discovery.discoverScore());
+        assertNotNull(loaded);
+        assertEquals(parsed.describeGrains(), loaded.describeGrains());
+        for (Grain g : parsed.getGrains().values()) {
+            Grain l = loaded.getGrain(g.getName());
+            assertEquals(g.getNamespace().getValue(), l.getNamespace().getValue(), g.getName());
+            assertEquals(g.getDependencyOrder(), l.getDependencyOrder(), g.getName());
+            assertEquals(serialize(g), serialize(l), g.getName());
+        }
+        assertEquals(parsed.describeGrains(), new AbstractScore.ScoreBuilder<>(CelestaSqlTestScore.class)
+                .scoreDiscovery(discovery).build().describeGrains());
+
+        // a changed grain script invalidates the snapshot
+        Files.write(scoreDir.resolve(grainPaths.get(0)), Collections.singletonList("-- changed"),
+                StandardOpenOption.APPEND);
+        assertNull(ScoreSnapshot.read(CelestaSqlTestScore.class, snapshot, discovery.discoverScore()));
+        assertNotEquals(parsed.describeGrains(), new AbstractScore.ScoreBuilder<>(CelestaSqlTestScore.class)
+                .scoreDiscovery(discovery).build().describeGrains());
+    }
+
+    private static String serialize(Grain g) throws IOException {
+        StringWriter sw = new StringWriter();
+        try (PrintWriter bw = new PrintWriter(sw)) {
+            new CelestaSerializer(bw).save(g);
+        }
+        return sw.toString();
+    }
 }
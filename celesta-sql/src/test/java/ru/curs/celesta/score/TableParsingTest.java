@@ -64,6 +64,14 @@ public class TableParsingTest extends AbstractParsingTest {
     t = g.getTable("t5", Table.class);
     assertTrue(t.isAutoUpdate());
     assertTrue(t.isVersioned());
+    assertFalse(t.isCached());
+
+    rot = g.getTable("t6", ReadOnlyTable.class);
+    assertTrue(rot.isCached());
+
+    t = g.getTable("t7", Table.class);
+    assertTrue(t.isCached());
+    assertFalse(t.isVersioned());
   }
 
   @Test
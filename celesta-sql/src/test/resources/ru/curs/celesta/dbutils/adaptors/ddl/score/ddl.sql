@@ -0,0 +1,24 @@
+create schema ddl version '1.0';
+
+create table region (
+  id int not null primary key,
+  title varchar(50)
+);
+
+create table sale (
+  id int not null primary key,
+  region int not null foreign key references region(id),
+  amount int
+);
+
+create index idxSaleAmount on sale (amount);
+
+create materialized view saleTotals as
+  select region, sum(amount) as total, count(*) as c
+  from sale
+  group by region;
+
+create materialized view saleExtrema as
+  select region, min(amount) as minAmount, max(amount) as maxAmount, count(*) as c
+  from sale
+  group by region;
@@ -0,0 +1,15 @@
+CREATE GRAIN test VERSION '1.0';
+
+CREATE SEQUENCE testTable_id;
+
+CREATE table testTable (
+  id INT NOT NULL DEFAULT NEXTVAL(testTable_id) PRIMARY KEY,
+  f1 int,
+  f2 VARCHAR (2) NOT NULL
+);
+
+CREATE MATERIALIZED VIEW testView1 WITH DEFERRED AS
+  select f2, sum(f1) as s, count(*) as c from testTable group by f2;
+
+CREATE MATERIALIZED VIEW testView2 AS
+  select f2, sum(f1) as s from testTable group by f2;
@@ -0,0 +1,13 @@
+CREATE GRAIN test VERSION '1.0';
+
+CREATE SEQUENCE testTable_id;
+
+CREATE table testTable (
+  id INT NOT NULL DEFAULT NEXTVAL(testTable_id) PRIMARY KEY,
+  f1 int,
+  f2 VARCHAR (2) NOT NULL,
+  created datetime
+);
+
+CREATE MATERIALIZED VIEW testView1 AS
+  select f2, max(f1) as maxv, min(created) as minv from testTable group by f2;
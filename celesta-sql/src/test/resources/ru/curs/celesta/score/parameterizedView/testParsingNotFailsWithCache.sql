@@ -0,0 +1,20 @@
+CREATE GRAIN test VERSION '1.0';
+
+CREATE SEQUENCE t1_id;
+
+CREATE table t1 (
+  id INT NOT NULL DEFAULT NEXTVAL(t1_id) PRIMARY KEY,
+  f1 int,
+  f2 int,
+  f3 VARCHAR (2)
+);
+
+CREATE FUNCTION pView1(p int) WITH CACHE AS
+  select sum (f1) as sumv, f3 as f3
+  from t1 as t1
+  where f2 = $p
+  group by f3;
+
+CREATE FUNCTION pView2(p int) AS
+  select f1, f3 from t1
+  where f2 = $p;
@@ -24,3 +24,13 @@ CREATE table t5 (
   id INT NOT NULL,
   CONSTRAINT pk4 PRIMARY KEY (id)
 ) WITH VERSION CHECK;
+
+CREATE table t6 (
+  id INT NOT NULL,
+  CONSTRAINT pk6 PRIMARY KEY (id)
+) WITH READ ONLY CACHE;
+
+CREATE table t7 (
+  id INT NOT NULL,
+  CONSTRAINT pk7 PRIMARY KEY (id)
+) WITH NO VERSION CHECK CACHE;
@@ -5,15 +5,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.curs.celesta.dbutils.DbUpdaterBuilder;
 import ru.curs.celesta.dbutils.DbUpdaterImpl;
+import ru.curs.celesta.dbutils.DeferredMaterializedViewApplier;
 import ru.curs.celesta.dbutils.ILoggingManager;
 import ru.curs.celesta.dbutils.IPermissionManager;
-import ru.curs.celesta.dbutils.IProfiler;
 import ru.curs.celesta.dbutils.LoggingManager;
 import ru.curs.celesta.dbutils.PermissionManager;
+import ru.curs.celesta.dbutils.PostgresInvalidationBus;
 import ru.curs.celesta.dbutils.ProfilingManager;
+import ru.curs.celesta.dbutils.ParameterizedViewCache;
+import ru.curs.celesta.dbutils.ReadReplica;
+import ru.curs.celesta.dbutils.RowCache;
+import ru.curs.celesta.dbutils.TableCache;
+import ru.curs.celesta.dbutils.TableInvalidationBus;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.dbutils.adaptors.configuration.DbAdaptorFactory;
 import ru.curs.celesta.dbutils.adaptors.ddl.JdbcDdlConsumer;
+import ru.curs.celesta.dbutils.stmt.StatementMetrics;
+import ru.curs.celesta.event.InvalidationBus;
+import ru.curs.celesta.event.LocalInvalidationBus;
 import ru.curs.celesta.event.TriggerDispatcher;
 import ru.curs.celesta.score.ParseException;
 import ru.curs.celesta.score.Score;
@@ -55,6 +64,12 @@ public final class Celesta implements ICelesta {
     private final LoggingManager loggingManager;
     private final PermissionManager permissionManager;
     private final ProfilingManager profiler;
+    private final TableCache tableCache;
+    private final RowCache rowCache;
+    private final ParameterizedViewCache parameterizedViewCache;
+    private final DeferredMaterializedViewApplier mviewApplier;
+    private final InvalidationBus invalidationBus;
+    private final ReadReplica readReplica;
 
     Celesta(BaseAppSettings appSettings, ConnectionPool connectionPool) {
         this.appSettings = appSettings;
@@ -87,13 +102,26 @@ public final class Celesta implements ICelesta {
                 .setDbType(appSettings.getDBType())
                 .setDdlConsumer(new JdbcDdlConsumer())
                 .setConnectionPool(connectionPool)
-                .setH2ReferentialIntegrity(appSettings.isH2ReferentialIntegrity());
+                .setH2ReferentialIntegrity(appSettings.isH2ReferentialIntegrity())
+                .setOnlineDdl(appSettings.isDBUpdateOnline());
 
         dbAdaptor = dac.createDbAdaptor();
 
+        this.invalidationBus = createInvalidationBus();
         this.loggingManager = new LoggingManager(this);
         this.permissionManager = new PermissionManager(this);
         this.profiler = new ProfilingManager(this);
+        this.tableCache = new TableCache(score, appSettings.getCacheTables(), appSettings.getCacheRefresh());
+        this.rowCache = new RowCache(score, appSettings.getRowCacheTables(), appSettings.getRowCacheSize(),
+                appSettings.getRowCacheTtl());
+        this.parameterizedViewCache = new ParameterizedViewCache(score, appSettings.getViewCacheViews(),
+                appSettings.getViewCacheSize(), appSettings.getViewCacheRows(), appSettings.getViewCacheTtl());
+        tableCache.subscribe(invalidationBus);
+        rowCache.subscribe(invalidationBus);
+        parameterizedViewCache.subscribe(invalidationBus);
+        this.readReplica = new ReadReplica(score, appSettings.getReplicaTables(), connectionPool, dbAdaptor,
+                appSettings.getReplicaRefresh());
+        readReplica.subscribe(invalidationBus);
 
         if (!appSettings.getSkipDBUpdate()) {
             LOGGER.info("Celesta initialization: database {} upgrade...",
@@ -104,6 +132,8 @@ public final class Celesta implements ICelesta {
                     .connectionPool(connectionPool)
                     .score(score)
                     .forceDdInitialize(appSettings.getForceDBInitialize())
+                    .parallelism(appSettings.getDBUpdateParallelism())
+                    .mviewBuild(appSettings.getMViewBuildChunk(), appSettings.getMViewBuildParallelism())
                     .setCelesta(this)
                     .build();
 
@@ -113,6 +143,42 @@ public final class Celesta implements ICelesta {
             LOGGER.info("Celesta initialization: database upgrade...skipped.");
         }
 
+        // 3. Starting background maintenance of deferred materialized views.
+        this.mviewApplier = new DeferredMaterializedViewApplier(connectionPool, dbAdaptor, score,
+                appSettings.getMViewDeferredInterval(), appSettings.getMViewDeferredBatch());
+        if (appSettings.getMViewDeferredInterval() > 0) {
+            mviewApplier.start();
+        }
+
+        // 4. Receiving the changes of cached data made on other nodes.
+        invalidationBus.start();
+
+        // 5. Loading the read replica.
+        if (readReplica.isEnabled()) {
+            LOGGER.info("Celesta initialization: read replica loading...");
+            readReplica.start();
+            LOGGER.info("done.");
+        }
+
+    }
+
+    private InvalidationBus createInvalidationBus() {
+        String transport = appSettings.getInvalidationBus();
+        switch (transport) {
+            case "local":
+                return new LocalInvalidationBus();
+            case "table":
+                return new TableInvalidationBus(this, appSettings.getInvalidationInterval());
+            case "postgres":
+                return new PostgresInvalidationBus(connectionPool, appSettings.getInvalidationInterval());
+            default:
+                try {
+                    return Class.forName(transport).asSubclass(InvalidationBus.class)
+                            .getConstructor(ICelesta.class).newInstance(this);
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new CelestaException("Can't create invalidation bus %s: %s", transport, e.toString());
+                }
+        }
     }
 
     @Override
@@ -136,7 +202,7 @@ public final class Celesta implements ICelesta {
     }
 
     @Override
-    public IProfiler getProfiler() {
+    public ProfilingManager getProfiler() {
         return profiler;
     }
 
@@ -145,6 +211,31 @@ public final class Celesta implements ICelesta {
         return dbAdaptor;
     }
 
+    @Override
+    public TableCache getTableCache() {
+        return tableCache;
+    }
+
+    @Override
+    public RowCache getRowCache() {
+        return rowCache;
+    }
+
+    @Override
+    public ParameterizedViewCache getParameterizedViewCache() {
+        return parameterizedViewCache;
+    }
+
+    @Override
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    @Override
+    public ReadReplica getReadReplica() {
+        return readReplica;
+    }
+
     @Override
     public TriggerDispatcher getTriggerDispatcher() {
         return this.triggerDispatcher;
@@ -160,6 +251,10 @@ public final class Celesta implements ICelesta {
      */
     @Override
     public void close() {
+        mviewApplier.close();
+        invalidationBus.close();
+        readReplica.close();
+        profiler.close();
         connectionPool.close();
         server.ifPresent(Server::shutdown);
     }
@@ -312,4 +407,30 @@ public final class Celesta implements ICelesta {
         profiler.setProfilemode(profilemode);
     }
 
+    /**
+     * Applies all the changes queued for deferred materialized views.
+     */
+    public void applyDeferredMaterializedViews() {
+        mviewApplier.apply();
+    }
+
+    /**
+     * Returns metrics that data accessors report their statements to.
+     *
+     * @return
+     */
+    public StatementMetrics getStatementMetrics() {
+        return dbAdaptor.getStatementMetrics();
+    }
+
+    /**
+     * Registers metrics that data accessors report their statements to, e.g.
+     * {@link ru.curs.celesta.dbutils.stmt.InMemoryStatementMetrics}.
+     *
+     * @param statementMetrics  statement metrics, {@code null} to stop measuring statements
+     */
+    public void setStatementMetrics(StatementMetrics statementMetrics) {
+        dbAdaptor.setStatementMetrics(statementMetrics);
+    }
+
 }
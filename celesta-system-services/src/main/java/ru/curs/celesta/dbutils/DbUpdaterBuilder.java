@@ -14,6 +14,9 @@ public final class DbUpdaterBuilder {
     private Score score;
     private boolean forceDdInitialize;
     private ICelesta celesta;
+    private int parallelism = 1;
+    private int mviewBuildChunk;
+    private int mviewBuildParallelism = 1;
 
     /**
      * Sets a DB adaptor.
@@ -76,13 +79,41 @@ public final class DbUpdaterBuilder {
         return this;
     }
 
+    /**
+     * Sets maximum number of grains upgraded at the same time.
+     *
+     * @param parallelism  maximum number of grains upgraded at the same time
+     * @return {@code this}
+     */
+    @SuppressWarnings("HiddenField")
+    public DbUpdaterBuilder parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets building of materialized views in chunks.
+     *
+     * @param chunkRows  number of rows of the table per chunk, 0 to build views within the upgrade
+     * @param buildParallelism  maximum number of chunks built at the same time
+     * @return {@code this}
+     */
+    public DbUpdaterBuilder mviewBuild(int chunkRows, int buildParallelism) {
+        this.mviewBuildChunk = chunkRows;
+        this.mviewBuildParallelism = buildParallelism;
+        return this;
+    }
+
     /**
      * Builds DB updater instance.
      *
      */
     public DbUpdaterImpl build() {
-        return new DbUpdaterImpl(connectionPool, score, forceDdInitialize,
+        DbUpdaterImpl dbUpdater = new DbUpdaterImpl(connectionPool, score, forceDdInitialize,
                 dbAdaptor, celesta);
+        dbUpdater.setParallelism(parallelism);
+        dbUpdater.setMaterializedViewBuild(mviewBuildChunk, mviewBuildParallelism);
+        return dbUpdater;
     }
 
 }
@@ -0,0 +1,167 @@
+package ru.curs.celesta.dbutils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.ConnectionPool;
+import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.score.AbstractScore;
+import ru.curs.celesta.score.Grain;
+import ru.curs.celesta.score.MaterializedView;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background applier of the changes queued for deferred materialized views.
+ * <p>
+ * Triggers of a table only append the keys of the affected groups to the queue of a
+ * deferred materialized view. The applier periodically recomputes the queued groups
+ * from the table, committing each batch of groups in a separate transaction, so that
+ * the view is locked only for the duration of one batch. While the applications fail,
+ * for example when the database is unavailable, the pauses between them double up to
+ * {@value #MAX_BACKOFF} intervals and only the first failure is logged as an error.
+ */
+public final class DeferredMaterializedViewApplier implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeferredMaterializedViewApplier.class);
+
+    private static final int MAX_BACKOFF = 64;
+
+    private final ConnectionPool connectionPool;
+    private final DBAdaptor dbAdaptor;
+    private final List<MaterializedView> views = new ArrayList<>();
+    private final long intervalMs;
+    private final int batchSize;
+    private ScheduledExecutorService executor;
+    // consecutive failed applications and the intervals to skip before the next attempt,
+    // accessed by the applier thread only
+    private int failures;
+    private int skips;
+
+    /**
+     * Creates the applier.
+     *
+     * @param connectionPool  connection pool
+     * @param dbAdaptor  DB adaptor
+     * @param score  score
+     * @param intervalMs  interval between applications of the queued changes in milliseconds
+     * @param batchSize  maximum number of groups recomputed in one transaction
+     */
+    public DeferredMaterializedViewApplier(ConnectionPool connectionPool, DBAdaptor dbAdaptor,
+                                           AbstractScore score, long intervalMs, int batchSize) {
+        this.connectionPool = connectionPool;
+        this.dbAdaptor = dbAdaptor;
+        this.intervalMs = intervalMs;
+        this.batchSize = batchSize;
+        for (Grain g : score.getGrains().values()) {
+            for (MaterializedView mv : g.getMaterializedViews().values()) {
+                if (mv.isDeferred()) {
+                    views.add(mv);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the score contains deferred materialized views.
+     *
+     * @return
+     */
+    public boolean hasViews() {
+        return !views.isEmpty();
+    }
+
+    /**
+     * Starts applying the queued changes in background.
+     */
+    public synchronized void start() {
+        if (executor == null && hasViews()) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "celesta-mview-applier");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.scheduleWithFixedDelay(this::applyQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Applies all the changes queued for the deferred materialized views.
+     */
+    public void apply() {
+        for (MaterializedView mv : views) {
+            apply(mv);
+        }
+    }
+
+    private void apply(MaterializedView mv) {
+        try (Connection conn = connectionPool.get()) {
+            int groups;
+            do {
+                try {
+                    groups = dbAdaptor.applyMaterializedViewQueue(conn, mv, batchSize);
+                    conn.commit();
+                } catch (CelestaException | SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            } while (groups >= batchSize);
+        } catch (SQLException e) {
+            throw new CelestaException("Can't apply queue of materialized view %s.%s: %s",
+                    mv.getGrain().getName(), mv.getName(), e.getMessage());
+        }
+    }
+
+    private void applyQuietly() {
+        if (skips > 0) {
+            skips--;
+            return;
+        }
+        boolean failed = false;
+        for (MaterializedView mv : views) {
+            try {
+                apply(mv);
+            } catch (RuntimeException e) {
+                failed = true;
+                if (failures == 0) {
+                    LOGGER.error("Error while applying queue of materialized view {}.{}",
+                            mv.getGrain().getName(), mv.getName(), e);
+                } else {
+                    LOGGER.debug("Error while applying queue of materialized view {}.{}",
+                            mv.getGrain().getName(), mv.getName(), e);
+                }
+            }
+        }
+        if (failed) {
+            failures++;
+            skips = (int) Math.min(MAX_BACKOFF, 1L << Math.min(failures, Integer.SIZE - 1)) - 1;
+        } else if (failures > 0) {
+            LOGGER.info("Queues of materialized views are applied again after {} failed attempts", failures);
+            failures = 0;
+        }
+    }
+
+    /**
+     * Stops applying the queued changes in background. Changes left in the queues
+     * are applied by the next start or on demand.
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(intervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package ru.curs.celesta.dbutils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets.
+ * <p>
+ * Every power of two is divided into {@value #SUB_BUCKETS} linear sub-buckets, as in
+ * HDR histograms, so any recorded value is reproduced by percentiles with a relative
+ * error below 1/{@value #SUB_BUCKETS}. Recording is a single atomic increment.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Number of sub-buckets in a power of two.
+     */
+    public static final int SUB_BUCKETS = 16;
+
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final double P50 = 50;
+    private static final double P95 = 95;
+    private static final double P99 = 99;
+    private static final double HUNDRED = 100;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value in nanoseconds.
+     *
+     * @param nanos  value, negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Number of recorded values.
+     *
+     * @return
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Maximal recorded value.
+     *
+     * @return
+     */
+    public Duration getMax() {
+        return Duration.ofNanos(max.get());
+    }
+
+    /**
+     * Mean of the recorded values.
+     *
+     * @return
+     */
+    public Duration getMean() {
+        long n = count.sum();
+        return Duration.ofNanos(n == 0 ? 0 : total.sum() / n);
+    }
+
+    /**
+     * Value below which the given percentage of recorded values falls.
+     *
+     * @param percentile  percentile, from 0 to 100
+     * @return  zero if nothing is recorded
+     */
+    public Duration getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long n = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return Duration.ZERO;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, HUNDRED) / HUNDRED * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Duration.ofNanos(Math.min(highestEquivalentValue(i), max.get()));
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Median.
+     *
+     * @return
+     */
+    public Duration getP50() {
+        return getValueAtPercentile(P50);
+    }
+
+    /**
+     * 95th percentile.
+     *
+     * @return
+     */
+    public Duration getP95() {
+        return getValueAtPercentile(P95);
+    }
+
+    /**
+     * 99th percentile.
+     *
+     * @return
+     */
+    public Duration getP99() {
+        return getValueAtPercentile(P99);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long mantissa = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, p50=%s, p95=%s, p99=%s, max=%s",
+                getCount(), getP50(), getP95(), getP99(), getMax());
+    }
+
+}
@@ -3,10 +3,13 @@ package ru.curs.celesta.dbutils;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.SystemCallContext;
+import ru.curs.celesta.event.InvalidationBus;
 import ru.curs.celesta.score.BasicTable;
 import ru.curs.celesta.syscursors.LogCursor;
 import ru.curs.celesta.syscursors.LogsetupCursor;
 
+import java.util.Arrays;
+
 /**
  * Logging manager. Writes to log changed values (if needed).
  */
@@ -62,6 +65,17 @@ public final class LoggingManager implements ILoggingManager {
 
     public LoggingManager(ICelesta celesta) {
         this.celesta = celesta;
+        InvalidationBus bus = celesta.getInvalidationBus();
+        if (bus != null) {
+            bus.subscribe("celesta.logsetup", this::clearCache);
+        }
+    }
+
+    /**
+     * Discards the cached logging setup.
+     */
+    public void clearCache() {
+        Arrays.fill(cache, null);
     }
 
     boolean isLoggingNeeded(CallContext sysContext, BasicTable t, Action a) {
@@ -3,11 +3,13 @@ package ru.curs.celesta.dbutils;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.SystemCallContext;
+import ru.curs.celesta.event.InvalidationBus;
 import ru.curs.celesta.score.GrainElement;
 import ru.curs.celesta.syscursors.PermissionsCursor;
 import ru.curs.celesta.syscursors.UserrolesCursor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -98,6 +100,20 @@ public final class PermissionManager implements IPermissionManager {
 
     public PermissionManager(ICelesta celesta) {
         this.celesta = celesta;
+        InvalidationBus bus = celesta.getInvalidationBus();
+        if (bus != null) {
+            bus.subscribe("celesta.permissions", this::clearCache);
+            bus.subscribe("celesta.roles", this::clearCache);
+            bus.subscribe("celesta.userroles", this::clearCache);
+        }
+    }
+
+    /**
+     * Discards the cached permissions and roles.
+     */
+    public void clearCache() {
+        Arrays.fill(cache, null);
+        Arrays.fill(rolesCache, null);
     }
 
     /**
@@ -0,0 +1,172 @@
+package ru.curs.celesta.dbutils;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.ConnectionPool;
+import ru.curs.celesta.event.AbstractInvalidationBus;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Invalidation bus delivering the topics through PostgreSQL {@code LISTEN}/{@code NOTIFY}.
+ * <p>
+ * Publishing a topic sends a notification to the {@code celesta_invalidation} channel, which
+ * PostgreSQL delivers to the other nodes as soon as the publishing transaction commits. Every
+ * node listens to the channel on a dedicated connection of the pool. If the connection breaks,
+ * notifications may be lost, so on reconnection all the subscribed topics are delivered.
+ */
+public final class PostgresInvalidationBus extends AbstractInvalidationBus {
+
+    /**
+     * Notification channel.
+     */
+    public static final String CHANNEL = "celesta_invalidation";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostgresInvalidationBus.class);
+
+    private final ConnectionPool connectionPool;
+    private final int intervalMs;
+    // distinguishes the own notifications of the node, which are delivered on publishing
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile boolean closed;
+    private Thread listener;
+
+    /**
+     * Creates the bus.
+     *
+     * @param connectionPool  connection pool
+     * @param intervalMs  maximum time in milliseconds a wait for notifications lasts,
+     *                    and the pause before reconnection after a failure
+     */
+    public PostgresInvalidationBus(ConnectionPool connectionPool, int intervalMs) {
+        this.connectionPool = connectionPool;
+        this.intervalMs = intervalMs;
+    }
+
+    @Override
+    protected void send(Set<String> topics) {
+        try (Connection conn = connectionPool.get();
+             PreparedStatement stmt = conn.prepareStatement("SELECT pg_notify(?, ?)")) {
+            for (String topic : topics) {
+                stmt.setString(1, CHANNEL);
+                stmt.setString(2, nodeId + " " + topic);
+                stmt.executeQuery().close();
+            }
+            conn.commit();
+        } catch (SQLException | CelestaException e) {
+            LOGGER.error("Can't publish changes of {}", topics, e);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (listener == null) {
+            listener = new Thread(this::listen, "celesta-invalidation-listener");
+            listener.setDaemon(true);
+            listener.start();
+        }
+    }
+
+    private void listen() {
+        Connection conn = null;
+        boolean reconnected = false;
+        while (!closed) {
+            try {
+                if (conn == null) {
+                    conn = connectionPool.get();
+                    execute(conn, "LISTEN " + CHANNEL);
+                    if (reconnected) {
+                        deliver(new ArrayList<>(getTopics()));
+                    }
+                }
+                PGNotification[] notifications = conn.unwrap(PGConnection.class).getNotifications(intervalMs);
+                if (notifications != null) {
+                    deliver(foreignTopics(notifications));
+                }
+            } catch (SQLException | CelestaException e) {
+                if (closed) {
+                    break;
+                }
+                LOGGER.error("Error while listening to changes of cached data", e);
+                release(conn);
+                conn = null;
+                reconnected = true;
+                pause();
+            }
+        }
+        release(conn);
+    }
+
+    private List<String> foreignTopics(PGNotification[] notifications) {
+        List<String> topics = new ArrayList<>();
+        for (PGNotification n : notifications) {
+            String payload = n.getParameter();
+            int space = payload.indexOf(' ');
+            if (space > 0 && !nodeId.equals(payload.substring(0, space))) {
+                topics.add(payload.substring(space + 1));
+            }
+        }
+        return topics;
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+        conn.commit();
+    }
+
+    private static void release(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        // the connection returns to the pool and must not gather notifications there
+        try {
+            execute(conn, "UNLISTEN *");
+        } catch (SQLException e) {
+            LOGGER.debug("Can't stop listening to changes of cached data", e);
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            LOGGER.debug("Can't release listening connection", e);
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(intervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            t = listener;
+            listener = null;
+        }
+        if (t != null) {
+            try {
+                t.join(2L * intervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -1,24 +1,75 @@
 package ru.curs.celesta.dbutils;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.Celesta;
+import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.SystemCallContext;
 import ru.curs.celesta.syscursors.CalllogCursor;
 
-import java.time.Duration;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Call profiling manager.
+ * <p>
+ * In profiling mode the duration of every call is recorded into an in-memory
+ * per-procedure {@link LatencyHistogram}. Sampled calls are queued and written to
+ * <em>calllog</em> table in batches by a background thread, so that profiling
+ * doesn't add a connection borrow and a commit to business calls.
  */
-public final class ProfilingManager implements IProfiler {
+public final class ProfilingManager implements IProfiler, AutoCloseable {
+
+    /**
+     * Maximal number of sampled calls waiting to be written to <em>calllog</em>.
+     * Calls sampled when the queue is full are dropped.
+     */
+    public static final int QUEUE_CAPACITY = 10000;
+
+    /**
+     * Default interval between writes to <em>calllog</em> in milliseconds.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProfilingManager.class);
 
     private final Celesta celesta;
-    private boolean profilemode = false;
+    private volatile boolean profilemode = false;
+    private volatile double sampleRate = 1.0;
+    private final long flushIntervalMs;
 
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Queue<CallRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private ScheduledExecutorService flusher;
 
     public ProfilingManager(Celesta celesta) {
+        this(celesta, DEFAULT_FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * Creates profiling manager.
+     *
+     * @param celesta  Celesta instance
+     * @param flushIntervalMs  interval between writes to <em>calllog</em> in milliseconds
+     */
+    public ProfilingManager(Celesta celesta, long flushIntervalMs) {
         this.celesta = celesta;
+        this.flushIntervalMs = flushIntervalMs;
     }
 
     /**
@@ -28,17 +79,85 @@ public final class ProfilingManager implements IProfiler {
      */
     public void logCall(CallContext context) {
         if (this.profilemode && !NO_LOG.equals(context.getProcName())) {
-            try (CallContext sysContext = new SystemCallContext(celesta)) {
-                CalllogCursor clc = new CalllogCursor(sysContext);
-                clc.setProcname(context.getProcName());
-                clc.setUserid(context.getUserId());
-                clc.setStarttime(context.getStartTime());
-                clc.setDuration((int) Duration.ofNanos(context.getDurationNs()).get(ChronoUnit.MILLIS));
+            long durationNs = context.getDurationNs();
+            histograms.computeIfAbsent(context.getProcName(), p -> new LatencyHistogram()).record(durationNs);
+
+            double rate = sampleRate;
+            if (rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate) {
+                if (queueSize.incrementAndGet() <= QUEUE_CAPACITY) {
+                    queue.add(new CallRecord(context.getProcName(), context.getUserId(),
+                            context.getStartTime(), durationNs));
+                } else {
+                    queueSize.decrementAndGet();
+                    dropped.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all the queued sampled calls to <em>calllog</em> table.
+     */
+    public void flush() {
+        List<CallRecord> batch = new ArrayList<>();
+        CallRecord r;
+        while ((r = queue.poll()) != null) {
+            queueSize.decrementAndGet();
+            batch.add(r);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try (CallContext sysContext = new SystemCallContext(celesta)) {
+            CalllogCursor clc = new CalllogCursor(sysContext);
+            for (CallRecord call : batch) {
+                clc.clear();
+                clc.setProcname(call.procName);
+                clc.setUserid(call.userId);
+                clc.setStarttime(call.startTime);
+                clc.setDuration((int) TimeUnit.NANOSECONDS.toMillis(call.durationNs));
                 clc.insert();
             }
+            sysContext.commit();
         }
     }
 
+    /**
+     * Returns latency histograms of the calls recorded in profiling mode, by procedure name.
+     *
+     * @return
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Returns latency histogram of the procedure calls.
+     *
+     * @param procName  procedure name
+     * @return  {@code null} if no calls of the procedure were recorded
+     */
+    public LatencyHistogram getLatency(String procName) {
+        return histograms.get(procName);
+    }
+
+    /**
+     * Clears the latency histograms.
+     */
+    public void resetLatencies() {
+        histograms.clear();
+    }
+
+    /**
+     * Number of sampled calls that were not written to <em>calllog</em>
+     * because the queue was full.
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
     /**
      * Whether the profiling mode is on (is the procedures call time logged to
      * <em>calllog</em> table.
@@ -54,8 +173,81 @@ public final class ProfilingManager implements IProfiler {
      *
      * @param profilemode  profiling mode flag ({@code true} - on, {@code false} - off)
      */
-    public void setProfilemode(boolean profilemode) {
+    public synchronized void setProfilemode(boolean profilemode) {
         this.profilemode = profilemode;
+        if (profilemode && flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "celesta-profiler");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Share of the calls written to <em>calllog</em> table. All the calls are recorded
+     * into the latency histograms regardless of the sample rate.
+     *
+     * @return
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the share of the calls written to <em>calllog</em> table.
+     *
+     * @param sampleRate  value from 0 (none) to 1 (every call)
+     */
+    public void setSampleRate(double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new CelestaException("Sample rate should be between 0 and 1, got %s.", sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Stops the background writer and writes the remaining queued calls.
+     */
+    @Override
+    public synchronized void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+            flushQuietly();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.error("Error while writing calllog", e);
+        }
+    }
+
+    /**
+     * Sampled call waiting to be written.
+     */
+    private static final class CallRecord {
+        private final String procName;
+        private final String userId;
+        private final Date startTime;
+        private final long durationNs;
+
+        CallRecord(String procName, String userId, Date startTime, long durationNs) {
+            this.procName = procName;
+            this.userId = userId;
+            this.startTime = startTime;
+            this.durationNs = durationNs;
+        }
     }
 
 }
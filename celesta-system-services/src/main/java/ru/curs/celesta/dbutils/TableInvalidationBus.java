@@ -0,0 +1,173 @@
+package ru.curs.celesta.dbutils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.ICelesta;
+import ru.curs.celesta.SystemCallContext;
+import ru.curs.celesta.event.AbstractInvalidationBus;
+import ru.curs.celesta.syscursors.InvalidationsCursor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invalidation bus working with any database through the {@code celesta.invalidations} table.
+ * <p>
+ * Publishing a topic increments its change counter in the table. Every node periodically reads
+ * the counters, which is one small query, and runs the listeners of the topics whose counters
+ * changed since the previous check. The own changes of a node are delivered immediately and
+ * are not delivered once more by the check.
+ */
+public final class TableInvalidationBus extends AbstractInvalidationBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TableInvalidationBus.class);
+
+    // attempts to increment the counters when another node increments them concurrently
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final ICelesta celesta;
+    private final long intervalMs;
+    // the counters seen by the last check, null before the first one
+    private Map<String, Integer> counters;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates the bus.
+     *
+     * @param celesta  Celesta instance
+     * @param intervalMs  interval between checks for the changes of other nodes in milliseconds
+     */
+    public TableInvalidationBus(ICelesta celesta, long intervalMs) {
+        this.celesta = celesta;
+        this.intervalMs = intervalMs;
+    }
+
+    @Override
+    protected void send(Set<String> topics) {
+        for (int attempt = 1;; attempt++) {
+            try (CallContext context = new SystemCallContext(celesta)) {
+                Map<String, Integer> sent;
+                try {
+                    sent = increment(context, topics);
+                    context.commit();
+                } catch (CelestaException e) {
+                    context.rollback();
+                    throw e;
+                }
+                skipOwn(sent);
+                return;
+            } catch (CelestaException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    LOGGER.error("Can't publish changes of {}", topics, e);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static Map<String, Integer> increment(CallContext context, Set<String> topics) {
+        InvalidationsCursor c = new InvalidationsCursor(context);
+        Map<String, Integer> result = new HashMap<>();
+        for (String topic : topics) {
+            if (c.tryGet(topic)) {
+                c.setCounter(c.getCounter() + 1);
+                c.update();
+            } else {
+                c.clear();
+                c.setTopic(topic);
+                c.setCounter(1);
+                c.insert();
+            }
+            result.put(topic, c.getCounter());
+        }
+        return result;
+    }
+
+    private synchronized void skipOwn(Map<String, Integer> sent) {
+        if (counters == null) {
+            return;
+        }
+        sent.forEach((topic, counter) -> {
+            Integer seen = counters.get(topic);
+            // only if no other node changed the topic since the last check
+            if ((seen == null ? 0 : seen) == counter - 1) {
+                counters.put(topic, counter);
+            }
+        });
+    }
+
+    /**
+     * Runs the listeners of the topics changed by other nodes since the previous check.
+     * The first check only remembers the counters.
+     */
+    public void poll() {
+        Map<String, Integer> current = new HashMap<>();
+        try (CallContext context = new SystemCallContext(celesta)) {
+            InvalidationsCursor c = new InvalidationsCursor(context);
+            if (c.tryFindSet()) {
+                do {
+                    current.put(c.getTopic(), c.getCounter());
+                } while (c.nextInSet());
+            }
+        }
+        List<String> changed = new ArrayList<>();
+        synchronized (this) {
+            if (counters != null) {
+                current.forEach((topic, counter) -> {
+                    if (!counter.equals(counters.get(topic)) && isSubscribed(topic)) {
+                        changed.add(topic);
+                    }
+                });
+            }
+            counters = current;
+        }
+        deliver(changed);
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            LOGGER.error("Error while checking changes of cached data", e);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (executor == null) {
+            poll();
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "celesta-invalidation-poller");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.scheduleWithFixedDelay(this::pollQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService e;
+        synchronized (this) {
+            e = executor;
+            executor = null;
+        }
+        if (e != null) {
+            e.shutdown();
+            try {
+                e.awaitTermination(intervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+create grain cache version '1.0';
+
+CREATE TABLE cachedTable(
+  id INT NOT NULL,
+  code VARCHAR(10) NOT NULL,
+  weight INT,
+  CONSTRAINT Pk_cachedTable PRIMARY KEY (id)
+) WITH CACHE;
+
+CREATE TABLE cachedRoTable(
+  id INT NOT NULL,
+  title VARCHAR(50),
+  CONSTRAINT Pk_cachedRoTable PRIMARY KEY (id)
+) WITH READ ONLY CACHE;
+
+CREATE TABLE cachedDictionary(
+  code VARCHAR(10) NOT NULL,
+  title VARCHAR(50),
+  CONSTRAINT Pk_cachedDictionary PRIMARY KEY (code)
+) WITH CACHE;
+
+CREATE TABLE price(
+  id INT NOT NULL,
+  item VARCHAR(10) NOT NULL,
+  region INT NOT NULL,
+  amount INT,
+  CONSTRAINT Pk_price PRIMARY KEY (id)
+);
+
+CREATE FUNCTION regionPrices(r INT) WITH CACHE AS
+  select item, sum(amount) as total
+  from price
+  where region = $r
+  group by item;
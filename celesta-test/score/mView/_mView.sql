@@ -81,6 +81,25 @@ CREATE materialized view mView6 AS
   from table5
   group by f1;
 
+create sequence table6_id;
+
+create table table6 (
+  id int not null default nextval(table6_id) primary key,
+  var varchar(2) not null,
+  numb int,
+  date datetime
+);
+
+create materialized view mView7 as
+  select var, max(numb) as maxNumb, min(numb) as minNumb, max(date) as lastDate, count(*) as c
+  from table6
+  group by var;
+
+create materialized view mView8 with deferred as
+  select var, sum(numb) as s, max(numb) as maxNumb, count(*) as c
+  from table6
+  group by var;
+
 -- This tests creation of a view based on materialized view
 CREATE view viewFromMView as
     select distinct vvv from mView5;
\ No newline at end of file
@@ -0,0 +1,20 @@
+create grain replica version '1.0';
+
+CREATE TABLE region(
+  id INT NOT NULL,
+  title VARCHAR(50),
+  CONSTRAINT Pk_region PRIMARY KEY (id)
+) WITH READ ONLY;
+
+CREATE TABLE city(
+  id INT NOT NULL,
+  region INT NOT NULL,
+  title VARCHAR(50),
+  CONSTRAINT Pk_city PRIMARY KEY (id)
+);
+
+CREATE VIEW cityTitles AS
+  select id, title from city;
+
+CREATE FUNCTION regionCities(r INT) AS
+  select id, title from city where region = $r;
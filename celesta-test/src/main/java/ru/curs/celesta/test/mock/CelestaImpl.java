@@ -5,10 +5,17 @@ import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.dbutils.IProfiler;
 import ru.curs.celesta.dbutils.LoggingManager;
 import ru.curs.celesta.dbutils.PermissionManager;
+import ru.curs.celesta.dbutils.ParameterizedViewCache;
+import ru.curs.celesta.dbutils.ReadReplica;
+import ru.curs.celesta.dbutils.RowCache;
+import ru.curs.celesta.dbutils.TableCache;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.event.InvalidationBus;
+import ru.curs.celesta.event.LocalInvalidationBus;
 import ru.curs.celesta.event.TriggerDispatcher;
 import ru.curs.celesta.score.Score;
 
+import java.util.Collections;
 import java.util.Properties;
 
 /**
@@ -17,6 +24,7 @@ import java.util.Properties;
 public final class CelestaImpl implements ICelesta {
 
     private final TriggerDispatcher triggerDispatcher = new TriggerDispatcher();
+    private final InvalidationBus invalidationBus = new LocalInvalidationBus();
 
     private final DBAdaptor dbAdaptor;
     private final ConnectionPool connectionPool;
@@ -24,6 +32,10 @@ public final class CelestaImpl implements ICelesta {
     private final String scorePath;
     private final PermissionManager permissionManager;
     private final LoggingManager loggingManager;
+    private final TableCache tableCache;
+    private final RowCache rowCache;
+    private final ParameterizedViewCache parameterizedViewCache;
+    private final ReadReplica readReplica;
 
     public CelestaImpl(DBAdaptor dbAdaptor, ConnectionPool connectionPool, Score score) {
         this(dbAdaptor, connectionPool, score, null);
@@ -36,6 +48,10 @@ public final class CelestaImpl implements ICelesta {
         this.scorePath = scorePath;
         this.permissionManager = new PermissionManager(this);
         this.loggingManager = new LoggingManager(this);
+        this.tableCache = new TableCache(score, Collections.emptyList(), 0);
+        this.rowCache = new RowCache(score, Collections.emptyList(), 0, 0);
+        this.parameterizedViewCache = new ParameterizedViewCache(score, Collections.emptyList(), 0, 1, 0);
+        this.readReplica = new ReadReplica(score, Collections.emptyList(), connectionPool, dbAdaptor, 0);
     }
 
     @Override
@@ -80,6 +96,31 @@ public final class CelestaImpl implements ICelesta {
         return dbAdaptor;
     }
 
+    @Override
+    public TableCache getTableCache() {
+        return tableCache;
+    }
+
+    @Override
+    public RowCache getRowCache() {
+        return rowCache;
+    }
+
+    @Override
+    public ParameterizedViewCache getParameterizedViewCache() {
+        return parameterizedViewCache;
+    }
+
+    @Override
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    @Override
+    public ReadReplica getReadReplica() {
+        return readReplica;
+    }
+
     @Override
     public void close() throws Exception {
         connectionPool.close();
@@ -19,6 +19,7 @@ public abstract class AbstractCelestaTest {
         Properties params = new Properties();
         params.setProperty("score.path", scorePath());
         params.setProperty("h2.in-memory", "true");
+        configure(params);
         celesta = Celesta.createInstance(params);
 
         assertSame(celesta.getSetupProperties(), params);
@@ -28,6 +29,14 @@ public abstract class AbstractCelestaTest {
 
     protected abstract String scorePath();
 
+    /**
+     * Sets additional Celesta properties of the test.
+     *
+     * @param params  Celesta properties
+     */
+    protected void configure(Properties params) {
+    }
+
     public CallContext cc() {
         return cc;
     }
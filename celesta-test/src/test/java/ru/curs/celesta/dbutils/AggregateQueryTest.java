@@ -0,0 +1,115 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CelestaException;
+import testTable.TXRecCursor;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AggregateQueryTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    private TXRecCursor c;
+
+    @BeforeEach
+    public void before() {
+        c = new TXRecCursor(cc());
+        c.deleteAll();
+        insert("a", 1, 1.5, true);
+        insert("a", 2, 2.5, false);
+        insert("b", 10, 0.5, true);
+        insert("b", null, null, true);
+        insert("c", 100, 4.0, false);
+    }
+
+    private void insert(String title, Integer num, Double cost, Boolean active) {
+        c.clear();
+        c.setTitle(title).setNum(num).setCost(cost).setIsActive(active)
+                .setCreated(Timestamp.valueOf(LocalDateTime.of(2020, 1, num == null ? 1 : 1 + num % 28, 0, 0)));
+        c.insert();
+    }
+
+    @AfterEach
+    public void after() {
+        c.close();
+    }
+
+    @Test
+    public void aggregatesWithoutGrouping() {
+        Aggregate<Long> count = Aggregate.count();
+        Aggregate<Long> countNum = Aggregate.count(c.COLUMNS.num());
+        Aggregate<Number> sum = Aggregate.sum(c.COLUMNS.num());
+        Aggregate<Integer> min = Aggregate.min(c.COLUMNS.num());
+        Aggregate<Integer> max = Aggregate.max(c.COLUMNS.num());
+        Aggregate<Double> avg = Aggregate.avg(c.COLUMNS.num());
+        Aggregate<String> maxTitle = Aggregate.max(c.COLUMNS.title());
+
+        List<AggregateRow> rows = c.aggregate().select(count, countNum, sum, min, max, avg, maxTitle).list();
+
+        assertEquals(1, rows.size());
+        AggregateRow row = rows.get(0);
+        assertEquals(5L, row.get(count).longValue());
+        assertEquals(4L, row.get(countNum).longValue());
+        assertEquals(113L, row.get(sum));
+        assertEquals(1, row.get(min).intValue());
+        assertEquals(100, row.get(max).intValue());
+        assertEquals(28.25, row.get(avg), 1e-9);
+        assertEquals("c", row.get(maxTitle));
+    }
+
+    @Test
+    public void aggregatesWithGroupingRespectFilters() {
+        Aggregate<Long> count = Aggregate.count();
+        Aggregate<Number> cost = Aggregate.sum(c.COLUMNS.cost());
+
+        c.setRange(c.COLUMNS.isActive(), true);
+        c.orderBy(c.COLUMNS.title().desc());
+        c.limit(0, 1);
+
+        List<AggregateRow> rows = c.aggregate().groupBy(c.COLUMNS.title()).select(count, cost).list();
+
+        assertEquals(2, rows.size());
+        assertEquals("a", rows.get(0).get(c.COLUMNS.title()));
+        assertEquals(1L, rows.get(0).get(count).longValue());
+        assertEquals(1.5, rows.get(0).get(cost).doubleValue(), 1e-9);
+        assertEquals("b", rows.get(1).get(c.COLUMNS.title()));
+        assertEquals(2L, rows.get(1).get(count).longValue());
+        assertEquals(0.5, rows.get(1).get(cost).doubleValue(), 1e-9);
+    }
+
+    @Test
+    public void aggregatesRespectComplexFilter() {
+        Aggregate<Long> count = Aggregate.count();
+        c.setComplexFilter("num > 1");
+
+        int groups = 0;
+        for (AggregateRow row : c.aggregate().groupBy(c.COLUMNS.isActive()).select(count)) {
+            if (Boolean.TRUE.equals(row.get(c.COLUMNS.isActive()))) {
+                assertEquals(1L, row.get(count).longValue());
+            } else {
+                assertEquals(2L, row.get(count).longValue());
+            }
+            groups++;
+        }
+        assertEquals(2, groups);
+    }
+
+    @Test
+    public void unknownAggregateIsRejected() {
+        AggregateRow row = c.aggregate().select(Aggregate.count()).list().get(0);
+        assertThrows(CelestaException.class, () -> row.get(Aggregate.count()));
+        assertThrows(CelestaException.class, () -> row.get(c.COLUMNS.title()));
+        assertThrows(CelestaException.class, () -> c.aggregate().list());
+    }
+}
@@ -0,0 +1,97 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.Celesta;
+import ru.curs.celesta.SystemCallContext;
+import ru.curs.celesta.dbutils.stmt.InMemoryStatementMetrics;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import testTable.TXRecCursor;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CountEstimateTest extends AbstractCelestaTest {
+
+    private final InMemoryStatementMetrics metrics = new InMemoryStatementMetrics();
+    private TXRecCursor c;
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @BeforeEach
+    public void before() {
+        c = new TXRecCursor(cc());
+        c.deleteAll();
+        for (int i = 0; i < 3; i++) {
+            c.clear();
+            c.setNum(i % 2).setTitle("t" + i);
+            c.insert();
+        }
+        cc().commit();
+        c.clear();
+        metrics.reset();
+        celesta().setStatementMetrics(metrics);
+    }
+
+    @AfterEach
+    public void after() {
+        celesta().setStatementMetrics(null);
+        c.close();
+    }
+
+    @Test
+    public void tableIsEstimatedFromStatistics() {
+        assertEquals(3, c.estimateCount());
+        assertEquals(0, counts());
+    }
+
+    @Test
+    public void countsAreRememberedUntilWrite() throws SQLException {
+        c.setRange(c.COLUMNS.num(), 0);
+        assertEquals(2, c.count());
+        assertEquals(2, c.count());
+        // the DB doesn't estimate the filtered set, the remembered count is used
+        assertEquals(2, c.estimateCount());
+        assertEquals(1, counts());
+
+        c.setRange(c.COLUMNS.num(), 1);
+        assertEquals(1, c.count());
+        assertEquals(2, counts());
+
+        c.clear();
+        c.setNum(1).setTitle("t3");
+        c.insert();
+        c.clear();
+        c.setRange(c.COLUMNS.num(), 1);
+        assertEquals(2, c.count());
+        assertEquals(3, counts());
+
+        // changes bypassing Celesta cursors are seen in the next transaction
+        cc().commit();
+        try (CallContext other = new SystemCallContext(celesta(), "raw");
+             Statement stmt = other.getConn().createStatement()) {
+            stmt.executeUpdate(String.format("DELETE FROM %s WHERE \"num\" = 1",
+                    other.getDbAdaptor().tableString("testTable", "tXRec")));
+            other.commit();
+        }
+        assertEquals(0, c.count());
+        assertEquals(4, counts());
+    }
+
+    private long counts() {
+        return metrics.get(StatementKind.COUNT, c.meta()).getCount();
+    }
+
+    private Celesta celesta() {
+        return (Celesta) cc().getCelesta();
+    }
+
+}
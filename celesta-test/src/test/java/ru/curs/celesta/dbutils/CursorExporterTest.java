@@ -0,0 +1,144 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CelestaException;
+import testTable.TXRecCursor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CursorExporterTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    private TXRecCursor c;
+
+    @BeforeEach
+    public void before() {
+        c = new TXRecCursor(cc());
+        c.deleteAll();
+        c.setNum(10).setCost(1.5).setTitle("a,\"b\"").setIsActive(true)
+                .setCreated(Timestamp.valueOf(LocalDateTime.of(2020, 1, 2, 3, 4, 5)));
+        c.insert();
+        c.clear();
+        c.setNum(-20).setTitle("Привет");
+        c.insert();
+        c.clear();
+        c.setTitle("z");
+        c.insert();
+        c.clear();
+    }
+
+    @AfterEach
+    public void after() {
+        c.close();
+    }
+
+    @Test
+    public void csvExportMatchesCsvLines() {
+        List<String> expected = new ArrayList<>();
+        c.orderBy(c.COLUMNS.title());
+        for (TXRecCursor rec : c) {
+            expected.add(rec.asCSVLine() + "," + rec.getRecversion());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = new CursorExporter(c).chunkSize(16).writeTo(out);
+
+        assertEquals(3, rows);
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(expected.size(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(expected.get(i), lines[i]);
+        }
+    }
+
+    @Test
+    public void csvExportRespectsFiltersAndHeader() {
+        c.setRange(c.COLUMNS.title(), "z");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = new CursorExporter(c).header(true)
+                .writeTo(Channels.newChannel(out));
+
+        assertEquals(1, rows);
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("id,num,cost,title,isActive,created,recversion", lines[0]);
+        assertTrue(lines[1].contains(",NULL,NULL,z,NULL,NULL,"));
+    }
+
+    @Test
+    public void binaryExportIsReadable() throws IOException {
+        c.orderBy(c.COLUMNS.num());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = new CursorExporter(c).format(CursorExporter.Format.BINARY).chunkSize(32).writeTo(out);
+        assertEquals(3, rows);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(CursorExporter.BINARY_FORMAT_VERSION, in.readInt());
+        int columns = in.readInt();
+        assertEquals(7, columns);
+        CursorExporter.ColumnType[] types = new CursorExporter.ColumnType[columns];
+        for (int i = 0; i < columns; i++) {
+            types[i] = CursorExporter.ColumnType.values()[in.readByte()];
+            byte[] name = new byte[in.readInt()];
+            in.readFully(name);
+        }
+        assertEquals(CursorExporter.ColumnType.STRING, types[3]);
+        assertEquals(CursorExporter.ColumnType.DATETIME, types[5]);
+
+        List<Integer> nums = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        while (in.readByte() == 1) {
+            for (int i = 0; i < columns; i++) {
+                boolean isNull = in.readByte() == 1;
+                Object value = null;
+                if (!isNull) {
+                    switch (types[i]) {
+                        case INTEGER: value = in.readInt(); break;
+                        case BOOLEAN: value = in.readByte() == 1; break;
+                        case DOUBLE: value = in.readDouble(); break;
+                        case DATETIME: value = in.readLong(); break;
+                        default:
+                            byte[] s = new byte[in.readInt()];
+                            in.readFully(s);
+                            value = new String(s, StandardCharsets.UTF_8);
+                    }
+                }
+                if (i == 1) {
+                    nums.add((Integer) value);
+                } else if (i == 3) {
+                    titles.add((String) value);
+                }
+            }
+        }
+        assertEquals(0, in.available());
+        // nulls go first on H2
+        assertEquals(null, nums.get(0));
+        assertEquals(-20, nums.get(1).intValue());
+        assertEquals(10, nums.get(2).intValue());
+        assertEquals("Привет", titles.get(1));
+    }
+
+    @Test
+    public void invalidChunkSizeIsRejected() {
+        assertThrows(CelestaException.class, () -> new CursorExporter(c).chunkSize(1));
+    }
+}
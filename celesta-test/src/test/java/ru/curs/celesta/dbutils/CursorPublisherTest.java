@@ -0,0 +1,139 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import testTable.TXRecCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CursorPublisherTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    private TXRecCursor c;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void before() {
+        executor = Executors.newSingleThreadExecutor();
+        c = new TXRecCursor(cc());
+        c.deleteAll();
+        for (int i = 0; i < 10; i++) {
+            c.clear();
+            c.setNum(i).setTitle("t" + i);
+            c.insert();
+        }
+        c.clear();
+        // the subscription reads on its own connection
+        cc().commit();
+    }
+
+    @AfterEach
+    public void after() {
+        executor.shutdownNow();
+        c.close();
+    }
+
+    @Test
+    public void publishesRowsOnDemand() throws InterruptedException {
+        c.setRange(c.COLUMNS.num(), 2, 6);
+        c.orderBy(c.COLUMNS.num().desc());
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>(2, Long.MAX_VALUE);
+
+        new CursorPublisher<>(c, TXRecCursor::getNum, executor, 2).subscribe(subscriber);
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(6, 5, 4, 3, 2), subscriber.items);
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void publishesOnlyRequestedRows() throws InterruptedException {
+        c.orderBy(c.COLUMNS.num());
+        TestSubscriber<Object[]> subscriber = new TestSubscriber<>(3, 0);
+
+        c.publisher(executor).subscribe(subscriber);
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals(3, subscriber.items.size());
+        assertEquals(1, subscriber.items.get(1)[1]);
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void invalidRequestSignalsError() throws InterruptedException {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>(0, 0);
+
+        new CursorPublisher<>(c, TXRecCursor::getNum, executor).subscribe(subscriber);
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertTrue(subscriber.items.isEmpty());
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    /**
+     * Requests {@code first} items, then {@code next} items; if {@code next} is zero,
+     * cancels the subscription after receiving the first items.
+     */
+    private static final class TestSubscriber<T> implements Flow.Subscriber<T> {
+        private final long first;
+        private final long next;
+        private final List<T> items = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        TestSubscriber(long first, long next) {
+            this.first = first;
+            this.next = next;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            s.request(first);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            if (items.size() == first) {
+                if (next == 0) {
+                    subscription.cancel();
+                    done.countDown();
+                } else {
+                    subscription.request(next);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+}
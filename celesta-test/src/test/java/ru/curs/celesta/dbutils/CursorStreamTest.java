@@ -0,0 +1,96 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import testTable.TXRecCursor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CursorStreamTest extends AbstractCelestaTest {
+
+    private static final int ROWS = 3000;
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    private TXRecCursor c;
+
+    @BeforeEach
+    public void before() {
+        c = new TXRecCursor(cc());
+        c.deleteAll();
+        for (int i = 0; i < ROWS; i++) {
+            c.clear();
+            c.setNum(i).setTitle("t" + i);
+            c.insert();
+        }
+        c.clear();
+    }
+
+    @AfterEach
+    public void after() {
+        c.close();
+    }
+
+    @Test
+    public void streamProjectsRowsInOrder() {
+        c.setRange(c.COLUMNS.num(), 10, 19);
+        c.orderBy(c.COLUMNS.num().desc());
+
+        List<String> titles = c.stream(TXRecCursor::getTitle).collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("t19", "t18", "t17", "t16", "t15", "t14", "t13", "t12", "t11", "t10"), titles);
+        assertNull(c.cursor);
+    }
+
+    @Test
+    public void shortCircuitingStreamReleasesResultSetOnClose() {
+        c.orderBy(c.COLUMNS.num());
+        Optional<Integer> first;
+        try (Stream<Integer> s = c.stream(TXRecCursor::getNum)) {
+            first = s.filter(n -> n > 5).findFirst();
+            assertNotNull(c.cursor);
+        }
+        assertEquals(6, first.get().intValue());
+        assertNull(c.cursor);
+
+        try (Stream<Integer> s = c.stream(TXRecCursor::getNum)) {
+            assertEquals(Arrays.asList(0, 1, 2), s.limit(3).collect(Collectors.toList()));
+        }
+        assertNull(c.cursor);
+    }
+
+    @Test
+    public void parallelStreamKeepsEncounterOrder() {
+        c.orderBy(c.COLUMNS.num());
+
+        List<Integer> nums = c.stream(TXRecCursor::getNum).parallel()
+                .map(n -> n * 2)
+                .collect(Collectors.toList());
+
+        assertEquals(IntStream.range(0, ROWS).map(n -> n * 2).boxed().collect(Collectors.toList()), nums);
+    }
+
+    @Test
+    public void nextInSetVisitsEveryRowOnce() {
+        c.setRange(c.COLUMNS.num(), 0, 2);
+        c.orderBy(c.COLUMNS.num());
+        int expected = 0;
+        while (c.nextInSet()) {
+            assertEquals(expected++, c.getNum().intValue());
+        }
+        assertEquals(3, expected);
+        assertNull(c.cursor);
+    }
+}
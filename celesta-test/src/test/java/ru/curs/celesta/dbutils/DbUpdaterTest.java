@@ -7,15 +7,29 @@ import ru.curs.celesta.BaseAppSettings;
 import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.ConnectionPool;
 import ru.curs.celesta.ConnectionPoolConfiguration;
+import ru.curs.celesta.CurrentScore;
 import ru.curs.celesta.InternalConnectionPool;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.dbutils.adaptors.H2Adaptor;
 import ru.curs.celesta.dbutils.adaptors.ddl.JdbcDdlConsumer;
 import ru.curs.celesta.score.AbstractScore;
+import ru.curs.celesta.score.BasicTable;
+import ru.curs.celesta.score.Grain;
+import ru.curs.celesta.score.MaterializedView;
 import ru.curs.celesta.score.Score;
 import ru.curs.celesta.score.discovery.ScoreByScorePathDiscovery;
+import ru.curs.celesta.syscursors.ISchemaCursor;
 import ru.curs.celesta.test.mock.CelestaImpl;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -53,6 +67,199 @@ public class DbUpdaterTest {
         );
     }
 
+    @Test
+    void testParallelUpgrade() throws Exception {
+        DbUpdater<?> dbUpdater = createDbUpdater("db_updater_test/parallelScore");
+        // H2 triggers of materialized views find the view in the current score
+        CurrentScore.set(dbUpdater.score);
+        dbUpdater.setParallelism(4);
+        dbUpdater.updateDb();
+
+        Grain invoices = dbUpdater.score.getGrain("invoices");
+        assertEquals(
+                new HashSet<>(Arrays.asList(dbUpdater.score.getGrain("celesta"),
+                        dbUpdater.score.getGrain("orders"), dbUpdater.score.getGrain("stock"))),
+                ParallelGrainUpdater.getDependencies(invoices));
+
+        Map<String, Integer> states = new HashMap<>();
+        try (Connection conn = connectionPool.get();
+             ResultSet rs = conn.createStatement().executeQuery("SELECT \"id\", \"state\" FROM \"celesta\".\"grains\"")) {
+            while (rs.next()) {
+                states.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+        assertEquals(dbUpdater.score.getGrains().keySet(), states.keySet());
+        for (Map.Entry<String, Integer> e : states.entrySet()) {
+            assertEquals(ISchemaCursor.READY, e.getValue().intValue(), e.getKey());
+        }
+        try (Connection conn = connectionPool.get()) {
+            assertTrue(DbUpdaterAccessor.getDbAdaptor(dbUpdater).tableExists(conn, "invoices", "invoice"));
+        }
+
+        // independent grains create the triggers of their tables and materialized views concurrently
+        Map<String, String> totalsByGrain = new HashMap<>();
+        totalsByGrain.put("ledger", "entry");
+        totalsByGrain.put("payroll", "payment");
+        totalsByGrain.put("warehouse", "movement");
+        try (Connection conn = connectionPool.get()) {
+            for (Map.Entry<String, String> e : totalsByGrain.entrySet()) {
+                for (String table : Arrays.asList(e.getValue(), e.getValue() + "Archive")) {
+                    assertEquals(4, countTriggers(conn, e.getKey(), table), e.getKey() + "." + table);
+                    Statement stmt = conn.createStatement();
+                    stmt.execute(String.format("INSERT INTO \"%s\".\"%s\" (\"id\", \"code\", \"amount\") "
+                            + "VALUES (1, 'a', 2), (2, 'a', 3)", e.getKey(), table));
+                    try (ResultSet rs = stmt.executeQuery(String.format(
+                            "SELECT \"total\", \"cnt\" FROM \"%s\".\"%sTotals\"", e.getKey(), table))) {
+                        assertTrue(rs.next());
+                        assertEquals(5, rs.getInt(1));
+                        assertEquals(2, rs.getInt(2));
+                    }
+                }
+            }
+            conn.commit();
+        }
+
+        // Grains are up to date, nothing is upgraded
+        dbUpdater.updateDb();
+
+        assertThrows(CelestaException.class, () -> dbUpdater.setParallelism(0));
+    }
+
+    @Test
+    void testChunkedMaterializedViewBuild() throws Exception {
+        DbUpdater<?> dbUpdater = createDbUpdater("db_updater_test/mviewBuildScore");
+        // H2 triggers of materialized views find the view in the current score
+        CurrentScore.set(dbUpdater.score);
+        dbUpdater.setMaterializedViewBuild(2, 2);
+        dbUpdater.updateDb();
+
+        DBAdaptor dba = DbUpdaterAccessor.getDbAdaptor(dbUpdater);
+        MaterializedView mv = dbUpdater.score.getGrain("sales").getElement("salesByRegion", MaterializedView.class);
+        try (Connection conn = connectionPool.get()) {
+            assertFalse(dba.tableExists(conn, "sales", mv.getBuildQueueName()));
+            Statement stmt = conn.createStatement();
+            stmt.execute("INSERT INTO \"sales\".\"sale\" (\"id\", \"region\", \"saleDate\", \"amount\") VALUES "
+                    + "(1, 'A', '2020-01-01 10:00:00', 1), (2, 'A', '2020-01-01 11:00:00', 2), "
+                    + "(3, 'A', '2020-01-02 10:00:00', 4), (4, 'B', '2020-01-01 10:00:00', 8), "
+                    + "(5, 'C', '2020-01-01 10:00:00', 16), (6, 'C', '2020-01-01 12:00:00', 32)");
+            // a build interrupted after the upgrade leaves the build queue
+            dba.beginMaterializedViewBuild(conn, mv);
+            stmt.execute("DELETE FROM \"sales\".\"salesByRegion\"");
+            stmt.execute("UPDATE \"celesta\".\"grains\" SET \"state\" = " + ISchemaCursor.RECOVER
+                    + " WHERE \"id\" = 'sales'");
+            conn.commit();
+        }
+
+        dbUpdater.updateDb();
+
+        try (Connection conn = connectionPool.get()) {
+            assertFalse(dba.tableExists(conn, "sales", mv.getBuildQueueName()));
+            assertEquals("A 2020-01-01 3 2; A 2020-01-02 4 1; B 2020-01-01 8 1; C 2020-01-01 48 2",
+                    selectSalesByRegion(conn));
+
+            // the triggers maintain the built view
+            conn.createStatement().execute("INSERT INTO \"sales\".\"sale\" "
+                    + "(\"id\", \"region\", \"saleDate\", \"amount\") VALUES (7, 'B', '2020-01-01 13:00:00', 64)");
+            assertEquals("A 2020-01-01 3 2; A 2020-01-02 4 1; B 2020-01-01 72 2; C 2020-01-01 48 2",
+                    selectSalesByRegion(conn));
+
+            // changes made during a build are applied when it is finished
+            BasicTable sale = mv.getGrain().getElement("sale", BasicTable.class);
+            dba.beginMaterializedViewBuild(conn, mv);
+            dba.dropTableTriggersForMaterializedViews(conn, sale);
+            dba.createTableTriggersForMaterializedViews(conn, sale);
+            conn.createStatement().execute("INSERT INTO \"sales\".\"sale\" "
+                    + "(\"id\", \"region\", \"saleDate\", \"amount\") VALUES (8, 'A', '2020-01-02 13:00:00', 128)");
+            assertEquals("A 2020-01-01 3 2; A 2020-01-02 4 1; B 2020-01-01 72 2; C 2020-01-01 48 2",
+                    selectSalesByRegion(conn));
+            dba.finishMaterializedViewBuild(conn, mv);
+            assertFalse(dba.tableExists(conn, "sales", mv.getBuildQueueName()));
+            assertEquals("A 2020-01-01 3 2; A 2020-01-02 132 2; B 2020-01-01 72 2; C 2020-01-01 48 2",
+                    selectSalesByRegion(conn));
+        }
+
+        assertThrows(CelestaException.class, () -> dbUpdater.setMaterializedViewBuild(-1, 1));
+        assertThrows(CelestaException.class, () -> dbUpdater.setMaterializedViewBuild(1, 0));
+    }
+
+    @Test
+    void testFailedMaterializedViewBuildIsRestarted() throws Exception {
+        DbUpdater<?> dbUpdater = createDbUpdater("db_updater_test/mviewBuildScore");
+        // H2 triggers of materialized views find the view in the current score
+        CurrentScore.set(dbUpdater.score);
+        dbUpdater.setMaterializedViewBuild(2, 2);
+        dbUpdater.updateDb();
+
+        DBAdaptor dba = DbUpdaterAccessor.getDbAdaptor(dbUpdater);
+        MaterializedView mv = dbUpdater.score.getGrain("sales").getElement("salesByRegion", MaterializedView.class);
+        BasicTable sale = mv.getGrain().getElement("sale", BasicTable.class);
+        try (Connection conn = connectionPool.get()) {
+            // the view is recreated from rows whose total exceeds the range of its column
+            dba.dropTableTriggersForMaterializedViews(conn, sale);
+            dba.dropTable(conn, mv);
+            conn.createStatement().execute("INSERT INTO \"sales\".\"sale\" "
+                    + "(\"id\", \"region\", \"saleDate\", \"amount\") VALUES "
+                    + "(1, 'A', '2020-01-01 10:00:00', 1), (2, 'B', '2020-01-01 10:00:00', 2), "
+                    + "(3, 'C', '2020-01-01 10:00:00', 2147483647), (4, 'C', '2020-01-01 11:00:00', 1)");
+            conn.createStatement().execute("UPDATE \"celesta\".\"grains\" SET \"state\" = "
+                    + ISchemaCursor.RECOVER + " WHERE \"id\" = 'sales'");
+            conn.commit();
+        }
+
+        assertThrows(CelestaException.class, dbUpdater::updateDb);
+
+        try (Connection conn = connectionPool.get()) {
+            // the grain is upgraded, but the view is not built
+            try (ResultSet rs = conn.createStatement().executeQuery(
+                    "SELECT \"state\" FROM \"celesta\".\"grains\" WHERE \"id\" = 'sales'")) {
+                assertTrue(rs.next());
+                assertEquals(ISchemaCursor.READY, rs.getInt(1));
+            }
+            assertTrue(dba.tableExists(conn, "sales", mv.getBuildQueueName()));
+
+            // changes made after the failure are queued
+            conn.createStatement().execute("DELETE FROM \"sales\".\"sale\" WHERE \"id\" = 4");
+            conn.createStatement().execute("INSERT INTO \"sales\".\"sale\" "
+                    + "(\"id\", \"region\", \"saleDate\", \"amount\") VALUES (5, 'B', '2020-01-01 12:00:00', 4)");
+            conn.commit();
+        }
+
+        dbUpdater.updateDb();
+
+        try (Connection conn = connectionPool.get()) {
+            assertFalse(dba.tableExists(conn, "sales", mv.getBuildQueueName()));
+            assertEquals("A 2020-01-01 1 1; B 2020-01-01 6 2; C 2020-01-01 2147483647 1",
+                    selectSalesByRegion(conn));
+
+            // the triggers maintain the built view
+            conn.createStatement().execute("INSERT INTO \"sales\".\"sale\" "
+                    + "(\"id\", \"region\", \"saleDate\", \"amount\") VALUES (6, 'A', '2020-01-01 13:00:00', 8)");
+            assertEquals("A 2020-01-01 9 2; B 2020-01-01 6 2; C 2020-01-01 2147483647 1",
+                    selectSalesByRegion(conn));
+        }
+    }
+
+    private static int countTriggers(Connection conn, String schema, String table) throws Exception {
+        try (ResultSet rs = conn.createStatement().executeQuery(String.format(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TRIGGERS "
+                        + "WHERE EVENT_OBJECT_SCHEMA = '%s' AND EVENT_OBJECT_TABLE = '%s'", schema, table))) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static String selectSalesByRegion(Connection conn) throws Exception {
+        List<String> rows = new ArrayList<>();
+        try (ResultSet rs = conn.createStatement().executeQuery(
+                "SELECT \"region\", \"saleDate\", \"total\", \"cnt\" FROM \"sales\".\"salesByRegion\" "
+                        + "ORDER BY \"region\", \"saleDate\"")) {
+            while (rs.next()) {
+                rows.add(String.format("%s %tF %d %d",
+                        rs.getString(1), rs.getTimestamp(2), rs.getInt(3), rs.getInt(4)));
+            }
+        }
+        return String.join("; ", rows);
+    }
 
     private DbUpdater<?> createDbUpdater(String scoreResourcePath) throws Exception {
         String scorePath = getClass().getResource(scoreResourcePath).getPath();
@@ -0,0 +1,116 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CelestaException;
+import testTable.TXRecCursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelScanTest extends AbstractCelestaTest {
+
+    private static final int ROWS = 500;
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    private TXRecCursor c;
+
+    @BeforeEach
+    public void before() {
+        c = new TXRecCursor(cc());
+        c.deleteAll();
+        for (int i = 0; i < ROWS; i++) {
+            c.clear();
+            c.setNum(i % 10).setTitle("t" + i);
+            c.insert();
+        }
+        c.clear();
+        // ranges are scanned on their own connections
+        cc().commit();
+    }
+
+    @AfterEach
+    public void after() {
+        c.close();
+    }
+
+    @Test
+    public void rangesCoverTheDataSetEvenly() {
+        List<ParallelScan.KeyRange> ranges = new ParallelScan<>(c, 4).split();
+
+        assertEquals(4, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertEquals(i == ranges.size() - 1, ranges.get(i).isInclusive());
+            if (i > 0) {
+                assertEquals(ranges.get(i - 1).getTo(), ranges.get(i).getFrom());
+            }
+            int size = (Integer) ranges.get(i).getTo() - (Integer) ranges.get(i).getFrom();
+            assertTrue(Math.abs(size - ROWS / 4) <= 1, "range size " + size);
+        }
+    }
+
+    @Test
+    public void forEachVisitsEveryFilteredRecordOnce() {
+        c.setRange(c.COLUMNS.num(), 3);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        new ParallelScan<>(c, 4).forEach(rec -> {
+            assertEquals(3, rec.getNum().intValue());
+            assertTrue(ids.add(rec.getId()));
+            threads.add(Thread.currentThread().getName());
+        });
+
+        assertEquals(ROWS / 10, ids.size());
+        assertEquals(c.count(), ids.size());
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void streamIsOrderedByPrimaryKey() {
+        List<Integer> expected = new ArrayList<>();
+        c.orderBy(c.COLUMNS.id());
+        for (TXRecCursor rec : c) {
+            expected.add(rec.getId());
+        }
+
+        List<Integer> ids;
+        try (Stream<Integer> s = new ParallelScan<>(c, 3).stream(TXRecCursor::getId)) {
+            ids = s.collect(Collectors.toList());
+        }
+
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    public void closingStreamStopsWorkers() {
+        try (Stream<String> s = new ParallelScan<>(c, 3).stream(TXRecCursor::getTitle)) {
+            assertEquals(5, s.limit(5).count());
+        }
+    }
+
+    @Test
+    public void emptyDataSetProducesNoRanges() {
+        c.setRange(c.COLUMNS.num(), 100);
+        assertTrue(new ParallelScan<>(c, 4).split().isEmpty());
+        assertEquals(0, new ParallelScan<>(c, 4).stream(TXRecCursor::getId).count());
+    }
+
+    @Test
+    public void primaryKeyFilterIsRejected() {
+        c.setRange(c.COLUMNS.id(), 1, 10);
+        assertThrows(CelestaException.class, () -> new ParallelScan<>(c, 4));
+    }
+}
@@ -0,0 +1,110 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.Celesta;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.SystemCallContext;
+import ru.curs.celesta.syscursors.CalllogCursor;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProfilingManagerTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    private ProfilingManager profiler;
+
+    @BeforeEach
+    public void before() {
+        profiler = ((Celesta) cc().getCelesta()).getProfiler();
+        profiler.resetLatencies();
+        profiler.setSampleRate(1.0);
+    }
+
+    @AfterEach
+    public void disableProfiling() {
+        profiler.setProfilemode(false);
+    }
+
+    @Test
+    public void callsAreRecordedAndFlushedInBatches() {
+        profiler.setProfilemode(true);
+        for (int i = 0; i < 5; i++) {
+            new SystemCallContext(cc().getCelesta(), "profiledProc").close();
+        }
+        profiler.flush();
+
+        assertEquals(5, countLogged("profiledProc"));
+        LatencyHistogram latency = profiler.getLatency("profiledProc");
+        assertEquals(5, latency.getCount());
+        assertTrue(latency.getP99().compareTo(latency.getMax()) <= 0);
+        assertTrue(latency.getP50().compareTo(latency.getP95()) <= 0);
+    }
+
+    @Test
+    public void nothingIsRecordedWhenProfilingIsOff() {
+        new SystemCallContext(cc().getCelesta(), "unprofiledProc").close();
+        profiler.flush();
+
+        assertNull(profiler.getLatency("unprofiledProc"));
+        assertEquals(0, countLogged("unprofiledProc"));
+    }
+
+    @Test
+    public void unsampledCallsAreOnlyRecordedInHistograms() {
+        profiler.setProfilemode(true);
+        profiler.setSampleRate(0);
+        new SystemCallContext(cc().getCelesta(), "notSampledProc").close();
+        profiler.flush();
+
+        assertEquals(1, profiler.getLatency("notSampledProc").getCount());
+        assertEquals(0, countLogged("notSampledProc"));
+        assertThrows(CelestaException.class, () -> profiler.setSampleRate(2));
+    }
+
+    @Test
+    public void histogramPercentilesAreAccurate() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(Duration.ZERO, h.getP50());
+        for (long i = 1; i <= 100_000; i++) {
+            h.record(i * 1000);
+        }
+        assertEquals(100_000, h.getCount());
+        assertEquals(Duration.ofNanos(100_000_000), h.getMax());
+        assertClose(50_000_000, h.getP50().toNanos());
+        assertClose(95_000_000, h.getP95().toNanos());
+        assertClose(99_000_000, h.getP99().toNanos());
+        assertEquals(100_000_000, h.getValueAtPercentile(100).toNanos());
+    }
+
+    @Test
+    public void histogramBucketsCoverAllValues() {
+        for (long v : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, Long.MAX_VALUE}) {
+            long high = LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(v));
+            assertTrue(high >= v, "value " + v);
+            assertTrue(high - v <= v / LatencyHistogram.SUB_BUCKETS, "value " + v);
+        }
+    }
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / LatencyHistogram.SUB_BUCKETS,
+                "expected " + expected + " but was " + actual);
+    }
+
+    private int countLogged(String procName) {
+        try (CallContext ctx = new SystemCallContext(cc().getCelesta())) {
+            CalllogCursor c = new CalllogCursor(ctx);
+            c.setRange(c.COLUMNS.procname(), procName);
+            return c.count();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import replica.CityCursor;
+import replica.CityTitlesCursor;
+import replica.RegionCitiesCursor;
+import replica.RegionCursor;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.SystemCallContext;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadReplicaTest extends AbstractCelestaTest {
+
+    private static final long TIMEOUT = 10000;
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @Override
+    protected void configure(Properties params) {
+        params.setProperty("replica.tables", "replica");
+        params.setProperty("replica.refresh", "0");
+    }
+
+    @BeforeEach
+    public void before() throws SQLException {
+        execute("DELETE FROM %s", "region");
+        execute("DELETE FROM %s", "city");
+        replica().reloadAll();
+    }
+
+    @Test
+    public void readOnlyTablesAreReadFromReplica() throws SQLException {
+        RegionCursor r = new RegionCursor(cc());
+        assertTrue(replica().isEnabled());
+        assertTrue(replica().isReplicated(r.meta()));
+        assertEquals(0, r.count());
+
+        execute("INSERT INTO %s (\"id\", \"title\") VALUES (1, 'North')", "region");
+        execute("INSERT INTO %s (\"id\", \"title\") VALUES (2, 'South')", "region");
+        // changes bypassing Celesta cursors are not seen until the table is reloaded
+        assertEquals(0, new RegionCursor(cc()).count());
+
+        replica().reload(r.meta());
+        // counts are remembered until the transaction ends
+        cc().commit();
+        r = new RegionCursor(cc());
+        assertEquals(2, r.count());
+        r.setRange(r.COLUMNS.id(), 2);
+        assertTrue(r.tryFirst());
+        assertEquals("South", r.getTitle());
+    }
+
+    @Test
+    public void writableTablesAreReadFromMainDatabase() {
+        CityCursor c = new CityCursor(cc());
+        assertTrue(replica().isReplicated(c.meta()));
+        c.setId(1).setRegion(1).setTitle("Moscow");
+        c.insert();
+        c.clear();
+        assertTrue(c.tryGet(1));
+        assertEquals("Moscow", c.getTitle());
+        cc().commit();
+    }
+
+    @Test
+    public void viewsReadMainDatabaseUntilTheirTablesAreReloaded() throws SQLException, InterruptedException {
+        CityCursor c = new CityCursor(cc());
+        c.setId(1).setRegion(1).setTitle("Moscow");
+        c.insert();
+        // the context that modified the table reads its own changes
+        assertEquals(1, new CityTitlesCursor(cc()).count());
+        try (CallContext other = new SystemCallContext(cc().getCelesta(), "other")) {
+            assertEquals(0, new CityTitlesCursor(other).count());
+        }
+        CityTitlesCursor v = new CityTitlesCursor(cc());
+        assertFalse(replica().serves(cc(), v.meta()));
+        cc().commit();
+        assertEquals(1, v.count());
+
+        // the commit announces the change and the table is reloaded in background
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!replica().serves(cc(), v.meta()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(replica().serves(cc(), v.meta()));
+        execute("INSERT INTO %s (\"id\", \"region\", \"title\") VALUES (2, 1, 'Tver')", "city");
+        assertEquals(1, new CityTitlesCursor(cc()).count());
+        assertEquals(1, new RegionCitiesCursor(cc(), 1).count());
+
+        replica().reload(c.meta());
+        cc().commit();
+        assertEquals(2, new CityTitlesCursor(cc()).count());
+        assertEquals(2, new RegionCitiesCursor(cc(), 1).count());
+        assertEquals(0, new RegionCitiesCursor(cc(), 2).count());
+    }
+
+    private ReadReplica replica() {
+        return cc().getCelesta().getReadReplica();
+    }
+
+    private void execute(String sql, String table) throws SQLException {
+        try (CallContext other = new SystemCallContext(cc().getCelesta(), "raw");
+             Statement stmt = other.getConn().createStatement()) {
+            stmt.executeUpdate(String.format(sql, other.getDbAdaptor().tableString("replica", table)));
+            other.commit();
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.Celesta;
+import ru.curs.celesta.syscursors.InvalidationsCursor;
+import testTable.TXRecCursor;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The row cache of all the tables together with the table bus, which writes a system table itself.
+ */
+public class RowCacheInvalidationBusTest extends AbstractCelestaTest {
+
+    private static final String TOPIC = "testTable.tXRec";
+
+    private TableInvalidationBus otherNode;
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @Override
+    protected void configure(Properties params) {
+        params.setProperty("invalidation.bus", "table");
+        params.setProperty("invalidation.interval", "60000");
+        params.setProperty("rowcache.size", "100");
+    }
+
+    @AfterEach
+    public void closeOtherNode() {
+        if (otherNode != null) {
+            otherNode.close();
+        }
+    }
+
+    @Test
+    public void busTableIsNotCachedNorPublished() {
+        assertFalse(celesta().getRowCache().isCached(new InvalidationsCursor(cc()).meta()));
+        assertTrue(celesta().getRowCache().isCached(new TXRecCursor(cc()).meta()));
+
+        AtomicInteger otherNodeCalls = new AtomicInteger();
+        otherNode = new TableInvalidationBus(celesta(), 60000);
+        otherNode.subscribe(TOPIC, otherNodeCalls::incrementAndGet);
+        otherNode.poll();
+
+        TXRecCursor c = new TXRecCursor(cc());
+        c.setNum(1).setTitle("t1");
+        c.insert();
+        cc().commit();
+        otherNode.poll();
+        assertEquals(1, otherNodeCalls.get());
+
+        c.setTitle("t2");
+        c.update();
+        cc().commit();
+        otherNode.poll();
+        assertEquals(2, otherNodeCalls.get());
+    }
+
+    private Celesta celesta() {
+        return (Celesta) cc().getCelesta();
+    }
+
+}
@@ -0,0 +1,162 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.Celesta;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.SystemCallContext;
+import ru.curs.celesta.dbutils.stmt.InMemoryStatementMetrics;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import testTable.TXRecCursor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RowCacheTest extends AbstractCelestaTest {
+
+    private final InMemoryStatementMetrics metrics = new InMemoryStatementMetrics();
+    private TXRecCursor c;
+    private int firstId;
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @Override
+    protected void configure(Properties params) {
+        params.setProperty("rowcache.size", "100");
+        params.setProperty("rowcache.tables", "testTable.tXRec");
+    }
+
+    @BeforeEach
+    public void before() {
+        c = new TXRecCursor(cc());
+        c.deleteAll();
+        for (int i = 0; i < 3; i++) {
+            c.clear();
+            c.setNum(i).setTitle("t" + i);
+            c.insert();
+            if (i == 0) {
+                firstId = c.getId();
+            }
+        }
+        cc().commit();
+        c.clear();
+        rowCache().invalidateAll();
+        metrics.reset();
+        celesta().setStatementMetrics(metrics);
+    }
+
+    @AfterEach
+    public void after() {
+        celesta().setStatementMetrics(null);
+        c.close();
+    }
+
+    @Test
+    public void repeatedGetsAreServedFromCache() throws SQLException {
+        assertTrue(rowCache().isCached(c.meta()));
+        RowCache.Statistics before = rowCache().getStatistics().get("testTable.tXRec");
+        assertTrue(c.tryGet(firstId));
+        assertEquals("t0", c.getTitle());
+        c.clear();
+        assertTrue(c.tryGet(firstId));
+        assertEquals("t0", c.getTitle());
+        assertEquals(0, c.getNum().intValue());
+        assertFalse(c.tryGet(-1));
+        assertEquals(2, metrics.get(StatementKind.GET, c.meta()).getCount());
+
+        RowCache.Statistics stats = rowCache().getStatistics().get("testTable.tXRec");
+        assertEquals(1, stats.getHits() - before.getHits());
+        assertEquals(2, stats.getMisses() - before.getMisses());
+        assertEquals(1. / 3, new RowCache.Statistics(1, 2).getHitRate(), 1e-9);
+
+        // changes bypassing Celesta cursors are not seen until the rows are invalidated
+        updateTitle(firstId, "changed");
+        assertTrue(c.tryGet(firstId));
+        assertEquals("t0", c.getTitle());
+        rowCache().invalidate(c.meta());
+        assertTrue(c.tryGet(firstId));
+        assertEquals("changed", c.getTitle());
+    }
+
+    @Test
+    public void writesInvalidateCachedRows() {
+        c.get(firstId);
+        c.setTitle("updated");
+        c.update();
+        // the modifying context reads the table from the database
+        c.get(firstId);
+        assertEquals("updated", c.getTitle());
+
+        try (CallContext other = new SystemCallContext(celesta(), "other")) {
+            TXRecCursor oc = new TXRecCursor(other);
+            oc.get(firstId);
+            assertEquals("t0", oc.getTitle());
+            cc().commit();
+            oc.get(firstId);
+            assertEquals("updated", oc.getTitle());
+        }
+
+        c.get(firstId);
+        c.delete();
+        cc().commit();
+        assertFalse(c.tryGet(firstId));
+    }
+
+    @Test
+    public void staleRowIsNotUpdated() throws SQLException {
+        c.get(firstId);
+        updateTitle(firstId, "changed");
+        // the cached row has an outdated version
+        c.get(firstId);
+        assertEquals("t0", c.getTitle());
+        c.setNum(10);
+        assertThrows(CelestaException.class, c::update);
+        cc().rollback();
+
+        c.get(firstId);
+        assertEquals("changed", c.getTitle());
+        c.setNum(10);
+        c.update();
+        cc().commit();
+    }
+
+    @Test
+    public void limitedFieldsCursorIsServedFromCache() {
+        c.get(firstId);
+        TXRecCursor limited = new TXRecCursor(cc(), c.COLUMNS.title());
+        limited.get(firstId);
+        assertEquals("t0", limited.getTitle());
+        assertNull(limited.getNum());
+        assertEquals(1, metrics.get(StatementKind.GET, c.meta()).getCount());
+    }
+
+    private RowCache rowCache() {
+        return celesta().getRowCache();
+    }
+
+    private Celesta celesta() {
+        return (Celesta) cc().getCelesta();
+    }
+
+    private void updateTitle(int id, String title) throws SQLException {
+        try (CallContext other = new SystemCallContext(celesta(), "raw");
+             PreparedStatement stmt = other.getConn().prepareStatement(String.format(
+                     "UPDATE %s SET \"title\" = ? WHERE \"id\" = ?",
+                     other.getDbAdaptor().tableString("testTable", "tXRec")))) {
+            stmt.setString(1, title);
+            stmt.setInt(2, id);
+            stmt.executeUpdate();
+            other.commit();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.Celesta;
+import ru.curs.celesta.dbutils.stmt.InMemoryStatementMetrics;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import ru.curs.celesta.dbutils.stmt.StatementMetrics;
+import testTable.TXRecCursor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatementMetricsTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    private final InMemoryStatementMetrics metrics = new InMemoryStatementMetrics();
+    private TXRecCursor c;
+
+    @BeforeEach
+    public void before() {
+        c = new TXRecCursor(cc());
+        c.deleteAll();
+        for (int i = 0; i < 3; i++) {
+            c.clear();
+            c.setNum(i).setTitle("t" + i);
+            c.insert();
+        }
+        c.clear();
+        metrics.reset();
+        celesta().setStatementMetrics(metrics);
+    }
+
+    @AfterEach
+    public void after() {
+        celesta().setStatementMetrics(null);
+        c.close();
+    }
+
+    @Test
+    public void iterationReportsFetchedRows() {
+        int n = 0;
+        for (TXRecCursor rec : c) {
+            n++;
+        }
+        assertEquals(3, n);
+        InMemoryStatementMetrics.Counters findSet = metrics.get(StatementKind.FIND_SET, c.meta());
+        assertEquals(1, findSet.getCount());
+        assertEquals(3, findSet.getRows());
+        assertTrue(findSet.getExecuteNanos() > 0);
+        assertEquals(1, metrics.getTotal(StatementKind.PERMISSION_CHECK).getCount());
+    }
+
+    @Test
+    public void statementCacheHitsAreCounted() {
+        c.setRange(c.COLUMNS.num(), 1);
+        assertTrue(c.tryFirst());
+        assertTrue(c.tryFirst());
+        InMemoryStatementMetrics.Counters navigate = metrics.get(StatementKind.NAVIGATE, c.meta());
+        assertEquals(2, navigate.getCount());
+        assertEquals(1, navigate.getCacheHits());
+        assertEquals(2, navigate.getRows());
+    }
+
+    @Test
+    public void writesAreReportedByKind() {
+        c.first();
+        int id = c.getId();
+        c.setTitle("changed");
+        c.update();
+        assertTrue(c.tryGet(id));
+        c.delete();
+        assertEquals(2, c.count());
+
+        assertEquals(1, metrics.get(StatementKind.GET_BEFORE_WRITE, c.meta()).getCount());
+        assertEquals(1, metrics.get(StatementKind.UPDATE, c.meta()).getRows());
+        assertEquals(1, metrics.get(StatementKind.GET, c.meta()).getCount());
+        assertEquals(1, metrics.get(StatementKind.DELETE, c.meta()).getRows());
+        assertEquals(1, metrics.get(StatementKind.COUNT, c.meta()).getCount());
+        assertEquals(2, metrics.getTotal(StatementKind.CHANGE_LOG).getCount());
+        assertEquals(0, metrics.get(StatementKind.INSERT, c.meta()).getCount());
+    }
+
+    @Test
+    public void nothingIsReportedWhenDisabled() {
+        celesta().setStatementMetrics(null);
+        assertSame(StatementMetrics.NO_OP, celesta().getStatementMetrics());
+        c.count();
+        assertEquals(0, metrics.getTotal(StatementKind.COUNT).getCount());
+    }
+
+    private Celesta celesta() {
+        return (Celesta) cc().getCelesta();
+    }
+}
@@ -0,0 +1,131 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.Celesta;
+import ru.curs.celesta.SystemCallContext;
+import testTable.TXRecCursor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableInvalidationBusTest extends AbstractCelestaTest {
+
+    private static final String TOPIC = "testTable.tXRec";
+
+    private final AtomicInteger otherNodeCalls = new AtomicInteger();
+    // another node working with the same database
+    private TableInvalidationBus otherNode;
+    private TXRecCursor c;
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @Override
+    protected void configure(Properties params) {
+        params.setProperty("invalidation.bus", "table");
+        params.setProperty("invalidation.interval", "60000");
+        params.setProperty("cache.tables", TOPIC);
+    }
+
+    @BeforeEach
+    public void before() {
+        c = new TXRecCursor(cc());
+        c.deleteAll();
+        c.setNum(1).setTitle("t1");
+        c.insert();
+        cc().commit();
+        c.clear();
+
+        otherNode = new TableInvalidationBus(celesta(), 60000);
+        otherNode.subscribe(TOPIC, otherNodeCalls::incrementAndGet);
+        otherNode.poll();
+        bus().poll();
+        otherNodeCalls.set(0);
+    }
+
+    @AfterEach
+    public void closeOtherNode() {
+        otherNode.close();
+        c.close();
+    }
+
+    @Test
+    public void committedChangesReachOtherNodes() {
+        assertTrue(celesta().getInvalidationBus() instanceof TableInvalidationBus);
+        c.setNum(2).setTitle("t2");
+        c.insert();
+        // uncommitted changes are not published
+        otherNode.poll();
+        assertEquals(0, otherNodeCalls.get());
+
+        cc().commit();
+        otherNode.poll();
+        assertEquals(1, otherNodeCalls.get());
+        otherNode.poll();
+        assertEquals(1, otherNodeCalls.get());
+
+        c.deleteAll();
+        cc().rollback();
+        otherNode.poll();
+        assertEquals(1, otherNodeCalls.get());
+    }
+
+    @Test
+    public void changesOfOtherNodesInvalidateCaches() throws SQLException {
+        assertEquals(1, c.count());
+        insertBypassingCursors();
+        assertEquals(1, c.count());
+
+        otherNode.publish(Collections.singleton(TOPIC));
+        // the own changes of a node are delivered immediately and once
+        assertEquals(1, otherNodeCalls.get());
+        otherNode.poll();
+        assertEquals(1, otherNodeCalls.get());
+
+        bus().poll();
+        assertEquals(2, c.count());
+    }
+
+    @Test
+    public void ownChangesAreDeliveredOnce() {
+        AtomicInteger calls = new AtomicInteger();
+        bus().subscribe(TOPIC, calls::incrementAndGet);
+        c.setNum(3).setTitle("t3");
+        c.insert();
+        cc().commit();
+        assertEquals(1, calls.get());
+        bus().poll();
+        assertEquals(1, calls.get());
+        assertFalse(bus().isSubscribed("testTable.absent"));
+    }
+
+    private TableInvalidationBus bus() {
+        return (TableInvalidationBus) celesta().getInvalidationBus();
+    }
+
+    private Celesta celesta() {
+        return (Celesta) cc().getCelesta();
+    }
+
+    private void insertBypassingCursors() throws SQLException {
+        try (CallContext other = new SystemCallContext(celesta(), "raw");
+             PreparedStatement stmt = other.getConn().prepareStatement(String.format(
+                     "INSERT INTO %s (\"num\", \"title\") VALUES (2, 'raw')",
+                     other.getDbAdaptor().tableString("testTable", "tXRec")))) {
+            stmt.executeUpdate();
+            other.commit();
+        }
+    }
+
+}
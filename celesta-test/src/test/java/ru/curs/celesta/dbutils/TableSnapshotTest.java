@@ -0,0 +1,54 @@
+package ru.curs.celesta.dbutils;
+
+import cache.CachedDictionaryCursor;
+import cache.CachedTableCursor;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.score.BasicTable;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableSnapshotTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @Test
+    public void stringsAreComparableOnlyIfDatabaseComparesThemByCharacters() {
+        BasicTable table = new CachedTableCursor(cc()).meta();
+        int id = table.getColumnIndex("id");
+        int code = table.getColumnIndex("code");
+        int weight = table.getColumnIndex("weight");
+
+        TableSnapshot snapshot = snapshot(table, false);
+        assertTrue(snapshot.isComparable(id, weight));
+        assertFalse(snapshot.isComparable(id, code));
+        assertTrue(snapshot.isKeyComparable());
+
+        snapshot = snapshot(table, true);
+        assertTrue(snapshot.isComparable(id, code, weight));
+        assertTrue(snapshot.isKeyComparable());
+    }
+
+    @Test
+    public void stringKeysAreComparableOnlyIfDatabaseComparesThemByCharacters() {
+        BasicTable table = new CachedDictionaryCursor(cc()).meta();
+
+        assertFalse(snapshot(table, false).isKeyComparable());
+        assertTrue(snapshot(table, true).isKeyComparable());
+    }
+
+    @Test
+    public void h2ComparesStringsByCharacters() {
+        assertTrue(cc().getDbAdaptor().comparesStringsByCharacters());
+    }
+
+    private static TableSnapshot snapshot(BasicTable table, boolean stringsByCharacters) {
+        return new TableSnapshot(table, Collections.emptyList(), null, false, stringsByCharacters, 0);
+    }
+
+}
@@ -0,0 +1,86 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TinyLfuCacheTest {
+
+    @Test
+    public void sizeIsBounded() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "v" + i);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.getEvictions());
+    }
+
+    @Test
+    public void frequentlyReadEntriesSurviveScan() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get(i) == null) {
+                    cache.put(i, "v" + i);
+                }
+            }
+        }
+        // a scan of keys read once does not flush the hot ones
+        for (int i = 1000; i < 2000; i++) {
+            if (cache.get(i) == null) {
+                cache.put(i, "v" + i);
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals("v" + i, cache.get(i));
+        }
+    }
+
+    @Test
+    public void entriesAreRemoved() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "v" + i);
+        }
+        cache.put(3, "new");
+        assertEquals("new", cache.get(3));
+        cache.remove(3);
+        assertNull(cache.get(3));
+        cache.removeIf(k -> k % 2 == 0);
+        assertEquals(4, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void sketchEstimatesFrequencies() {
+        TinyLfuCache.FrequencySketch sketch = new TinyLfuCache.FrequencySketch(64);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("hot");
+        }
+        sketch.increment("cold");
+        assertEquals(10, sketch.frequency("hot"));
+        assertEquals(1, sketch.frequency("cold"));
+        assertEquals(0, sketch.frequency("absent"));
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(15, sketch.frequency("hot"));
+    }
+
+    @Test
+    public void sketchHalvesCountersPeriodically() {
+        // a sample of 10 additions for the capacity of 1
+        TinyLfuCache.FrequencySketch sketch = new TinyLfuCache.FrequencySketch(1);
+        for (int i = 0; i < 9; i++) {
+            sketch.increment(i % 3 == 0 ? "cold" : "hot");
+        }
+        assertEquals(6, sketch.frequency("hot"));
+        assertEquals(3, sketch.frequency("cold"));
+        sketch.increment("hot");
+        assertEquals(3, sketch.frequency("hot"));
+        assertEquals(1, sketch.frequency("cold"));
+    }
+
+}
@@ -10,6 +10,7 @@ import ru.curs.celesta.dbutils.BLOB;
 import ru.curs.celesta.dbutils.DbUpdater;
 import ru.curs.celesta.dbutils.DbUpdaterBuilder;
 import ru.curs.celesta.dbutils.DbUpdaterImpl;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
 import ru.curs.celesta.dbutils.meta.DbColumnInfo;
 import ru.curs.celesta.dbutils.meta.DbFkInfo;
 import ru.curs.celesta.dbutils.meta.DbIndexInfo;
@@ -1125,6 +1126,30 @@ public abstract class AbstractAdaptorTest {
         assertFalse(c.isEmpty());
     }
 
+    @Test
+    public void getCatalog() throws ParseException {
+        Grain g = score.getGrain(GRAIN_NAME);
+        SequenceElement ts = g.getElement("test_id", SequenceElement.class);
+        DbCatalog catalog = dba.getCatalog(conn, g);
+
+        assertTrue(catalog.tableExists(t.getName()));
+        assertFalse(catalog.tableExists("nonExistentTable"));
+        assertEquals(dba.getColumns(conn, t), catalog.getColumns(t.getName()));
+        for (Column<?> c : t.getColumns().values()) {
+            DbColumnInfo ci = catalog.getColumnInfo(t.getName(), c.getName());
+            assertEquals(dba.getColumnInfo(conn, c).reflects(c), ci.reflects(c), c.getName());
+        }
+        DbPkInfo pkInfo = catalog.getPKInfo(t.getName());
+        assertEquals(dba.pkConstraintString(t), pkInfo.getName());
+        assertTrue(pkInfo.reflects(t));
+
+        assertTrue(catalog.sequenceExists(ts.getName()));
+        assertEquals(dba.getSequenceInfo(conn, ts).getMinValue(), catalog.getSequenceInfo(ts.getName()).getMinValue());
+
+        dba.dropTable(conn, t);
+        assertFalse(dba.getCatalog(conn, g).tableExists(t.getName()));
+    }
+
     @Test
     public void getFKInfo() throws ParseException, SQLException {
         dba.dropTable(conn, t);
@@ -1284,6 +1309,38 @@ public abstract class AbstractAdaptorTest {
         dba.dropIndex(g, inf);
     }
 
+    @Test
+    public void createIndexAndFKOnline() throws ParseException, SQLException {
+        Grain g = score.getGrain(GRAIN_NAME);
+        Index idx = g.getIndices().get("idxTest2");
+        BasicTable refA = g.getElement("refA", BasicTable.class);
+        BasicTable refB = g.getElement("refB", BasicTable.class);
+        BasicTable oneToTwo = g.getElement("oneToTwo", BasicTable.class);
+        dba.setOnlineDdl(true);
+        try {
+            dba.createIndex(conn, idx);
+            assertFalse(conn.getAutoCommit());
+            DbIndexInfo inf = dba.getIndices(conn, g).get("idxTest2");
+            assertTrue(inf.reflects(idx));
+            dba.dropIndex(g, inf);
+
+            dba.createTable(conn, refA);
+            dba.createTable(conn, refB);
+            dba.createTable(conn, oneToTwo);
+            for (ForeignKey fk : oneToTwo.getForeignKeys()) {
+                dba.createFK(conn, fk);
+            }
+            assertEquals(2, dba.getFKInfo(conn, g).stream()
+                    .filter(i -> oneToTwo.getName().equals(i.getTableName()))
+                    .count());
+        } finally {
+            dba.setOnlineDdl(false);
+            dba.dropTable(conn, oneToTwo);
+            dba.dropTable(conn, refA);
+            dba.dropTable(conn, refB);
+        }
+    }
+
     @Test
     public void selectWithLimitAndOffset() throws ParseException, IOException, SQLException {
         insertRow(conn, t, 1);
@@ -0,0 +1,113 @@
+package ru.curs.celesta.diagnostics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.event.TriggerType;
+import testTable.TXRecCursor;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * JFR API is accessed reflectively, since the tests are compiled for Java 8.
+ */
+public class CelestaEventsTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    private Object recording;
+    private Class<?> recordingClass;
+
+    @BeforeEach
+    public void startRecording() throws Exception {
+        assumeTrue(FlightRecorderEventType.isSupported());
+        recordingClass = Class.forName("jdk.jfr.Recording");
+        recording = recordingClass.getConstructor().newInstance();
+        Method enable = recordingClass.getMethod("enable", String.class);
+        for (String name : new String[]{"ru.curs.celesta.Statement", "ru.curs.celesta.CallContext",
+                "ru.curs.celesta.ConnectionAcquisition", "ru.curs.celesta.Trigger"}) {
+            enable.invoke(recording, name);
+        }
+        recordingClass.getMethod("start").invoke(recording);
+    }
+
+    @AfterEach
+    public void closeRecording() throws Exception {
+        if (recording != null) {
+            recordingClass.getMethod("close").invoke(recording);
+        }
+    }
+
+    @Test
+    public void operationsAreRecorded() throws Exception {
+        cc().getCelesta().getTriggerDispatcher()
+                .registerTrigger(TriggerType.PRE_INSERT, TXRecCursor.class, c -> c.setTitle("triggered"));
+        try (TXRecCursor c = new TXRecCursor(cc())) {
+            c.setNum(1);
+            c.insert();
+            assertEquals(1, c.count());
+        }
+        cc().commit();
+        cc().getCopy().close();
+
+        List<Object> events = stopAndRead();
+        assertTrue(hasEvent(events, "ru.curs.celesta.Statement", "kind", "COUNT"));
+        assertTrue(hasEvent(events, "ru.curs.celesta.Statement", "kind", "INSERT"));
+        assertTrue(hasEvent(events, "ru.curs.celesta.CallContext", "action", "commit"));
+        assertTrue(hasEvent(events, "ru.curs.celesta.CallContext", "action", "activate"));
+        assertTrue(hasEvent(events, "ru.curs.celesta.CallContext", "action", "close"));
+        assertTrue(hasEvent(events, "ru.curs.celesta.ConnectionAcquisition", "pool", "InternalConnectionPool"));
+        assertTrue(hasEvent(events, "ru.curs.celesta.Trigger", "type", "PRE_INSERT"));
+    }
+
+    @Test
+    public void nothingIsRecordedWhenEventsAreNotEnabled() throws Exception {
+        recordingClass.getMethod("disable", String.class).invoke(recording, "ru.curs.celesta.Statement");
+        assertFalse(CelestaEvents.STATEMENT.isEnabled());
+        assertFalse(CelestaEvents.STATEMENT.begin().isActive());
+        try (TXRecCursor c = new TXRecCursor(cc())) {
+            c.count();
+        }
+        assertFalse(hasEvent(stopAndRead(), "ru.curs.celesta.Statement", "kind", "COUNT"));
+    }
+
+    private List<Object> stopAndRead() throws Exception {
+        recordingClass.getMethod("stop").invoke(recording);
+        Path file = Files.createTempFile("celesta", ".jfr");
+        try {
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+            Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+            @SuppressWarnings("unchecked")
+            List<Object> events = (List<Object>) recordingFile.getMethod("readAllEvents", Path.class)
+                    .invoke(null, file);
+            return new ArrayList<>(events);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static boolean hasEvent(List<Object> events, String name, String field, String value)
+            throws Exception {
+        for (Object event : events) {
+            Object type = event.getClass().getMethod("getEventType").invoke(event);
+            String typeName = (String) type.getClass().getMethod("getName").invoke(type);
+            if (name.equals(typeName)
+                    && value.equals(event.getClass().getMethod("getValue", String.class).invoke(event, field))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package ru.curs.celesta.diagnostics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.Celesta;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.DBType;
+import ru.curs.celesta.dbutils.stmt.InMemoryStatementMetrics;
+import ru.curs.celesta.dbutils.stmt.StatementKind;
+import ru.curs.celesta.dbutils.stmt.StatementMetrics;
+import testTable.TXRecCursor;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlowStatementLogTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    private SlowStatementLog log;
+
+    @BeforeEach
+    public void before() {
+        // statement texts are captured only after the log is created
+        log = new SlowStatementLog(celesta().getDBAdaptor(), 3);
+        log.setThreshold(0);
+        celesta().setStatementMetrics(log);
+    }
+
+    @AfterEach
+    public void after() {
+        celesta().setStatementMetrics(null);
+        log.close();
+    }
+
+    @Test
+    public void slowStatementIsLoggedWithMaskedBindValuesAndPlan() {
+        log.setCapturePlans(true);
+        try (TXRecCursor c = new TXRecCursor(cc())) {
+            c.setRange(c.COLUMNS.title(), "secret");
+            c.setRange(c.COLUMNS.num(), 42);
+            assertFalse(c.tryFindSet());
+        }
+
+        SlowStatement s = log.getEntries().stream()
+                .filter(e -> e.getKind() == StatementKind.FIND_SET)
+                .findFirst().get();
+        assertEquals(cc().getProcName(), s.getProcName());
+        assertEquals("tXRec", s.getElement().getName());
+        assertTrue(s.getSql().toLowerCase().startsWith("select"), s.getSql());
+        assertTrue(s.getParameters().containsAll(Arrays.asList("<string:6>", 42)), s.getParameters().toString());
+        assertFalse(s.getParameters().contains("secret"));
+        assertNotNull(s.getPlan());
+        assertTrue(s.getPlan().toUpperCase().contains("TXREC"), s.getPlan());
+    }
+
+    @Test
+    public void ringBufferKeepsNewestEntries() {
+        log.setMaskBindValues(false);
+        try (TXRecCursor c = new TXRecCursor(cc())) {
+            for (int i = 0; i < 5; i++) {
+                c.setRange(c.COLUMNS.num(), i);
+                c.tryFindSet();
+            }
+        }
+
+        List<SlowStatement> entries = log.getEntries();
+        assertEquals(3, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertTrue(entries.get(i).getTimestamp().compareTo(entries.get(entries.size() - 1).getTimestamp()) >= 0);
+        }
+        assertTrue(entries.get(0).getParameters().contains(4), entries.get(0).getParameters().toString());
+        assertNull(entries.get(0).getPlan());
+
+        log.clear();
+        assertTrue(log.getEntries().isEmpty());
+    }
+
+    @Test
+    public void thresholdIsChosenByDbType() {
+        log.setThreshold(DBType.H2, 60_000);
+        log.setThreshold(DBType.POSTGRESQL, 0);
+        assertEquals(60_000, log.getThreshold());
+        try (TXRecCursor c = new TXRecCursor(cc())) {
+            c.tryFindSet();
+        }
+        assertTrue(log.getEntries().isEmpty());
+        assertThrows(CelestaException.class, () -> new SlowStatementLog(celesta().getDBAdaptor(), 0));
+    }
+
+    @Test
+    public void metricsAreCombined() {
+        InMemoryStatementMetrics counters = new InMemoryStatementMetrics();
+        celesta().setStatementMetrics(StatementMetrics.of(counters, log, StatementMetrics.NO_OP));
+        try (TXRecCursor c = new TXRecCursor(cc())) {
+            c.tryFindSet();
+        }
+        assertEquals(1, counters.getTotal(StatementKind.FIND_SET).getCount());
+        assertFalse(log.getEntries().isEmpty());
+
+        assertSame(counters, StatementMetrics.of(counters, StatementMetrics.NO_OP));
+        assertSame(StatementMetrics.NO_OP, StatementMetrics.of());
+    }
+
+    private Celesta celesta() {
+        return (Celesta) cc().getCelesta();
+    }
+}
@@ -9,6 +9,7 @@ import ru.curs.celesta.Celesta;
 import ru.curs.celesta.SystemCallContext;
 import ru.curs.celesta.test.ContainerUtils;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
@@ -97,8 +98,12 @@ public class CallContextProvider implements TestTemplateInvocationContextProvide
     public void shutDownH2() {
         celestas.computeIfPresent(Backend.H2,
                 (b, c) -> {
-                    try (Statement stmt = c.getConnectionPool().get().createStatement()){
-                        stmt.execute("SHUTDOWN");
+                    try (Connection conn = c.getConnectionPool().get()) {
+                        // background tasks of Celesta stop before the database disappears
+                        c.close();
+                        try (Statement stmt = conn.createStatement()) {
+                            stmt.execute("SHUTDOWN");
+                        }
                     } catch (SQLException ex) {
                         LOGGER.error("Error during DB shutdown", ex);
                     }
@@ -6,12 +6,15 @@ import mView.MView3Cursor;
 import mView.MView4Cursor;
 import mView.MView5Cursor;
 import mView.MView6Cursor;
+import mView.MView7Cursor;
+import mView.MView8Cursor;
 import mView.MViewReverseOrderCursor;
 import mView.Table1Cursor;
 import mView.Table2Cursor;
 import mView.Table3Cursor;
 import mView.Table4Cursor;
 import mView.Table5Cursor;
+import mView.Table6Cursor;
 import org.junit.jupiter.api.TestTemplate;
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.dbutils.Cursor;
@@ -218,6 +221,105 @@ public class TestMaterializedView implements ScriptTest {
         assertEquals(new BigDecimal("1.0001"), mv.getS2());
     }
 
+    @TestTemplate
+    void test_mat_view_min_max(CallContext context) {
+        Table6Cursor tableCursor = new Table6Cursor(context);
+        MView7Cursor mViewCursor = new MView7Cursor(context);
+
+        tableCursor.deleteAll();
+        assertEquals(0, mViewCursor.count());
+
+        Timestamp date1 = Timestamp.valueOf(LocalDateTime.of(2000, Month.AUGUST, 5, 10, 5, 32));
+        Timestamp date2 = Timestamp.valueOf(LocalDateTime.of(2000, Month.AUGUST, 6, 10, 5, 32));
+        Timestamp date3 = Timestamp.valueOf(LocalDateTime.of(2000, Month.AUGUST, 7, 10, 5, 32));
+
+        tableCursor.setVar("A").setNumb(5).setDate(date1).insert();
+        tableCursor.clear();
+        tableCursor.setVar("A").setNumb(3).setDate(date3).insert();
+        int id2 = tableCursor.getId();
+        tableCursor.clear();
+        tableCursor.setVar("A").setNumb(8).setDate(date2).insert();
+        int id3 = tableCursor.getId();
+        tableCursor.clear();
+        tableCursor.setVar("B").setNumb(1).insert();
+        tableCursor.clear();
+
+        mViewCursor.get("A");
+        assertEquals(8, mViewCursor.getMaxNumb().intValue());
+        assertEquals(3, mViewCursor.getMinNumb().intValue());
+        assertEquals(date3, mViewCursor.getLastDate());
+        assertEquals(3, mViewCursor.getC().intValue());
+
+        // removal of the extremum recomputes it
+        tableCursor.get(id3);
+        tableCursor.delete();
+        mViewCursor.get("A");
+        assertEquals(5, mViewCursor.getMaxNumb().intValue());
+        assertEquals(3, mViewCursor.getMinNumb().intValue());
+
+        tableCursor.get(id2);
+        tableCursor.setNumb(10).setDate(date1).update();
+        mViewCursor.get("A");
+        assertEquals(10, mViewCursor.getMaxNumb().intValue());
+        assertEquals(5, mViewCursor.getMinNumb().intValue());
+        assertEquals(date1, mViewCursor.getLastDate());
+
+        tableCursor.get(id2);
+        tableCursor.setVar("B").update();
+        mViewCursor.get("A");
+        assertEquals(5, mViewCursor.getMaxNumb().intValue());
+        assertEquals(5, mViewCursor.getMinNumb().intValue());
+        assertEquals(1, mViewCursor.getC().intValue());
+        mViewCursor.get("B");
+        assertEquals(10, mViewCursor.getMaxNumb().intValue());
+        assertEquals(1, mViewCursor.getMinNumb().intValue());
+        assertEquals(date1, mViewCursor.getLastDate());
+
+        tableCursor.setRange(tableCursor.COLUMNS.var(), "A");
+        tableCursor.deleteAll();
+        assertEquals(1, mViewCursor.count());
+    }
+
+    @TestTemplate
+    void test_mat_view_deferred(CallContext context) {
+        Table6Cursor tableCursor = new Table6Cursor(context);
+        MView8Cursor mViewCursor = new MView8Cursor(context);
+
+        tableCursor.deleteAll();
+        mViewCursor.flush();
+        assertEquals(0, mViewCursor.count());
+
+        tableCursor.setVar("A").setNumb(5).insert();
+        tableCursor.clear();
+        tableCursor.setVar("A").setNumb(3).insert();
+        int id2 = tableCursor.getId();
+        tableCursor.clear();
+        tableCursor.setVar("B").setNumb(1).insert();
+        tableCursor.clear();
+
+        // the view is not maintained until the queued changes are applied
+        assertEquals(0, mViewCursor.count());
+        mViewCursor.flush();
+        assertEquals(2, mViewCursor.count());
+        mViewCursor.get("A");
+        assertEquals(8, mViewCursor.getS().intValue());
+        assertEquals(5, mViewCursor.getMaxNumb().intValue());
+        assertEquals(2, mViewCursor.getC().intValue());
+
+        mViewCursor.setFlushBeforeRead(true);
+        tableCursor.get(id2);
+        tableCursor.setVar("B").setNumb(7).update();
+        mViewCursor.get("A");
+        assertEquals(5, mViewCursor.getS().intValue());
+        assertEquals(1, mViewCursor.getC().intValue());
+        mViewCursor.get("B");
+        assertEquals(8, mViewCursor.getS().intValue());
+        assertEquals(7, mViewCursor.getMaxNumb().intValue());
+
+        tableCursor.setRange(tableCursor.COLUMNS.var(), "A");
+        tableCursor.deleteAll();
+        assertEquals(1, mViewCursor.count());
+    }
 
     void setNumb(Cursor t, int numb) {
         if (t instanceof Table1Cursor) {
@@ -0,0 +1,133 @@
+package ru.curs.celesta.script;
+
+import cache.PriceCursor;
+import cache.RegionPricesCursor;
+import org.junit.jupiter.api.TestTemplate;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.dbutils.ParameterizedViewCache;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestParameterizedViewCache implements ScriptTest {
+
+    @TestTemplate
+    void testResultsAreServedFromCache(CallContext context) throws SQLException {
+        PriceCursor p = new PriceCursor(context);
+        preparePrices(p);
+
+        RegionPricesCursor c = new RegionPricesCursor(context, region(1));
+        assertEquals(2, c.count());
+        // changes bypassing Celesta cursors are not seen until the results are invalidated
+        execute(context, String.format("INSERT INTO %s (\"id\", \"item\", \"region\", \"amount\") "
+                + "VALUES (10, 'C', 1, 5)", context.getDbAdaptor().tableString("cache", "price")));
+        assertEquals(2, c.count());
+        assertEquals(1, new RegionPricesCursor(context, region(2)).count());
+
+        ParameterizedViewCache cache = context.getCelesta().getParameterizedViewCache();
+        assertTrue(cache.isCached(c.meta()));
+        cache.invalidate(c.meta());
+        assertEquals(3, new RegionPricesCursor(context, region(1)).count());
+
+        cleanUp(p);
+    }
+
+    @TestTemplate
+    void testFiltersAndOrderingOfCachedResult(CallContext context) {
+        PriceCursor p = new PriceCursor(context);
+        preparePrices(p);
+
+        RegionPricesCursor c = new RegionPricesCursor(context, region(1));
+        c.orderBy(c.COLUMNS.total().desc());
+        List<String> items = new ArrayList<>();
+        for (RegionPricesCursor row : c) {
+            items.add(row.getItem() + row.getTotal());
+        }
+        assertEquals("[B50, A30]", items.toString());
+
+        c.setRange(c.COLUMNS.item(), "A");
+        c.first();
+        assertEquals(30, c.getTotal().intValue());
+        assertFalse(c.next());
+
+        c.setRange(c.COLUMNS.item());
+        c.limit(1, 1);
+        assertTrue(c.tryFindSet());
+        assertEquals("A", c.getItem());
+        assertFalse(c.nextInSet());
+
+        cleanUp(p);
+    }
+
+    @TestTemplate
+    void testWritesInvalidateResults(CallContext context) {
+        PriceCursor p = new PriceCursor(context);
+        preparePrices(p);
+        RegionPricesCursor c = new RegionPricesCursor(context, region(1));
+        c.setRange(c.COLUMNS.item(), "A");
+        c.first();
+        assertEquals(30, c.getTotal().intValue());
+
+        p.get(1);
+        p.setAmount(100);
+        p.update();
+        // the modifying context reads the function from the database
+        c.first();
+        assertEquals(120, c.getTotal().intValue());
+
+        try (CallContext other = context.getCopy()) {
+            RegionPricesCursor oc = new RegionPricesCursor(other, region(1));
+            oc.setRange(oc.COLUMNS.item(), "A");
+            oc.first();
+            assertEquals(30, oc.getTotal().intValue());
+            context.commit();
+            oc.first();
+            assertEquals(120, oc.getTotal().intValue());
+        }
+
+        cleanUp(p);
+    }
+
+    private static Map<String, Object> region(int r) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("r", r);
+        return params;
+    }
+
+    private static void preparePrices(PriceCursor p) {
+        p.deleteAll();
+        insert(p, 1, "A", 1, 10);
+        insert(p, 2, "A", 1, 20);
+        insert(p, 3, "B", 1, 50);
+        insert(p, 4, "A", 2, 70);
+        p.callContext().commit();
+        p.clear();
+    }
+
+    private static void insert(PriceCursor p, int id, String item, int region, int amount) {
+        p.clear();
+        p.setId(id).setItem(item).setRegion(region).setAmount(amount);
+        p.insert();
+    }
+
+    private static void cleanUp(PriceCursor p) {
+        p.clear();
+        p.deleteAll();
+        p.callContext().commit();
+    }
+
+    private static void execute(CallContext context, String sql) throws SQLException {
+        try (Statement stmt = context.getConn().createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package ru.curs.celesta.script;
+
+import cache.CachedDictionaryCursor;
+import cache.CachedRoTableCursor;
+import cache.CachedTableCursor;
+import org.junit.jupiter.api.TestTemplate;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.dbutils.TableCache;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestTableCache implements ScriptTest {
+
+    @TestTemplate
+    void testReadsAreServedFromSnapshot(CallContext context) throws SQLException {
+        CachedTableCursor c = new CachedTableCursor(context);
+        prepareTable(c);
+
+        assertEquals(5, c.count());
+        // changes bypassing Celesta cursors are not seen until the snapshot is invalidated
+        execute(context, String.format("INSERT INTO %s (\"id\", \"code\", \"weight\") VALUES (6, 'F', 60)",
+                context.getDbAdaptor().tableString("cache", "cachedTable")));
+        assertEquals(5, c.count());
+        assertFalse(c.tryGet(6));
+
+        TableCache cache = context.getCelesta().getTableCache();
+        assertTrue(cache.isCached(c.meta()));
+        cache.invalidate(c.meta());
+        assertEquals(6, c.count());
+        assertTrue(c.tryGet(6));
+        assertEquals("F", c.getCode());
+
+        cleanUp(c);
+    }
+
+    @TestTemplate
+    void testFiltersOrderingAndNavigation(CallContext context) {
+        CachedTableCursor c = new CachedTableCursor(context);
+        prepareTable(c);
+
+        c.get(3);
+        assertEquals("C", c.getCode());
+        assertNull(c.getWeight());
+        assertFalse(c.tryGet(10));
+
+        c.orderBy(c.COLUMNS.weight().desc());
+        List<Integer> ids = new ArrayList<>();
+        for (CachedTableCursor row : c) {
+            ids.add(row.getId());
+        }
+        // nulls are the last in descending order if the database sorts nulls first
+        List<Integer> expected = new ArrayList<>();
+        if (!context.getDbAdaptor().nullsFirst()) {
+            expected.add(3);
+        }
+        expected.add(1);
+        expected.add(4);
+        expected.add(2);
+        expected.add(5);
+        if (context.getDbAdaptor().nullsFirst()) {
+            expected.add(3);
+        }
+        assertEquals(expected, ids);
+
+        c.clear();
+        c.orderBy(c.COLUMNS.code());
+        c.setRange(c.COLUMNS.weight(), 16, 40);
+        assertEquals(3, c.count());
+        c.first();
+        assertEquals(1, c.getId().intValue());
+        c.next();
+        assertEquals(2, c.getId().intValue());
+        assertEquals(1, c.position());
+        assertFalse(c.navigate(">", 1));
+        assertTrue(c.next());
+        assertEquals(4, c.getId().intValue());
+        assertFalse(c.next());
+        c.last();
+        assertEquals(4, c.getId().intValue());
+        c.previous();
+        assertEquals(2, c.getId().intValue());
+        assertTrue(c.navigate("="));
+
+        c.setRange(c.COLUMNS.code(), "B");
+        assertEquals(1, c.count());
+        c.limit(1, 0);
+        assertFalse(c.tryFindSet());
+
+        cleanUp(c);
+    }
+
+    @TestTemplate
+    void testWritesInvalidateSnapshot(CallContext context) {
+        CachedTableCursor c = new CachedTableCursor(context);
+        prepareTable(c);
+        c.get(1);
+        assertEquals(40, c.getWeight().intValue());
+
+        c.setWeight(45);
+        c.update();
+        // the modifying context reads the table from the database
+        c.get(1);
+        assertEquals(45, c.getWeight().intValue());
+
+        try (CallContext other = context.getCopy()) {
+            CachedTableCursor oc = new CachedTableCursor(other);
+            oc.get(1);
+            assertEquals(40, oc.getWeight().intValue());
+            context.commit();
+            oc.get(1);
+            assertEquals(45, oc.getWeight().intValue());
+        }
+
+        c.get(1);
+        assertEquals(45, c.getWeight().intValue());
+        c.delete();
+        assertFalse(c.tryGet(1));
+        context.commit();
+        assertFalse(c.tryGet(1));
+        assertEquals(4, c.count());
+
+        cleanUp(c);
+    }
+
+    @TestTemplate
+    void testReadOnlyTable(CallContext context) throws SQLException {
+        String table = context.getDbAdaptor().tableString("cache", "cachedRoTable");
+        execute(context, String.format("INSERT INTO %s (\"id\", \"title\") VALUES (1, 'one')", table));
+        execute(context, String.format("INSERT INTO %s (\"id\", \"title\") VALUES (2, 'two')", table));
+        execute(context, String.format("INSERT INTO %s (\"id\", \"title\") VALUES (3, 'three')", table));
+
+        CachedRoTableCursor c = new CachedRoTableCursor(context);
+        TableCache cache = context.getCelesta().getTableCache();
+        cache.invalidate(c.meta());
+        try {
+            c.orderBy(c.COLUMNS.title());
+            c.findSet();
+            assertEquals("one", c.getTitle());
+            assertTrue(c.nextInSet());
+            assertEquals("three", c.getTitle());
+            assertTrue(c.nextInSet());
+            assertEquals("two", c.getTitle());
+            assertFalse(c.nextInSet());
+
+            c.setRange(c.COLUMNS.id(), 2, 3);
+            c.last();
+            assertEquals("two", c.getTitle());
+            assertEquals(2, c.count());
+        } finally {
+            execute(context, String.format("DELETE FROM %s", table));
+            context.commit();
+            cache.invalidate(c.meta());
+        }
+    }
+
+    @TestTemplate
+    void testStringsAreComparedByDatabase(CallContext context) throws SQLException {
+        String table = context.getDbAdaptor().tableString("cache", "cachedDictionary");
+        CachedDictionaryCursor c = new CachedDictionaryCursor(context);
+        c.deleteAll();
+        // codes differing in case are ordered differently by binary and case-insensitive collations
+        for (String code : new String[]{"a", "B", "c", "D"}) {
+            c.clear();
+            c.setCode(code).setTitle(code);
+            c.insert();
+        }
+        context.commit();
+        try {
+            c.clear();
+            List<String> codes = new ArrayList<>();
+            for (CachedDictionaryCursor row : c) {
+                codes.add(row.getCode());
+            }
+            assertEquals(queryCodes(context, String.format("SELECT \"code\" FROM %s ORDER BY \"code\"", table)),
+                    codes);
+
+            assertEquals(!queryCodes(context, String.format("SELECT \"code\" FROM %s WHERE \"code\" = 'A'", table))
+                    .isEmpty(), c.tryGet("A"));
+
+            c.clear();
+            c.setRange(c.COLUMNS.code(), "B", "c");
+            assertEquals(queryCodes(context, String.format(
+                    "SELECT \"code\" FROM %s WHERE \"code\" BETWEEN 'B' AND 'c'", table)).size(), c.count());
+        } finally {
+            c.clear();
+            c.deleteAll();
+            context.commit();
+        }
+    }
+
+    private static List<String> queryCodes(CallContext context, String sql) throws SQLException {
+        List<String> result = new ArrayList<>();
+        try (Statement stmt = context.getConn().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                result.add(rs.getString(1));
+            }
+        }
+        return result;
+    }
+
+    private static void prepareTable(CachedTableCursor c) {
+        c.deleteAll();
+        insert(c, 1, "A", 40);
+        insert(c, 2, "B", 20);
+        insert(c, 3, "C", null);
+        insert(c, 4, "D", 30);
+        insert(c, 5, "E", 15);
+        c.callContext().commit();
+        c.clear();
+    }
+
+    private static void insert(CachedTableCursor c, int id, String code, Integer weight) {
+        c.clear();
+        c.setId(id).setCode(code).setWeight(weight);
+        c.insert();
+    }
+
+    private static void cleanUp(CachedTableCursor c) {
+        c.clear();
+        c.deleteAll();
+        c.callContext().commit();
+    }
+
+    private static void execute(CallContext context, String sql) throws SQLException {
+        try (Statement stmt = context.getConn().createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+}
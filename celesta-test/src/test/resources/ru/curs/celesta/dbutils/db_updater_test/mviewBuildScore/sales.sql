@@ -0,0 +1,13 @@
+create schema sales version '1.0';
+
+create table sale (
+    id INT NOT NULL PRIMARY KEY,
+    region VARCHAR(2) NOT NULL,
+    saleDate DATETIME NOT NULL,
+    amount INT
+);
+
+create materialized view salesByRegion as
+  select region, saleDate, sum(amount) as total, count(*) as cnt
+  from sale
+  group by region, saleDate;
@@ -0,0 +1,17 @@
+create schema invoices version '1.0';
+
+create table invoice (
+    id INT NOT NULL PRIMARY KEY,
+    orderId INT NOT NULL,
+    itemId INT NOT NULL
+);
+
+alter table invoice add constraint fk_invoice_order foreign key (orderId)
+    references orders.orderHeader(id);
+alter table invoice add constraint fk_invoice_item foreign key (itemId)
+    references stock.item(id);
+
+create view invoiceView as
+  select i.id as id, o.amount as amount
+  from invoice as i
+  inner join orders.orderHeader as o on i.orderId = o.id;
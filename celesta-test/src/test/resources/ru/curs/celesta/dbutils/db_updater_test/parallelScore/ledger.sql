@@ -0,0 +1,23 @@
+create schema ledger version '1.0';
+
+create table entry (
+    id INT NOT NULL PRIMARY KEY,
+    code VARCHAR(10) NOT NULL,
+    amount INT NOT NULL
+);
+
+create table entryArchive (
+    id INT NOT NULL PRIMARY KEY,
+    code VARCHAR(10) NOT NULL,
+    amount INT NOT NULL
+);
+
+create materialized view entryTotals as
+  select code, sum(amount) as total, count(*) as cnt
+  from entry
+  group by code;
+
+create materialized view entryArchiveTotals as
+  select code, sum(amount) as total, count(*) as cnt
+  from entryArchive
+  group by code;
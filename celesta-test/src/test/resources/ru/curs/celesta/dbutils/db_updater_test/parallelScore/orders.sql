@@ -0,0 +1,15 @@
+create schema orders version '1.0';
+
+create table customer (
+    id INT NOT NULL PRIMARY KEY,
+    name VARCHAR(50)
+);
+
+create table orderHeader (
+    id INT NOT NULL PRIMARY KEY,
+    customerId INT NOT NULL,
+    amount DECIMAL(10, 2)
+);
+
+alter table orderHeader add constraint fk_orderHeader_customer foreign key (customerId)
+    references customer(id);
@@ -0,0 +1,23 @@
+create schema payroll version '1.0';
+
+create table payment (
+    id INT NOT NULL PRIMARY KEY,
+    code VARCHAR(10) NOT NULL,
+    amount INT NOT NULL
+);
+
+create table paymentArchive (
+    id INT NOT NULL PRIMARY KEY,
+    code VARCHAR(10) NOT NULL,
+    amount INT NOT NULL
+);
+
+create materialized view paymentTotals as
+  select code, sum(amount) as total, count(*) as cnt
+  from payment
+  group by code;
+
+create materialized view paymentArchiveTotals as
+  select code, sum(amount) as total, count(*) as cnt
+  from paymentArchive
+  group by code;
@@ -0,0 +1,9 @@
+create schema stock version '1.0';
+
+create table item (
+    id INT NOT NULL PRIMARY KEY,
+    title VARCHAR(50)
+);
+
+create view itemView as
+  select id, title from item;
@@ -0,0 +1,23 @@
+create schema warehouse version '1.0';
+
+create table movement (
+    id INT NOT NULL PRIMARY KEY,
+    code VARCHAR(10) NOT NULL,
+    amount INT NOT NULL
+);
+
+create table movementArchive (
+    id INT NOT NULL PRIMARY KEY,
+    code VARCHAR(10) NOT NULL,
+    amount INT NOT NULL
+);
+
+create materialized view movementTotals as
+  select code, sum(amount) as total, count(*) as cnt
+  from movement
+  group by code;
+
+create materialized view movementArchiveTotals as
+  select code, sum(amount) as total, count(*) as cnt
+  from movementArchive
+  group by code;